@@ -0,0 +1,60 @@
+#!/bin/sh
+#
+# Starts or stops a three member replica set of local mongod processes, used
+# to try the reports with a secondary read preference. The members listen on
+# localhost ports 27017, 27018 and 27019. The first member is preferred as
+# the primary and is tagged for ingestion, the other two are tagged for
+# reporting in two data centers.
+#
+# Usage: scripts/replica-set.sh start|stop [data directory]
+#
+# Copyright (C) 2016 David S. Read
+#
+# This program is free software: you can redistribute it and/or modify it under
+# the terms of the GNU Affero General Public License as published by the Free
+# Software Foundation, either version 3 of the License, or (at your option) any
+# later version.
+#
+# This program is distributed in the hope that it will be useful, but WITHOUT
+# ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+# FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+# details.
+#
+# You should have received a copy of the GNU Affero General Public License
+# along with this program. If not, see http://www.gnu.org/licenses/
+
+REPLICA_SET=honeypotRs
+PORTS="27017 27018 27019"
+DATA_DIR=${2:-/tmp/$REPLICA_SET}
+MONGO_SHELL=${MONGO_SHELL:-mongo}
+
+case "$1" in
+  start)
+    for port in $PORTS; do
+      mkdir -p "$DATA_DIR/$port" || exit 1
+      mongod --replSet $REPLICA_SET --port $port --bind_ip localhost \
+        --dbpath "$DATA_DIR/$port" --logpath "$DATA_DIR/$port/mongod.log" \
+        --fork || exit 1
+    done
+
+    $MONGO_SHELL --port 27017 --quiet --eval '
+      rs.initiate({ _id: "'$REPLICA_SET'", members: [
+        { _id: 0, host: "localhost:27017", priority: 2,
+          tags: { use: "ingest" } },
+        { _id: 1, host: "localhost:27018",
+          tags: { use: "reporting", dc: "east" } },
+        { _id: 2, host: "localhost:27019",
+          tags: { use: "reporting", dc: "west" } } ] });
+      while (!db.isMaster().ismaster) { sleep(500); }
+      print("Replica set " + rs.conf()._id + " is ready");' || exit 1
+    ;;
+  stop)
+    for port in $PORTS; do
+      mongod --shutdown --dbpath "$DATA_DIR/$port"
+    done
+    ;;
+  *)
+    echo "Usage: $0 start|stop [data directory]" >&2
+    exit 1
+    ;;
+esac
@@ -0,0 +1,134 @@
+package us.daveread.education.mongo.honeypot.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+
+import us.daveread.education.mongo.honeypot.AttackRecord;
+
+/**
+ * Creates repeatable synthetic attacks for the benchmarks. The values are
+ * drawn from a fixed seed so every run, and every data size, uses the same
+ * sequence of attacks.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public final class BenchmarkAttacks {
+  /**
+   * The seed for the random values.
+   */
+  private static final long SEED = 20160101L;
+
+  /**
+   * The number of distinct country codes.
+   */
+  private static final int COUNTRY_COUNT = 200;
+
+  /**
+   * The number of distinct server IP mask values.
+   */
+  private static final int SERVER_COUNT = 20;
+
+  /**
+   * The number of distinct client IP mask values.
+   */
+  private static final int CLIENT_COUNT = 50000;
+
+  /**
+   * The channels.
+   */
+  private static final String[] CHANNELS = {
+      "dionaea.capture", "dionaea.connections", "glastopf.events",
+      "kippo.sessions", "snort.alerts"
+  };
+
+  /**
+   * The number of documents sent to the server in each insert.
+   */
+  private static final int INSERT_BATCH_SIZE = 1000;
+
+  /**
+   * Not instantiated.
+   */
+  private BenchmarkAttacks() {
+  }
+
+  /**
+   * Create the attacks.
+   * @param attackCount
+   *          The number of attacks
+   * @return The attacks
+   */
+  public static List<AttackRecord> createRecords(int attackCount) {
+    Random random = new Random(SEED);
+    List<AttackRecord> attacks = new ArrayList<>(attackCount);
+    for (int attack = 0; attack < attackCount; ++attack) {
+      attacks.add(new AttackRecord(countryCode(random.nextInt(COUNTRY_COUNT)),
+        CHANNELS[random.nextInt(CHANNELS.length)],
+        random.nextInt(SERVER_COUNT), random.nextInt(CLIENT_COUNT)));
+    }
+    return attacks;
+  }
+
+  /**
+   * Replace the contents of a collection with the attacks, unless it already
+   * holds the expected number of documents.
+   * @param collection
+   *          The collection
+   * @param attackCount
+   *          The number of attacks
+   */
+  public static void load(MongoCollection<Document> collection,
+    int attackCount) {
+    if (collection.count() == attackCount) {
+      return;
+    }
+
+    collection.drop();
+    List<Document> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+    for (AttackRecord attack : createRecords(attackCount)) {
+      batch.add(new Document("client_country_code",
+        attack.getClientCountryCode()).append("channel", attack.getChannel())
+          .append("payload",
+            new Document("server_ip_mask", attack.getServerIpMask())
+              .append("client_ip_mask", attack.getClientIpMask())));
+      if (batch.size() == INSERT_BATCH_SIZE) {
+        collection.insertMany(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      collection.insertMany(batch);
+    }
+  }
+
+  /**
+   * Create a two letter country code from a number.
+   * @param country
+   *          The country number, from 0 to 675
+   * @return The country code
+   */
+  private static String countryCode(int country) {
+    return new String(new char[] {
+        (char) ('A' + country / 26), (char) ('A' + country % 26)
+    });
+  }
+}
@@ -0,0 +1,110 @@
+package us.daveread.education.mongo.honeypot.bench;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.CountryAccumulator;
+import us.daveread.education.mongo.honeypot.CountryCount;
+import us.daveread.education.mongo.honeypot.ServerChannelAccumulator;
+import us.daveread.education.mongo.honeypot.ServerChannelCount;
+import us.daveread.education.mongo.honeypot.TopK;
+
+/**
+ * Measures the client side counting used by the coded reports on its own,
+ * without reading from MongoDB. Each benchmark feeds attacks held in memory
+ * to an accumulator and then produces the rows of the report.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ReportBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CodedReportBenchmark {
+  /**
+   * The number of countries shown by the country report.
+   */
+  private static final int TOP_COUNTRIES = 10;
+
+  /**
+   * The number of attacks.
+   */
+  @Param({"10000", "100000", "1000000"})
+  private int attackCount;
+
+  /**
+   * The attacks.
+   */
+  private List<AttackRecord> attacks;
+
+  /**
+   * Create the attacks.
+   */
+  @Setup
+  public void setup() {
+    attacks = BenchmarkAttacks.createRecords(attackCount);
+  }
+
+  /**
+   * Count the attacks by country and select the top countries, as done by
+   * countryBreakdownCoded().
+   * @return The top countries
+   */
+  @Benchmark
+  public List<CountryCount> countryBreakdown() {
+    CountryAccumulator countries = new CountryAccumulator();
+    for (AttackRecord attack : attacks) {
+      countries.accumulate(attack);
+    }
+    TopK<CountryCount> topCountries = new TopK<>(TOP_COUNTRIES);
+    topCountries.offerAll(countries.getCountryCounts());
+    return topCountries.getTopItems();
+  }
+
+  /**
+   * Count the attacks by server and channel and sort the results, as done by
+   * honeypotBreakdownCoded().
+   * @return The sorted server and channel counts
+   */
+  @Benchmark
+  public List<ServerChannelCount> honeypotBreakdown() {
+    ServerChannelAccumulator serverChannels = new ServerChannelAccumulator();
+    for (AttackRecord attack : attacks) {
+      serverChannels.accumulate(attack);
+    }
+    List<ServerChannelCount> counts = serverChannels.getServerChannelCounts();
+    Collections.sort(counts);
+    return counts;
+  }
+}
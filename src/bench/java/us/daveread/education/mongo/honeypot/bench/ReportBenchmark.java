@@ -0,0 +1,158 @@
+package us.daveread.education.mongo.honeypot.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.MongoClient;
+
+import us.daveread.education.mongo.honeypot.BasicStatistics;
+
+/**
+ * Measures each report from end to end against a local mongod, comparing the
+ * Java coded reports with the aggregation pipeline reports. The attacks are
+ * loaded into a separate benchmark database, one collection per data size,
+ * the first time a size is used. The report output is discarded.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see CodedReportBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+  /**
+   * The MongoDB server
+   */
+  private static final String MONGO_DB_IP = "localhost";
+
+  /**
+   * The MongoDB port
+   */
+  private static final int MONGO_DB_PORT = 27017;
+
+  /**
+   * The database holding the benchmark collections.
+   */
+  private static final String BENCHMARK_DATABASE = "honeypotBenchmark";
+
+  /**
+   * The number of attacks.
+   */
+  @Param({"10000", "100000", "1000000"})
+  private int attackCount;
+
+  /**
+   * The reports being measured.
+   */
+  private BasicStatistics statistics;
+
+  /**
+   * The console output, restored after the benchmark.
+   */
+  private PrintStream console;
+
+  /**
+   * Load the attacks, if needed, and connect the reports to them.
+   */
+  @Setup
+  public void setup() {
+    String collectionName = "honeypotData" + attackCount;
+    MongoClient mongoClient = new MongoClient(MONGO_DB_IP, MONGO_DB_PORT);
+    try {
+      BenchmarkAttacks.load(mongoClient.getDatabase(BENCHMARK_DATABASE)
+        .getCollection(collectionName, Document.class), attackCount);
+    } finally {
+      mongoClient.close();
+    }
+
+    statistics = new BasicStatistics(MONGO_DB_IP, MONGO_DB_PORT,
+      BENCHMARK_DATABASE, collectionName);
+
+    console = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    }));
+  }
+
+  /**
+   * Restore the console output and close the reports' connection.
+   */
+  @TearDown
+  public void tearDown() {
+    System.setOut(console);
+    statistics.close();
+  }
+
+  /**
+   * Run the coded country report, reading the collection each time.
+   */
+  @Benchmark
+  public void countryBreakdownCoded() {
+    statistics.clearScanResults();
+    statistics.countryBreakdownCoded();
+  }
+
+  /**
+   * Run the aggregation pipeline country report.
+   */
+  @Benchmark
+  public void countryBreakdownAggregation() {
+    statistics.countryBreakdownAggregation();
+  }
+
+  /**
+   * Run the coded server and channel report, reading the collection each
+   * time.
+   */
+  @Benchmark
+  public void honeypotBreakdownCoded() {
+    statistics.clearScanResults();
+    statistics.honeypotBreakdownCoded();
+  }
+
+  /**
+   * Run the aggregation pipeline server and channel report.
+   */
+  @Benchmark
+  public void honeypotBreakdownAggregation() {
+    statistics.honeypotBreakdownAggregation();
+  }
+}
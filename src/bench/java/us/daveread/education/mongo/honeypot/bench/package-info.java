@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks for the honeypot reports
+ */
+package us.daveread.education.mongo.honeypot.bench;
\ No newline at end of file
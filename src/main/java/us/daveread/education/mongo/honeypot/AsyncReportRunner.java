@@ -0,0 +1,371 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.Block;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.AggregateIterable;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+
+/**
+ * Runs every honeypot report concurrently using the asynchronous MongoDB
+ * driver. All of the queries are sent to the server at once and each
+ * completes into its own future. The reports are then printed through the
+ * same ReportLayout, and in the same order, as BasicStatistics prints them,
+ * each one as soon as it and the reports before it have completed. The total
+ * time is therefore close to that of the slowest report rather than the sum
+ * of all of them.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see BasicStatistics
+ * @see ReportLayout
+ */
+public class AsyncReportRunner {
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(AsyncReportRunner.class);
+
+  /**
+   * The time allowed to find the server.
+   */
+  private static final long SERVER_SELECTION_TIMEOUT_MILLIS = 2000;
+
+  /**
+   * The asynchronous client.
+   */
+  private MongoClient mongoClient;
+
+  /**
+   * The collection containing the raw honeypot data.
+   */
+  private MongoCollection<Document> collection;
+
+  /**
+   * Create the runner.
+   * @param host
+   *          The MongoDB server
+   * @param port
+   *          The MongoDB port
+   * @param databaseName
+   *          The database containing the honeypot-related collections
+   * @param collectionName
+   *          The collection containing the raw honeypot data
+   */
+  public AsyncReportRunner(String host, int port, String databaseName,
+    String collectionName) {
+    this(Arrays.asList(new ServerAddress(host, port)), null,
+      ReadPreference.primary(), databaseName, collectionName);
+  }
+
+  /**
+   * Create the runner using the members of a replica set and a read
+   * preference.
+   * @param seeds
+   *          The replica set members to connect to. A single seed without a
+   *          replica set name connects directly to that server.
+   * @param replicaSetName
+   *          The name of the replica set, null to discover it from the seeds
+   * @param readPreference
+   *          The members the reports read from, e.g. secondaryPreferred
+   * @param databaseName
+   *          The database containing the honeypot-related collections
+   * @param collectionName
+   *          The collection containing the raw honeypot data
+   * @see ReplicaSetOptions
+   */
+  public AsyncReportRunner(List<ServerAddress> seeds, String replicaSetName,
+    ReadPreference readPreference, String databaseName,
+    String collectionName) {
+    LOG.info("Connecting asynchronously to servers: " + seeds
+      + " reading from: " + readPreference + " and database: "
+      + databaseName);
+    mongoClient = MongoClients.create(MongoClientSettings.builder()
+      .clusterSettings(ClusterSettings.builder()
+        .hosts(seeds)
+        .requiredReplicaSetName(replicaSetName)
+        .serverSelectionTimeout(SERVER_SELECTION_TIMEOUT_MILLIS,
+          TimeUnit.MILLISECONDS)
+        .build())
+      .connectionPoolSettings(ReportTuning.getInstance()
+        .tunePool(ConnectionPoolSettings.builder()).build())
+      .readPreference(readPreference)
+      .build());
+    collection =
+      mongoClient.getDatabase(databaseName).getCollection(collectionName);
+  }
+
+  /**
+   * Start every report and print the results in order.
+   * @param out
+   *          The stream receiving the reports
+   */
+  public void printReports(PrintStream out) {
+    long startTime = System.currentTimeMillis();
+
+    /**
+     * Send every query before waiting for any of them.
+     */
+    CompletableFuture<Long> totalAttacksResult = count();
+    CompletableFuture<Integer> countryCountResult =
+      distinctCount("client_country_code", String.class);
+    CompletableFuture<Integer> serverCountResult = distinctCount(
+      AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.SERVER_IP_MASK,
+      Integer.class);
+    CompletableFuture<Integer> clientCountResult = distinctCount(
+      AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.CLIENT_IP_MASK,
+      Integer.class);
+    final CountryAccumulator countries = new CountryAccumulator();
+    final ServerChannelAccumulator serverChannels =
+      new ServerChannelAccumulator();
+    CompletableFuture<Void> scanResult = scan(countries, serverChannels);
+    CompletableFuture<List<Document>> countryResult =
+      aggregate(ReportTuning.COUNTRY_BREAKDOWN,
+        ReportPipelines.countryBreakdown());
+    CompletableFuture<List<Document>> honeypotResult =
+      aggregate(ReportTuning.HONEYPOT_BREAKDOWN,
+        ReportPipelines.honeypotBreakdown());
+    CompletableFuture<List<Document>> clientResult =
+      aggregate(ReportTuning.MOST_ACTIVE_IPS, ReportPipelines
+        .mostActiveIps(ReportLayout.NUMBER_OF_ITEMS_TO_DISPLAY));
+
+    /**
+     * Print the reports in the same order, and with the same layout, as
+     * BasicStatistics.
+     */
+    ReportPrinter printer = new ReportPrinter(out, totalAttacksResult.join());
+    int totalAttackingCountries = countryCountResult.join();
+
+    printer.overall(totalAttackingCountries);
+    printer.blankLine();
+
+    ReportLayout.distinctIps(printer, serverCountResult.join(),
+      clientCountResult.join());
+    printer.blankLine();
+
+    scanResult.join();
+    ReportLayout.countryBreakdownCoded(printer, totalAttackingCountries,
+      countries);
+    printer.blankLine();
+
+    ReportLayout.countryBreakdown(printer, totalAttackingCountries,
+      countryResult.join(), ReportLayout.PIPELINE_SOURCE);
+    printer.blankLine();
+
+    ReportLayout.honeypotBreakdownCoded(printer, serverChannels);
+    printer.blankLine();
+
+    ReportLayout.honeypotBreakdown(printer, honeypotResult.join(),
+      ReportLayout.PIPELINE_SOURCE);
+    printer.blankLine();
+
+    int limit = Math.min(totalAttackingCountries,
+      ReportLayout.NUMBER_OF_ITEMS_TO_DISPLAY);
+    ReportLayout.mostActiveIps(printer, limit, clientResult.join(),
+      ReportLayout.PIPELINE_SOURCE);
+
+    LOG.info("Concurrent reports completed in "
+      + (System.currentTimeMillis() - startTime) + "ms");
+  }
+
+  /**
+   * Count the attacks.
+   * @return The future number of attacks
+   */
+  private CompletableFuture<Long> count() {
+    CompletableFuture<Long> result = new CompletableFuture<>();
+    collection.count(complete(result));
+    return result;
+  }
+
+  /**
+   * Count the distinct values of a field, ignoring missing and null values.
+   * As with DistinctCounter the distinct command is tried first. If the
+   * server rejects it, for instance because the reply would exceed the
+   * maximum document size, the values are counted by the distinct count
+   * aggregation pipeline instead. Any other failure completes the future
+   * exceptionally.
+   * @param field
+   *          The field, nested fields use dot notation
+   * @param valueClass
+   *          The type of the field values
+   * @param <T>
+   *          The type of the field values
+   * @return The future number of distinct values
+   * @see DistinctCounter.Mode#AUTO
+   */
+  private <T> CompletableFuture<Integer> distinctCount(final String field,
+    Class<T> valueClass) {
+    CompletableFuture<List<T>> values = new CompletableFuture<>();
+    collection.distinct(field, valueClass)
+      .into(new ArrayList<T>(), complete(values));
+    return values.handle(
+      new BiFunction<List<T>, Throwable, CompletableFuture<Integer>>() {
+        @Override
+        public CompletableFuture<Integer> apply(List<T> distinctValues,
+          Throwable throwable) {
+          if (throwable == null) {
+            int distinctCount = 0;
+            for (T value : distinctValues) {
+              if (value != null) {
+                ++distinctCount;
+              }
+            }
+            return CompletableFuture.completedFuture(distinctCount);
+          }
+
+          Throwable cause = throwable instanceof CompletionException
+            ? throwable.getCause() : throwable;
+          if (!(cause instanceof MongoCommandException)) {
+            CompletableFuture<Integer> failure = new CompletableFuture<>();
+            failure.completeExceptionally(cause);
+            return failure;
+          }
+
+          LOG.warn("Distinct command failed for " + field
+            + ", trying aggregation", cause);
+          return aggregate(ReportTuning.DISTINCT_COUNT,
+            ReportPipelines.distinctCount(field))
+              .thenApply(new Function<List<Document>, Integer>() {
+                @Override
+                public Integer apply(List<Document> result) {
+                  return result.isEmpty() ? 0
+                    : result.get(0).getInteger("count");
+                }
+              });
+        }
+      }).thenCompose(Function.<CompletableFuture<Integer>>identity());
+  }
+
+  /**
+   * Read every attack, feeding the accumulators used by the coded reports.
+   * The driver calls the block for one document at a time so the
+   * accumulators are not shared between threads.
+   * @param countries
+   *          The accumulator counting attacks by country
+   * @param serverChannels
+   *          The accumulator counting attacks by server and channel
+   * @return The future completed when every attack has been read
+   */
+  private CompletableFuture<Void> scan(final CountryAccumulator countries,
+    final ServerChannelAccumulator serverChannels) {
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(countries);
+    accumulators.add(serverChannels);
+
+    ReportTuning tuning = ReportTuning.getInstance();
+    FindIterable<AttackRecord> attacks =
+      collection.withDocumentClass(AttackRecord.class)
+        .withCodecRegistry(
+          AttackRecordCodec.withAttackRecords(collection.getCodecRegistry()))
+        .find().projection(AttackScanner.unionProjection(accumulators));
+    if (tuning.getBatchSize(ReportTuning.SCAN) > 0) {
+      attacks.batchSize(tuning.getBatchSize(ReportTuning.SCAN));
+    }
+    if (tuning.getMaxTimeMillis(ReportTuning.SCAN) > 0) {
+      attacks.maxTime(tuning.getMaxTimeMillis(ReportTuning.SCAN),
+        TimeUnit.MILLISECONDS);
+    }
+
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    attacks.forEach(new Block<AttackRecord>() {
+        @Override
+        public void apply(AttackRecord attack) {
+          countries.accumulate(attack);
+          serverChannels.accumulate(attack);
+        }
+      }, complete(result));
+    return result;
+  }
+
+  /**
+   * Run an aggregation pipeline using a report's tuning settings.
+   * @param report
+   *          The report name used to find the tuning settings
+   * @param aggregationPipeline
+   *          The pipeline
+   * @return The future result documents
+   */
+  private CompletableFuture<List<Document>> aggregate(String report,
+    List<Document> aggregationPipeline) {
+    ReportTuning tuning = ReportTuning.getInstance();
+    AggregateIterable<Document> aggregation =
+      collection.aggregate(aggregationPipeline)
+        .allowDiskUse(tuning.isAllowDiskUse(report));
+    if (tuning.getBatchSize(report) > 0) {
+      aggregation.batchSize(tuning.getBatchSize(report));
+    }
+    if (tuning.getMaxTimeMillis(report) > 0) {
+      aggregation.maxTime(tuning.getMaxTimeMillis(report),
+        TimeUnit.MILLISECONDS);
+    }
+
+    CompletableFuture<List<Document>> result = new CompletableFuture<>();
+    aggregation.into(new ArrayList<Document>(), complete(result));
+    return result;
+  }
+
+  /**
+   * Create a driver callback which completes a future.
+   * @param future
+   *          The future to complete
+   * @param <T>
+   *          The result type
+   * @return The callback
+   */
+  private static <T> SingleResultCallback<T> complete(
+    final CompletableFuture<T> future) {
+    return new SingleResultCallback<T>() {
+      @Override
+      public void onResult(T result, Throwable throwable) {
+        if (throwable != null) {
+          future.completeExceptionally(throwable);
+        } else {
+          future.complete(result);
+        }
+      }
+    };
+  }
+
+  /**
+   * Close the connection to the server.
+   */
+  public void close() {
+    mongoClient.close();
+  }
+}
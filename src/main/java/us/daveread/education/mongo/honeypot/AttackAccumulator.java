@@ -0,0 +1,63 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.List;
+
+/**
+ * A consumer of attack documents. Accumulators are registered with an
+ * AttackSource which reads the honeypot collection once and passes each attack
+ * document to every registered accumulator. This allows several reports to be
+ * computed from a single pass over the collection. When a scan is split into
+ * partitions each partition fills its own accumulator and the results are then
+ * merged.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackSource
+ */
+public interface AttackAccumulator {
+  /**
+   * Get the document fields read by this accumulator. The scanner combines
+   * the fields from all of its accumulators into a single projection. Nested
+   * fields use dot notation (e.g. payload.server_ip_mask).
+   * @return The field names required by the accumulator
+   */
+  List<String> getProjectedFields();
+
+  /**
+   * Process one attack. The record may be reused for the next attack so any
+   * values needed later must be copied out of it.
+   * @param attack
+   *          The attack, holding only the projected fields
+   */
+  void accumulate(AttackRecord attack);
+
+  /**
+   * Create an empty accumulator of the same type and configuration. This is
+   * used to give each partition of a parallel scan its own accumulator.
+   * @return The new, empty accumulator
+   */
+  AttackAccumulator newInstance();
+
+  /**
+   * Add the results held by another accumulator into this one. The other
+   * accumulator must have been created by newInstance() on an accumulator of
+   * the same type.
+   * @param other
+   *          The accumulator whose results are added
+   * @see #newInstance()
+   */
+  void merge(AttackAccumulator other);
+}
@@ -0,0 +1,168 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Random;
+
+import org.bson.Document;
+
+/**
+ * Creates synthetic attack documents with the same shape as the honeypot
+ * data. The channel, server and client of each attack are drawn from Zipf
+ * distributions whose cardinality and skew can be configured, so that a few
+ * clients account for most of the attacks as they do in the real data. Each
+ * client keeps one country code, drawn from the country distribution by a
+ * hash of the client's rank, so a client's attacks all come from the same
+ * country and the countries' shares of the attacks follow the country
+ * distribution on average.
+ * <p>
+ * A generator may be shared by several threads as long as each thread
+ * supplies its own Random.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ZipfSampler
+ */
+public class AttackGenerator {
+  /**
+   * The largest number of two letter country codes.
+   */
+  public static final int MAXIMUM_COUNTRY_COUNT = 26 * 26;
+
+  /**
+   * The channels used by the honeypot sensors. Further channels are given
+   * generated names.
+   */
+  private static final String[] KNOWN_CHANNELS = {
+      "dionaea.connections", "dionaea.capture", "glastopf.events",
+      "kippo.sessions", "snort.alerts", "amun.events", "p0f.events",
+      "conpot.events", "wordpot.events", "shockpot.events"
+  };
+
+  /**
+   * A multiplier spreading consecutive ranks over the range of IP mask
+   * values.
+   */
+  private static final int MASK_SPREAD = 0x9E3779B1;
+
+  /**
+   * The country code distribution.
+   */
+  private ZipfSampler countries;
+
+  /**
+   * A multiplier scaling the top 53 bits of a hash into [0, 1).
+   */
+  private static final double HASH_TO_UNIFORM = 1.0 / (1L << 53);
+
+  /**
+   * The channel distribution.
+   */
+  private ZipfSampler channels;
+
+  /**
+   * The server distribution.
+   */
+  private ZipfSampler servers;
+
+  /**
+   * The client distribution.
+   */
+  private ZipfSampler clients;
+
+  /**
+   * The country codes, indexed by rank.
+   */
+  private String[] countryCodes;
+
+  /**
+   * The channel names, indexed by rank.
+   */
+  private String[] channelNames;
+
+  /**
+   * Create the generator.
+   * @param countryCount
+   *          The number of distinct country codes, at most 676
+   * @param countrySkew
+   *          The Zipf exponent of the country codes
+   * @param channelCount
+   *          The number of distinct channels
+   * @param channelSkew
+   *          The Zipf exponent of the channels
+   * @param serverCount
+   *          The number of distinct server IP mask values
+   * @param serverSkew
+   *          The Zipf exponent of the server IP mask values
+   * @param clientCount
+   *          The number of distinct client IP mask values
+   * @param clientSkew
+   *          The Zipf exponent of the client IP mask values
+   */
+  public AttackGenerator(int countryCount, double countrySkew,
+    int channelCount, double channelSkew, int serverCount, double serverSkew,
+    int clientCount, double clientSkew) {
+    if (countryCount > MAXIMUM_COUNTRY_COUNT) {
+      throw new IllegalArgumentException("At most " + MAXIMUM_COUNTRY_COUNT
+        + " country codes are available: " + countryCount);
+    }
+
+    countries = new ZipfSampler(countryCount, countrySkew);
+    channels = new ZipfSampler(channelCount, channelSkew);
+    servers = new ZipfSampler(serverCount, serverSkew);
+    clients = new ZipfSampler(clientCount, clientSkew);
+
+    countryCodes = new String[countryCount];
+    for (int rank = 0; rank < countryCount; ++rank) {
+      int code = (int) ((rank * 263L) % MAXIMUM_COUNTRY_COUNT);
+      countryCodes[rank] = new String(new char[] {
+          (char) ('A' + code / 26), (char) ('A' + code % 26)
+      });
+    }
+
+    channelNames = new String[channelCount];
+    for (int rank = 0; rank < channelCount; ++rank) {
+      channelNames[rank] = rank < KNOWN_CHANNELS.length ? KNOWN_CHANNELS[rank]
+        : "channel" + rank;
+    }
+  }
+
+  /**
+   * Create an attack document.
+   * @param random
+   *          The source of random numbers
+   * @return The attack document
+   */
+  public Document nextAttack(Random random) {
+    int client = clients.sample(random);
+    return new Document("client_country_code", getCountryCode(client))
+      .append("channel", channelNames[channels.sample(random)])
+      .append("payload",
+        new Document("server_ip_mask", servers.sample(random) + 1)
+          .append("client_ip_mask", client * MASK_SPREAD));
+  }
+
+  /**
+   * Get the country code of a client. The country is drawn from the country
+   * distribution using a hash of the client's rank, so it is the same for
+   * every attack by the client without being stored.
+   * @param clientRank
+   *          The client's rank in the client distribution
+   * @return The country code
+   */
+  public String getCountryCode(int clientRank) {
+    return countryCodes[countries
+      .rank((Hashing.hash(clientRank) >>> 11) * HASH_TO_UNIFORM)];
+  }
+}
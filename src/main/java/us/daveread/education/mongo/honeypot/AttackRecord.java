@@ -0,0 +1,202 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * A Javabean holding the fields of an attack document used by the coded
+ * reports. Unlike a Document this holds the nested payload values directly
+ * and keeps the numeric values as primitives. An instance may be reused for
+ * each attack read, so accumulators must copy any values they keep rather
+ * than keeping the instance itself.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackRecordCodec
+ */
+public class AttackRecord {
+  /**
+   * The client's country code.
+   */
+  private String clientCountryCode;
+
+  /**
+   * The channel (sensor) type.
+   */
+  private String channel;
+
+  /**
+   * The server IP mask value.
+   */
+  private int serverIpMask;
+
+  /**
+   * Whether the server IP mask value was present.
+   */
+  private boolean serverIpMaskPresent;
+
+  /**
+   * The client IP mask value.
+   */
+  private int clientIpMask;
+
+  /**
+   * Whether the client IP mask value was present.
+   */
+  private boolean clientIpMaskPresent;
+
+  /**
+   * Create an empty instance.
+   */
+  public AttackRecord() {
+  }
+
+  /**
+   * Create an instance with every field set.
+   * @param clientCountryCode
+   *          The client's country code
+   * @param channel
+   *          The channel (sensor) type
+   * @param serverIpMask
+   *          The server IP mask value
+   * @param clientIpMask
+   *          The client IP mask value
+   */
+  public AttackRecord(String clientCountryCode, String channel,
+    int serverIpMask, int clientIpMask) {
+    setClientCountryCode(clientCountryCode);
+    setChannel(channel);
+    setServerIpMask(serverIpMask);
+    setClientIpMask(clientIpMask);
+  }
+
+  /**
+   * Clear every field so the instance can be reused for another attack.
+   */
+  public void clear() {
+    clientCountryCode = null;
+    channel = null;
+    serverIpMask = 0;
+    serverIpMaskPresent = false;
+    clientIpMask = 0;
+    clientIpMaskPresent = false;
+  }
+
+  /**
+   * Get the client's country code.
+   * @return The country code, null if not present
+   */
+  public String getClientCountryCode() {
+    return clientCountryCode;
+  }
+
+  /**
+   * Set the client's country code.
+   * @param clientCountryCode
+   *          The country code
+   */
+  public void setClientCountryCode(String clientCountryCode) {
+    this.clientCountryCode = clientCountryCode;
+  }
+
+  /**
+   * Get the channel (sensor) type.
+   * @return The channel type, null if not present
+   */
+  public String getChannel() {
+    return channel;
+  }
+
+  /**
+   * Set the channel (sensor) type.
+   * @param channel
+   *          The channel type
+   */
+  public void setChannel(String channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Get the server IP mask value.
+   * @return The server IP mask value, zero if not present
+   */
+  public int getServerIpMask() {
+    return serverIpMask;
+  }
+
+  /**
+   * Set the server IP mask value.
+   * @param serverIpMask
+   *          The server IP mask value
+   */
+  public void setServerIpMask(int serverIpMask) {
+    this.serverIpMask = serverIpMask;
+    serverIpMaskPresent = true;
+  }
+
+  /**
+   * Check whether the server IP mask value was present.
+   * @return True if the server IP mask value was present
+   */
+  public boolean isServerIpMaskPresent() {
+    return serverIpMaskPresent;
+  }
+
+  /**
+   * Get the client IP mask value.
+   * @return The client IP mask value, zero if not present
+   */
+  public int getClientIpMask() {
+    return clientIpMask;
+  }
+
+  /**
+   * Set the client IP mask value.
+   * @param clientIpMask
+   *          The client IP mask value
+   */
+  public void setClientIpMask(int clientIpMask) {
+    this.clientIpMask = clientIpMask;
+    clientIpMaskPresent = true;
+  }
+
+  /**
+   * Check whether the client IP mask value was present.
+   * @return True if the client IP mask value was present
+   */
+  public boolean isClientIpMaskPresent() {
+    return clientIpMaskPresent;
+  }
+
+  /**
+   * Get a field value using its document field name.
+   * @param field
+   *          The field name, nested fields use dot notation (e.g.
+   *          payload.server_ip_mask)
+   * @return The value, null if the field is not present or not known
+   */
+  public Object getValue(String field) {
+    switch (field) {
+      case AttackRecordCodec.CLIENT_COUNTRY_CODE:
+        return clientCountryCode;
+      case AttackRecordCodec.CHANNEL:
+        return channel;
+      case AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.SERVER_IP_MASK:
+        return serverIpMaskPresent ? Integer.valueOf(serverIpMask) : null;
+      case AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.CLIENT_IP_MASK:
+        return clientIpMaskPresent ? Integer.valueOf(clientIpMask) : null;
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package us.daveread.education.mongo.honeypot;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Decodes attack documents directly into AttackRecord instances. Only the
+ * fields used by the coded reports are read, every other field is skipped
+ * without being decoded, and the nested payload values are read in place
+ * rather than being built into a second document.
+ * <p>
+ * The codec is used with MongoCollection.withDocumentClass(AttackRecord.class)
+ * and a codec registry containing this codec. The driver decodes a complete
+ * batch of results before the first one is returned, so that path creates a
+ * new AttackRecord for each document. Callers which control the decoding
+ * themselves can use decode(BsonReader, AttackRecord) to fill a single
+ * reusable instance.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackRecord
+ */
+public class AttackRecordCodec implements Codec<AttackRecord> {
+  /**
+   * The client country code field name.
+   */
+  public static final String CLIENT_COUNTRY_CODE = "client_country_code";
+
+  /**
+   * The channel field name.
+   */
+  public static final String CHANNEL = "channel";
+
+  /**
+   * The payload subdocument field name.
+   */
+  public static final String PAYLOAD = "payload";
+
+  /**
+   * The server IP mask field name, within the payload.
+   */
+  public static final String SERVER_IP_MASK = "server_ip_mask";
+
+  /**
+   * The client IP mask field name, within the payload.
+   */
+  public static final String CLIENT_IP_MASK = "client_ip_mask";
+
+  /**
+   * Get a view of a collection which returns AttackRecord instances decoded
+   * by this codec.
+   * @param collection
+   *          The collection containing attack documents
+   * @return The collection returning AttackRecord instances
+   */
+  public static MongoCollection<AttackRecord> withAttackRecords(
+    MongoCollection<?> collection) {
+    return collection.withDocumentClass(AttackRecord.class)
+      .withCodecRegistry(withAttackRecords(collection.getCodecRegistry()));
+  }
+
+  /**
+   * Get a codec registry which decodes AttackRecord instances using this
+   * codec and every other class using an existing registry.
+   * @param registry
+   *          The existing registry
+   * @return The combined registry
+   */
+  public static CodecRegistry withAttackRecords(CodecRegistry registry) {
+    return CodecRegistries.fromRegistries(
+      CodecRegistries.fromCodecs(new AttackRecordCodec()), registry);
+  }
+
+  @Override
+  public AttackRecord decode(BsonReader reader,
+    DecoderContext decoderContext) {
+    AttackRecord record = new AttackRecord();
+    decode(reader, record);
+    return record;
+  }
+
+  /**
+   * Decode an attack document into an existing record. The record is cleared
+   * first so fields missing from the document are reported as not present.
+   * @param reader
+   *          The reader positioned at the start of the document
+   * @param record
+   *          The record to fill
+   */
+  public void decode(BsonReader reader, AttackRecord record) {
+    record.clear();
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      String name = reader.readName();
+      BsonType type = reader.getCurrentBsonType();
+      if (CLIENT_COUNTRY_CODE.equals(name) && type == BsonType.STRING) {
+        record.setClientCountryCode(reader.readString());
+      } else if (CHANNEL.equals(name) && type == BsonType.STRING) {
+        record.setChannel(reader.readString());
+      } else if (PAYLOAD.equals(name) && type == BsonType.DOCUMENT) {
+        decodePayload(reader, record);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+  }
+
+  /**
+   * Decode the payload subdocument, reading the IP mask values.
+   * @param reader
+   *          The reader positioned at the start of the payload
+   * @param record
+   *          The record to fill
+   */
+  private void decodePayload(BsonReader reader, AttackRecord record) {
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      String name = reader.readName();
+      if (SERVER_IP_MASK.equals(name) && isNumber(reader)) {
+        record.setServerIpMask(readInt(reader));
+      } else if (CLIENT_IP_MASK.equals(name) && isNumber(reader)) {
+        record.setClientIpMask(readInt(reader));
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+  }
+
+  /**
+   * Check whether the current value is numeric.
+   * @param reader
+   *          The reader positioned at a value
+   * @return True if the value is a 32 bit integer, 64 bit integer or double
+   */
+  private boolean isNumber(BsonReader reader) {
+    BsonType type = reader.getCurrentBsonType();
+    return type == BsonType.INT32 || type == BsonType.INT64
+      || type == BsonType.DOUBLE;
+  }
+
+  /**
+   * Read a numeric value as an int.
+   * @param reader
+   *          The reader positioned at a numeric value
+   * @return The value
+   */
+  private int readInt(BsonReader reader) {
+    switch (reader.getCurrentBsonType()) {
+      case INT64:
+        return (int) reader.readInt64();
+      case DOUBLE:
+        return (int) reader.readDouble();
+      default:
+        return reader.readInt32();
+    }
+  }
+
+  @Override
+  public void encode(BsonWriter writer, AttackRecord record,
+    EncoderContext encoderContext) {
+    writer.writeStartDocument();
+    if (record.getClientCountryCode() != null) {
+      writer.writeString(CLIENT_COUNTRY_CODE, record.getClientCountryCode());
+    }
+    if (record.getChannel() != null) {
+      writer.writeString(CHANNEL, record.getChannel());
+    }
+    writer.writeStartDocument(PAYLOAD);
+    if (record.isServerIpMaskPresent()) {
+      writer.writeInt32(SERVER_IP_MASK, record.getServerIpMask());
+    }
+    if (record.isClientIpMaskPresent()) {
+      writer.writeInt32(CLIENT_IP_MASK, record.getClientIpMask());
+    }
+    writer.writeEndDocument();
+    writer.writeEndDocument();
+  }
+
+  @Override
+  public Class<AttackRecord> getEncoderClass() {
+    return AttackRecord.class;
+  }
+}
@@ -0,0 +1,183 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Maintains a rollup collection holding the number of attacks for each
+ * country, channel and server. The rollup is written by an aggregation
+ * pipeline ending in $out, so the server builds the new rollup and then
+ * replaces the previous one. The country and the server and channel reports
+ * can then group a few thousand rollup documents rather than millions of
+ * attack documents. The rollup is only as current as its last refresh, which
+ * is done on demand or on a schedule.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ReportPipelines#rollup(String)
+ */
+public class AttackRollup {
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(AttackRollup.class);
+
+  /**
+   * The collection containing the attack documents.
+   */
+  private MongoCollection<Document> attackCollection;
+
+  /**
+   * The rollup collection, in the same database as the attack collection.
+   */
+  private MongoCollection<Document> rollupCollection;
+
+  /**
+   * The time of the last completed refresh, 0 if the rollup has not been
+   * refreshed.
+   */
+  private volatile long lastRefreshMillis;
+
+  /**
+   * Refreshes the rollup on a schedule, null if no schedule has been started.
+   */
+  private ScheduledExecutorService refresher;
+
+  /**
+   * Create the instance.
+   * @param attackCollection
+   *          The collection containing the attack documents
+   * @param rollupCollection
+   *          The rollup collection, which must be in the same database as the
+   *          attack collection
+   */
+  public AttackRollup(MongoCollection<Document> attackCollection,
+    MongoCollection<Document> rollupCollection) {
+    if (!attackCollection.getNamespace().getDatabaseName()
+      .equals(rollupCollection.getNamespace().getDatabaseName())) {
+      throw new IllegalArgumentException("The rollup collection "
+        + rollupCollection.getNamespace()
+        + " must be in the same database as " + attackCollection
+          .getNamespace());
+    }
+    this.attackCollection = attackCollection;
+    this.rollupCollection = rollupCollection;
+  }
+
+  /**
+   * Get the rollup collection.
+   * @return The rollup collection
+   */
+  public MongoCollection<Document> getRollupCollection() {
+    return rollupCollection;
+  }
+
+  /**
+   * Get the time of the last completed refresh.
+   * @return The time in milliseconds since the epoch, 0 if the rollup has not
+   *         been refreshed
+   */
+  public long getLastRefreshMillis() {
+    return lastRefreshMillis;
+  }
+
+  /**
+   * Rebuild the rollup from the attack collection. The pipeline always runs
+   * on the primary since $out writes the rollup collection. The allowDiskUse
+   * and maximum time are taken from the rollup report tuning.
+   */
+  public synchronized void refresh() {
+    long start = System.currentTimeMillis();
+
+    /**
+     * Iterating the result runs the pipeline. The driver then reads the
+     * rollup collection, so only the first document is requested.
+     */
+    ReportTuning.getInstance().tune(ReportTuning.ROLLUP,
+      attackCollection.withReadPreference(ReadPreference.primary())
+        .aggregate(ReportPipelines.rollup(rollupCollection.getNamespace()
+          .getCollectionName())))
+      .first();
+
+    lastRefreshMillis = System.currentTimeMillis();
+    LOG.info("Refreshed rollup " + rollupCollection.getNamespace() + " from "
+      + attackCollection.getNamespace() + " in "
+      + (lastRefreshMillis - start) + "ms");
+  }
+
+  /**
+   * Refresh the rollup if it has not been refreshed yet.
+   */
+  public synchronized void refreshIfNeeded() {
+    if (lastRefreshMillis == 0) {
+      refresh();
+    }
+  }
+
+  /**
+   * Refresh the rollup repeatedly on a daemon thread. A failed refresh is
+   * logged and the previous rollup is kept until the next refresh.
+   * @param intervalMillis
+   *          The time between the end of one refresh and the start of the
+   *          next, in milliseconds
+   */
+  public synchronized void schedule(long intervalMillis) {
+    if (refresher != null) {
+      throw new IllegalStateException("The rollup refresh is already "
+        + "scheduled");
+    }
+    refresher = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "rollup-refresh");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    refresher.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          refresh();
+        } catch (MongoException mongoException) {
+          LOG.warn("Unable to refresh rollup "
+            + rollupCollection.getNamespace(), mongoException);
+        }
+      }
+    }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop the scheduled refresh, if one was started.
+   */
+  public synchronized void close() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+      refresher = null;
+    }
+  }
+}
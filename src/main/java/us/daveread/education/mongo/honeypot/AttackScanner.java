@@ -0,0 +1,177 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Reads every attack document in a collection, or those matching a filter,
+ * exactly once and feeds each document to a set of accumulators. The
+ * projection used for the query is the union of the fields required by the
+ * accumulators so that only the needed data is sent from the server. The
+ * results are decoded directly into AttackRecord instances rather than
+ * Document instances.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackRecordCodec
+ * @see AttackAccumulator
+ */
+public class AttackScanner implements AttackSource {
+  /**
+   * Receives each attack read by a scan.
+   */
+  public interface AttackVisitor {
+    /**
+     * Process an attack. The record is only valid during the call.
+     * @param attack
+     *          The attack
+     */
+    void visit(AttackRecord attack);
+  }
+
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(AttackScanner.class);
+
+  /**
+   * The collection containing the attack documents.
+   */
+  private MongoCollection<Document> collection;
+
+  /**
+   * The filter selecting the documents to read.
+   */
+  private Bson filter;
+
+  /**
+   * The keys of the index the server is told to use, null to let the server
+   * choose.
+   */
+  private Bson hint;
+
+  /**
+   * Create an instance which reads every document in the collection.
+   * @param collection
+   *          The collection containing the attack documents
+   */
+  public AttackScanner(MongoCollection<Document> collection) {
+    this(collection, new Document());
+  }
+
+  /**
+   * Create an instance which reads the documents matching a filter.
+   * @param collection
+   *          The collection containing the attack documents
+   * @param filter
+   *          The filter selecting the documents to read
+   */
+  public AttackScanner(MongoCollection<Document> collection, Bson filter) {
+    this(collection, filter, null);
+  }
+
+  /**
+   * Create an instance which reads the documents matching a filter using a
+   * specific index. With an index holding every projected field the scan is
+   * answered from the index alone.
+   * @param collection
+   *          The collection containing the attack documents
+   * @param filter
+   *          The filter selecting the documents to read
+   * @param hint
+   *          The keys of the index to use, null to let the server choose
+   * @see CoveringIndex
+   */
+  public AttackScanner(MongoCollection<Document> collection, Bson filter,
+    Bson hint) {
+    this.collection = collection;
+    this.filter = filter;
+    this.hint = hint;
+  }
+
+  /**
+   * Read every matching document in the collection and pass it to each of the
+   * accumulators.
+   * @param accumulators
+   *          The accumulators to receive the attack documents
+   * @return The number of documents read
+   */
+  @Override
+  public long scan(final List<AttackAccumulator> accumulators) {
+    return scan(unionProjection(accumulators), new AttackVisitor() {
+      @Override
+      public void visit(AttackRecord attack) {
+        for (AttackAccumulator accumulator : accumulators) {
+          accumulator.accumulate(attack);
+        }
+      }
+    });
+  }
+
+  /**
+   * Read every matching document in the collection and pass it to a visitor.
+   * @param projection
+   *          The fields to read
+   * @param visitor
+   *          The visitor to receive the attack documents
+   * @return The number of documents read
+   */
+  public long scan(Document projection, AttackVisitor visitor) {
+    LOG.debug("Scanning collection " + collection.getNamespace()
+      + " with filter " + filter + " and projection " + projection.toJson());
+
+    FindIterable<AttackRecord> attacks = ReportTuning.getInstance().tune(
+      ReportTuning.SCAN, AttackRecordCodec.withAttackRecords(collection)
+        .find(filter).projection(projection));
+    if (hint != null) {
+      attacks.modifiers(new Document("$hint", hint));
+    }
+
+    long documentCount = 0;
+    for (AttackRecord attack : attacks) {
+      visitor.visit(attack);
+      ++documentCount;
+    }
+
+    LOG.debug("Scanned " + documentCount + " documents");
+    return documentCount;
+  }
+
+  /**
+   * Create a projection containing every field required by the accumulators.
+   * The _id field is excluded since none of the reports use it.
+   * @param accumulators
+   *          The accumulators whose fields are combined
+   * @return The projection document
+   */
+  public static Document unionProjection(
+    List<AttackAccumulator> accumulators) {
+    Document projection = new Document("_id", 0);
+    for (AttackAccumulator accumulator : accumulators) {
+      for (String field : accumulator.getProjectedFields()) {
+        projection.append(field, 1);
+      }
+    }
+    return projection;
+  }
+}
@@ -0,0 +1,319 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+
+/**
+ * A local, columnar copy of the attack fields used by the coded reports. The
+ * snapshot is read through memory mapped buffers, so once the file is in the
+ * operating system's cache a scan does not touch the network or decode any
+ * BSON. Each attack is presented to the accumulators using a single reused
+ * AttackRecord whose string values come from the snapshot's dictionaries.
+ * <p>
+ * The file contains a header followed by one column per field:
+ *
+ * <pre>
+ * int     magic number
+ * int     format version
+ * long    number of documents in the collection when the snapshot was taken
+ * long    number of attacks (rows)
+ * int     number of country codes, then each country code
+ * int     number of channels, then each channel
+ * short[] country code id for each attack
+ * short[] channel id for each attack
+ * byte[]  flags recording whether each IP mask value was present
+ * int[]   server IP mask for each attack
+ * int[]   client IP mask for each attack
+ * </pre>
+ * <p>
+ * The columns are mapped in windows of a fixed number of rows so that
+ * snapshots larger than a single mapped buffer can be read.
+ * <p>
+ * The snapshot is considered current while the number of documents in the
+ * collection is unchanged. Since the collection only grows by appending
+ * documents this detects new attacks without reading them.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackSnapshotWriter
+ */
+public class AttackSnapshot implements AttackSource {
+  /**
+   * The magic number identifying a snapshot file ("HPSN").
+   */
+  static final int MAGIC = 0x4850534E;
+
+  /**
+   * The snapshot format version.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The flag set when the server IP mask value was present.
+   */
+  static final int SERVER_IP_MASK_PRESENT = 1;
+
+  /**
+   * The flag set when the client IP mask value was present.
+   */
+  static final int CLIENT_IP_MASK_PRESENT = 2;
+
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(AttackSnapshot.class);
+
+  /**
+   * The number of rows mapped at a time. The widest column uses 4 bytes per
+   * row so each mapped window is at most 64MB.
+   */
+  private static final int WINDOW_ROWS = 1 << 24;
+
+  /**
+   * The snapshot file.
+   */
+  private Path file;
+
+  /**
+   * The number of documents in the collection when the snapshot was taken.
+   */
+  private long collectionCount;
+
+  /**
+   * The number of attacks in the snapshot.
+   */
+  private long rowCount;
+
+  /**
+   * The country codes, indexed by id.
+   */
+  private String[] countries;
+
+  /**
+   * The channels, indexed by id.
+   */
+  private String[] channels;
+
+  /**
+   * The offset in the file of the first column.
+   */
+  private long columnsOffset;
+
+  /**
+   * Open a snapshot file, reading its header and dictionaries.
+   * @param file
+   *          The snapshot file
+   * @throws IOException
+   *           If the file cannot be read or is not a snapshot
+   */
+  public AttackSnapshot(Path file) throws IOException {
+    this.file = file;
+    try (DataInputStream input = new DataInputStream(
+      new BufferedInputStream(Files.newInputStream(file)))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        throw new IOException("Not a supported attack snapshot: " + file);
+      }
+      collectionCount = input.readLong();
+      rowCount = input.readLong();
+      countries = readDictionary(input);
+      channels = readDictionary(input);
+    }
+    columnsOffset = Files.size(file) - rowCount * (2 + 2 + 1 + 4 + 4);
+  }
+
+  /**
+   * Read a dictionary written by AttackSnapshotWriter.
+   * @param input
+   *          The stream to read from
+   * @return The values, indexed by id
+   * @throws IOException
+   *           If the dictionary cannot be read
+   */
+  private static String[] readDictionary(DataInputStream input)
+    throws IOException {
+    String[] values = new String[input.readInt()];
+    for (int id = 0; id < values.length; ++id) {
+      values[id] = input.readBoolean() ? input.readUTF() : null;
+    }
+    return values;
+  }
+
+  /**
+   * Open the snapshot of a collection, writing a new snapshot if the file
+   * does not exist or the number of documents in the collection has changed.
+   * @param collection
+   *          The collection containing the attack documents
+   * @param file
+   *          The snapshot file
+   * @return The current snapshot
+   * @throws IOException
+   *           If the snapshot cannot be read or written
+   */
+  public static AttackSnapshot openOrBuild(
+    MongoCollection<Document> collection, Path file) throws IOException {
+    long currentCount = collection.count();
+    if (Files.exists(file)) {
+      try {
+        AttackSnapshot snapshot = new AttackSnapshot(file);
+        if (snapshot.getCollectionCount() == currentCount) {
+          LOG.info("Using snapshot " + file + " of " + currentCount
+            + " documents");
+          return snapshot;
+        }
+        LOG.info("Snapshot " + file + " has "
+          + snapshot.getCollectionCount() + " documents, collection has "
+          + currentCount + ", rebuilding");
+      } catch (IOException ioException) {
+        LOG.warn("Unable to read snapshot " + file + ", rebuilding",
+          ioException);
+      }
+    }
+    return build(collection, file, currentCount);
+  }
+
+  /**
+   * Write a new snapshot of a collection.
+   * @param collection
+   *          The collection containing the attack documents
+   * @param file
+   *          The snapshot file
+   * @param collectionCount
+   *          The number of documents in the collection
+   * @return The new snapshot
+   * @throws IOException
+   *           If the snapshot cannot be written
+   */
+  private static AttackSnapshot build(MongoCollection<Document> collection,
+    Path file, long collectionCount) throws IOException {
+    AttackSnapshotWriter writer =
+      new AttackSnapshotWriter(file, collectionCount);
+    Document projection = new Document("_id", 0);
+    for (String field : writer.getProjectedFields()) {
+      projection.append(field, 1);
+    }
+
+    long documentCount;
+    boolean written = false;
+    try {
+      documentCount =
+        new AttackScanner(collection).scan(projection, writer);
+      writer.close();
+      written = true;
+    } finally {
+      if (!written) {
+        writer.abort();
+      }
+    }
+    LOG.info("Wrote snapshot " + file + " of " + documentCount + " attacks");
+    return new AttackSnapshot(file);
+  }
+
+  /**
+   * Get the number of documents in the collection when the snapshot was
+   * taken.
+   * @return The number of documents
+   */
+  public long getCollectionCount() {
+    return collectionCount;
+  }
+
+  /**
+   * Get the number of attacks in the snapshot.
+   * @return The number of attacks
+   */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public long scan(List<AttackAccumulator> accumulators) {
+    AttackRecord attack = new AttackRecord();
+    long countryOffset = columnsOffset;
+    long channelOffset = countryOffset + rowCount * 2;
+    long flagsOffset = channelOffset + rowCount * 2;
+    long serverOffset = flagsOffset + rowCount;
+    long clientOffset = serverOffset + rowCount * 4;
+
+    try (FileChannel channel = FileChannel.open(file)) {
+      for (long firstRow = 0; firstRow < rowCount; firstRow += WINDOW_ROWS) {
+        int rows = (int) Math.min(WINDOW_ROWS, rowCount - firstRow);
+        ByteBuffer countryIds = map(channel, countryOffset + firstRow * 2,
+          rows * 2);
+        ByteBuffer channelIds = map(channel, channelOffset + firstRow * 2,
+          rows * 2);
+        ByteBuffer flags = map(channel, flagsOffset + firstRow, rows);
+        ByteBuffer serverMasks = map(channel, serverOffset + firstRow * 4,
+          rows * 4);
+        ByteBuffer clientMasks = map(channel, clientOffset + firstRow * 4,
+          rows * 4);
+
+        for (int row = 0; row < rows; ++row) {
+          attack.clear();
+          attack.setClientCountryCode(
+            countries[countryIds.getShort() & 0xFFFF]);
+          attack.setChannel(channels[channelIds.getShort() & 0xFFFF]);
+          int present = flags.get();
+          int serverMask = serverMasks.getInt();
+          int clientMask = clientMasks.getInt();
+          if ((present & SERVER_IP_MASK_PRESENT) != 0) {
+            attack.setServerIpMask(serverMask);
+          }
+          if ((present & CLIENT_IP_MASK_PRESENT) != 0) {
+            attack.setClientIpMask(clientMask);
+          }
+          for (AttackAccumulator accumulator : accumulators) {
+            accumulator.accumulate(attack);
+          }
+        }
+      }
+    } catch (IOException ioException) {
+      throw new IllegalStateException("Unable to read snapshot " + file,
+        ioException);
+    }
+
+    LOG.debug("Scanned " + rowCount + " attacks from snapshot " + file);
+    return rowCount;
+  }
+
+  /**
+   * Map a region of the snapshot file.
+   * @param channel
+   *          The open snapshot file
+   * @param position
+   *          The offset of the region
+   * @param size
+   *          The size of the region in bytes
+   * @return The mapped buffer
+   * @throws IOException
+   *           If the region cannot be mapped
+   */
+  private static ByteBuffer map(FileChannel channel, long position, int size)
+    throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+  }
+}
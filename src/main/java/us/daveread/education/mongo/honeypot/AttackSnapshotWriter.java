@@ -0,0 +1,282 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the attack fields used by the coded reports to a columnar snapshot
+ * file. The writer is an AttackScanner visitor so the snapshot is filled by
+ * a normal scan of the collection. Each column is written to its own
+ * temporary file while the attacks are read and the columns are then
+ * appended, after the header and dictionaries, into the snapshot file.
+ * <p>
+ * The country codes and channels are dictionary encoded as 16 bit ids. The
+ * server and client IP mask values are stored as 32 bit integers, and a flag
+ * byte per attack records whether each IP mask value was present. See
+ * AttackSnapshot for the file layout.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackSnapshot
+ */
+public class AttackSnapshotWriter implements AttackScanner.AttackVisitor {
+  /**
+   * The logger
+   */
+  private static final Logger LOG =
+    Logger.getLogger(AttackSnapshotWriter.class);
+
+  /**
+   * The fields read from each attack document.
+   */
+  private static final List<String> PROJECTED_FIELDS =
+    Arrays.asList("client_country_code", "channel", "payload.server_ip_mask",
+      "payload.client_ip_mask");
+
+  /**
+   * The largest number of distinct values a dictionary may hold.
+   */
+  private static final int MAXIMUM_DICTIONARY_SIZE = 0xFFFF;
+
+  /**
+   * The suffixes of the temporary column files, in the order the columns are
+   * stored in the snapshot.
+   */
+  private static final String[] COLUMN_SUFFIXES = {
+      ".country.tmp", ".channel.tmp", ".flags.tmp", ".server.tmp",
+      ".client.tmp"
+  };
+
+  /**
+   * The snapshot file being written.
+   */
+  private Path file;
+
+  /**
+   * The number of documents in the collection when the snapshot was taken.
+   */
+  private long collectionCount;
+
+  /**
+   * The number of attacks written.
+   */
+  private long rowCount;
+
+  /**
+   * The country code dictionary.
+   */
+  private StringDictionary countries = new StringDictionary();
+
+  /**
+   * The channel dictionary.
+   */
+  private StringDictionary channels = new StringDictionary();
+
+  /**
+   * The column streams, in the order the columns are stored.
+   */
+  private DataOutputStream[] columns =
+    new DataOutputStream[COLUMN_SUFFIXES.length];
+
+  /**
+   * Create the writer.
+   * @param file
+   *          The snapshot file to write
+   * @param collectionCount
+   *          The number of documents in the collection, stored so that the
+   *          snapshot can be recognized as out of date
+   * @throws IOException
+   *           If the temporary column files cannot be created
+   */
+  public AttackSnapshotWriter(Path file, long collectionCount)
+    throws IOException {
+    this.file = file;
+    this.collectionCount = collectionCount;
+    for (int column = 0; column < columns.length; ++column) {
+      columns[column] = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(columnFile(column))));
+    }
+  }
+
+  /**
+   * Get the temporary file for a column.
+   * @param column
+   *          The column number
+   * @return The temporary file
+   */
+  private Path columnFile(int column) {
+    return file.resolveSibling(file.getFileName() + COLUMN_SUFFIXES[column]);
+  }
+
+  /**
+   * Get the file the snapshot is assembled in before it replaces the
+   * snapshot file.
+   * @return The temporary file
+   */
+  private Path partialFile() {
+    return file.resolveSibling(file.getFileName() + ".tmp");
+  }
+
+  /**
+   * Get the fields which must be read from each attack document.
+   * @return The field names
+   */
+  public List<String> getProjectedFields() {
+    return PROJECTED_FIELDS;
+  }
+
+  /**
+   * Append an attack to the column files.
+   * @param attack
+   *          The attack
+   */
+  @Override
+  public void visit(AttackRecord attack) {
+    try {
+      columns[0].writeShort(dictionaryId(countries,
+        attack.getClientCountryCode()));
+      columns[1].writeShort(dictionaryId(channels, attack.getChannel()));
+      columns[2].writeByte((attack.isServerIpMaskPresent()
+        ? AttackSnapshot.SERVER_IP_MASK_PRESENT : 0)
+        | (attack.isClientIpMaskPresent()
+          ? AttackSnapshot.CLIENT_IP_MASK_PRESENT : 0));
+      columns[3].writeInt(attack.getServerIpMask());
+      columns[4].writeInt(attack.getClientIpMask());
+      ++rowCount;
+    } catch (IOException ioException) {
+      throw new IllegalStateException(
+        "Unable to write to the snapshot columns for " + file, ioException);
+    }
+  }
+
+  /**
+   * Get the dictionary id for a value.
+   * @param dictionary
+   *          The dictionary
+   * @param value
+   *          The value
+   * @return The id
+   */
+  private int dictionaryId(StringDictionary dictionary, String value) {
+    int id = dictionary.intern(value);
+    if (id >= MAXIMUM_DICTIONARY_SIZE) {
+      throw new IllegalStateException(
+        "Too many distinct values for the snapshot dictionary: " + value);
+    }
+    return id;
+  }
+
+  /**
+   * Finish the snapshot. The header and dictionaries are written to a
+   * temporary file, the columns are appended and the result replaces the
+   * snapshot file.
+   * @throws IOException
+   *           If the snapshot cannot be written
+   */
+  public void close() throws IOException {
+    for (DataOutputStream column : columns) {
+      column.close();
+    }
+
+    Path partialFile = partialFile();
+    try (DataOutputStream header = new DataOutputStream(
+      new BufferedOutputStream(Files.newOutputStream(partialFile)))) {
+      header.writeInt(AttackSnapshot.MAGIC);
+      header.writeInt(AttackSnapshot.VERSION);
+      header.writeLong(collectionCount);
+      header.writeLong(rowCount);
+      writeDictionary(header, countries);
+      writeDictionary(header, channels);
+    }
+
+    try (FileChannel output = FileChannel.open(partialFile,
+      StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      for (int column = 0; column < columns.length; ++column) {
+        try (FileChannel input = FileChannel.open(columnFile(column))) {
+          long position = 0;
+          long size = input.size();
+          while (position < size) {
+            position += input.transferTo(position, size - position, output);
+          }
+        }
+        Files.delete(columnFile(column));
+      }
+    }
+
+    Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Abandon the snapshot, closing the column files and deleting every
+   * temporary file. The snapshot file itself is left unchanged. Used when the
+   * scan or close() fails.
+   */
+  public void abort() {
+    for (int column = 0; column < columns.length; ++column) {
+      try {
+        columns[column].close();
+      } catch (IOException ioException) {
+        LOG.warn("Unable to close column file " + columnFile(column),
+          ioException);
+      }
+    }
+    List<Path> temporaryFiles = new ArrayList<>();
+    for (int column = 0; column < columns.length; ++column) {
+      temporaryFiles.add(columnFile(column));
+    }
+    temporaryFiles.add(partialFile());
+    for (Path temporaryFile : temporaryFiles) {
+      try {
+        Files.deleteIfExists(temporaryFile);
+      } catch (IOException ioException) {
+        LOG.warn("Unable to delete " + temporaryFile, ioException);
+      }
+    }
+  }
+
+  /**
+   * Write a dictionary. The size is followed by each value, in id order, as a
+   * presence flag and the UTF-8 encoded value.
+   * @param output
+   *          The stream to write to
+   * @param dictionary
+   *          The dictionary
+   * @throws IOException
+   *           If the dictionary cannot be written
+   */
+  private void writeDictionary(DataOutputStream output,
+    StringDictionary dictionary) throws IOException {
+    output.writeInt(dictionary.size());
+    for (int id = 0; id < dictionary.size(); ++id) {
+      String value = dictionary.getValue(id);
+      output.writeBoolean(value != null);
+      if (value != null) {
+        output.writeUTF(value);
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.List;
+
+/**
+ * A source of attack documents which can be read in a single pass, feeding
+ * each document to a set of accumulators.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackAccumulator
+ */
+public interface AttackSource {
+  /**
+   * Read every attack document and pass it to each of the accumulators.
+   * @param accumulators
+   *          The accumulators to receive the attack documents
+   * @return The number of documents read
+   */
+  long scan(List<AttackAccumulator> accumulators);
+}
@@ -1,10 +1,12 @@
 package us.daveread.education.mongo.honeypot;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -12,9 +14,8 @@ import org.bson.Document;
 
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
 import com.mongodb.ServerAddress;
-import com.mongodb.client.AggregateIterable;
-import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 
@@ -72,10 +73,23 @@ public class BasicStatistics {
    */
   private static final String HONEYPOT_COLLECTION = "honeypotData";
 
+  /**
+   * The collection containing the running totals used by the incremental
+   * mode.
+   */
+  private static final String HONEYPOT_SUMMARY_COLLECTION = "honeypotSummary";
+
+  /**
+   * The collection containing the attack counts by country, channel and
+   * server used by the rollup mode.
+   */
+  private static final String HONEYPOT_ROLLUP_COLLECTION = "honeypotRollup";
+
   /**
    * The maximum number of documents to display when reporting results.
    */
-  private static final int NUMBER_OF_ITEMS_TO_DISPLAY = 10;
+  private static final int NUMBER_OF_ITEMS_TO_DISPLAY =
+    ReportLayout.NUMBER_OF_ITEMS_TO_DISPLAY;
 
   /**
    * The Mongo client instance - our connection to the server.
@@ -89,25 +103,200 @@ public class BasicStatistics {
   private MongoDatabase mongoDatabase;
 
   /**
-   * The total number of attacks in the collection. Each document represents
-   * one attack.
+   * The name of the collection containing the raw honeypot data.
    */
-  private long totalAttacks;
+  private String attackCollectionName;
 
   /**
-   * The total number of countries represented in the attack data.
+   * The servers connected to, used in error messages.
    */
-  private int totalAttackingCountries;
+  private List<ServerAddress> seeds;
 
   /**
-   * Create the instance. This will populate the aggregate count of documents
-   * (attacks) and countries.
-   * @see #totalAttacks
-   * @see #computeAttackCountryCount()
+   * The total number of attacks in the collection, -1 until it is first
+   * needed. Each document represents one attack.
+   */
+  private long totalAttacks = -1;
+
+  /**
+   * The total number of countries represented in the attack data, -1 until it
+   * is first needed.
+   */
+  private int totalAttackingCountries = -1;
+
+  /**
+   * Attack counts by country, populated by the scan of the collection.
+   */
+  private CountryAccumulator countryAccumulator;
+
+  /**
+   * Attack counts by server and channel, populated by the scan of the
+   * collection.
+   */
+  private ServerChannelAccumulator serverChannelAccumulator;
+
+  /**
+   * The number of threads used to scan the collection for the coded reports.
+   * A value greater than one splits the collection into partitions which are
+   * read in parallel.
+   */
+  private int scanThreads = 1;
+
+  /**
+   * The running totals used by the coded reports when in incremental mode,
+   * null when the collection is scanned in full.
+   */
+  private IncrementalStatistics incrementalStatistics;
+
+  /**
+   * The local snapshot file read by the coded reports, null when the
+   * collection is read from the server.
+   */
+  private Path snapshotFile;
+
+  /**
+   * Whether the coded reports scan an index holding every projected field
+   * rather than the attack documents.
+   */
+  private boolean useCoveringIndex;
+
+  /**
+   * The HyperLogLog precision used to estimate distinct counts, 0 to count
+   * distinct values exactly.
+   */
+  private int approximatePrecision;
+
+  /**
+   * Estimated distinct countries, populated by the scan of the collection in
+   * approximate mode.
+   */
+  private HyperLogLogAccumulator countrySketch;
+
+  /**
+   * Estimated distinct servers, populated by the scan of the collection in
+   * approximate mode.
+   */
+  private HyperLogLogAccumulator serverSketch;
+
+  /**
+   * Estimated distinct clients, populated by the scan of the collection in
+   * approximate mode.
+   */
+  private HyperLogLogAccumulator clientSketch;
+
+  /**
+   * The source of the attacks for the coded reports, null to read them from
+   * the server.
+   */
+  private AttackSource scanSource;
+
+  /**
+   * Whether the most active clients are found by the coded reports' scan
+   * using fixed size sketches rather than by the aggregation pipeline.
+   */
+  private boolean useHeavyHitters;
+
+  /**
+   * The most active clients, populated by the scan of the collection when
+   * heavy hitter detection is used.
+   */
+  private HeavyHitterAccumulator heavyHitterAccumulator;
+
+  /**
+   * Whether the most active clients are found by the coded reports' scan
+   * using a group-by which spills to disk rather than by the aggregation
+   * pipeline.
+   */
+  private boolean useExternalGroupBy;
+
+  /**
+   * The attack counts for every client, populated by the scan of the
+   * collection when the external group-by is used.
+   */
+  private ExternalClientIpAccumulator externalClientAccumulator;
+
+  /**
+   * The cache of aggregation pipeline results, null to run every pipeline.
+   */
+  private PipelineResultCache resultCache;
+
+  /**
+   * The rollup read by the country and the server and channel aggregation
+   * reports, null to read the attack collection.
+   */
+  private AttackRollup rollup;
+
+  /**
+   * Measures each report, receiving the driver's command events.
+   */
+  private ReportInstrumentation instrumentation = new ReportInstrumentation();
+
+  /**
+   * The printer receiving the reports, null to print them on the console.
+   */
+  private ReportPrinter reportPrinter;
+
+  /**
+   * Create the instance. The number of attacks and countries are computed
+   * when a report first needs them.
+   * @see #getTotalAttacks()
+   * @see #getTotalAttackingCountries()
    */
   public BasicStatistics() {
-    LOG.info("Connecting to server: " + MONGO_DB_IP + ":" + MONGO_DB_PORT
-      + " and database: " + HONEYPOT_DATABASE);
+    this(MONGO_DB_IP, MONGO_DB_PORT, HONEYPOT_DATABASE, HONEYPOT_COLLECTION);
+  }
+
+  /**
+   * Create the instance using a specific server, database and collection.
+   * The number of attacks and countries are computed when a report first
+   * needs them.
+   * @param host
+   *          The MongoDB server
+   * @param port
+   *          The MongoDB port
+   * @param databaseName
+   *          The database containing the honeypot-related collections
+   * @param attackCollectionName
+   *          The collection containing the raw honeypot data
+   * @see #getTotalAttacks()
+   * @see #getTotalAttackingCountries()
+   */
+  public BasicStatistics(String host, int port, String databaseName,
+    String attackCollectionName) {
+    this(Arrays.asList(new ServerAddress(host, port)), null,
+      ReadPreference.primary(), databaseName, attackCollectionName);
+  }
+
+  /**
+   * Create the instance using the members of a replica set and a read
+   * preference, so that the reports can read from secondaries rather than
+   * the primary. No request is sent to the server until the first report
+   * runs, so a report which does not need the number of attacks or
+   * countries starts immediately.
+   * @param seeds
+   *          The replica set members to connect to. A single seed without a
+   *          replica set name connects directly to that server.
+   * @param replicaSetName
+   *          The name of the replica set, null to discover it from the seeds.
+   *          Giving the name with a single seed discovers the other members.
+   * @param readPreference
+   *          The members the reports read from, e.g. secondaryPreferred
+   * @param databaseName
+   *          The database containing the honeypot-related collections
+   * @param attackCollectionName
+   *          The collection containing the raw honeypot data
+   * @see ReplicaSetOptions
+   * @see #getTotalAttacks()
+   * @see #getTotalAttackingCountries()
+   */
+  public BasicStatistics(List<ServerAddress> seeds, String replicaSetName,
+    ReadPreference readPreference, String databaseName,
+    String attackCollectionName) {
+    this.attackCollectionName = attackCollectionName;
+    this.seeds = seeds;
+
+    LOG.info("Connecting to servers: " + seeds + " reading from: "
+      + readPreference + " and database: " + databaseName);
 
     /**
      * Set a short timeout for connecting so that we don't wait the default 30
@@ -117,38 +306,120 @@ public class BasicStatistics {
       new MongoClientOptions.Builder();
     optionsBuilder.serverSelectionTimeout(2000);
 
+    /**
+     * Apply the connection pool sizing from the tuning settings.
+     */
+    ReportTuning.getInstance().tunePool(optionsBuilder);
+
+    /**
+     * Measure the commands sent by each report.
+     */
+    optionsBuilder.addCommandListener(instrumentation);
+
+    /**
+     * Read from the members chosen by the read preference. Writes, which are
+     * only made to the incremental summary, always go to the primary.
+     */
+    optionsBuilder.readPreference(readPreference);
+    if (replicaSetName != null) {
+      optionsBuilder.requiredReplicaSetName(replicaSetName);
+    }
+
     MongoClientOptions options = optionsBuilder.build();
 
     /**
-     * Create the MongoClient instance.
+     * Create the MongoClient instance. A single seed without a replica set
+     * name connects directly to that server, whatever its role, so that a
+     * standalone server or a chosen member can be read. Otherwise the list of
+     * seeds makes the driver discover the replica set members.
      */
-    mongoClient =
-      new MongoClient(new ServerAddress(MONGO_DB_IP, MONGO_DB_PORT), options);
+    if (seeds.size() == 1 && replicaSetName == null) {
+      mongoClient = new MongoClient(seeds.get(0), options);
+    } else {
+      mongoClient = new MongoClient(seeds, options);
+    }
 
     /**
      * Create the MongoDatabase instance.
      */
-    mongoDatabase = mongoClient.getDatabase(HONEYPOT_DATABASE);
+    mongoDatabase = mongoClient.getDatabase(databaseName);
+  }
+
+  /**
+   * Create the instance reading the attacks from a source, e.g. a
+   * BsonDumpSource reading a mongodump file, without connecting to a server.
+   * Only the reports answered from the attacks read, overallStats(),
+   * countryBreakdownCoded() and honeypotBreakdownCoded(), can be run.
+   * @param attackSource
+   *          The source of the attacks
+   * @see #setAttackSource(AttackSource)
+   * @see OfflineReportRunner
+   */
+  public BasicStatistics(AttackSource attackSource) {
+    this.scanSource = attackSource;
+  }
 
+  /**
+   * Get the total number of attacks in the collection, counting them the
+   * first time they are needed unless a report has already found the number
+   * as a side result. A count without a filter is answered from the
+   * collection's metadata rather than by reading the documents. When the
+   * attacks are read from a source other than the server they are counted
+   * as they are read.
+   * @return The number of attacks
+   * @see #setAttackSource(AttackSource)
+   */
+  public long getTotalAttacks() {
+    if (totalAttacks < 0 && scanSource != null) {
+      scanAttacks();
+    }
+    if (totalAttacks < 0) {
+      countAttacks();
+    }
+    return totalAttacks;
+  }
+
+  /**
+   * Get the total number of countries represented in the attack data,
+   * computing it the first time it is needed unless a report has already
+   * found the number as a side result.
+   * @return The number of attacking countries
+   * @see #computeAttackCountryCount()
+   */
+  public int getTotalAttackingCountries() {
+    if (totalAttackingCountries < 0) {
+      computeAttackCountryCount();
+    }
+    return totalAttackingCountries;
+  }
+
+  /**
+   * Count the documents in the collection and set the attribute. A failure
+   * is reported as a connection problem, and an empty collection as one
+   * which was not loaded.
+   * @see #totalAttacks
+   */
+  private void countAttacks() {
     /**
      * Get the MongoCollection instance which provides read and write access
      * (bed on permissions) to a specific collection in the database.
      */
     MongoCollection<Document> collection =
-      accessCollection(HONEYPOT_COLLECTION);
+      accessCollection(attackCollectionName);
 
     /**
      * Get the count of documents in the collection. If the collection cannot be
      * accessed an exception will the thrown.
      */
+    long documentCount;
     try {
-      totalAttacks = collection.count();
+      documentCount = collection.count();
     } catch (Throwable throwable) {
-      LOG.fatal("Unable to connect to the MongoDB instance at " + MONGO_DB_IP
-        + ":" + MONGO_DB_PORT, throwable);
+      LOG.fatal("Unable to connect to the MongoDB instance at " + seeds,
+        throwable);
       throw new IllegalStateException(
-        "Unable to connect to the MongoDB instance at " + MONGO_DB_IP + ":"
-          + MONGO_DB_PORT + ". Are you sure it is running?",
+        "Unable to connect to the MongoDB instance at " + seeds
+          + ". Are you sure it is running?",
         throwable);
     }
 
@@ -156,14 +427,14 @@ public class BasicStatistics {
      * If no documents were retrieved then apparently the demo collection was
      * not loaded into the database.
      */
-    if (totalAttacks == 0) {
+    if (documentCount == 0) {
       throw new IllegalStateException(
-        "Unable to load documents from the collection " + HONEYPOT_COLLECTION
-          + " in the database " + HONEYPOT_DATABASE
-          + ". Are you sure it was loaded?");
+        "Unable to load documents from the collection "
+          + attackCollectionName + " in the database "
+          + mongoDatabase.getName() + ". Are you sure it was loaded?");
     }
 
-    computeAttackCountryCount();
+    totalAttacks = documentCount;
   }
 
   /**
@@ -177,187 +448,616 @@ public class BasicStatistics {
   }
 
   /**
-   * Calculate the number of countries found in the honeypot attack data and
-   * set the attribute.
-   * @see #totalAttackingCountries
+   * Read the honeypot collection once, feeding every attack document to the
+   * accumulators used by the Java coded reports. Each accumulator declares the
+   * fields it needs so the single query retrieves the union of those fields.
+   * The scan is only performed the first time a coded report is requested.
+   * If more than one scan thread has been configured the collection is split
+   * into partitions which are read in parallel. In incremental mode only the
+   * attacks added since the last run are read, and the accumulators are
+   * loaded from the updated running totals. If a snapshot file has been
+   * configured the attacks are read from the snapshot, which is rewritten
+   * first if the collection has changed. If the covering index has been
+   * enabled the scan is answered from an index holding every projected
+   * field. In approximate mode the scan also sketches the distinct countries,
+   * servers and clients. With heavy hitter detection the scan also finds the
+   * most active clients.
+   * <p>
+   * If the scan fails the partial counts are discarded, so that the next
+   * coded report scans again rather than reporting them.
+   * @see AttackScanner
+   * @see PartitionedAttackScanner
+   * @see AttackSnapshot
+   * @see CoveringIndex
+   * @see #countryAccumulator
+   * @see #serverChannelAccumulator
    */
-  private void computeAttackCountryCount() {
-    MongoCollection<Document> collection =
-      accessCollection(HONEYPOT_COLLECTION);
-
-    Map<String, String> attackCountries = new HashMap<>();
-    List<Document> attacks = collection.find()
-      .projection(new Document("_id", 0).append("client_country_code", 1))
-      .into(new ArrayList<Document>());
-    for (Document attack : attacks) {
-      String countryCode = attack.getString("client_country_code");
-      if (attackCountries.get(countryCode) == null) {
-        attackCountries.put(countryCode, countryCode);
+  private void scanAttacks() {
+    if (countryAccumulator != null) {
+      return;
+    }
+
+    boolean scanned = false;
+    try {
+      readAttacks();
+      scanned = true;
+    } finally {
+      if (!scanned) {
+        clearScanResults();
+      }
+    }
+  }
+
+  /**
+   * Create the accumulators and read the attacks into them.
+   * @see #scanAttacks()
+   */
+  private void readAttacks() {
+    countryAccumulator = new CountryAccumulator();
+    serverChannelAccumulator = new ServerChannelAccumulator();
+    List<HyperLogLogAccumulator> sketches = new ArrayList<>();
+    if (approximatePrecision > 0) {
+      countrySketch = new HyperLogLogAccumulator(
+        AttackRecordCodec.CLIENT_COUNTRY_CODE, approximatePrecision);
+      serverSketch = new HyperLogLogAccumulator(AttackRecordCodec.PAYLOAD
+        + "." + AttackRecordCodec.SERVER_IP_MASK, approximatePrecision);
+      clientSketch = new HyperLogLogAccumulator(AttackRecordCodec.PAYLOAD
+        + "." + AttackRecordCodec.CLIENT_IP_MASK, approximatePrecision);
+      sketches.add(countrySketch);
+      sketches.add(serverSketch);
+      sketches.add(clientSketch);
+    }
+
+    if (incrementalStatistics != null) {
+      incrementalStatistics.update();
+      incrementalStatistics.loadCountries(countryAccumulator);
+      incrementalStatistics.loadServerChannels(serverChannelAccumulator);
+      for (HyperLogLogAccumulator sketch : sketches) {
+        incrementalStatistics.loadSketch(sketch);
+      }
+      return;
+    }
+
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(countryAccumulator);
+    accumulators.add(serverChannelAccumulator);
+    accumulators.addAll(sketches);
+    if (useHeavyHitters) {
+      heavyHitterAccumulator = new HeavyHitterAccumulator();
+      accumulators.add(heavyHitterAccumulator);
+    }
+    if (useExternalGroupBy) {
+      externalClientAccumulator = new ExternalClientIpAccumulator(
+        ReportTuning.getInstance().newExternalGroupBy());
+      accumulators.add(externalClientAccumulator);
+    }
+
+    AttackSource attackSource;
+    MongoCollection<Document> collection = scanSource != null ? null
+      : accessCollection(attackCollectionName);
+    if (scanSource != null) {
+      attackSource = scanSource;
+    } else if (snapshotFile != null) {
+      try {
+        attackSource = AttackSnapshot.openOrBuild(collection, snapshotFile);
+      } catch (IOException ioException) {
+        throw new IllegalStateException("Unable to use snapshot "
+          + snapshotFile, ioException);
+      }
+    } else if (useCoveringIndex) {
+      CoveringIndex coveringIndex =
+        new CoveringIndex(mongoDatabase, attackCollectionName, accumulators);
+      coveringIndex.ensureIndex();
+      if (!coveringIndex.isCovered(
+        AttackScanner.unionProjection(accumulators))) {
+        LOG.warn("The server is not answering the scan of "
+          + attackCollectionName + " from the index alone");
       }
+      attackSource = new AttackScanner(collection, new Document(),
+        coveringIndex.getKeys());
+    } else if (scanThreads > 1) {
+      attackSource = new PartitionedAttackScanner(collection, scanThreads);
+    } else {
+      attackSource = new AttackScanner(collection);
     }
-    totalAttackingCountries = attackCountries.size();
 
+    /**
+     * Every attack was read, so the number of attacks is a side result. An
+     * empty collection is left for countAttacks() to report, while a source
+     * other than the server may simply be empty.
+     */
+    long documentCount = attackSource.scan(accumulators);
+    if (totalAttacks < 0 && (documentCount > 0 || scanSource != null)) {
+      totalAttacks = documentCount;
+    }
   }
 
   /**
-   * Report the overall statistics on the console.
-   * @see #totalAttacks
-   * @see #totalAttackingCountries
+   * Forget the number of attacks and countries and discard the counts
+   * gathered for the coded reports, so that a long running process reports
+   * on the current data. Everything is recomputed when next needed. The
+   * rollup, if used, is refreshed now.
+   * @see StatisticsServer
+   */
+  public void refresh() {
+    totalAttacks = -1;
+    totalAttackingCountries = -1;
+    clearScanResults();
+    if (rollup != null) {
+      rollup.refresh();
+    }
+  }
+
+  /**
+   * Discard the counts gathered for the coded reports so that the next coded
+   * report reads the attacks again. Any spill files are deleted.
+   * @see #scanAttacks()
    */
-  private void overallStats() {
-    printHeader("Overall Statistics");
-    System.out.println("Total Attacks: " + totalAttacks);
-    System.out.println("Total Attacking Countries: " + totalAttackingCountries);
+  public void clearScanResults() {
+    if (externalClientAccumulator != null) {
+      externalClientAccumulator.close();
+      externalClientAccumulator = null;
+    }
+    countryAccumulator = null;
+    serverChannelAccumulator = null;
+    countrySketch = null;
+    serverSketch = null;
+    clientSketch = null;
+    heavyHitterAccumulator = null;
+  }
+
+  /**
+   * Release the resources held by the reports: the spill files of the coded
+   * reports, the rollup's scheduled refresh and the connection to MongoDB.
+   * The instance cannot be used afterwards.
+   */
+  public void close() {
+    clearScanResults();
+    if (rollup != null) {
+      rollup.close();
+      rollup = null;
+    }
+    if (mongoClient != null) {
+      mongoClient.close();
+    }
   }
 
   /**
-   * Summarize the count of attacks by country. This method queries the
-   * collection for all attack documents and then uses a Map to aggregate the
-   * data. The resulting Map is then used to populate an array of CountryCode
-   * instances which is then sorted in order to find the top attacking
-   * countries.
+   * Use running totals, kept in a summary collection, for the coded reports
+   * and the most active client report. Each run adds the attacks recorded
+   * since the previous run to the totals rather than reading every attack.
+   * The number of attacking countries is then taken from the totals. The
+   * totals are brought up to date by the first report which needs them.
    * <p>
-   * Compare this to the countryBreakdownAggregation which produces the same
-   * report but uses MongoDB's aggregation framework.
-   * @see #countryBreakdownAggregation()
+   * The totals are always read from the primary, whatever the read
+   * preference. The watermark must be read back as it was just written, and
+   * the new attacks must be read from the member which supplied the newest
+   * _id so that none are skipped.
+   * @throws IllegalStateException
+   *           If the distinct counts are estimated with a precision other
+   *           than the default, which the stored sketches do not use
+   * @see IncrementalStatistics
    */
-  private void countryBreakdownCoded() {
-    Map<String, Integer> attacksByCountry = new HashMap<>();
-    MongoCollection<Document> collection =
-      accessCollection(HONEYPOT_COLLECTION);
+  public void useIncrementalStatistics() {
+    checkSketchPrecision(approximatePrecision);
+    incrementalStatistics = newIncrementalStatistics();
+    clearScanResults();
+    totalAttackingCountries = -1;
+  }
 
-    /**
-     * Retrieve the client_country_code from each document. The find()
-     * method returns an iterable which will iterate through all the
-     * documents. The projection() is then used to limit the retrieved
-     * fields to just the one with the client system's country code.
-     */
-    FindIterable<Document> attacks = collection.find()
-      .projection(new Document("_id", 0).append("client_country_code", 1));
+  /**
+   * Discard the running totals and recompute them from every attack, which
+   * is needed after an interrupted incremental update. The running totals
+   * are then used as by useIncrementalStatistics().
+   * @throws IllegalStateException
+   *           If the distinct counts are estimated with a precision other
+   *           than the default, which the stored sketches do not use
+   * @see IncrementalStatistics#rebuild()
+   * @see #useIncrementalStatistics()
+   */
+  public void rebuildIncrementalStatistics() {
+    checkSketchPrecision(approximatePrecision);
+    incrementalStatistics = newIncrementalStatistics();
+    incrementalStatistics.rebuild();
+    clearScanResults();
+    totalAttackingCountries = -1;
+  }
 
-    /**
-     * Iterate through all the documents and keep a count of matches by
-     * country code.
-     */
-    for (Document attack : attacks) {
-      String countryCode = attack.getString("client_country_code");
-      Integer attackCount = attacksByCountry.get(countryCode);
-      if (attackCount == null) {
-        attackCount = 0;
-      }
-      attackCount++;
-      attacksByCountry.put(countryCode, attackCount);
+  /**
+   * Check that a sketch precision can be used with the running totals, whose
+   * stored sketches always use the default precision.
+   * @param precision
+   *          The sketch precision, or 0 to count exactly
+   * @throws IllegalStateException
+   *           If the precision is neither 0 nor the default
+   * @see IncrementalStatistics#loadSketch(HyperLogLogAccumulator)
+   */
+  private static void checkSketchPrecision(int precision) {
+    if (precision != 0
+      && precision != HyperLogLogAccumulator.DEFAULT_PRECISION) {
+      throw new IllegalStateException("The running totals keep sketches with"
+        + " the default precision of "
+        + HyperLogLogAccumulator.DEFAULT_PRECISION
+        + ", so --incremental cannot estimate with a precision of "
+        + precision);
     }
+  }
 
-    /**
-     * Create an array to house the resulting country codes and counts.
-     */
-    List<CountryCount> countryAttackCount = new ArrayList<>();
+  /**
+   * Create the running totals, read from and written to the primary.
+   * @return The running totals
+   */
+  private IncrementalStatistics newIncrementalStatistics() {
+    return new IncrementalStatistics(
+      accessCollection(attackCollectionName)
+        .withReadPreference(ReadPreference.primary()),
+      accessCollection(HONEYPOT_SUMMARY_COLLECTION)
+        .withReadPreference(ReadPreference.primary()));
+  }
 
-    /**
-     * Populate the array with country codes and counts from the map.
-     */
-    for (String countryCode : attacksByCountry.keySet()) {
-      countryAttackCount
-        .add(new CountryCount(countryCode, attacksByCountry.get(countryCode)));
+  /**
+   * Read the attacks for the coded reports from the given source rather than
+   * from the server, e.g. a BsonDumpSource reading a mongodump file.
+   * @param scanSource
+   *          The source of the attacks, null to read them from the server
+   * @see AttackSource
+   */
+  public void setAttackSource(AttackSource scanSource) {
+    this.scanSource = scanSource;
+    clearScanResults();
+  }
+
+  /**
+   * Read the attacks for the coded reports from a local columnar snapshot
+   * rather than from the server. The snapshot is written on first use and
+   * rewritten whenever the number of documents in the collection changes.
+   * @param snapshotFile
+   *          The snapshot file
+   * @see AttackSnapshot
+   */
+  public void setSnapshotFile(Path snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  /**
+   * Scan an index holding every field used by the coded reports instead of
+   * the attack documents. The index is created if needed and the scan's plan
+   * is checked with explain to confirm that no documents are fetched. The
+   * covering index scan uses a single cursor. Each combination of coded
+   * report options needs its own index, see CoveringIndex.
+   * @param useCoveringIndex
+   *          True to scan the covering index
+   * @see CoveringIndex
+   */
+  public void setUseCoveringIndex(boolean useCoveringIndex) {
+    this.useCoveringIndex = useCoveringIndex;
+  }
+
+  /**
+   * Estimate the distinct counts, the number of attacking countries and the
+   * number of distinct servers and clients, using HyperLogLog sketches built
+   * during the coded reports' scan. Each sketch uses 2^precision bytes
+   * however many distinct values there are, and has a relative standard
+   * error of about 1.04 / sqrt(2^precision). The sketches can be combined, so
+   * they are built by partitioned scans and kept with the running totals in
+   * incremental mode, where the precision must be the default of 14. The
+   * number of attacking countries is estimated when next needed.
+   * @param precision
+   *          The sketch precision from 4 to 16, or 0 to count exactly
+   * @throws IllegalArgumentException
+   *           If the precision is out of range
+   * @throws IllegalStateException
+   *           If running totals are used and the precision is not the
+   *           default
+   * @see HyperLogLog
+   * @see HyperLogLogAccumulator
+   */
+  public void setApproximatePrecision(int precision) {
+    if (precision != 0 && (precision < HyperLogLog.MINIMUM_PRECISION
+      || precision > HyperLogLog.MAXIMUM_PRECISION)) {
+      throw new IllegalArgumentException("The precision must be 0 or from "
+        + HyperLogLog.MINIMUM_PRECISION + " to "
+        + HyperLogLog.MAXIMUM_PRECISION + ": " + precision);
+    }
+    if (incrementalStatistics != null) {
+      checkSketchPrecision(precision);
     }
+    approximatePrecision = precision;
+    clearScanResults();
+    totalAttackingCountries = -1;
+  }
 
-    /**
-     * Sort the resulting array (note that CountryCount implements
-     * Comparable). The sort is then reversed to put the largest number
-     * first.
-     */
-    Collections.sort(countryAttackCount);
-    Collections.reverse(countryAttackCount);
+  /**
+   * Find the most active clients during the coded reports' scan using a
+   * Count-Min sketch and a Space-Saving summary, rather than grouping every
+   * client with the aggregation pipeline. The memory used is fixed however
+   * many clients there are, and each reported attack count is shown as the
+   * range containing the true count. The running totals are still used in
+   * incremental mode.
+   * @param useHeavyHitters
+   *          True to find the most active clients during the scan
+   * @see HeavyHitterAccumulator
+   */
+  public void setUseHeavyHitters(boolean useHeavyHitters) {
+    this.useHeavyHitters = useHeavyHitters;
+    clearScanResults();
+  }
 
-    /**
-     * Report the top country codes with their associated attack counts.
-     */
-    int limit = Math.min(totalAttackingCountries, NUMBER_OF_ITEMS_TO_DISPLAY);
-    printHeader(
-      "Top " + limit + " Attack Countries (using Java coded aggregation)");
-    for (int index = 0; index < limit; ++index) {
-      int numAttacks = countryAttackCount.get(index).getAttackCount();
-      System.out.println("  " + countryAttackCount.get(index).getCountryCode()
-        + ": " + numAttacks + " ("
-        + (int) ((numAttacks * 100) / (double) totalAttacks) + "%)");
+  /**
+   * Count the attacks of every client during the coded reports' scan to find
+   * the most active clients, rather than grouping them with the aggregation
+   * pipeline. The counts are exact and held within the groupBy.memoryBytes
+   * tuning setting, the remainder being spilled to files which are merged
+   * when the clients are ranked. The running totals are still used in
+   * incremental mode, and heavy hitter detection takes precedence.
+   * @param useExternalGroupBy
+   *          True to count the clients during the scan
+   * @see ExternalClientIpAccumulator
+   * @see ReportTuning#newExternalGroupBy()
+   */
+  public void setUseExternalGroupBy(boolean useExternalGroupBy) {
+    this.useExternalGroupBy = useExternalGroupBy;
+    clearScanResults();
+  }
+
+  /**
+   * Keep the results of the aggregation reports' pipelines, so that a report
+   * repeated against unchanged data is answered from memory. This suits a
+   * long running process which prints the reports many times.
+   * @param resultCache
+   *          The cache, null to run every pipeline
+   * @see ReportTuning#newResultCache()
+   */
+  public void setResultCache(PipelineResultCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Answer the country and the server and channel aggregation reports from a
+   * rollup collection, which holds the attack counts for each country,
+   * channel and server. The rollup is written with $out on first use and is
+   * refreshed by refresh(), AttackRollup.refresh() or on a schedule. The
+   * reports match the pipelines run against the attack collection as of the
+   * last refresh.
+   * @return The rollup, which the caller may refresh or schedule
+   * @see AttackRollup
+   */
+  public AttackRollup useRollup() {
+    rollup = new AttackRollup(accessCollection(attackCollectionName),
+      accessCollection(HONEYPOT_ROLLUP_COLLECTION));
+    return rollup;
+  }
+
+  /**
+   * Create a monitor which follows the attacks as they are inserted and
+   * keeps the most active countries, servers and channels, and clients over
+   * sliding windows of 5 minutes, an hour and 24 hours. The monitor polls the
+   * attack collection once started.
+   * @return The monitor
+   * @see LiveAttackMonitor
+   */
+  public LiveAttackMonitor newLiveMonitor() {
+    return new LiveAttackMonitor(accessCollection(attackCollectionName),
+      NUMBER_OF_ITEMS_TO_DISPLAY);
+  }
+
+  /**
+   * Print the live monitor's top lists for each window.
+   * @param topLists
+   *          The top lists
+   * @param out
+   *          The stream receiving the reports
+   */
+  public static void printLiveTopLists(List<LiveTopLists> topLists,
+    PrintStream out) {
+    for (LiveTopLists window : topLists) {
+      ReportPrinter printer =
+        new ReportPrinter(out, window.getTotalAttacks());
+      printer.header("Top " + window.getCountries().size()
+        + " Attack Countries (last " + window.getWindow() + ", "
+        + window.getTotalAttacks() + " attacks)");
+      for (CountryCount country : window.getCountries()) {
+        printer.country(country.getCountryCode(), country.getAttackCount());
+      }
+      printer.blankLine();
+      printer.header("Top " + window.getServerChannels().size()
+        + " Attacked Servers and Channels (last " + window.getWindow() + ")");
+      for (ServerChannelCount serverChannel : window.getServerChannels()) {
+        printer.serverChannel(serverChannel.getServerIpMask(),
+          serverChannel.getChannel(), serverChannel.getAttackCount());
+      }
+      printer.blankLine();
+      printer.header("Top " + window.getClients().size()
+        + " Attacking Client IPs (last " + window.getWindow() + ")");
+      for (ClientCount client : window.getClients()) {
+        printer.client(client.getClientIpMask(), client.getCountryCode(),
+          client.getAttackCount());
+      }
+      printer.blankLine();
     }
   }
 
   /**
-   * Summarize the number of attacks recorded by each honeypot server and
-   * channel (sensor). This method queries the collection for all attack
-   * documents and then uses a Map to aggregate the data. The resulting Map is
-   * then used to populate an array of ServerChannelCount instances which is
-   * then sorted in order to present the servers and channels in order.
-   * <p>
-   * Compare this to the honeypotBreakdownAggregation which produces the same
-   * report but uses MongoDB's aggregation framework.
-   * @see #honeypotBreakdownAggregation()
+   * Explain the main query of each report after it runs, recording the
+   * documents and keys the server examined and its execution time with the
+   * report's measurements. The query is run a second time to explain it.
+   * @param explainReports
+   *          True to explain each report's main query
+   * @see ReportInstrumentation
    */
-  private void honeypotBreakdownCoded() {
-    Map<String, Integer> attacksByServerAndChannel = new HashMap<>();
-    MongoCollection<Document> collection =
-      accessCollection(HONEYPOT_COLLECTION);
+  public void setExplainReports(boolean explainReports) {
+    instrumentation.setExplainClient(explainReports ? mongoClient : null);
+  }
 
-    /**
-     * Retrieve the server_ip_mask (in the payload subdocument) and channel
-     * from each document. The find() method returns an iterable which will
-     * iterate through all the documents. The projection() is then used to
-     * limit the retrieved fields to just the server_ip_mask and channel.
-     */
-    FindIterable<Document> attacks = collection.find()
-      .projection(new Document("_id", 0).append("payload.server_ip_mask", 1)
-        .append("channel", 1));
+  /**
+   * Send the reports to a printer rather than printing them on the console.
+   * @param reportPrinter
+   *          The printer, null to print on the console
+   * @see JsonReportPrinter
+   */
+  public void setReportPrinter(ReportPrinter reportPrinter) {
+    this.reportPrinter = reportPrinter;
+  }
 
-    /**
-     * Iterate through all the documents and keep a count of matches by
-     * server and channel.
-     */
-    for (Document attack : attacks) {
-      Document payload = (Document) attack.get("payload");
-      String serverAndChannel = payload.getInteger("server_ip_mask") + ","
-        + attack.getString("channel");
-      Integer attackCount = attacksByServerAndChannel.get(serverAndChannel);
-      if (attackCount == null) {
-        attackCount = 0;
+  /**
+   * Get the instrumentation measuring each report.
+   * @return The instrumentation
+   */
+  public ReportInstrumentation getInstrumentation() {
+    return instrumentation;
+  }
+
+  /**
+   * Set the number of threads used to scan the collection for the coded
+   * reports.
+   * @param scanThreads
+   *          The number of threads, 1 to use a single cursor
+   * @see PartitionedAttackScanner
+   */
+  public void setScanThreads(int scanThreads) {
+    this.scanThreads = scanThreads;
+  }
+
+  /**
+   * Calculate the number of countries found in the honeypot attack data and
+   * set the attribute. If the collection has already been scanned for the
+   * coded reports the count comes from the country accumulator. Otherwise the
+   * count is computed by the server so that the attack documents are not
+   * retrieved. In approximate mode the count is estimated from the sketch
+   * built by the scan. With incremental statistics the count comes from the
+   * running totals, which are brought up to date first, and with an attack
+   * source from the attacks it supplies.
+   * @see #totalAttackingCountries
+   * @see #scanAttacks()
+   * @see DistinctCounter
+   */
+  private void computeAttackCountryCount() {
+    if (approximatePrecision > 0) {
+      scanAttacks();
+      totalAttackingCountries = (int) countrySketch.getDistinctCount();
+    } else if (countryAccumulator != null || incrementalStatistics != null
+      || scanSource != null) {
+      scanAttacks();
+      totalAttackingCountries = countryAccumulator.getDistinctCountryCount();
+    } else {
+      totalAttackingCountries =
+        new DistinctCounter(accessCollection(attackCollectionName)).count(
+          "client_country_code", String.class, DistinctCounter.Mode.AUTO);
+    }
+  }
+
+  /**
+   * Report the overall statistics on the console. The number of countries is
+   * found first since finding it may also find the number of attacks.
+   * @see #getTotalAttacks()
+   * @see #getTotalAttackingCountries()
+   */
+  public void overallStats() {
+    ReportMeasurement measurement = instrumentation.start("overallStats");
+    try {
+      int countries = getTotalAttackingCountries();
+      if (approximatePrecision > 0) {
+        scanAttacks();
+        printer().overall(countries, countrySketch.getStandardError());
+      } else {
+        printer().overall(countries);
       }
-      attackCount++;
-      attacksByServerAndChannel.put(serverAndChannel, attackCount);
+    } finally {
+      instrumentation.finish(measurement);
     }
+  }
 
-    /**
-     * Create an array to house the resulting servers, channels and counts.
-     */
-    List<ServerChannelCount> serverChannelAttackCount = new ArrayList<>();
+  /**
+   * Report the number of distinct servers and clients which appear in the
+   * attacks. In approximate mode the counts are estimated from the sketches
+   * built by the coded reports' scan, using a fixed amount of memory.
+   * Otherwise the distinct values are counted by the server.
+   * @see #setApproximatePrecision(int)
+   * @see DistinctCounter
+   */
+  public void distinctIpStats() {
+    ReportMeasurement measurement = instrumentation.start("distinctIpStats");
+    try {
+      ReportPrinter printer;
+      if (approximatePrecision > 0) {
+        scanAttacks();
+        printer = printer();
+        printer.header("Distinct IP Statistics (using HyperLogLog sketches)");
+        printer.distinct("Servers", serverSketch.getDistinctCount(),
+          serverSketch.getStandardError());
+        printer.distinct("Clients", clientSketch.getDistinctCount(),
+          clientSketch.getStandardError());
+        return;
+      }
 
-    /**
-     * Populate the array with server and channel as well as the counts from
-     * the map.
-     */
-    for (String countryCode : attacksByServerAndChannel.keySet()) {
-      serverChannelAttackCount
-        .add(new ServerChannelCount(countryCode,
-          attacksByServerAndChannel.get(countryCode)));
+      DistinctCounter distinctCounter =
+        new DistinctCounter(accessCollection(attackCollectionName));
+      int distinctServers = distinctCounter.count(
+        AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.SERVER_IP_MASK,
+        Integer.class, DistinctCounter.Mode.AUTO);
+      int distinctClients = distinctCounter.count(
+        AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.CLIENT_IP_MASK,
+        Integer.class, DistinctCounter.Mode.AUTO);
+      ReportLayout.distinctIps(printer(), distinctServers, distinctClients);
+    } finally {
+      instrumentation.finish(measurement);
     }
+  }
 
-    /**
-     * Sort the resulting array (note that ServerChannelCount implements
-     * Comparable).
-     */
-    Collections.sort(serverChannelAttackCount);
+  /**
+   * Summarize the count of attacks by country. This method uses the counts
+   * gathered by the country accumulator while the collection was scanned. The
+   * resulting counts are then used to populate CountryCount instances from
+   * which the top attacking countries are selected.
+   * <p>
+   * Compare this to the countryBreakdownAggregation which produces the same
+   * report but uses MongoDB's aggregation framework.
+   * @see #countryBreakdownAggregation()
+   */
+  public void countryBreakdownCoded() {
+    ReportMeasurement measurement =
+      instrumentation.start("countryBreakdownCoded");
+    try {
+      scanAttacks();
 
-    /**
-     * Report the attack counts for each server and channel.
-     */
-    printHeader(
-      "Attack Counts for Servers and Channels (using Java coded aggregation)");
-    for (ServerChannelCount serverChannel : serverChannelAttackCount) {
-      int numAttacks = serverChannel.getAttackCount();
-      System.out.println("  Server:" + serverChannel.getServerIpMask()
-        + " Channel:" + serverChannel.getChannel()
-        + " Attack Count:" + numAttacks + " ("
-        + (int) ((numAttacks * 100) / (double) totalAttacks) + "%)");
+      /**
+       * The client_country_code from each document was counted by the country
+       * accumulator during the scan of the collection. Report the top
+       * countries from those counts.
+       */
+      int totalCountries = getTotalAttackingCountries();
+      ReportLayout.countryBreakdownCoded(printer(), totalCountries,
+        countryAccumulator);
+    } finally {
+      instrumentation.finish(measurement);
+    }
+  }
+
+  /**
+   * Summarize the number of attacks recorded by each honeypot server and
+   * channel (sensor). This method uses the counts gathered by the server and
+   * channel accumulator while the collection was scanned. The resulting counts
+   * are then used to populate an array of ServerChannelCount instances which is
+   * then sorted in order to present the servers and channels in order.
+   * <p>
+   * Compare this to the honeypotBreakdownAggregation which produces the same
+   * report but uses MongoDB's aggregation framework.
+   * @see #honeypotBreakdownAggregation()
+   */
+  public void honeypotBreakdownCoded() {
+    ReportMeasurement measurement =
+      instrumentation.start("honeypotBreakdownCoded");
+    try {
+      scanAttacks();
+
+      /**
+       * The server_ip_mask (in the payload subdocument) and channel from each
+       * document were counted by the server and channel accumulator during the
+       * scan of the collection. Report the counts in server and channel order.
+       */
+      ReportLayout.honeypotBreakdownCoded(printer(), serverChannelAccumulator);
+    } finally {
+      instrumentation.finish(measurement);
     }
   }
 
@@ -383,48 +1083,85 @@ public class BasicStatistics {
    * 
    * @see #countryBreakdownCoded()
    */
-  private void countryBreakdownAggregation() {
-    MongoCollection<Document> collection =
-      accessCollection(HONEYPOT_COLLECTION);
-    List<Document> aggregationPipeline = new ArrayList<>();
-    Document operation;
+  public void countryBreakdownAggregation() {
+    ReportMeasurement measurement =
+      instrumentation.start("countryBreakdownAggregation");
+    try {
+      Iterable<Document> attacks;
+      String source;
+      if (rollup != null) {
+        /**
+         * Add up the rollup counts for each country code and sort the groups
+         * on count of attacks, descending.
+         */
+        attacks = aggregateRollup(ReportTuning.COUNTRY_BREAKDOWN,
+          ReportPipelines.countryBreakdownFromRollup());
+        source = "rollup";
+      } else {
+        MongoCollection<Document> collection =
+          accessCollection(attackCollectionName);
 
-    /**
-     * Group the data on country code. Count the number of documents in each
-     * group.
-     */
-    operation = new Document("$group",
-      new Document("_id", "$client_country_code").append("attacks",
-        new Document("$sum", 1)));
-    aggregationPipeline.add(operation);
+        /**
+         * Group the data on country code, counting the number of documents
+         * in each group, and sort the groups on count of attacks,
+         * descending.
+         */
+        List<Document> aggregationPipeline =
+          ReportPipelines.countryBreakdown();
 
-    /**
-     * Sort the data on count of attacks, descending.
-     */
-    operation = new Document("$sort", new Document("attacks", -1));
-    aggregationPipeline.add(operation);
+        /**
+         * Get the iterable for the pipeline result, applying the batch size,
+         * allowDiskUse and maximum time from the tuning settings, or the
+         * cached result.
+         */
+        attacks = aggregate(ReportTuning.COUNTRY_BREAKDOWN, collection,
+          aggregationPipeline);
+        source = ReportLayout.PIPELINE_SOURCE;
+      }
 
-    /**
-     * Get the iterable for the pipeline result.
-     */
-    AggregateIterable<Document> attacks =
-      collection.aggregate(aggregationPipeline);
+      /**
+       * Read every group, there being one per country, so that the number of
+       * countries and of attacks are side results of the report. Groups
+       * without a country code are not counted as countries. An estimated
+       * number of countries is not replaced, nor are the numbers replaced by
+       * those from a rollup, which may be older than the collection.
+       */
+      List<Document> countries = new ArrayList<>();
+      int countryCount = 0;
+      for (Document attack : attacks) {
+        countries.add(attack);
+        if (attack.get("_id") != null) {
+          ++countryCount;
+        }
+      }
+      if (rollup == null && !countries.isEmpty()) {
+        if (totalAttacks < 0) {
+          totalAttacks = sumAttacks(countries);
+        }
+        if (totalAttackingCountries < 0 && approximatePrecision == 0) {
+          totalAttackingCountries = countryCount;
+        }
+      }
 
-    /**
-     * Report the top country codes with their associated attack counts.
-     */
-    int limit = Math.min(totalAttackingCountries, NUMBER_OF_ITEMS_TO_DISPLAY);
-    printHeader(
-      "Top " + limit + " Attack Countries (using aggregation pipeline)");
-    int count = 0;
-    for (Document attack : attacks) {
-      int numAttacks = attack.getInteger("attacks");
-      System.out.println("  " + attack.get("_id") + ": " + numAttacks + " ("
-        + (int) ((numAttacks * 100) / (double) totalAttacks) + "%)");
-      ++count;
-      if (count >= limit) {
-        break;
+      /**
+       * Report the top country codes with their associated attack counts. A
+       * rollup report takes the number of countries and the total for the
+       * percentages from the rollup rows, so that neither the raw collection
+       * is read nor the percentages disagree with the counts.
+       */
+      int attackingCountries;
+      ReportPrinter printer;
+      if (rollup != null) {
+        attackingCountries = countryCount;
+        printer = printer(sumAttacks(countries));
+      } else {
+        attackingCountries = getTotalAttackingCountries();
+        printer = printer();
       }
+      ReportLayout.countryBreakdown(printer, attackingCountries, countries,
+        source);
+    } finally {
+      instrumentation.finish(measurement);
     }
   }
 
@@ -454,55 +1191,63 @@ public class BasicStatistics {
    * 
    * @see #honeypotBreakdownAggregation()
    */
-  private void honeypotBreakdownAggregation() {
-    MongoCollection<Document> collection =
-      accessCollection(HONEYPOT_COLLECTION);
-    List<Document> aggregationPipeline = new ArrayList<>();
-    Document operation;
-
-    /**
-     * Group by server IP mask value and channel. Count the number of
-     * documents in each group.
-     */
-    operation = new Document("$group",
-      new Document("_id",
-        new Document("server_ip_mask", "$payload.server_ip_mask")
-          .append("channel", "$channel"))
-            .append("attacks", new Document("$sum", 1)));
-    aggregationPipeline.add(operation);
+  public void honeypotBreakdownAggregation() {
+    ReportMeasurement measurement =
+      instrumentation.start("honeypotBreakdownAggregation");
+    try {
+      Iterable<Document> attacks;
+      String source;
+      if (rollup != null) {
+        /**
+         * Add up the rollup counts for each server IP mask value and channel
+         * and sort on server IP mask value and channel.
+         */
+        attacks = aggregateRollup(ReportTuning.HONEYPOT_BREAKDOWN,
+          ReportPipelines.honeypotBreakdownFromRollup());
+        source = "rollup";
+      } else {
+        MongoCollection<Document> collection =
+          accessCollection(attackCollectionName);
 
-    /**
-     * Project the attributes to extract them from the _id.
-     */
-    operation = new Document("$project",
-      new Document("server_ip_mask", "$_id.server_ip_mask")
-        .append("channel", "$_id.channel").append("attacks", 1));
-    aggregationPipeline.add(operation);
+        /**
+         * Group by server IP mask value and channel, counting the number of
+         * documents in each group, and sort on server IP mask value and
+         * channel.
+         */
+        List<Document> aggregationPipeline =
+          ReportPipelines.honeypotBreakdown();
 
-    /**
-     * Sort the data based on server IP mask value and channel.
-     */
-    operation = new Document("$sort",
-      new Document("_id.server_ip_mask", 1).append("_id.channel", 1));
-    aggregationPipeline.add(operation);
+        /**
+         * Get the iterable for the pipeline result, applying the batch size,
+         * allowDiskUse and maximum time from the tuning settings, or the
+         * cached result.
+         */
+        attacks = aggregate(ReportTuning.HONEYPOT_BREAKDOWN, collection,
+          aggregationPipeline);
+        source = ReportLayout.PIPELINE_SOURCE;
+      }
 
-    /**
-     * Get the iterable for the pipeline result.
-     */
-    AggregateIterable<Document> attacks =
-      collection.aggregate(aggregationPipeline);
+      /**
+       * Read every group so that the number of attacks is a side result of
+       * the report, unless the groups come from a rollup.
+       */
+      List<Document> serverChannels = new ArrayList<>();
+      for (Document attack : attacks) {
+        serverChannels.add(attack);
+      }
+      if (rollup == null && totalAttacks < 0 && !serverChannels.isEmpty()) {
+        totalAttacks = sumAttacks(serverChannels);
+      }
 
-    /**
-     * Report the attack counts for each server and channel.
-     */
-    printHeader(
-      "Attack Counts for Servers and Channels (using aggregation pipeline)");
-    for (Document attack : attacks) {
-      int numAttacks = attack.getInteger("attacks");
-      System.out
-        .println("  Server:" + attack.getInteger("server_ip_mask") + " Channel:"
-          + attack.getString("channel") + " Attack Count:" + numAttacks + " ("
-          + (int) ((numAttacks * 100) / (double) totalAttacks) + "%)");
+      /**
+       * Report the attack counts for each server and channel. A rollup report
+       * takes the total for the percentages from the rollup rows.
+       */
+      ReportLayout.honeypotBreakdown(rollup != null
+        ? printer(sumAttacks(serverChannels)) : printer(), serverChannels,
+        source);
+    } finally {
+      instrumentation.finish(measurement);
     }
   }
 
@@ -519,95 +1264,344 @@ public class BasicStatistics {
    * db.honeypotData.aggregate( [ 
    *  { "$group": { "_id": { "client_ip_mask" : "$payload.client_ip_mask" , 
    *   "client_country_code" : "$client_country_code" }, "attacks": { "$sum": 1 } } }, 
+   *  { "$sort": {"attacks":-1} }, 
+   *  { "$limit": 10 }, 
    *  { "$project": { "client_ip_mask" : "$_id.client_ip_mask", 
-   *   "client_country_code" : "$_id.client_country_code", "attacks" : "$attacks" } }, 
-   *  { "$sort": {"attacks":-1} } 
+   *   "client_country_code" : "$_id.client_country_code", "attacks" : "$attacks" } } 
    * ])
    * </pre>
+   * <p>
+   * The $limit immediately following the $sort allows the server to keep only
+   * the top documents while sorting rather than sorting every client.
+   * <p>
+   * In incremental mode the clients are instead read from the running
+   * totals, which are indexed by attack count. With heavy hitter detection
+   * the clients are found by the coded reports' scan using fixed memory, and
+   * with the external group-by they are counted exactly by the scan, spilling
+   * to disk.
+   * @see IncrementalStatistics#getTopClients(int)
+   * @see #setUseHeavyHitters(boolean)
+   * @see #setUseExternalGroupBy(boolean)
    */
-  private void mostActiveIps() {
-    MongoCollection<Document> collection =
-      accessCollection(HONEYPOT_COLLECTION);
-    List<Document> aggregationPipeline = new ArrayList<>();
-    Document operation;
+  public void mostActiveIps() {
+    ReportMeasurement measurement = instrumentation.start("mostActiveIps");
+    try {
+      MongoCollection<Document> collection =
+        accessCollection(attackCollectionName);
+      int limit = Math.min(getTotalAttackingCountries(),
+        NUMBER_OF_ITEMS_TO_DISPLAY);
 
-    /**
-     * Group by client IP mask value and country code (expect a given IP to
-     * always map the the same country). Count the number of documents in
-     * each group.
-     */
-    operation = new Document("$group",
-      new Document("_id",
-        new Document("client_ip_mask", "$payload.client_ip_mask")
-          .append("client_country_code", "$client_country_code")).append(
-            "attacks",
-            new Document("$sum", 1)));
-    aggregationPipeline.add(operation);
+      if (incrementalStatistics != null) {
+        scanAttacks();
+        ReportLayout.topClients(printer(), limit,
+          incrementalStatistics.getTopClients(limit), "incremental totals");
+        return;
+      }
 
-    /**
-     * Project the attributes to extract them from the _id.
-     */
-    operation = new Document("$project",
-      new Document("client_ip_mask", "$_id.client_ip_mask")
-        .append("client_country_code", "$_id.client_country_code")
-        .append("attacks", "$attacks"));
-    aggregationPipeline.add(operation);
+      if (useHeavyHitters) {
+        scanAttacks();
+        ReportPrinter printer = printer();
+        printer.header("Top " + limit + " Attacking Client IPs (using a "
+          + "single pass, counts within " + heavyHitterAccumulator
+            .getErrorBound() + ")");
+        for (ClientCountEstimate client : heavyHitterAccumulator
+          .getTopClients(limit)) {
+          printer.client(client.getClientIpMask(), client.getCountryCode(),
+            client.getAttackCount(), client.getMaximumError());
+        }
+        return;
+      }
 
-    /**
-     * Sort the data based on number of attacks, descending.
-     */
-    operation = new Document("$sort", new Document("attacks", -1));
-    aggregationPipeline.add(operation);
+      if (useExternalGroupBy) {
+        scanAttacks();
+        ReportLayout.topClients(printer(), limit,
+          externalClientAccumulator.getTopClients(limit),
+          ReportLayout.CODED_SOURCE + ", "
+            + externalClientAccumulator.getSpillCount() + " spills");
+        return;
+      }
 
-    /**
-     * Get the iterable for the pipeline result.
-     */
-    AggregateIterable<Document> attacks =
-      collection.aggregate(aggregationPipeline);
+      /**
+       * Group by client IP mask value and country code, counting the number of
+       * documents in each group, and keep the groups with the most attacks.
+       */
+      List<Document> aggregationPipeline =
+        ReportPipelines.mostActiveIps(limit);
 
-    /**
-     * Report the attack counts for top attacking clients.
-     */
-    int limit = Math.min(totalAttackingCountries, NUMBER_OF_ITEMS_TO_DISPLAY);
-    printHeader(
-      "Top " + limit + " Attacking Client IPs (using aggregation pipeline)");
-    int count = 0;
-    for (Document attack : attacks) {
-      int numAttacks = attack.getInteger("attacks");
-      System.out
-        .println("  Client:" + attack.getInteger("client_ip_mask") + " Country:"
-          + attack.getString("client_country_code") + " Attack Count:"
-          + numAttacks + " ("
-          + (int) ((numAttacks * 100) / (double) totalAttacks) + "%)");
-      ++count;
-      if (count >= limit) {
-        break;
-      }
+      /**
+       * Get the iterable for the pipeline result, applying the batch size,
+       * allowDiskUse and maximum time from the tuning settings, or the cached
+       * result. The $group
+       * stage holds every client so allowDiskUse avoids the server's 100MB
+       * memory limit on large collections.
+       */
+      Iterable<Document> attacks =
+        aggregate(ReportTuning.MOST_ACTIVE_IPS, collection,
+          aggregationPipeline);
+
+      /**
+       * Report the attack counts for top attacking clients.
+       */
+      ReportLayout.mostActiveIps(printer(), limit, attacks,
+        ReportLayout.PIPELINE_SOURCE);
+    } finally {
+      instrumentation.finish(measurement);
     }
   }
 
   /**
-   * Print a message on the console underlined with equal signs.
-   * @param message
-   *          The text the print on the console
+   * Run an aggregation pipeline with the report's tuning settings, using the
+   * result cache if one has been set.
+   * @param report
+   *          The report name, used for the tuning settings
+   * @param collection
+   *          The collection the pipeline runs against
+   * @param aggregationPipeline
+   *          The pipeline
+   * @return The documents returned by the pipeline
+   * @see #setResultCache(PipelineResultCache)
    */
-  private void printHeader(String message) {
-    System.out.println(message);
-    for (int index = 0; index < message.length(); ++index) {
-      System.out.print("=");
+  private Iterable<Document> aggregate(String report,
+    MongoCollection<Document> collection,
+    List<Document> aggregationPipeline) {
+    if (resultCache != null) {
+      return resultCache.aggregate(collection, report, aggregationPipeline);
     }
-    System.out.println();
+    return ReportTuning.getInstance().tune(report,
+      collection.aggregate(aggregationPipeline));
+  }
+
+  /**
+   * Add up the attack counts of a report's groups.
+   * @param groups
+   *          The groups, each holding its number of attacks
+   * @return The total number of attacks
+   */
+  private static long sumAttacks(List<Document> groups) {
+    long attackSum = 0;
+    for (Document group : groups) {
+      attackSum += ((Number) group.get("attacks")).longValue();
+    }
+    return attackSum;
+  }
+
+  /**
+   * Run a pipeline against the rollup collection with the report's tuning
+   * settings, writing the rollup first if it has not been refreshed. The
+   * result cache is not used since the rollup is small, and a refresh may
+   * change the counts without changing the number of rollup documents or
+   * their largest _id.
+   * @param report
+   *          The report name, used for the tuning settings
+   * @param aggregationPipeline
+   *          The pipeline
+   * @return The documents returned by the pipeline
+   * @see #useRollup()
+   */
+  private Iterable<Document> aggregateRollup(String report,
+    List<Document> aggregationPipeline) {
+    rollup.refreshIfNeeded();
+    return ReportTuning.getInstance().tune(report,
+      rollup.getRollupCollection().aggregate(aggregationPipeline));
+  }
+
+  /**
+   * Get the printer which formats report lines, on the console unless
+   * another printer has been set.
+   * @return The printer
+   * @see #setReportPrinter(ReportPrinter)
+   */
+  private ReportPrinter printer() {
+    if (reportPrinter != null) {
+      return reportPrinter;
+    }
+    return new ReportPrinter(System.out, getTotalAttacks());
+  }
+
+  /**
+   * Get the printer which formats report lines, calculating percentages
+   * from a total other than the number of attacks in the collection.
+   * @param reportTotalAttacks
+   *          The total number of attacks the report's counts add up to
+   * @return The printer
+   * @see #printer()
+   */
+  private ReportPrinter printer(long reportTotalAttacks) {
+    if (reportPrinter != null) {
+      reportPrinter.setTotalAttacks(reportTotalAttacks);
+      return reportPrinter;
+    }
+    return new ReportPrinter(System.out, reportTotalAttacks);
+  }
+
+  /**
+   * Find the value of a command line option of the form --name=value.
+   * @param args
+   *          The command line arguments
+   * @param name
+   *          The option name
+   * @return The option value, null if the option was not supplied
+   */
+  private static String optionValue(String[] args, String name) {
+    String prefix = "--" + name + "=";
+    for (String arg : args) {
+      if (arg.startsWith(prefix)) {
+        return arg.substring(prefix.length());
+      }
+    }
+    return null;
   }
 
   /**
    * Create the instance and call the different summarization methods.
    * @param args
-   *          Command line arguments - not used
+   *          Command line arguments. The optional --scan-threads=N reads the
+   *          collection for the coded reports using N parallel cursors. The
+   *          optional --incremental uses running totals which are updated
+   *          with the attacks added since the previous run, and the optional
+   *          --rebuild recomputes those totals from every attack before using
+   *          them. The optional --snapshot=FILE reads the attacks for the
+   *          coded reports from a local snapshot file. The optional --async
+   *          runs every report concurrently using the asynchronous driver.
+   *          The optional --covering-index answers the coded reports' scan
+   *          from an index holding the projected fields. The optional
+   *          --approximate[=PRECISION] estimates the distinct counts using
+   *          HyperLogLog sketches. The optional --heavy-hitters finds the
+   *          most active clients in the coded reports' scan. The optional
+   *          --external-group-by counts every client in the coded reports'
+   *          scan within a fixed memory budget, spilling to disk. The optional
+   *          --explain adds the server's execution statistics for each
+   *          report's query to the report measurements. The optional
+   *          --hosts=HOST:PORT,... connects to the members of a replica set,
+   *          --replica-set=NAME names the replica set, and
+   *          --read-preference=MODE with --read-tags=TAGS choose the members
+   *          the reports read from. The optional --rollup answers the
+   *          country and the server and channel aggregation reports from a
+   *          rollup collection. The optional --dump=FILE prints the Java
+   *          coded reports from a mongodump .bson file without connecting to
+   *          a server, decoding the file using --scan-threads threads or one
+   *          per processor. The optional --serve=PORT keeps running and
+   *          serves each report as JSON over HTTP, counting the attacks again
+   *          every --refresh-seconds=N seconds (60 by default). The
+   *          optional --monitor follows the new attacks, polling every
+   *          --poll-millis=N milliseconds (250 by default), and prints the
+   *          top lists over the last 5 minutes, hour and 24 hours as they
+   *          change, or serves them at /live with --serve.
+   * @see ReplicaSetOptions
+   * @see StatisticsServer
+   * @see OfflineReportRunner
+   * @see LiveAttackMonitor
    */
   public static void main(String[] args) {
-    BasicStatistics attackStats = new BasicStatistics();
+    String dumpFile = optionValue(args, "dump");
+    if (dumpFile != null) {
+      String dumpThreads = optionValue(args, "scan-threads");
+      new OfflineReportRunner(Paths.get(dumpFile),
+        dumpThreads == null ? Runtime.getRuntime().availableProcessors()
+          : Integer.parseInt(dumpThreads)).printReports(System.out);
+      return;
+    }
+
+    String hosts = optionValue(args, "hosts");
+    String readPreference = optionValue(args, "read-preference");
+    List<ServerAddress> seeds = hosts == null
+      ? Arrays.asList(new ServerAddress(MONGO_DB_IP, MONGO_DB_PORT))
+      : ReplicaSetOptions.parseSeedList(hosts);
+    String replicaSetName = optionValue(args, "replica-set");
+    ReadPreference reportReadPreference =
+      ReplicaSetOptions.parseReadPreference(
+        readPreference == null ? "primary" : readPreference,
+        optionValue(args, "read-tags"));
+
+    if (Arrays.asList(args).contains("--async")) {
+      AsyncReportRunner runner = new AsyncReportRunner(seeds, replicaSetName,
+        reportReadPreference, HONEYPOT_DATABASE, HONEYPOT_COLLECTION);
+      try {
+        runner.printReports(System.out);
+      } finally {
+        runner.close();
+      }
+      return;
+    }
+
+    BasicStatistics attackStats = new BasicStatistics(seeds, replicaSetName,
+      reportReadPreference, HONEYPOT_DATABASE, HONEYPOT_COLLECTION);
+    if (Arrays.asList(args).contains("--rebuild")) {
+      attackStats.rebuildIncrementalStatistics();
+    } else if (Arrays.asList(args).contains("--incremental")) {
+      attackStats.useIncrementalStatistics();
+    }
+    String scanThreads = optionValue(args, "scan-threads");
+    if (scanThreads != null) {
+      attackStats.setScanThreads(Integer.parseInt(scanThreads));
+    }
+    if (Arrays.asList(args).contains("--covering-index")) {
+      attackStats.setUseCoveringIndex(true);
+    }
+    if (Arrays.asList(args).contains("--rollup")) {
+      attackStats.useRollup().refresh();
+    }
+    if (Arrays.asList(args).contains("--explain")) {
+      attackStats.setExplainReports(true);
+    }
+    if (Arrays.asList(args).contains("--heavy-hitters")) {
+      attackStats.setUseHeavyHitters(true);
+    }
+    if (Arrays.asList(args).contains("--external-group-by")) {
+      attackStats.setUseExternalGroupBy(true);
+    }
+    String snapshotFile = optionValue(args, "snapshot");
+    if (snapshotFile != null) {
+      attackStats.setSnapshotFile(Paths.get(snapshotFile));
+    }
+    if (Arrays.asList(args).contains("--approximate")) {
+      attackStats.setApproximatePrecision(
+        HyperLogLogAccumulator.DEFAULT_PRECISION);
+    }
+    String precision = optionValue(args, "approximate");
+    if (precision != null) {
+      attackStats.setApproximatePrecision(Integer.parseInt(precision));
+    }
+    String servePort = optionValue(args, "serve");
+    LiveAttackMonitor monitor = null;
+    if (Arrays.asList(args).contains("--monitor")) {
+      monitor = attackStats.newLiveMonitor();
+      if (servePort == null) {
+        monitor.addListener(new LiveAttackMonitor.Listener() {
+          @Override
+          public void published(List<LiveTopLists> topLists) {
+            printLiveTopLists(topLists, System.out);
+          }
+        });
+      }
+      String pollMillis = optionValue(args, "poll-millis");
+      monitor.start(pollMillis == null
+        ? LiveAttackMonitor.DEFAULT_POLL_INTERVAL_MILLIS
+        : Long.parseLong(pollMillis));
+      if (servePort == null) {
+        return;
+      }
+    }
+    if (servePort != null) {
+      attackStats.setResultCache(ReportTuning.getInstance().newResultCache());
+      String refreshSeconds = optionValue(args, "refresh-seconds");
+      StatisticsServer server = new StatisticsServer(attackStats,
+        refreshSeconds == null
+          ? StatisticsServer.DEFAULT_REFRESH_INTERVAL_MILLIS
+          : Long.parseLong(refreshSeconds) * 1000);
+      server.setLiveMonitor(monitor);
+      try {
+        server.start(Integer.parseInt(servePort));
+      } catch (IOException ioException) {
+        throw new IllegalStateException("Unable to serve the reports on port "
+          + servePort, ioException);
+      }
+      return;
+    }
     attackStats.overallStats();
     System.out.println();
+    attackStats.distinctIpStats();
+    System.out.println();
     attackStats.countryBreakdownCoded();
     System.out.println();
     attackStats.countryBreakdownAggregation();
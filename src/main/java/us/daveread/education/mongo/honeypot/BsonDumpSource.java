@@ -0,0 +1,334 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import org.bson.BsonBinaryReader;
+
+/**
+ * Reads the attack documents from a mongodump .bson file, so that the coded
+ * reports can be produced without a running server. A dump file holds the
+ * documents one after another, each starting with its length as a little
+ * endian 32 bit integer.
+ * <p>
+ * The file is memory mapped in chunks. Each chunk is walked using the length
+ * prefixes to find the last complete document it holds, so every chunk starts
+ * and ends on a document boundary. The documents are decoded in place from
+ * the mapped buffer by AttackRecordCodec, reading only the fields used by the
+ * reports. With more than one thread each chunk is decoded by a pool thread
+ * into its own accumulators while the next boundaries are found, and the
+ * results are merged in file order. The number of chunks waiting to be decoded
+ * is bounded so the boundary walk stays close to the decoding and each page is
+ * read from disk once.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see OfflineReportRunner
+ */
+public class BsonDumpSource implements AttackSource {
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(BsonDumpSource.class);
+
+  /**
+   * The default number of bytes mapped for each chunk.
+   */
+  public static final int DEFAULT_CHUNK_BYTES = 32 * 1024 * 1024;
+
+  /**
+   * The smallest possible BSON document: the length and the terminating
+   * zero.
+   */
+  private static final int MINIMUM_DOCUMENT_BYTES = 5;
+
+  /**
+   * The number of chunks per thread which may be waiting to be decoded.
+   */
+  private static final int PENDING_CHUNKS_PER_THREAD = 2;
+
+  /**
+   * The dump file.
+   */
+  private Path file;
+
+  /**
+   * The number of threads decoding the chunks.
+   */
+  private int threads;
+
+  /**
+   * The number of bytes mapped for each chunk.
+   */
+  private int chunkBytes;
+
+  /**
+   * Create an instance which decodes the file on the calling thread.
+   * @param file
+   *          The dump file
+   */
+  public BsonDumpSource(Path file) {
+    this(file, 1);
+  }
+
+  /**
+   * Create the instance using the default chunk size.
+   * @param file
+   *          The dump file
+   * @param threads
+   *          The number of threads decoding the chunks, 1 to decode on the
+   *          calling thread
+   */
+  public BsonDumpSource(Path file, int threads) {
+    this(file, threads, DEFAULT_CHUNK_BYTES);
+  }
+
+  /**
+   * Create the instance.
+   * @param file
+   *          The dump file
+   * @param threads
+   *          The number of threads decoding the chunks, 1 to decode on the
+   *          calling thread
+   * @param chunkBytes
+   *          The number of bytes mapped for each chunk. A document larger than
+   *          this is given a chunk of its own.
+   */
+  public BsonDumpSource(Path file, int threads, int chunkBytes) {
+    if (threads < 1 || chunkBytes < MINIMUM_DOCUMENT_BYTES) {
+      throw new IllegalArgumentException("Invalid threads (" + threads
+        + ") or chunk size (" + chunkBytes + ")");
+    }
+    this.file = file;
+    this.threads = threads;
+    this.chunkBytes = chunkBytes;
+  }
+
+  @Override
+  public long scan(List<AttackAccumulator> accumulators) {
+    long startTime = System.currentTimeMillis();
+    long documentCount = 0;
+    long fileSize;
+    ExecutorService decoders =
+      threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+
+    try (FileChannel channel = FileChannel.open(file)) {
+      fileSize = channel.size();
+      Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+      long position = 0;
+      while (position < fileSize) {
+        final ByteBuffer chunk = nextChunk(channel, position, fileSize);
+        position += chunk.limit();
+
+        if (decoders == null) {
+          documentCount += decode(chunk, accumulators);
+          continue;
+        }
+
+        final List<AttackAccumulator> chunkAccumulators = new ArrayList<>();
+        for (AttackAccumulator prototype : accumulators) {
+          chunkAccumulators.add(prototype.newInstance());
+        }
+        pending.add(decoders.submit(new Callable<ChunkResult>() {
+          @Override
+          public ChunkResult call() {
+            return new ChunkResult(chunkAccumulators,
+              decode(chunk, chunkAccumulators));
+          }
+        }));
+        if (pending.size() >= threads * PENDING_CHUNKS_PER_THREAD) {
+          documentCount += merge(pending.remove(), accumulators);
+        }
+      }
+      while (!pending.isEmpty()) {
+        documentCount += merge(pending.remove(), accumulators);
+      }
+    } catch (IOException ioException) {
+      throw new IllegalStateException("Unable to read dump " + file,
+        ioException);
+    } finally {
+      if (decoders != null) {
+        decoders.shutdownNow();
+      }
+    }
+
+    long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+    LOG.info("Scanned " + documentCount + " attacks (" + fileSize
+      + " bytes) from dump " + file + " in " + elapsed + "ms using "
+      + threads + " threads, " + fileSize / 1024 * 1000 / 1024 / elapsed
+      + "MB/s");
+    return documentCount;
+  }
+
+  /**
+   * Map the next chunk of the file, ending it after the last complete
+   * document it holds.
+   * @param channel
+   *          The open dump file
+   * @param position
+   *          The offset of the chunk, which is the start of a document
+   * @param fileSize
+   *          The size of the file
+   * @return The mapped chunk, its limit being the end of the last document
+   * @throws IOException
+   *           If the file cannot be mapped or a document is truncated
+   */
+  private ByteBuffer nextChunk(FileChannel channel, long position,
+    long fileSize) throws IOException {
+    int size = (int) Math.min(chunkBytes, fileSize - position);
+    ByteBuffer chunk = map(channel, position, size);
+    int end = 0;
+    while (end + 4 <= size) {
+      int length = chunk.getInt(end);
+      if (length < MINIMUM_DOCUMENT_BYTES
+        || position + end + length > fileSize) {
+        throw new IOException("Invalid document length " + length
+          + " at offset " + (position + end) + " in " + file);
+      }
+      if (end + length > size) {
+        if (end == 0) {
+          return map(channel, position, length);
+        }
+        break;
+      }
+      end += length;
+    }
+    if (end == 0) {
+      throw new IOException("Truncated document at offset " + position
+        + " in " + file);
+    }
+    chunk.limit(end);
+    return chunk;
+  }
+
+  /**
+   * Decode every document in a chunk, passing each to the accumulators.
+   * @param chunk
+   *          The chunk, holding complete documents up to its limit
+   * @param accumulators
+   *          The accumulators to receive the attack documents
+   * @return The number of documents decoded
+   */
+  private static long decode(ByteBuffer chunk,
+    List<AttackAccumulator> accumulators) {
+    AttackRecordCodec codec = new AttackRecordCodec();
+    AttackRecord attack = new AttackRecord();
+    long documentCount = 0;
+    int position = 0;
+    while (position < chunk.limit()) {
+      int length = chunk.getInt(position);
+      chunk.position(position);
+
+      /**
+       * The reader reads directly from the mapped chunk, a new reader being
+       * needed for each top level document.
+       */
+      codec.decode(new BsonBinaryReader(chunk), attack);
+      for (AttackAccumulator accumulator : accumulators) {
+        accumulator.accumulate(attack);
+      }
+      position += length;
+      ++documentCount;
+    }
+    return documentCount;
+  }
+
+  /**
+   * Wait for a chunk to be decoded and merge its accumulators.
+   * @param result
+   *          The pending chunk result
+   * @param accumulators
+   *          The accumulators receiving the chunk's results
+   * @return The number of documents in the chunk
+   */
+  private long merge(Future<ChunkResult> result,
+    List<AttackAccumulator> accumulators) {
+    ChunkResult chunkResult;
+    try {
+      chunkResult = result.get();
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted reading dump " + file,
+        interruptedException);
+    } catch (ExecutionException executionException) {
+      throw new IllegalStateException("Unable to decode dump " + file,
+        executionException.getCause());
+    }
+    for (int index = 0; index < accumulators.size(); ++index) {
+      accumulators.get(index).merge(chunkResult.accumulators.get(index));
+    }
+    return chunkResult.documentCount;
+  }
+
+  /**
+   * Map a region of the dump file.
+   * @param channel
+   *          The open dump file
+   * @param position
+   *          The offset of the region
+   * @param size
+   *          The size of the region in bytes
+   * @return The mapped buffer, using little endian byte order
+   * @throws IOException
+   *           If the region cannot be mapped
+   */
+  private static ByteBuffer map(FileChannel channel, long position, int size)
+    throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+      .order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * The accumulators and document count produced by decoding one chunk.
+   */
+  private static class ChunkResult {
+    /**
+     * The accumulators holding the results.
+     */
+    private List<AttackAccumulator> accumulators;
+
+    /**
+     * The number of documents decoded.
+     */
+    private long documentCount;
+
+    /**
+     * Create the result.
+     * @param accumulators
+     *          The accumulators holding the results
+     * @param documentCount
+     *          The number of documents decoded
+     */
+    ChunkResult(List<AttackAccumulator> accumulators, long documentCount) {
+      this.accumulators = accumulators;
+      this.documentCount = documentCount;
+    }
+  }
+}
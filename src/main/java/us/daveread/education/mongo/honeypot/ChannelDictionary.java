@@ -0,0 +1,36 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * Assigns a small integer id to each distinct channel (sensor) name. Ids are
+ * allocated sequentially from zero in the order the channels are first seen,
+ * so a channel can be stored as an int and turned back into its name when a
+ * report is produced.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see StringDictionary
+ */
+public class ChannelDictionary extends StringDictionary {
+  /**
+   * Get the channel name for an id.
+   * @param channelId
+   *          The channel id
+   * @return The channel name
+   */
+  public String getChannel(int channelId) {
+    return getValue(channelId);
+  }
+}
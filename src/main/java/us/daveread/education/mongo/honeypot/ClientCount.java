@@ -0,0 +1,112 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * A Javabean for storing client IP mask value, client country code and attack
+ * counts.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class ClientCount implements Comparable<ClientCount> {
+  /**
+   * The client IP mask value.
+   */
+  private int clientIpMask;
+
+  /**
+   * The client's country code.
+   */
+  private String countryCode;
+
+  /**
+   * The number of attacks associated with the client.
+   */
+  private int attackCount;
+
+  /**
+   * Create the instance.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @param attackCount
+   *          The number of attacks
+   * @see #setClientIpMask(int)
+   * @see #setCountryCode(String)
+   * @see #setAttackCount(int)
+   */
+  public ClientCount(int clientIpMask, String countryCode, int attackCount) {
+    setClientIpMask(clientIpMask);
+    setCountryCode(countryCode);
+    setAttackCount(attackCount);
+  }
+
+  /**
+   * Get the client IP mask value.
+   * @return The client IP mask value
+   */
+  public int getClientIpMask() {
+    return clientIpMask;
+  }
+
+  /**
+   * Set the client IP mask value.
+   * @param clientIpMask
+   *          The client IP mask value
+   */
+  public void setClientIpMask(int clientIpMask) {
+    this.clientIpMask = clientIpMask;
+  }
+
+  /**
+   * Get the client's country code.
+   * @return The country code
+   */
+  public String getCountryCode() {
+    return countryCode;
+  }
+
+  /**
+   * Set the client's country code.
+   * @param countryCode
+   *          The country code
+   */
+  public void setCountryCode(String countryCode) {
+    this.countryCode = countryCode;
+  }
+
+  /**
+   * Get the number of attacks.
+   * @return The number of attacks
+   */
+  public int getAttackCount() {
+    return attackCount;
+  }
+
+  /**
+   * Set the number of attacks.
+   * @param attackCount
+   *          The number of attacks
+   */
+  public void setAttackCount(int attackCount) {
+    this.attackCount = attackCount;
+  }
+
+  @Override
+  public int compareTo(ClientCount o) {
+    return getAttackCount() - o.getAttackCount();
+  }
+}
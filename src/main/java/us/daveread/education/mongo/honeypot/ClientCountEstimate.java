@@ -0,0 +1,68 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * A Javabean for storing an estimated attack count for a client. The attack
+ * count is never less than the true count and exceeds it by at most the
+ * maximum error.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see HeavyHitterAccumulator
+ */
+public class ClientCountEstimate extends ClientCount {
+  /**
+   * The largest amount by which the attack count may exceed the true count.
+   */
+  private int maximumError;
+
+  /**
+   * Create the instance.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @param attackCount
+   *          The estimated number of attacks
+   * @param maximumError
+   *          The largest amount by which the attack count may exceed the true
+   *          count
+   * @see #setMaximumError(int)
+   */
+  public ClientCountEstimate(int clientIpMask, String countryCode,
+    int attackCount, int maximumError) {
+    super(clientIpMask, countryCode, attackCount);
+    this.maximumError = maximumError;
+  }
+
+  /**
+   * Get the largest amount by which the attack count may exceed the true
+   * count.
+   * @return The maximum error
+   */
+  public int getMaximumError() {
+    return maximumError;
+  }
+
+  /**
+   * Set the largest amount by which the attack count may exceed the true
+   * count.
+   * @param maximumError
+   *          The maximum error
+   */
+  public void setMaximumError(int maximumError) {
+    this.maximumError = maximumError;
+  }
+}
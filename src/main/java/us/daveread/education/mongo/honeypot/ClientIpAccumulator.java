@@ -0,0 +1,159 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts attacks by client IP mask value and client country code. The IP mask
+ * value and an id assigned to the country code are packed into a long key
+ * which is counted in a LongIntHashMap, so no objects are allocated for each
+ * attack. The IP mask value occupies the upper 32 bits of the key and the
+ * country id the lower 32 bits.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see LongIntHashMap
+ */
+public class ClientIpAccumulator implements AttackAccumulator {
+  /**
+   * The fields read from each attack document.
+   */
+  private static final List<String> PROJECTED_FIELDS =
+    Arrays.asList("payload.client_ip_mask", "client_country_code");
+
+  /**
+   * The mask for the lower 32 bits of the key.
+   */
+  private static final long COUNTRY_ID_MASK = 0xFFFFFFFFL;
+
+  /**
+   * The attack counts keyed by client IP mask value and country id.
+   */
+  private LongIntHashMap attacksByClient = new LongIntHashMap();
+
+  /**
+   * The ids of the country codes seen.
+   */
+  private StringDictionary countries = new StringDictionary();
+
+  @Override
+  public List<String> getProjectedFields() {
+    return PROJECTED_FIELDS;
+  }
+
+  @Override
+  public void accumulate(AttackRecord attack) {
+    attacksByClient.increment(
+      key(attack.getClientIpMask(), attack.getClientCountryCode()));
+  }
+
+  /**
+   * Add an attack count for a client.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @param attackCount
+   *          The number of attacks to add
+   */
+  public void add(int clientIpMask, String countryCode, int attackCount) {
+    attacksByClient.add(key(clientIpMask, countryCode), attackCount);
+  }
+
+  /**
+   * Create the key for a client.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @return The packed key
+   */
+  private long key(int clientIpMask, String countryCode) {
+    return ((long) clientIpMask << 32)
+      | (countries.intern(countryCode) & COUNTRY_ID_MASK);
+  }
+
+  @Override
+  public AttackAccumulator newInstance() {
+    return new ClientIpAccumulator();
+  }
+
+  /**
+   * Add the counts from another accumulator. The other accumulator assigned
+   * its own country ids so each key is translated into this accumulator's
+   * country ids.
+   * @param other
+   *          The accumulator whose counts are added
+   */
+  @Override
+  public void merge(AttackAccumulator other) {
+    final StringDictionary otherCountries =
+      ((ClientIpAccumulator) other).countries;
+    ((ClientIpAccumulator) other).attacksByClient
+      .forEachEntry(new LongIntHashMap.EntryVisitor() {
+        @Override
+        public void visit(long key, int attackCount) {
+          add((int) (key >>> 32), otherCountries.getValue((int) key),
+            attackCount);
+        }
+      });
+  }
+
+  /**
+   * Get the number of distinct clients seen.
+   * @return The number of distinct client IP mask and country pairs
+   */
+  public int getDistinctClientCount() {
+    return attacksByClient.size();
+  }
+
+  /**
+   * Get the attack count for each client. The list is not sorted.
+   * @return The clients and their attack counts
+   */
+  public List<ClientCount> getClientCounts() {
+    final List<ClientCount> clientCounts =
+      new ArrayList<>(attacksByClient.size());
+    attacksByClient.forEachEntry(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int attackCount) {
+        clientCounts.add(new ClientCount((int) (key >>> 32),
+          countries.getValue((int) key), attackCount));
+      }
+    });
+    return clientCounts;
+  }
+
+  /**
+   * Get the clients with the most attacks. Only the requested number of
+   * ClientCount instances are kept while the clients are ranked.
+   * @param limit
+   *          The number of clients wanted
+   * @return The clients with the most attacks, largest first
+   */
+  public List<ClientCount> getTopClients(int limit) {
+    final TopK<ClientCount> topClients = new TopK<>(limit);
+    attacksByClient.forEachEntry(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int attackCount) {
+        topClients.offer(new ClientCount((int) (key >>> 32),
+          countries.getValue((int) key), attackCount));
+      }
+    });
+    return topClients.getTopItems();
+  }
+}
@@ -0,0 +1,185 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * Estimates how often each key occurs in a stream using a fixed amount of
+ * memory. The sketch is a table of counters with one row for each of several
+ * hash functions. Adding a key increments one counter in each row and the
+ * estimate for a key is the smallest of its counters. Other keys sharing a
+ * counter can only increase it, so the estimate is never too small. With a
+ * width of w and a depth of d the estimate exceeds the true count by more
+ * than (e / w) times the total count with a probability of at most e^-d.
+ * <p>
+ * Sketches with the same width and depth use the same hash functions and can
+ * be merged by adding their counters.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see SpaceSaving
+ */
+public class CountMinSketch {
+  /**
+   * The number of counters in each row.
+   */
+  private int width;
+
+  /**
+   * The number of rows.
+   */
+  private int depth;
+
+  /**
+   * The counters, row by row.
+   */
+  private long[] counters;
+
+  /**
+   * The sum of the counts added.
+   */
+  private long totalCount;
+
+  /**
+   * Create an empty sketch.
+   * @param width
+   *          The number of counters in each row
+   * @param depth
+   *          The number of rows
+   */
+  public CountMinSketch(int width, int depth) {
+    if (width < 1 || depth < 1) {
+      throw new IllegalArgumentException(
+        "The width and depth must be positive: " + width + "x" + depth);
+    }
+    this.width = width;
+    this.depth = depth;
+    counters = new long[width * depth];
+  }
+
+  /**
+   * Create a sketch with a given error bound.
+   * @param epsilon
+   *          The largest error wanted, as a fraction of the total count
+   * @param delta
+   *          The probability that the error is larger than epsilon
+   * @return The sketch
+   */
+  public static CountMinSketch forError(double epsilon, double delta) {
+    return new CountMinSketch((int) Math.ceil(Math.E / epsilon),
+      (int) Math.ceil(Math.log(1 / delta)));
+  }
+
+  /**
+   * Find a key's counter in a row. The row hashes are formed from two halves
+   * of one 64 bit hash.
+   * @param hash
+   *          The hash of the key
+   * @param row
+   *          The row
+   * @return The index of the counter
+   */
+  private int counter(long hash, int row) {
+    int combined = (int) hash + row * (int) (hash >>> 32);
+    return row * width + (combined & Integer.MAX_VALUE) % width;
+  }
+
+  /**
+   * Add to the count for a key.
+   * @param key
+   *          The key
+   * @param count
+   *          The amount to add, must not be negative
+   */
+  public void add(long key, long count) {
+    long hash = Hashing.hash(key);
+    for (int row = 0; row < depth; ++row) {
+      counters[counter(hash, row)] += count;
+    }
+    totalCount += count;
+  }
+
+  /**
+   * Estimate the count for a key.
+   * @param key
+   *          The key
+   * @return The estimated count, never less than the true count
+   */
+  public long estimate(long key) {
+    long hash = Hashing.hash(key);
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; ++row) {
+      estimate = Math.min(estimate, counters[counter(hash, row)]);
+    }
+    return estimate;
+  }
+
+  /**
+   * Add the counts from another sketch to this one.
+   * @param other
+   *          The sketch to add, which must have the same width and depth
+   */
+  public void merge(CountMinSketch other) {
+    if (other.width != width || other.depth != depth) {
+      throw new IllegalArgumentException("Cannot merge a " + other.width
+        + "x" + other.depth + " sketch into a " + width + "x" + depth
+        + " sketch");
+    }
+    for (int index = 0; index < counters.length; ++index) {
+      counters[index] += other.counters[index];
+    }
+    totalCount += other.totalCount;
+  }
+
+  /**
+   * Get the largest amount by which an estimate is expected to exceed the
+   * true count.
+   * @return The error bound, (e / width) times the total count
+   * @see #getConfidence()
+   */
+  public long getErrorBound() {
+    return (long) Math.ceil(Math.E / width * totalCount);
+  }
+
+  /**
+   * Get the probability that an estimate is within the error bound.
+   * @return The probability, 1 - e^-depth
+   */
+  public double getConfidence() {
+    return 1 - Math.exp(-depth);
+  }
+
+  /**
+   * Get the number of counters in each row.
+   * @return The width
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Get the number of rows.
+   * @return The depth
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Get the sum of the counts added.
+   * @return The total count
+   */
+  public long getTotalCount() {
+    return totalCount;
+  }
+}
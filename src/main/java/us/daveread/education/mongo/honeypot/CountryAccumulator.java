@@ -0,0 +1,86 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts attacks by client country code. Each attack document is read and a
+ * CountryCodeCounter is used to keep a count of matches by country code
+ * without allocating objects for each attack.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see CountryCodeCounter
+ */
+public class CountryAccumulator implements AttackAccumulator {
+  /**
+   * The fields read from each attack document.
+   */
+  private static final List<String> PROJECTED_FIELDS =
+    Arrays.asList("client_country_code");
+
+  /**
+   * The attack counts by country code.
+   */
+  private CountryCodeCounter attacksByCountry = new CountryCodeCounter();
+
+  @Override
+  public List<String> getProjectedFields() {
+    return PROJECTED_FIELDS;
+  }
+
+  @Override
+  public void accumulate(AttackRecord attack) {
+    attacksByCountry.increment(attack.getClientCountryCode());
+  }
+
+  /**
+   * Add an attack count for a country.
+   * @param countryCode
+   *          The country code
+   * @param attackCount
+   *          The number of attacks to add
+   */
+  public void add(String countryCode, int attackCount) {
+    attacksByCountry.add(countryCode, attackCount);
+  }
+
+  @Override
+  public AttackAccumulator newInstance() {
+    return new CountryAccumulator();
+  }
+
+  @Override
+  public void merge(AttackAccumulator other) {
+    attacksByCountry.merge(((CountryAccumulator) other).attacksByCountry);
+  }
+
+  /**
+   * Get the number of distinct countries seen.
+   * @return The number of distinct country codes
+   */
+  public int getDistinctCountryCount() {
+    return attacksByCountry.getDistinctCount();
+  }
+
+  /**
+   * Get the attack count for each country. The list is not sorted.
+   * @return The country codes and their attack counts
+   */
+  public List<CountryCount> getCountryCounts() {
+    return attacksByCountry.toCountryCounts();
+  }
+}
@@ -0,0 +1,182 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts occurrences of country codes without allocating objects for each
+ * occurrence. Country codes are two upper case letters so the counts are held
+ * in a dense array indexed by the letters. Any code which does not fit this
+ * form (e.g. null or a placeholder such as "--") is counted in a small
+ * overflow map whose values are mutable counters.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class CountryCodeCounter {
+  /**
+   * The number of letters available for each character of the code.
+   */
+  private static final int LETTERS = 26;
+
+  /**
+   * The counts for the two letter codes, indexed by
+   * (first letter * 26 + second letter).
+   */
+  private int[] counts = new int[LETTERS * LETTERS];
+
+  /**
+   * The counts for codes which are not two upper case letters. Each value is
+   * a single element array so it can be updated in place.
+   */
+  private Map<String, int[]> overflowCounts = new HashMap<>();
+
+  /**
+   * The number of distinct codes counted.
+   */
+  private int distinctCount;
+
+  /**
+   * Get the array index for a country code.
+   * @param countryCode
+   *          The country code
+   * @return The index, or -1 if the code is not two upper case letters
+   */
+  private static int index(String countryCode) {
+    if (countryCode == null || countryCode.length() != 2) {
+      return -1;
+    }
+    int first = countryCode.charAt(0) - 'A';
+    int second = countryCode.charAt(1) - 'A';
+    if (first < 0 || first >= LETTERS || second < 0 || second >= LETTERS) {
+      return -1;
+    }
+    return first * LETTERS + second;
+  }
+
+  /**
+   * Add one to the count for a country code.
+   * @param countryCode
+   *          The country code
+   */
+  public void increment(String countryCode) {
+    add(countryCode, 1);
+  }
+
+  /**
+   * Add an amount to the count for a country code. Counts only grow, so an
+   * amount of zero or less is ignored and does not make the country code
+   * distinct.
+   * @param countryCode
+   *          The country code
+   * @param amount
+   *          The amount to add
+   */
+  public void add(String countryCode, int amount) {
+    if (amount <= 0) {
+      return;
+    }
+    int index = index(countryCode);
+    if (index >= 0) {
+      if (counts[index] == 0) {
+        ++distinctCount;
+      }
+      counts[index] += amount;
+    } else {
+      int[] count = overflowCounts.get(countryCode);
+      if (count == null) {
+        count = new int[1];
+        overflowCounts.put(countryCode, count);
+        ++distinctCount;
+      }
+      count[0] += amount;
+    }
+  }
+
+  /**
+   * Add the counts from another counter into this one.
+   * @param other
+   *          The counter whose counts are added
+   */
+  public void merge(CountryCodeCounter other) {
+    for (int index = 0; index < counts.length; ++index) {
+      if (other.counts[index] != 0) {
+        if (counts[index] == 0) {
+          ++distinctCount;
+        }
+        counts[index] += other.counts[index];
+      }
+    }
+    for (Map.Entry<String, int[]> entry : other.overflowCounts.entrySet()) {
+      add(entry.getKey(), entry.getValue()[0]);
+    }
+  }
+
+  /**
+   * Get the count for a country code.
+   * @param countryCode
+   *          The country code
+   * @return The count, zero if the code has not been seen
+   */
+  public int get(String countryCode) {
+    int index = index(countryCode);
+    if (index >= 0) {
+      return counts[index];
+    }
+    int[] count = overflowCounts.get(countryCode);
+    return count == null ? 0 : count[0];
+  }
+
+  /**
+   * Get the number of distinct country codes counted.
+   * @return The number of distinct country codes
+   */
+  public int getDistinctCount() {
+    return distinctCount;
+  }
+
+  /**
+   * Create a CountryCount instance for each country code counted. The two
+   * letter codes are listed alphabetically, followed by any other codes.
+   * @return The country codes and their counts
+   */
+  public List<CountryCount> toCountryCounts() {
+    List<CountryCount> countryCounts = new ArrayList<>(distinctCount);
+    for (int index = 0; index < counts.length; ++index) {
+      if (counts[index] != 0) {
+        countryCounts.add(new CountryCount(countryCode(index), counts[index]));
+      }
+    }
+    for (Map.Entry<String, int[]> entry : overflowCounts.entrySet()) {
+      countryCounts.add(new CountryCount(entry.getKey(), entry.getValue()[0]));
+    }
+    return countryCounts;
+  }
+
+  /**
+   * Get the country code for an array index.
+   * @param index
+   *          The array index
+   * @return The country code
+   */
+  private static String countryCode(int index) {
+    return new String(new char[] {
+        (char) ('A' + index / LETTERS), (char) ('A' + index % LETTERS)
+    });
+  }
+}
@@ -0,0 +1,176 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+
+/**
+ * Manages an index holding every field projected by a set of accumulators so
+ * that the scan feeding them can be answered from the index alone (a covered
+ * query) without reading the attack documents. The keys follow the order of
+ * the accumulators' projected fields, for example
+ * { client_country_code: 1, payload.server_ip_mask: 1, channel: 1 } for the
+ * coded country and server/channel reports.
+ * <p>
+ * Whether the server actually covers the query is checked with the explain
+ * command in queryPlanner mode, which chooses the plan without running it:
+ * the scan is covered when the winning plan has no FETCH stage. Some servers
+ * cannot cover queries on fields inside subdocuments, such as the payload
+ * fields, in which case the index is still used but the documents are read.
+ * <p>
+ * The keys are the union of the fields of every accumulator in the scan, so
+ * each combination of reports has its own index. Turning on the approximate
+ * counts, the heavy hitters or the external group-by adds their fields and
+ * builds another large compound index. Indexes built for combinations which
+ * are no longer used are not dropped automatically and should be dropped
+ * with db.collection.dropIndex() to save their space and write cost.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackScanner
+ */
+public class CoveringIndex {
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(CoveringIndex.class);
+
+  /**
+   * The database containing the attack collection.
+   */
+  private MongoDatabase database;
+
+  /**
+   * The name of the attack collection.
+   */
+  private String collectionName;
+
+  /**
+   * The index keys.
+   */
+  private Document keys;
+
+  /**
+   * Create the instance for a set of accumulators.
+   * @param database
+   *          The database containing the attack collection
+   * @param collectionName
+   *          The name of the attack collection
+   * @param accumulators
+   *          The accumulators whose projected fields are indexed
+   */
+  public CoveringIndex(MongoDatabase database, String collectionName,
+    List<AttackAccumulator> accumulators) {
+    this.database = database;
+    this.collectionName = collectionName;
+    this.keys = indexKeys(accumulators);
+  }
+
+  /**
+   * Create the index keys holding every field projected by the accumulators,
+   * in the order the fields are declared.
+   * @param accumulators
+   *          The accumulators
+   * @return The index keys
+   */
+  public static Document indexKeys(List<AttackAccumulator> accumulators) {
+    Document indexKeys = new Document();
+    for (AttackAccumulator accumulator : accumulators) {
+      for (String field : accumulator.getProjectedFields()) {
+        indexKeys.append(field, 1);
+      }
+    }
+    return indexKeys;
+  }
+
+  /**
+   * Get the index keys, used as the hint for the scan.
+   * @return The index keys
+   */
+  public Document getKeys() {
+    return keys;
+  }
+
+  /**
+   * Create the index if it does not already exist. Building the index on a
+   * large collection takes some time but is only done once.
+   * @return The name of the index
+   */
+  public String ensureIndex() {
+    String name = database.getCollection(collectionName).createIndex(keys,
+      new IndexOptions().background(true));
+    LOG.info("Covering index " + name + " " + keys.toJson() + " on "
+      + collectionName);
+    return name;
+  }
+
+  /**
+   * Check, using the explain command, whether a scan of the whole collection
+   * with the accumulators' projection is answered from the index alone. The
+   * query is only planned, not run, so the check does not read the index.
+   * @param projection
+   *          The projection used by the scan, which must exclude _id
+   * @return True if the winning plan does not fetch the documents
+   */
+  public boolean isCovered(Document projection) {
+    Document explain = database.runCommand(new Document("explain",
+      new Document("find", collectionName).append("filter", new Document())
+        .append("projection", projection).append("hint", keys))
+          .append("verbosity", "queryPlanner"),
+      database.getReadPreference());
+    Document winningPlan = (Document) ((Document) explain.get("queryPlanner"))
+      .get("winningPlan");
+    boolean covered = !hasStage(winningPlan, "FETCH");
+    LOG.info("Scan of " + collectionName + " using " + keys.toJson()
+      + (covered ? " is" : " is not") + " covered by the index");
+    return covered;
+  }
+
+  /**
+   * Check whether a query plan, or any of its input stages, is a given
+   * stage.
+   * @param plan
+   *          The plan, as found in the explain result's winningPlan
+   * @param stage
+   *          The stage name, for example FETCH
+   * @return True if the stage appears in the plan
+   */
+  public static boolean hasStage(Document plan, String stage) {
+    if (plan == null) {
+      return false;
+    }
+    if (stage.equals(plan.getString("stage"))) {
+      return true;
+    }
+    if (hasStage((Document) plan.get("inputStage"), stage)) {
+      return true;
+    }
+    Object inputStages = plan.get("inputStages");
+    if (inputStages instanceof List) {
+      for (Object inputStage : (List<?>) inputStages) {
+        if (hasStage((Document) inputStage, stage)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,185 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Counts the distinct values of a field in a collection without retaining the
+ * documents. The work is pushed to the server where possible, either with the
+ * distinct command or with an aggregation pipeline that groups on the field
+ * and then counts the groups. If neither is available the documents are
+ * streamed to the client and only the distinct values are kept. Missing and
+ * null values are not counted.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class DistinctCounter {
+  /**
+   * The ways in which the distinct count can be computed.
+   */
+  public enum Mode {
+    /**
+     * Use the distinct command. Only the distinct values are sent to the
+     * client, but the server reply is limited to the maximum document size.
+     */
+    SERVER_DISTINCT,
+
+    /**
+     * Use an aggregation pipeline which groups on the field and then counts
+     * the groups. Only a single document is sent to the client.
+     */
+    SERVER_GROUP,
+
+    /**
+     * Stream the field from every document to the client and keep a set of
+     * the distinct values.
+     */
+    CLIENT_STREAM,
+
+    /**
+     * Try the distinct command, then the aggregation pipeline and finally
+     * client side streaming, using the first one that the server does not
+     * reject. Only command errors, such as a distinct reply exceeding the
+     * maximum document size, fall through; any other failure is thrown.
+     */
+    AUTO
+  }
+
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(DistinctCounter.class);
+
+  /**
+   * The collection containing the documents.
+   */
+  private MongoCollection<Document> collection;
+
+  /**
+   * Create the instance.
+   * @param collection
+   *          The collection containing the documents
+   */
+  public DistinctCounter(MongoCollection<Document> collection) {
+    this.collection = collection;
+  }
+
+  /**
+   * Count the distinct values of a field.
+   * @param field
+   *          The field, nested fields use dot notation. Client side streaming
+   *          supports the fields held by AttackRecord.
+   * @param valueClass
+   *          The type of the field values, used when decoding the reply from
+   *          the distinct command
+   * @param mode
+   *          The way in which the count is computed
+   * @return The number of distinct values
+   */
+  public int count(String field, Class<?> valueClass, Mode mode) {
+    switch (mode) {
+      case SERVER_DISTINCT:
+        return countUsingDistinct(field, valueClass);
+      case SERVER_GROUP:
+        return countUsingGroup(field);
+      case CLIENT_STREAM:
+        return countUsingStream(field);
+      default:
+        try {
+          return countUsingDistinct(field, valueClass);
+        } catch (MongoCommandException distinctException) {
+          LOG.warn("Distinct command failed for " + field
+            + ", trying aggregation", distinctException);
+        }
+        try {
+          return countUsingGroup(field);
+        } catch (MongoCommandException groupException) {
+          LOG.warn("Aggregation failed for " + field
+            + ", streaming to the client", groupException);
+        }
+        return countUsingStream(field);
+    }
+  }
+
+  /**
+   * Count the distinct values using the distinct command. The values are
+   * iterated and counted rather than being collected.
+   * @param field
+   *          The field
+   * @param valueClass
+   *          The type of the field values
+   * @return The number of distinct values
+   */
+  private int countUsingDistinct(String field, Class<?> valueClass) {
+    int distinctCount = 0;
+    for (Object value : ReportTuning.getInstance().tune(
+      ReportTuning.DISTINCT_COUNT, collection.distinct(field, valueClass))) {
+      if (value != null) {
+        ++distinctCount;
+      }
+    }
+    return distinctCount;
+  }
+
+  /**
+   * Count the distinct values using an aggregation pipeline matching the
+   * following JSON:
+   * 
+   * <pre>
+   * db.collection.aggregate( [ 
+   *  { "$match": { "field": { "$ne": null } } }, 
+   *  { "$group": { "_id": "$field" } }, 
+   *  { "$group": { "_id": null, "count": { "$sum": 1 } } } 
+   * ], { allowDiskUse: true })
+   * </pre>
+   * 
+   * The allowDiskUse, batchSize and maxTime options are taken from the
+   * distinctCount report tuning.
+   * 
+   * @param field
+   *          The field
+   * @return The number of distinct values
+   */
+  private int countUsingGroup(String field) {
+    Document result = ReportTuning.getInstance()
+      .tune(ReportTuning.DISTINCT_COUNT,
+        collection.aggregate(ReportPipelines.distinctCount(field)))
+      .first();
+    return result == null ? 0 : result.getInteger("count");
+  }
+
+  /**
+   * Count the distinct values by streaming the field to the client.
+   * @param field
+   *          The field
+   * @return The number of distinct values
+   */
+  private int countUsingStream(String field) {
+    DistinctValueAccumulator accumulator = new DistinctValueAccumulator(field);
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(accumulator);
+    new AttackScanner(collection).scan(accumulators);
+    return accumulator.getDistinctCount();
+  }
+}
@@ -0,0 +1,83 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks the distinct values of a single field as attack documents stream
+ * past. Only the distinct values are retained, so memory use depends on the
+ * number of distinct values rather than the number of documents read. Missing
+ * and null values are not counted.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class DistinctValueAccumulator implements AttackAccumulator {
+  /**
+   * The field whose distinct values are tracked, in dot notation.
+   */
+  private String field;
+
+  /**
+   * The distinct values seen.
+   */
+  private Set<Object> values = new HashSet<>();
+
+  /**
+   * Create the instance.
+   * @param field
+   *          The field whose distinct values are tracked, nested fields use
+   *          dot notation (e.g. payload.client_ip_mask). This must be one of
+   *          the fields held by AttackRecord.
+   * @see AttackRecord#getValue(String)
+   */
+  public DistinctValueAccumulator(String field) {
+    this.field = field;
+  }
+
+  @Override
+  public List<String> getProjectedFields() {
+    return Arrays.asList(field);
+  }
+
+  @Override
+  public void accumulate(AttackRecord attack) {
+    Object value = attack.getValue(field);
+    if (value != null) {
+      values.add(value);
+    }
+  }
+
+  @Override
+  public AttackAccumulator newInstance() {
+    return new DistinctValueAccumulator(field);
+  }
+
+  @Override
+  public void merge(AttackAccumulator other) {
+    values.addAll(((DistinctValueAccumulator) other).values);
+  }
+
+  /**
+   * Get the number of distinct values seen.
+   * @return The number of distinct values
+   */
+  public int getDistinctCount() {
+    return values.size();
+  }
+}
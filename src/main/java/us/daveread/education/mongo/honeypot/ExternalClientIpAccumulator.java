@@ -0,0 +1,170 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts attacks by client IP mask value and client country code within a
+ * fixed memory budget, however many clients there are. The keys are packed
+ * as in ClientIpAccumulator and counted by an ExternalGroupBy, which spills
+ * its counts to disk when the budget is reached. Each partition of a parallel
+ * scan has its own group-by, sharing the budget of the accumulator it was
+ * created from.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ExternalGroupBy
+ * @see ClientIpAccumulator
+ */
+public class ExternalClientIpAccumulator implements AttackAccumulator,
+  Closeable {
+  /**
+   * The fields read from each attack document.
+   */
+  private static final List<String> PROJECTED_FIELDS =
+    Arrays.asList("payload.client_ip_mask", "client_country_code");
+
+  /**
+   * The mask for the lower 32 bits of the key.
+   */
+  private static final long COUNTRY_ID_MASK = 0xFFFFFFFFL;
+
+  /**
+   * The attack counts keyed by client IP mask value and country id.
+   */
+  private ExternalGroupBy attacksByClient;
+
+  /**
+   * The ids of the country codes seen.
+   */
+  private StringDictionary countries = new StringDictionary();
+
+  /**
+   * Create the instance.
+   * @param attacksByClient
+   *          The empty group-by counting the attacks
+   */
+  public ExternalClientIpAccumulator(ExternalGroupBy attacksByClient) {
+    this.attacksByClient = attacksByClient;
+  }
+
+  @Override
+  public List<String> getProjectedFields() {
+    return PROJECTED_FIELDS;
+  }
+
+  @Override
+  public void accumulate(AttackRecord attack) {
+    attacksByClient.increment(
+      key(attack.getClientIpMask(), attack.getClientCountryCode()));
+  }
+
+  /**
+   * Create the key for a client.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @return The packed key
+   */
+  private long key(int clientIpMask, String countryCode) {
+    return ((long) clientIpMask << 32)
+      | (countries.intern(countryCode) & COUNTRY_ID_MASK);
+  }
+
+  @Override
+  public AttackAccumulator newInstance() {
+    return new ExternalClientIpAccumulator(attacksByClient.newInstance());
+  }
+
+  /**
+   * Add the counts from another accumulator, translating its country ids
+   * into this accumulator's. The other accumulator is closed afterwards,
+   * deleting its spill files.
+   * @param other
+   *          The accumulator whose counts are added
+   */
+  @Override
+  public void merge(AttackAccumulator other) {
+    final ExternalClientIpAccumulator otherClients =
+      (ExternalClientIpAccumulator) other;
+    try {
+      otherClients.attacksByClient.forEachGroup(
+        new ExternalGroupBy.GroupVisitor() {
+          @Override
+          public void visit(long key, long attackCount) {
+            attacksByClient.add(key((int) (key >>> 32),
+              otherClients.countries.getValue((int) key)),
+              Math.toIntExact(attackCount));
+          }
+        });
+    } finally {
+      otherClients.close();
+    }
+  }
+
+  /**
+   * Get the number of spill files written while counting.
+   * @return The number of spills
+   */
+  public int getSpillCount() {
+    return attacksByClient.getSpillCount();
+  }
+
+  /**
+   * Get the number of distinct clients seen. The spilled counts are read to
+   * find the number.
+   * @return The number of distinct client IP mask and country pairs
+   */
+  public long getDistinctClientCount() {
+    final long[] distinctClients = new long[1];
+    attacksByClient.forEachGroup(new ExternalGroupBy.GroupVisitor() {
+      @Override
+      public void visit(long key, long attackCount) {
+        ++distinctClients[0];
+      }
+    });
+    return distinctClients[0];
+  }
+
+  /**
+   * Get the clients with the most attacks. Only the requested number of
+   * ClientCount instances are kept while the clients are ranked.
+   * @param limit
+   *          The number of clients wanted
+   * @return The clients with the most attacks, largest first
+   */
+  public List<ClientCount> getTopClients(int limit) {
+    final TopK<ClientCount> topClients = new TopK<>(limit);
+    attacksByClient.forEachGroup(new ExternalGroupBy.GroupVisitor() {
+      @Override
+      public void visit(long key, long attackCount) {
+        topClients.offer(new ClientCount((int) (key >>> 32),
+          countries.getValue((int) key), Math.toIntExact(attackCount)));
+      }
+    });
+    return topClients.getTopItems();
+  }
+
+  /**
+   * Delete the spill files.
+   */
+  @Override
+  public void close() {
+    attacksByClient.close();
+  }
+}
@@ -0,0 +1,752 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Counts occurrences of long keys using a bounded amount of memory, however
+ * many distinct keys there are. The counts are kept in a LongIntHashMap which
+ * starts small and doubles while the memory budget allows. When the map is
+ * full and cannot grow its entries are split into partitions by a hash of the
+ * key, each partition is sorted by key, and the partitions are written one
+ * after another to a spill file of key and count pairs. The map is then
+ * emptied and counting continues.
+ * <p>
+ * The group-bys created by newInstance(), e.g. for the partitions of a
+ * parallel scan, share the memory budget with the group-by they were created
+ * from, so the budget bounds the memory used by all of them together. Each
+ * group-by may hold a small map (about 17KB) even when the budget is used up,
+ * and a map being doubled is briefly held at both sizes. Closing a group-by
+ * releases its map and its share of the budget.
+ * <p>
+ * The groups are read back one partition at a time. A partition's sorted runs,
+ * one from each spill file and one from the entries still in memory, are
+ * merged in key order, the counts of equal keys being added together. At most
+ * MERGE_FAN_IN runs are merged at once, so when there are more spill files
+ * they are first merged, MERGE_FAN_IN at a time, into larger spill files until
+ * few enough remain. Only a buffer per run is held while merging, and the
+ * buffers are charged to the memory budget while they are held. If nothing
+ * was spilled the groups are read directly from the map.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see LongIntHashMap
+ */
+public class ExternalGroupBy implements Closeable {
+  /**
+   * Receives the groups.
+   */
+  public interface GroupVisitor {
+    /**
+     * Receive a group.
+     * @param key
+     *          The key
+     * @param count
+     *          The total count for the key
+     */
+    void visit(long key, long count);
+  }
+
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(ExternalGroupBy.class);
+
+  /**
+   * The bytes used for each slot of the map: a long key, an int count and a
+   * used flag, plus half a long for the keys sorted when spilling, since the
+   * map is spilled when half of its slots are used and the keys are sorted in
+   * a single array.
+   */
+  private static final int BYTES_PER_SLOT = 8 + 4 + 1 + 4;
+
+  /**
+   * The smallest number of slots allowed by a budget.
+   */
+  private static final int MINIMUM_SLOTS = 16;
+
+  /**
+   * The number of slots in the map when it is first allocated.
+   */
+  private static final int INITIAL_SLOTS = 1024;
+
+  /**
+   * The bytes in each key and count pair in a spill file.
+   */
+  private static final int BYTES_PER_ENTRY = 8 + 4;
+
+  /**
+   * The size of the buffer used to write a spill file or read a run.
+   */
+  private static final int BUFFER_BYTES = 64 * 1024;
+
+  /**
+   * The largest number of runs merged at once, which bounds the spill files
+   * open and the read buffers held while merging.
+   */
+  private static final int MERGE_FAN_IN = 16;
+
+  /**
+   * The memory budget shared with the group-bys created by newInstance().
+   */
+  private MemoryBudget budget;
+
+  /**
+   * The number of partitions the keys are split into.
+   */
+  private int partitionCount;
+
+  /**
+   * The directory receiving the spill files.
+   */
+  private Path spillDirectory;
+
+  /**
+   * The number of slots in a map using the whole budget.
+   */
+  private int budgetSlots;
+
+  /**
+   * The number of slots in the map, 0 if it is not allocated.
+   */
+  private int slots;
+
+  /**
+   * The counts not yet spilled, null until the first key is added and after
+   * the group-by is closed.
+   */
+  private LongIntHashMap counts;
+
+  /**
+   * The spill files, in the order they were written.
+   */
+  private List<Path> spillFiles = new ArrayList<>();
+
+  /**
+   * The offset of each partition in each spill file, with a final entry
+   * holding the file's length.
+   */
+  private List<long[]> spillOffsets = new ArrayList<>();
+
+  /**
+   * The number of times the counts held in memory were spilled.
+   */
+  private int spillCount;
+
+  /**
+   * Create the instance.
+   * @param memoryBytes
+   *          The memory used for the counts held in memory, about 34 bytes
+   *          per key, shared with the group-bys created by newInstance()
+   * @param partitionCount
+   *          The number of partitions the keys are split into
+   * @param spillDirectory
+   *          The directory receiving the spill files
+   */
+  public ExternalGroupBy(long memoryBytes, int partitionCount,
+    Path spillDirectory) {
+    this(new MemoryBudget(memoryBytes), partitionCount, spillDirectory);
+  }
+
+  /**
+   * Create the instance.
+   * @param budget
+   *          The memory budget
+   * @param partitionCount
+   *          The number of partitions the keys are split into
+   * @param spillDirectory
+   *          The directory receiving the spill files
+   */
+  private ExternalGroupBy(MemoryBudget budget, int partitionCount,
+    Path spillDirectory) {
+    if (partitionCount < 1) {
+      throw new IllegalArgumentException("The number of partitions must be "
+        + "at least 1: " + partitionCount);
+    }
+    long budgetLimit = Math.min(Math.max(budget.getTotalBytes()
+      / BYTES_PER_SLOT, MINIMUM_SLOTS), 1 << 30);
+    this.budgetSlots = (int) Long.highestOneBit(budgetLimit);
+    this.budget = budget;
+    this.partitionCount = partitionCount;
+    this.spillDirectory = spillDirectory;
+  }
+
+  /**
+   * Create an empty group-by with the same partitions and spill directory,
+   * sharing this group-by's memory budget.
+   * @return The new, empty group-by
+   */
+  public ExternalGroupBy newInstance() {
+    return new ExternalGroupBy(budget, partitionCount, spillDirectory);
+  }
+
+  /**
+   * Add one to the count for a key.
+   * @param key
+   *          The key
+   */
+  public void increment(long key) {
+    add(key, 1);
+  }
+
+  /**
+   * Add to the count for a key, spilling the counts held in memory first if
+   * there is no room for a new key.
+   * @param key
+   *          The key
+   * @param amount
+   *          The amount to add
+   */
+  public void add(long key, int amount) {
+    if (counts == null) {
+      slots = Math.min(INITIAL_SLOTS, budgetSlots);
+      budget.reserve((long) slots * BYTES_PER_SLOT, true);
+      counts = new LongIntHashMap(slots / 2);
+    } else if (counts.size() >= slots / 2 && counts.get(key) == 0
+      && !grow()) {
+      spill();
+    }
+    counts.add(key, amount);
+  }
+
+  /**
+   * Double the map if the budget has room for it.
+   * @return False if the map was not doubled
+   */
+  private boolean grow() {
+    if (slots >= budgetSlots
+      || !budget.reserve((long) slots * BYTES_PER_SLOT, false)) {
+      return false;
+    }
+    final LongIntHashMap grown = new LongIntHashMap(slots);
+    counts.forEachEntry(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int count) {
+        grown.add(key, count);
+      }
+    });
+    counts = grown;
+    slots *= 2;
+    return true;
+  }
+
+  /**
+   * Get the number of times the counts held in memory were spilled to a
+   * file. Spill files merged together before reading the groups still count
+   * separately.
+   * @return The number of spills
+   */
+  public int getSpillCount() {
+    return spillCount;
+  }
+
+  /**
+   * Get the number of keys which can be held in memory by a group-by using
+   * the whole budget.
+   * @return The number of keys
+   */
+  public int getMaximumEntries() {
+    return budgetSlots / 2;
+  }
+
+  /**
+   * Write the counts held in memory to a new spill file, partitioned and
+   * sorted, and empty the map.
+   */
+  private void spill() {
+    final int[] partitionStarts = new int[partitionCount + 1];
+    final long[] keys = partitionKeys(partitionStarts);
+    final long[] offsets = new long[partitionCount + 1];
+    final Path spillFile = newSpillFile();
+    budget.reserve(BUFFER_BYTES, true);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      Files.newOutputStream(spillFile), BUFFER_BYTES))) {
+      for (int partition = 0; partition < partitionCount; ++partition) {
+        for (int index = partitionStarts[partition];
+          index < partitionStarts[partition + 1]; ++index) {
+          out.writeLong(keys[index]);
+          out.writeInt(counts.get(keys[index]));
+        }
+        offsets[partition + 1] = (long) partitionStarts[partition + 1]
+          * BYTES_PER_ENTRY;
+      }
+    } catch (IOException ioException) {
+      deleteSpillFile(spillFile);
+      throw new IllegalStateException("Unable to spill the group counts to "
+        + spillDirectory, ioException);
+    } finally {
+      budget.release(BUFFER_BYTES);
+    }
+    spillFiles.add(spillFile);
+    spillOffsets.add(offsets);
+    ++spillCount;
+    LOG.debug("Spilled " + counts.size() + " groups to " + spillFile);
+    counts.clear();
+  }
+
+  /**
+   * Create a new, empty spill file.
+   * @return The spill file
+   */
+  private Path newSpillFile() {
+    try {
+      return Files.createTempFile(spillDirectory, "groupBy", ".spill");
+    } catch (IOException ioException) {
+      throw new IllegalStateException("Unable to create a spill file in "
+        + spillDirectory, ioException);
+    }
+  }
+
+  /**
+   * Sort the keys held in memory by partition and then by key. A single
+   * array is used, which is the half a long per slot allowed for in
+   * BYTES_PER_SLOT.
+   * @param partitionStarts
+   *          Receives the index of the first key of each partition, with a
+   *          final entry holding the number of keys
+   * @return The sorted keys
+   */
+  private long[] partitionKeys(final int[] partitionStarts) {
+    final long[] keys = new long[counts == null ? 0 : counts.size()];
+    if (counts == null) {
+      return keys;
+    }
+
+    /**
+     * Count the keys in each partition, then copy each key to the next free
+     * index of its partition.
+     */
+    counts.forEachEntry(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int count) {
+        ++partitionStarts[partition(key) + 1];
+      }
+    });
+    for (int partition = 0; partition < partitionCount; ++partition) {
+      partitionStarts[partition + 1] += partitionStarts[partition];
+    }
+    final int[] nextIndex =
+      Arrays.copyOf(partitionStarts, partitionCount);
+    counts.forEachEntry(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int count) {
+        keys[nextIndex[partition(key)]++] = key;
+      }
+    });
+    for (int partition = 0; partition < partitionCount; ++partition) {
+      Arrays.sort(keys, partitionStarts[partition],
+        partitionStarts[partition + 1]);
+    }
+    return keys;
+  }
+
+  /**
+   * Find the partition holding a key.
+   * @param key
+   *          The key
+   * @return The partition
+   */
+  private int partition(long key) {
+    return (int) ((Hashing.hash(key) & Long.MAX_VALUE) % partitionCount);
+  }
+
+  /**
+   * Pass every group to a visitor. Without spills the groups are in no
+   * particular order, otherwise they are in key order within each partition.
+   * The groups can be read more than once.
+   * @param visitor
+   *          The visitor receiving the groups
+   */
+  public void forEachGroup(final GroupVisitor visitor) {
+    if (spillFiles.isEmpty()) {
+      if (counts == null) {
+        return;
+      }
+      counts.forEachEntry(new LongIntHashMap.EntryVisitor() {
+        @Override
+        public void visit(long key, int count) {
+          visitor.visit(key, count);
+        }
+      });
+      return;
+    }
+
+    /**
+     * Leave room in the final merge for the run held in memory.
+     */
+    while (spillFiles.size() >= MERGE_FAN_IN) {
+      mergeSpillFiles(MERGE_FAN_IN);
+    }
+
+    int[] partitionStarts = new int[partitionCount + 1];
+    long[] memoryKeys = partitionKeys(partitionStarts);
+    for (int partition = 0; partition < partitionCount; ++partition) {
+      mergePartition(partition, new MemoryRun(memoryKeys,
+        partitionStarts[partition], partitionStarts[partition + 1]),
+        spillFiles.size(), visitor);
+    }
+  }
+
+  /**
+   * Merge the oldest spill files into a new spill file, partitioned and
+   * sorted like the others, and delete them.
+   * @param fileCount
+   *          The number of spill files merged
+   * @throws ArithmeticException
+   *           If a merged count is too large for a spill file
+   */
+  private void mergeSpillFiles(int fileCount) {
+    final long[] offsets = new long[partitionCount + 1];
+    final Path mergedFile = newSpillFile();
+    boolean merged = false;
+    budget.reserve(BUFFER_BYTES, true);
+    try (DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(Files.newOutputStream(mergedFile),
+        BUFFER_BYTES))) {
+      for (int partition = 0; partition < partitionCount; ++partition) {
+        final int currentPartition = partition;
+        offsets[partition + 1] = offsets[partition];
+        mergePartition(partition, null, fileCount, new GroupVisitor() {
+          @Override
+          public void visit(long key, long count) {
+            try {
+              out.writeLong(key);
+              out.writeInt(Math.toIntExact(count));
+            } catch (IOException ioException) {
+              throw new IllegalStateException("Unable to merge the spill "
+                + "files into " + mergedFile, ioException);
+            }
+            offsets[currentPartition + 1] += BYTES_PER_ENTRY;
+          }
+        });
+      }
+      merged = true;
+    } catch (IOException ioException) {
+      deleteSpillFile(mergedFile);
+      throw new IllegalStateException("Unable to merge the spill files into "
+        + mergedFile, ioException);
+    } finally {
+      budget.release(BUFFER_BYTES);
+      if (!merged) {
+        deleteSpillFile(mergedFile);
+      }
+    }
+
+    for (int spill = 0; spill < fileCount; ++spill) {
+      deleteSpillFile(spillFiles.remove(0));
+      spillOffsets.remove(0);
+    }
+    spillFiles.add(mergedFile);
+    spillOffsets.add(offsets);
+    LOG.debug("Merged " + fileCount + " spill files into " + mergedFile);
+  }
+
+  /**
+   * Merge the sorted runs of one partition, passing each group to a visitor.
+   * The read buffers are charged to the memory budget while the runs are
+   * merged.
+   * @param partition
+   *          The partition
+   * @param memoryRun
+   *          The partition's keys held in memory, null to merge only the
+   *          spill files
+   * @param fileCount
+   *          The number of spill files merged, starting with the oldest
+   * @param visitor
+   *          The visitor receiving the groups
+   */
+  private void mergePartition(int partition, Run memoryRun, int fileCount,
+    GroupVisitor visitor) {
+    PriorityQueue<Run> runs = new PriorityQueue<>();
+    List<FileChannel> channels = new ArrayList<>();
+    long bufferBytes = 0;
+    try {
+      if (memoryRun != null && memoryRun.advance()) {
+        runs.add(memoryRun);
+      }
+      for (int spill = 0; spill < fileCount; ++spill) {
+        long[] offsets = spillOffsets.get(spill);
+        long start = offsets[partition];
+        long end = offsets[partition + 1];
+        if (start == end) {
+          continue;
+        }
+        int runBufferBytes = (int) Math.min(BUFFER_BYTES, end - start);
+        budget.reserve(runBufferBytes, true);
+        bufferBytes += runBufferBytes;
+        FileChannel channel = FileChannel.open(spillFiles.get(spill));
+        channels.add(channel);
+        Run fileRun = new FileRun(channel, start, end, runBufferBytes);
+        if (fileRun.advance()) {
+          runs.add(fileRun);
+        }
+      }
+
+      while (!runs.isEmpty()) {
+        Run run = runs.poll();
+        long key = run.key;
+        long total = run.count;
+        if (run.advance()) {
+          runs.add(run);
+        }
+        while (!runs.isEmpty() && runs.peek().key == key) {
+          run = runs.poll();
+          total += run.count;
+          if (run.advance()) {
+            runs.add(run);
+          }
+        }
+        visitor.visit(key, total);
+      }
+    } catch (IOException ioException) {
+      throw new IllegalStateException("Unable to merge the spilled group "
+        + "counts", ioException);
+    } finally {
+      for (FileChannel channel : channels) {
+        try {
+          channel.close();
+        } catch (IOException ioException) {
+          LOG.warn("Unable to close a spill file", ioException);
+        }
+      }
+      budget.release(bufferBytes);
+    }
+  }
+
+  /**
+   * Delete a spill file, logging any failure.
+   * @param spillFile
+   *          The spill file
+   */
+  private static void deleteSpillFile(Path spillFile) {
+    try {
+      Files.deleteIfExists(spillFile);
+    } catch (IOException ioException) {
+      LOG.warn("Unable to delete spill file " + spillFile, ioException);
+    }
+  }
+
+  /**
+   * Delete the spill files and release the map and its share of the budget.
+   * The group-by is empty afterwards and can be used again.
+   */
+  @Override
+  public void close() {
+    for (Path spillFile : spillFiles) {
+      deleteSpillFile(spillFile);
+    }
+    spillFiles.clear();
+    spillOffsets.clear();
+    spillCount = 0;
+    if (counts != null) {
+      budget.release((long) slots * BYTES_PER_SLOT);
+      counts = null;
+      slots = 0;
+    }
+  }
+
+  /**
+   * The memory shared by a group-by and the group-bys created from it.
+   */
+  private static final class MemoryBudget {
+    /**
+     * The memory in the budget.
+     */
+    private final long totalBytes;
+
+    /**
+     * The memory not reserved, which is negative if more than the budget was
+     * reserved.
+     */
+    private long availableBytes;
+
+    /**
+     * Create the budget.
+     * @param totalBytes
+     *          The memory in the budget
+     */
+    MemoryBudget(long totalBytes) {
+      this.totalBytes = totalBytes;
+      this.availableBytes = totalBytes;
+    }
+
+    /**
+     * Get the memory in the budget.
+     * @return The memory in bytes
+     */
+    long getTotalBytes() {
+      return totalBytes;
+    }
+
+    /**
+     * Reserve memory.
+     * @param bytes
+     *          The memory wanted
+     * @param force
+     *          True to reserve the memory even if the budget has no room
+     * @return False if the memory was not reserved
+     */
+    synchronized boolean reserve(long bytes, boolean force) {
+      if (!force && bytes > availableBytes) {
+        return false;
+      }
+      availableBytes -= bytes;
+      return true;
+    }
+
+    /**
+     * Return reserved memory to the budget.
+     * @param bytes
+     *          The memory released
+     */
+    synchronized void release(long bytes) {
+      availableBytes += bytes;
+    }
+  }
+
+  /**
+   * A sorted run of keys and counts being merged, ordered by its current key.
+   */
+  private abstract class Run implements Comparable<Run> {
+    /**
+     * The current key.
+     */
+    protected long key;
+
+    /**
+     * The count for the current key.
+     */
+    protected long count;
+
+    /**
+     * Move to the next key.
+     * @return False if the run has no more keys
+     * @throws IOException
+     *           If the run cannot be read
+     */
+    abstract boolean advance() throws IOException;
+
+    @Override
+    public int compareTo(Run other) {
+      return Long.compare(key, other.key);
+    }
+  }
+
+  /**
+   * A run held in memory.
+   */
+  private class MemoryRun extends Run {
+    /**
+     * The sorted keys.
+     */
+    private long[] keys;
+
+    /**
+     * The index of the next key.
+     */
+    private int next;
+
+    /**
+     * The index following the run's last key.
+     */
+    private int end;
+
+    /**
+     * Create the run.
+     * @param keys
+     *          The keys, whose counts are held in the map
+     * @param start
+     *          The index of the run's first key
+     * @param end
+     *          The index following the run's last key
+     */
+    MemoryRun(long[] keys, int start, int end) {
+      this.keys = keys;
+      this.next = start;
+      this.end = end;
+    }
+
+    @Override
+    boolean advance() {
+      if (next == end) {
+        return false;
+      }
+      key = keys[next++];
+      count = counts.get(key);
+      return true;
+    }
+  }
+
+  /**
+   * A run read from a region of a spill file.
+   */
+  private class FileRun extends Run {
+    /**
+     * The input reading the region.
+     */
+    private DataInputStream in;
+
+    /**
+     * The number of entries not yet read.
+     */
+    private long remaining;
+
+    /**
+     * Create the run.
+     * @param channel
+     *          The open spill file
+     * @param start
+     *          The offset of the region
+     * @param end
+     *          The offset following the region
+     * @param bufferBytes
+     *          The size of the read buffer
+     * @throws IOException
+     *           If the file cannot be positioned
+     */
+    FileRun(FileChannel channel, long start, long end, int bufferBytes)
+      throws IOException {
+      in = new DataInputStream(new BufferedInputStream(
+        Channels.newInputStream(channel.position(start)), bufferBytes));
+      remaining = (end - start) / BYTES_PER_ENTRY;
+    }
+
+    @Override
+    boolean advance() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      key = in.readLong();
+      count = in.readInt();
+      --remaining;
+      return true;
+    }
+  }
+}
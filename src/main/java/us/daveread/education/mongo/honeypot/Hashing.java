@@ -0,0 +1,70 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * Hash functions shared by the probabilistic counters. The hashes are 64 bits
+ * wide and spread every input bit over the whole hash, so any subset of the
+ * hash bits can be used as an index.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see HyperLogLog
+ * @see CountMinSketch
+ */
+final class Hashing {
+  /**
+   * The FNV-1a 64 bit offset basis.
+   */
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  /**
+   * The FNV-1a 64 bit prime.
+   */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * Static methods only.
+   */
+  private Hashing() {
+  }
+
+  /**
+   * Hash a number (the MurmurHash3 finalizer). Different numbers always give
+   * different hashes.
+   * @param value
+   *          The number
+   * @return The hash
+   */
+  static long hash(long value) {
+    long hash = value;
+    hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  /**
+   * Hash a string from its characters.
+   * @param value
+   *          The string
+   * @return The hash
+   */
+  static long hash(String value) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int index = 0; index < value.length(); ++index) {
+      hash = (hash ^ value.charAt(index)) * FNV_PRIME;
+    }
+    return hash(hash);
+  }
+}
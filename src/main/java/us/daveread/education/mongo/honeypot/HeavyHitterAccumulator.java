@@ -0,0 +1,208 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the clients with the most attacks in a single pass using a fixed
+ * amount of memory, however many clients there are. Each client, a client IP
+ * mask value and country code pair, is packed into a long key. The keys are
+ * counted approximately by a Count-Min sketch and the most frequent keys are
+ * tracked by a Space-Saving summary. Both only ever overestimate a count, so
+ * the reported count is the smaller of the two, and the Space-Saving error
+ * gives the lower bound.
+ * <p>
+ * Unlike ClientIpAccumulator the country code is packed as its hash code, so
+ * the same client has the same key in every instance and the sketches can be
+ * merged directly. Country codes with the same hash code are counted as the
+ * same country, which cannot happen for two letter codes.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ClientIpAccumulator
+ * @see CountMinSketch
+ * @see SpaceSaving
+ */
+public class HeavyHitterAccumulator implements AttackAccumulator {
+  /**
+   * The default number of clients tracked.
+   */
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  /**
+   * The default number of counters in each row of the Count-Min sketch,
+   * keeping the error within 0.02% of the total attacks.
+   */
+  public static final int DEFAULT_WIDTH = 1 << 14;
+
+  /**
+   * The default number of rows in the Count-Min sketch, keeping the error
+   * within the bound with a probability of 98%.
+   */
+  public static final int DEFAULT_DEPTH = 4;
+
+  /**
+   * The fields used by this accumulator.
+   */
+  private static final List<String> PROJECTED_FIELDS =
+    Arrays.asList("payload.client_ip_mask", "client_country_code");
+
+  /**
+   * The mask for the lower 32 bits of the key.
+   */
+  private static final long COUNTRY_MASK = 0xFFFFFFFFL;
+
+  /**
+   * The approximate count of every client.
+   */
+  private CountMinSketch countMinSketch;
+
+  /**
+   * The clients with the largest counts.
+   */
+  private SpaceSaving topClients;
+
+  /**
+   * The country codes seen, used to recover the country code from a key.
+   */
+  private StringDictionary countries = new StringDictionary();
+
+  /**
+   * Create the instance using the default sizes, using about 600KB.
+   */
+  public HeavyHitterAccumulator() {
+    this(DEFAULT_CAPACITY, DEFAULT_WIDTH, DEFAULT_DEPTH);
+  }
+
+  /**
+   * Create the instance.
+   * @param capacity
+   *          The number of clients tracked, which must be larger than the
+   *          number of clients reported
+   * @param width
+   *          The number of counters in each row of the Count-Min sketch
+   * @param depth
+   *          The number of rows in the Count-Min sketch
+   */
+  public HeavyHitterAccumulator(int capacity, int width, int depth) {
+    countMinSketch = new CountMinSketch(width, depth);
+    topClients = new SpaceSaving(capacity);
+  }
+
+  @Override
+  public List<String> getProjectedFields() {
+    return PROJECTED_FIELDS;
+  }
+
+  @Override
+  public void accumulate(AttackRecord attack) {
+    String countryCode = attack.getClientCountryCode();
+    countries.intern(countryCode);
+    long key = key(attack.getClientIpMask(), countryCode);
+    countMinSketch.add(key, 1);
+    topClients.offer(key, 1);
+  }
+
+  /**
+   * Create the key for a client.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @return The packed key
+   */
+  private static long key(int clientIpMask, String countryCode) {
+    return ((long) clientIpMask << 32)
+      | (countryKey(countryCode) & COUNTRY_MASK);
+  }
+
+  /**
+   * Get the value packed into a key for a country code.
+   * @param countryCode
+   *          The country code
+   * @return The value
+   */
+  private static int countryKey(String countryCode) {
+    return countryCode == null ? 0 : countryCode.hashCode();
+  }
+
+  @Override
+  public AttackAccumulator newInstance() {
+    return new HeavyHitterAccumulator(topClients.getCapacity(),
+      countMinSketch.getWidth(), countMinSketch.getDepth());
+  }
+
+  @Override
+  public void merge(AttackAccumulator other) {
+    HeavyHitterAccumulator otherAccumulator = (HeavyHitterAccumulator) other;
+    for (int countryId = 0; countryId < otherAccumulator.countries
+      .size(); ++countryId) {
+      countries.intern(otherAccumulator.countries.getValue(countryId));
+    }
+    countMinSketch.merge(otherAccumulator.countMinSketch);
+    topClients.merge(otherAccumulator.topClients);
+  }
+
+  /**
+   * Get the clients with the most attacks. Each attack count is at least the
+   * client's true count and at most the maximum error larger. Any client
+   * with more attacks than the error bound is guaranteed to be tracked.
+   * @param limit
+   *          The number of clients wanted
+   * @return The clients with the most attacks, largest first
+   * @see #getErrorBound()
+   */
+  public List<ClientCountEstimate> getTopClients(int limit) {
+    final Map<Integer, String> countryCodes = new HashMap<>();
+    for (int countryId = 0; countryId < countries.size(); ++countryId) {
+      String countryCode = countries.getValue(countryId);
+      countryCodes.put(countryKey(countryCode), countryCode);
+    }
+
+    final TopK<ClientCountEstimate> clients = new TopK<>(limit);
+    topClients.forEachCounter(new SpaceSaving.CounterVisitor() {
+      @Override
+      public void visit(long key, long count, long error) {
+        long upperBound = Math.min(count, countMinSketch.estimate(key));
+        long lowerBound = Math.max(count - error, 0);
+        clients.offer(new ClientCountEstimate((int) (key >>> 32),
+          countryCodes.get((int) key), (int) upperBound,
+          (int) (upperBound - lowerBound)));
+      }
+    });
+    return clients.getTopItems();
+  }
+
+  /**
+   * Get the largest error of any reported attack count, the total attacks
+   * divided by the number of clients tracked. The Count-Min sketch usually
+   * makes the error of each count much smaller.
+   * @return The error bound
+   */
+  public long getErrorBound() {
+    return countMinSketch.getTotalCount() / topClients.getCapacity();
+  }
+
+  /**
+   * Get the number of attacks seen.
+   * @return The number of attacks
+   */
+  public long getTotalAttacks() {
+    return countMinSketch.getTotalCount();
+  }
+}
@@ -0,0 +1,318 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+
+/**
+ * Loads synthetic attack documents into a collection for load testing. Several
+ * writer threads each create batches of documents using an AttackGenerator and
+ * send them with unordered insertMany calls. The insert rate is logged
+ * periodically and the sustained rate is reported when loading completes.
+ * <p>
+ * The options are given on the command line in the form --name=value:
+ * <ul>
+ * <li>documents - the number of documents to insert (default 10,000,000)</li>
+ * <li>threads - the number of writer threads (default 4)</li>
+ * <li>batch-size - the number of documents per insertMany (default 1000)</li>
+ * <li>host, port, database, collection - the target collection (default
+ * localhost:27017 infuzitDemo.honeypotSynthetic, kept apart from the
+ * honeypotData collection read by the reports)</li>
+ * <li>countries, channels, servers, clients - the number of distinct values
+ * of each field</li>
+ * <li>country-skew, channel-skew, server-skew, client-skew - the Zipf
+ * exponent of each field, 0 for uniform. Each client is given one country
+ * code drawn from the country distribution.</li>
+ * <li>seed - the random seed</li>
+ * </ul>
+ * The --drop option drops the collection before loading. It is refused unless
+ * the database and collection are both given, so that a mistyped command
+ * cannot drop the honeypot data.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackGenerator
+ */
+public class HoneypotDataLoader {
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(HoneypotDataLoader.class);
+
+  /**
+   * The number of seconds between progress reports.
+   */
+  private static final int REPORT_INTERVAL_SECONDS = 10;
+
+  /**
+   * The collection receiving the documents.
+   */
+  private MongoCollection<Document> collection;
+
+  /**
+   * The generator creating the documents.
+   */
+  private AttackGenerator generator;
+
+  /**
+   * The number of writer threads.
+   */
+  private int threads;
+
+  /**
+   * The number of documents sent in each insertMany.
+   */
+  private int batchSize;
+
+  /**
+   * The seed for the random numbers, each writer adds its own number.
+   */
+  private long seed;
+
+  /**
+   * The number of documents not yet claimed by a writer.
+   */
+  private AtomicLong unclaimed = new AtomicLong();
+
+  /**
+   * The number of documents inserted.
+   */
+  private AtomicLong inserted = new AtomicLong();
+
+  /**
+   * Create the loader.
+   * @param collection
+   *          The collection receiving the documents
+   * @param generator
+   *          The generator creating the documents
+   * @param threads
+   *          The number of writer threads
+   * @param batchSize
+   *          The number of documents sent in each insertMany
+   * @param seed
+   *          The seed for the random numbers
+   */
+  public HoneypotDataLoader(MongoCollection<Document> collection,
+    AttackGenerator generator, int threads, int batchSize, long seed) {
+    this.collection = collection;
+    this.generator = generator;
+    this.threads = threads;
+    this.batchSize = batchSize;
+    this.seed = seed;
+  }
+
+  /**
+   * Insert the documents, blocking until every writer has finished.
+   * @param documentCount
+   *          The number of documents to insert
+   * @return The sustained insert rate in documents per second
+   * @throws Exception
+   *           If a writer fails
+   */
+  public double load(long documentCount) throws Exception {
+    unclaimed.set(documentCount);
+    inserted.set(0);
+
+    final long startTime = System.nanoTime();
+    ScheduledExecutorService reporter =
+      Executors.newSingleThreadScheduledExecutor();
+    reporter.scheduleAtFixedRate(new Runnable() {
+      /**
+       * The number of documents inserted at the previous report.
+       */
+      private long previousCount;
+
+      /**
+       * The time of the previous report.
+       */
+      private long previousTime = startTime;
+
+      @Override
+      public void run() {
+        long count = inserted.get();
+        long time = System.nanoTime();
+        LOG.info("Inserted " + count + " documents, "
+          + (long) rate(count - previousCount, time - previousTime)
+          + " per second recently, "
+          + (long) rate(count, time - startTime) + " per second overall");
+        previousCount = count;
+        previousTime = time;
+      }
+    }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    ExecutorService writers = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int writer = 0; writer < threads; ++writer) {
+        final Random random = new Random(seed + writer);
+        results.add(writers.submit(new Runnable() {
+          @Override
+          public void run() {
+            write(random);
+          }
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      writers.shutdownNow();
+      reporter.shutdownNow();
+    }
+
+    double sustainedRate =
+      rate(inserted.get(), System.nanoTime() - startTime);
+    LOG.info("Inserted " + inserted.get() + " documents into "
+      + collection.getNamespace() + " at " + (long) sustainedRate
+      + " per second using " + threads + " threads and batches of "
+      + batchSize);
+    return sustainedRate;
+  }
+
+  /**
+   * Claim and insert batches of documents until none remain.
+   * @param random
+   *          The writer's source of random numbers
+   */
+  private void write(Random random) {
+    InsertManyOptions options = new InsertManyOptions().ordered(false);
+    List<Document> batch = new ArrayList<>(batchSize);
+    long claimed;
+    while ((claimed = claim()) > 0) {
+      batch.clear();
+      for (long document = 0; document < claimed; ++document) {
+        batch.add(generator.nextAttack(random));
+      }
+      collection.insertMany(batch, options);
+      inserted.addAndGet(claimed);
+    }
+  }
+
+  /**
+   * Claim the next batch of documents to insert.
+   * @return The number of documents claimed, 0 when none remain
+   */
+  private long claim() {
+    while (true) {
+      long remaining = unclaimed.get();
+      long claimed = Math.min(remaining, batchSize);
+      if (unclaimed.compareAndSet(remaining, remaining - claimed)) {
+        return claimed;
+      }
+    }
+  }
+
+  /**
+   * Calculate a rate per second.
+   * @param count
+   *          The number of documents
+   * @param nanoseconds
+   *          The elapsed time
+   * @return The number of documents per second
+   */
+  private static double rate(long count, long nanoseconds) {
+    return nanoseconds == 0 ? 0 : count * 1e9 / nanoseconds;
+  }
+
+  /**
+   * Find the value of a command line option of the form --name=value.
+   * @param args
+   *          The command line arguments
+   * @param name
+   *          The option name
+   * @param defaultValue
+   *          The value used if the option was not supplied
+   * @return The option value
+   */
+  private static String option(String[] args, String name,
+    String defaultValue) {
+    String prefix = "--" + name + "=";
+    for (String arg : args) {
+      if (arg.startsWith(prefix)) {
+        return arg.substring(prefix.length());
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Load synthetic attack documents.
+   * @param args
+   *          Command line options, see the class description
+   * @throws Exception
+   *           If the documents cannot be loaded
+   */
+  public static void main(String[] args) throws Exception {
+    int threads = Integer.parseInt(option(args, "threads", "4"));
+
+    AttackGenerator generator = new AttackGenerator(
+      Integer.parseInt(option(args, "countries", "200")),
+      Double.parseDouble(option(args, "country-skew", "1.0")),
+      Integer.parseInt(option(args, "channels", "10")),
+      Double.parseDouble(option(args, "channel-skew", "0.8")),
+      Integer.parseInt(option(args, "servers", "30")),
+      Double.parseDouble(option(args, "server-skew", "0.5")),
+      Integer.parseInt(option(args, "clients", "1000000")),
+      Double.parseDouble(option(args, "client-skew", "1.1")));
+
+    MongoClient mongoClient = new MongoClient(
+      new ServerAddress(option(args, "host", "localhost"),
+        Integer.parseInt(option(args, "port", "27017"))),
+      new MongoClientOptions.Builder().connectionsPerHost(threads * 2)
+        .build());
+    try {
+      MongoCollection<Document> collection =
+        mongoClient.getDatabase(option(args, "database", "infuzitDemo"))
+          .getCollection(option(args, "collection", "honeypotSynthetic"));
+      if (Arrays.asList(args).contains("--drop")) {
+        if (option(args, "database", null) == null
+          || option(args, "collection", null) == null) {
+          throw new IllegalArgumentException("--drop requires --database and "
+            + "--collection to name the collection to drop");
+        }
+        LOG.warn("Dropping " + collection.getNamespace());
+        collection.drop();
+      }
+
+      HoneypotDataLoader loader = new HoneypotDataLoader(collection,
+        generator, threads,
+        Integer.parseInt(option(args, "batch-size", "1000")),
+        Long.parseLong(option(args, "seed", "1")));
+      double rate =
+        loader.load(Long.parseLong(option(args, "documents", "10000000")));
+      System.out.println("Sustained inserts per second: " + (long) rate);
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct values in a stream using a fixed amount of
+ * memory. Each value is hashed to 64 bits. The first bits of the hash choose
+ * one of 2^precision registers and the register keeps the longest run of
+ * leading zeros seen in the remaining bits. The estimate is derived from the
+ * harmonic mean of the registers, with linear counting used for small
+ * cardinalities.
+ * <p>
+ * The relative standard error of the estimate is about
+ * 1.04 / sqrt(2^precision), for example 0.8% with a precision of 14, which
+ * uses 16KB. Sketches with the same precision can be merged, giving the
+ * estimate for the combined streams, so a sketch can be built for each
+ * partition of a scan or for each incremental update and then combined.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class HyperLogLog {
+  /**
+   * The smallest supported precision.
+   */
+  public static final int MINIMUM_PRECISION = 4;
+
+  /**
+   * The largest supported precision.
+   */
+  public static final int MAXIMUM_PRECISION = 16;
+
+  /**
+   * The number of bits of the hash used to choose a register.
+   */
+  private int precision;
+
+  /**
+   * The longest run of leading zeros (plus one) seen by each register.
+   */
+  private byte[] registers;
+
+  /**
+   * Create an empty sketch.
+   * @param precision
+   *          The number of bits used to choose a register, from 4 to 16
+   */
+  public HyperLogLog(int precision) {
+    this(precision, new byte[1 << checkPrecision(precision)]);
+  }
+
+  /**
+   * Restore a sketch from its registers.
+   * @param precision
+   *          The number of bits used to choose a register, from 4 to 16
+   * @param registers
+   *          The registers, as returned by getRegisters()
+   * @see #getRegisters()
+   */
+  public HyperLogLog(int precision, byte[] registers) {
+    if (registers.length != 1 << checkPrecision(precision)) {
+      throw new IllegalArgumentException("Expected " + (1 << precision)
+        + " registers for precision " + precision + " but found "
+        + registers.length);
+    }
+    this.precision = precision;
+    this.registers = registers.clone();
+  }
+
+  /**
+   * Check that a precision is supported.
+   * @param precision
+   *          The precision
+   * @return The precision
+   */
+  private static int checkPrecision(int precision) {
+    if (precision < MINIMUM_PRECISION || precision > MAXIMUM_PRECISION) {
+      throw new IllegalArgumentException("The precision must be from "
+        + MINIMUM_PRECISION + " to " + MAXIMUM_PRECISION + ": " + precision);
+    }
+    return precision;
+  }
+
+  /**
+   * Add a value. Integer and Long values are hashed by value, so the same
+   * number gives the same hash whatever its type. Strings are hashed from
+   * their characters and any other value from its hashCode().
+   * @param value
+   *          The value, must not be null
+   */
+  public void add(Object value) {
+    if (value instanceof Integer || value instanceof Long) {
+      add(((Number) value).longValue());
+    } else if (value instanceof String) {
+      add((String) value);
+    } else {
+      add((long) value.hashCode());
+    }
+  }
+
+  /**
+   * Add a number.
+   * @param value
+   *          The number
+   */
+  public void add(long value) {
+    addHash(Hashing.hash(value));
+  }
+
+  /**
+   * Add a string.
+   * @param value
+   *          The string
+   */
+  public void add(String value) {
+    addHash(Hashing.hash(value));
+  }
+
+  /**
+   * Add a 64 bit hash to the sketch.
+   * @param hash
+   *          The hash
+   */
+  private void addHash(long hash) {
+    int index = (int) (hash >>> (Long.SIZE - precision));
+    /**
+     * The bit below the remaining hash bits is set so that the run of zeros
+     * ends within the 64 - precision remaining bits.
+     */
+    long remaining = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+  /**
+   * Estimate the number of distinct values added.
+   * @return The estimated number of distinct values
+   */
+  public long estimate() {
+    int registerCount = registers.length;
+    double sum = 0;
+    int zeroRegisters = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        ++zeroRegisters;
+      }
+    }
+
+    double estimate = alpha(registerCount) * registerCount * registerCount
+      / sum;
+    if (estimate <= 2.5 * registerCount && zeroRegisters > 0) {
+      estimate = registerCount
+        * Math.log(registerCount / (double) zeroRegisters);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * Get the bias correction constant for a number of registers.
+   * @param registerCount
+   *          The number of registers
+   * @return The constant
+   */
+  private static double alpha(int registerCount) {
+    switch (registerCount) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / registerCount);
+    }
+  }
+
+  /**
+   * Get the relative standard error of the estimate.
+   * @return The relative standard error, e.g. 0.01 for 1%
+   */
+  public double getStandardError() {
+    return 1.04 / Math.sqrt(registers.length);
+  }
+
+  /**
+   * Add the values from another sketch to this one.
+   * @param other
+   *          The sketch to add, which must have the same precision
+   */
+  public void merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Cannot merge a sketch of precision "
+        + other.precision + " into one of precision " + precision);
+    }
+    for (int index = 0; index < registers.length; ++index) {
+      if (other.registers[index] > registers[index]) {
+        registers[index] = other.registers[index];
+      }
+    }
+  }
+
+  /**
+   * Get the precision.
+   * @return The number of bits used to choose a register
+   */
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Get a copy of the registers, so the sketch can be stored and restored.
+   * @return The registers
+   */
+  public byte[] getRegisters() {
+    return registers.clone();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof HyperLogLog
+      && precision == ((HyperLogLog) other).precision
+      && Arrays.equals(registers, ((HyperLogLog) other).registers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(registers);
+  }
+}
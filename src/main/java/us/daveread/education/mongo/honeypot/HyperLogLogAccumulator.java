@@ -0,0 +1,128 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimates the number of distinct values of a field using a HyperLogLog
+ * sketch. Unlike DistinctValueAccumulator the memory used is fixed by the
+ * precision, however many distinct values there are. Missing and null values
+ * are not counted.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see HyperLogLog
+ * @see DistinctValueAccumulator
+ */
+public class HyperLogLogAccumulator implements AttackAccumulator {
+  /**
+   * The precision used when none is given, giving a standard error of about
+   * 0.8% using 16KB.
+   */
+  public static final int DEFAULT_PRECISION = 14;
+
+  /**
+   * The field whose distinct values are estimated, in dot notation.
+   */
+  private String field;
+
+  /**
+   * The sketch of the values seen.
+   */
+  private HyperLogLog sketch;
+
+  /**
+   * Create the instance using the default precision.
+   * @param field
+   *          The field whose distinct values are estimated, nested fields use
+   *          dot notation (e.g. payload.client_ip_mask). This must be one of
+   *          the fields held by AttackRecord.
+   * @see AttackRecord#getValue(String)
+   */
+  public HyperLogLogAccumulator(String field) {
+    this(field, DEFAULT_PRECISION);
+  }
+
+  /**
+   * Create the instance.
+   * @param field
+   *          The field whose distinct values are estimated, nested fields use
+   *          dot notation. This must be one of the fields held by
+   *          AttackRecord.
+   * @param precision
+   *          The sketch precision, from 4 to 16
+   * @see HyperLogLog#HyperLogLog(int)
+   */
+  public HyperLogLogAccumulator(String field, int precision) {
+    this.field = field;
+    this.sketch = new HyperLogLog(precision);
+  }
+
+  @Override
+  public List<String> getProjectedFields() {
+    return Arrays.asList(field);
+  }
+
+  @Override
+  public void accumulate(AttackRecord attack) {
+    Object value = attack.getValue(field);
+    if (value != null) {
+      sketch.add(value);
+    }
+  }
+
+  @Override
+  public AttackAccumulator newInstance() {
+    return new HyperLogLogAccumulator(field, sketch.getPrecision());
+  }
+
+  @Override
+  public void merge(AttackAccumulator other) {
+    sketch.merge(((HyperLogLogAccumulator) other).sketch);
+  }
+
+  /**
+   * Get the field whose distinct values are estimated.
+   * @return The field, in dot notation
+   */
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * Get the sketch of the values seen.
+   * @return The sketch
+   */
+  public HyperLogLog getSketch() {
+    return sketch;
+  }
+
+  /**
+   * Get the estimated number of distinct values seen.
+   * @return The estimated number of distinct values
+   */
+  public long getDistinctCount() {
+    return sketch.estimate();
+  }
+
+  /**
+   * Get the relative standard error of the estimate.
+   * @return The relative standard error, e.g. 0.01 for 1%
+   */
+  public double getStandardError() {
+    return sketch.getStandardError();
+  }
+}
@@ -0,0 +1,482 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
+
+/**
+ * Maintains running attack totals in a summary collection so that each update
+ * only reads the attacks added since the previous update. The honeypot
+ * collection only grows by appending documents, so the largest _id processed
+ * is stored as a watermark and the next update reads the documents whose _id
+ * is greater than the watermark. The counts from those documents are added to
+ * the stored totals by country, by server and channel and by client.
+ * <p>
+ * The summary collection holds a watermark document, a totals document and
+ * one document per counter, for example:
+ *
+ * <pre>
+ * { "_id" : "watermark", "lastId" : ObjectId("...") }
+ * { "_id" : "totals", "attacks" : NumberLong(1234) }
+ * { "_id" : { "type" : "country", "client_country_code" : "US" },
+ *   "type" : "country", "attacks" : NumberLong(12) }
+ * { "_id" : { "type" : "sketch", "field" : "payload.client_ip_mask" },
+ *   "type" : "sketch", "precision" : 14, "registers" : BinData(...) }
+ * </pre>
+ * <p>
+ * The sketch documents hold HyperLogLog sketches of the distinct values of
+ * the fields in SKETCH_FIELDS. The sketch of the new attacks is merged into
+ * the stored sketch by each update, so the approximate distinct counts never
+ * require reading every attack.
+ * <p>
+ * MongoDB does not update the counters and the watermark atomically. The
+ * watermark document records the _id being processed before the counters are
+ * written and clears it afterwards. If an update is interrupted the next
+ * update refuses to run, since some of the counters may already include the
+ * new documents, and rebuild() must be used to recompute the totals (the
+ * --rebuild option of BasicStatistics). The _id is recorded only if no other
+ * update has recorded one and the watermark is unchanged, so overlapping
+ * updates cannot both add the same attacks.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class IncrementalStatistics {
+  /**
+   * The logger
+   */
+  private static final Logger LOG =
+    Logger.getLogger(IncrementalStatistics.class);
+
+  /**
+   * The _id of the watermark document.
+   */
+  private static final String WATERMARK_ID = "watermark";
+
+  /**
+   * The _id of the totals document.
+   */
+  private static final String TOTALS_ID = "totals";
+
+  /**
+   * The counter type for attacks by country.
+   */
+  private static final String COUNTRY_TYPE = "country";
+
+  /**
+   * The counter type for attacks by server and channel.
+   */
+  private static final String SERVER_CHANNEL_TYPE = "serverChannel";
+
+  /**
+   * The counter type for attacks by client.
+   */
+  private static final String CLIENT_TYPE = "client";
+
+  /**
+   * The counter type for the distinct value sketches.
+   */
+  private static final String SKETCH_TYPE = "sketch";
+
+  /**
+   * The fields whose distinct values are sketched.
+   */
+  public static final List<String> SKETCH_FIELDS = Arrays.asList(
+    AttackRecordCodec.CLIENT_COUNTRY_CODE,
+    AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.SERVER_IP_MASK,
+    AttackRecordCodec.PAYLOAD + "." + AttackRecordCodec.CLIENT_IP_MASK);
+
+  /**
+   * The number of counter updates sent to the server in each bulk write.
+   */
+  private static final int WRITE_BATCH_SIZE = 1000;
+
+  /**
+   * The collection containing the raw attack documents.
+   */
+  private MongoCollection<Document> attacks;
+
+  /**
+   * The collection containing the running totals.
+   */
+  private MongoCollection<Document> summary;
+
+  /**
+   * Create the instance.
+   * @param attacks
+   *          The collection containing the raw attack documents
+   * @param summary
+   *          The collection containing the running totals
+   */
+  public IncrementalStatistics(MongoCollection<Document> attacks,
+    MongoCollection<Document> summary) {
+    this.attacks = attacks;
+    this.summary = summary;
+  }
+
+  /**
+   * Add the attacks recorded since the last update to the running totals.
+   * @return The number of new attack documents processed
+   * @throws IllegalStateException
+   *           If the previous update did not complete
+   */
+  public long update() {
+    Document watermark =
+      summary.find(new Document("_id", WATERMARK_ID)).first();
+    Object lastId = watermark == null ? null : watermark.get("lastId");
+    if (watermark != null && watermark.get("pendingId") != null) {
+      throw new IllegalStateException(
+        "The previous incremental update of " + summary.getNamespace()
+          + " did not complete. The totals must be rebuilt, e.g. with"
+          + " --incremental --rebuild.");
+    }
+
+    Document newest = attacks.find().projection(new Document("_id", 1))
+      .sort(new Document("_id", -1)).first();
+    if (newest == null || newest.get("_id").equals(lastId)) {
+      LOG.info("No new attacks since " + lastId);
+      return 0;
+    }
+    Object newestId = newest.get("_id");
+
+    Document idRange = new Document("$lte", newestId);
+    if (lastId != null) {
+      idRange.append("$gt", lastId);
+    }
+
+    claimRange(lastId, newestId);
+
+    CountryAccumulator countries = new CountryAccumulator();
+    ServerChannelAccumulator serverChannels = new ServerChannelAccumulator();
+    ClientIpAccumulator clients = new ClientIpAccumulator();
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(countries);
+    accumulators.add(serverChannels);
+    accumulators.add(clients);
+    List<HyperLogLogAccumulator> sketches = new ArrayList<>();
+    for (String field : SKETCH_FIELDS) {
+      HyperLogLogAccumulator sketch = new HyperLogLogAccumulator(field);
+      sketches.add(sketch);
+      accumulators.add(sketch);
+    }
+
+    long documentCount =
+      new AttackScanner(attacks, new Document("_id", idRange))
+        .scan(accumulators);
+
+    writeCounters(countries, serverChannels, clients);
+    writeSketches(sketches);
+
+    summary.updateOne(new Document("_id", TOTALS_ID),
+      new Document("$inc", new Document("attacks", documentCount)),
+      new UpdateOptions().upsert(true));
+    summary.updateOne(new Document("_id", WATERMARK_ID),
+      new Document("$set", new Document("lastId", newestId))
+        .append("$unset", new Document("pendingId", "")));
+
+    LOG.info("Added " + documentCount + " attacks after " + lastId
+      + " up to " + newestId + " to " + summary.getNamespace());
+    return documentCount;
+  }
+
+  /**
+   * Record the _id being processed in the watermark document, provided that
+   * no other update is in progress and the watermark has not moved since it
+   * was read. The check and the write are a single update so that two
+   * overlapping updates cannot both claim the same range of attacks. The
+   * first update inserts the watermark document.
+   * @param lastId
+   *          The watermark which was read, null if there was none
+   * @param newestId
+   *          The _id of the newest attack to be processed
+   * @throws IllegalStateException
+   *           If another update claimed the range first
+   */
+  private void claimRange(Object lastId, Object newestId) {
+    UpdateResult claim;
+    try {
+      claim = summary.updateOne(new Document("_id", WATERMARK_ID)
+        .append("lastId", lastId)
+        .append("pendingId", new Document("$exists", false)),
+        new Document("$set", new Document("pendingId", newestId)),
+        new UpdateOptions().upsert(true));
+    } catch (MongoWriteException mongoWriteException) {
+      /**
+       * The watermark document exists but did not match, so the upsert
+       * attempted to insert a second document with the same _id.
+       */
+      if (mongoWriteException.getError()
+        .getCategory() != ErrorCategory.DUPLICATE_KEY) {
+        throw mongoWriteException;
+      }
+      claim = null;
+    }
+    if (claim == null
+      || claim.getModifiedCount() == 0 && claim.getUpsertedId() == null) {
+      throw new IllegalStateException("Another incremental update of "
+        + summary.getNamespace() + " is in progress or has just completed. "
+        + "Run the update again once it has finished.");
+    }
+  }
+
+  /**
+   * Discard the running totals and recompute them from every attack.
+   * @return The number of attack documents processed
+   */
+  public long rebuild() {
+    summary.drop();
+    return update();
+  }
+
+  /**
+   * Add the counts from the accumulators to the counters in the summary
+   * collection.
+   * @param countries
+   *          The counts by country
+   * @param serverChannels
+   *          The counts by server and channel
+   * @param clients
+   *          The counts by client
+   */
+  private void writeCounters(CountryAccumulator countries,
+    ServerChannelAccumulator serverChannels, ClientIpAccumulator clients) {
+    summary.createIndex(new Document("type", 1).append("attacks", -1));
+
+    List<WriteModel<Document>> updates = new ArrayList<>();
+
+    for (CountryCount country : countries.getCountryCounts()) {
+      updates.add(counterUpdate(new Document("type", COUNTRY_TYPE)
+        .append("client_country_code", country.getCountryCode()),
+        country.getAttackCount()));
+      updates = flushIfFull(updates);
+    }
+
+    for (ServerChannelCount serverChannel : serverChannels
+      .getServerChannelCounts()) {
+      updates.add(counterUpdate(new Document("type", SERVER_CHANNEL_TYPE)
+        .append("server_ip_mask", serverChannel.getServerIpMask())
+        .append("channel", serverChannel.getChannel()),
+        serverChannel.getAttackCount()));
+      updates = flushIfFull(updates);
+    }
+
+    for (ClientCount client : clients.getClientCounts()) {
+      updates.add(counterUpdate(new Document("type", CLIENT_TYPE)
+        .append("client_ip_mask", client.getClientIpMask())
+        .append("client_country_code", client.getCountryCode()),
+        client.getAttackCount()));
+      updates = flushIfFull(updates);
+    }
+
+    if (!updates.isEmpty()) {
+      flush(updates);
+    }
+  }
+
+  /**
+   * Merge the sketches of the new attacks into the stored sketches. Merging
+   * keeps the larger value of each register, so the stored sketch describes
+   * every attack processed.
+   * @param sketches
+   *          The sketches of the new attacks
+   */
+  private void writeSketches(List<HyperLogLogAccumulator> sketches) {
+    List<WriteModel<Document>> updates = new ArrayList<>();
+    for (HyperLogLogAccumulator sketch : sketches) {
+      Document key = sketchKey(sketch.getField());
+      Document stored = summary.find(new Document("_id", key)).first();
+      HyperLogLog merged = sketch.getSketch();
+      if (stored != null) {
+        merged.merge(toSketch(stored));
+      }
+      updates.add(new ReplaceOneModel<>(new Document("_id", key),
+        new Document("_id", key).append("type", SKETCH_TYPE)
+          .append("precision", merged.getPrecision())
+          .append("registers", new Binary(merged.getRegisters())),
+        new UpdateOptions().upsert(true)));
+    }
+    flush(updates);
+  }
+
+  /**
+   * Create the _id of a sketch document.
+   * @param field
+   *          The field whose distinct values are sketched
+   * @return The _id
+   */
+  private Document sketchKey(String field) {
+    return new Document("type", SKETCH_TYPE).append("field", field);
+  }
+
+  /**
+   * Restore the sketch held in a sketch document.
+   * @param stored
+   *          The sketch document
+   * @return The sketch
+   */
+  private HyperLogLog toSketch(Document stored) {
+    return new HyperLogLog(stored.getInteger("precision"),
+      ((Binary) stored.get("registers")).getData());
+  }
+
+  /**
+   * Create an upsert adding to a counter.
+   * @param key
+   *          The counter's _id
+   * @param attackCount
+   *          The number of attacks to add
+   * @return The update
+   */
+  private UpdateOneModel<Document> counterUpdate(Document key,
+    int attackCount) {
+    return new UpdateOneModel<>(new Document("_id", key),
+      new Document("$inc", new Document("attacks", (long) attackCount))
+        .append("$set", new Document("type", key.getString("type"))),
+      new UpdateOptions().upsert(true));
+  }
+
+  /**
+   * Send the updates to the server if a full batch has been collected.
+   * @param updates
+   *          The updates collected so far
+   * @return The list to collect further updates into
+   */
+  private List<WriteModel<Document>> flushIfFull(
+    List<WriteModel<Document>> updates) {
+    if (updates.size() < WRITE_BATCH_SIZE) {
+      return updates;
+    }
+    flush(updates);
+    return new ArrayList<>();
+  }
+
+  /**
+   * Send the updates to the server. The updates are independent so they are
+   * sent unordered.
+   * @param updates
+   *          The updates
+   */
+  private void flush(List<WriteModel<Document>> updates) {
+    summary.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+  }
+
+  /**
+   * Get the total number of attacks processed.
+   * @return The number of attacks
+   */
+  public long getTotalAttacks() {
+    Document totals = summary.find(new Document("_id", TOTALS_ID)).first();
+    return totals == null ? 0 : ((Number) totals.get("attacks")).longValue();
+  }
+
+  /**
+   * Add the stored country totals to an accumulator.
+   * @param countries
+   *          The accumulator receiving the totals
+   */
+  public void loadCountries(CountryAccumulator countries) {
+    for (Document counter : summary
+      .find(new Document("type", COUNTRY_TYPE))) {
+      Document key = (Document) counter.get("_id");
+      countries.add(key.getString("client_country_code"),
+        attackCount(counter));
+    }
+  }
+
+  /**
+   * Add the stored server and channel totals to an accumulator.
+   * @param serverChannels
+   *          The accumulator receiving the totals
+   */
+  public void loadServerChannels(ServerChannelAccumulator serverChannels) {
+    for (Document counter : summary
+      .find(new Document("type", SERVER_CHANNEL_TYPE))) {
+      Document key = (Document) counter.get("_id");
+      serverChannels.add(key.getInteger("server_ip_mask"),
+        key.getString("channel"), attackCount(counter));
+    }
+  }
+
+  /**
+   * Get the clients with the most attacks from the stored totals.
+   * @param limit
+   *          The number of clients wanted
+   * @return The clients with the most attacks, largest first
+   */
+  public List<ClientCount> getTopClients(int limit) {
+    List<ClientCount> clients = new ArrayList<>();
+    for (Document counter : summary.find(new Document("type", CLIENT_TYPE))
+      .sort(new Document("attacks", -1)).limit(limit)) {
+      Document key = (Document) counter.get("_id");
+      clients.add(new ClientCount(key.getInteger("client_ip_mask"),
+        key.getString("client_country_code"), attackCount(counter)));
+    }
+    return clients;
+  }
+
+  /**
+   * Add the stored sketch for a field to an accumulator. The accumulator
+   * must use the default precision, which is the precision of the stored
+   * sketches. Totals built before the sketches were kept must be rebuilt for
+   * the sketches to describe the earlier attacks.
+   * @param sketch
+   *          The accumulator receiving the sketch, one of the SKETCH_FIELDS
+   * @throws IllegalStateException
+   *           If the accumulator's precision differs from the stored sketch's
+   * @see HyperLogLogAccumulator#DEFAULT_PRECISION
+   */
+  public void loadSketch(HyperLogLogAccumulator sketch) {
+    Document stored =
+      summary.find(new Document("_id", sketchKey(sketch.getField()))).first();
+    if (stored != null) {
+      if (stored.getInteger("precision") != sketch.getSketch()
+        .getPrecision()) {
+        throw new IllegalStateException("The stored sketch for "
+          + sketch.getField() + " has a precision of "
+          + stored.getInteger("precision") + ", not "
+          + sketch.getSketch().getPrecision());
+      }
+      sketch.getSketch().merge(toSketch(stored));
+    }
+  }
+
+  /**
+   * Get the attack count from a counter document.
+   * @param counter
+   *          The counter document
+   * @return The attack count
+   * @throws ArithmeticException
+   *           If the count is too large for the accumulators
+   */
+  private int attackCount(Document counter) {
+    return Math.toIntExact(((Number) counter.get("attacks")).longValue());
+  }
+}
@@ -0,0 +1,234 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects a honeypot report as a JSON document rather than printing it. The
+ * document holds the report name, the title given by the last header, any
+ * overall values and a row for each line of the report, e.g.
+ *
+ * <pre>
+ * { "report": "countryBreakdownCoded",
+ *   "title": "Top 10 Attack Countries (using Java coded aggregation)",
+ *   "rows": [ { "country": "CN", "attacks": 5120, "percent": 41 }, ... ] }
+ * </pre>
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see StatisticsServer
+ */
+public class JsonReportPrinter extends ReportPrinter {
+  /**
+   * The report name, title and overall values, in the order they are
+   * written.
+   */
+  private Map<String, Object> fields = new LinkedHashMap<>();
+
+  /**
+   * The report lines.
+   */
+  private List<Map<String, Object>> rows = new ArrayList<>();
+
+  /**
+   * Create the printer.
+   * @param report
+   *          The report name
+   * @param totalAttacks
+   *          The total number of attacks, used to calculate percentages
+   */
+  public JsonReportPrinter(String report, long totalAttacks) {
+    /**
+     * Nothing is written to a stream.
+     */
+    super(null, totalAttacks);
+    fields.put("report", report);
+  }
+
+  @Override
+  public void header(String message) {
+    fields.put("title", message);
+  }
+
+  @Override
+  public void overall(int totalAttackingCountries) {
+    fields.put("totalAttacks", getTotalAttacks());
+    fields.put("totalAttackingCountries", totalAttackingCountries);
+  }
+
+  @Override
+  public void overall(long totalAttackingCountries, double standardError) {
+    fields.put("totalAttacks", getTotalAttacks());
+    fields.put("totalAttackingCountries", totalAttackingCountries);
+    fields.put("standardError", standardError);
+  }
+
+  @Override
+  public void distinct(String label, long distinctCount) {
+    Map<String, Object> row = row();
+    row.put("label", label);
+    row.put("distinctCount", distinctCount);
+  }
+
+  @Override
+  public void distinct(String label, long distinctCount,
+    double standardError) {
+    distinct(label, distinctCount);
+    lastRow().put("standardError", standardError);
+  }
+
+  @Override
+  public void country(Object countryCode, int numAttacks) {
+    Map<String, Object> row = row();
+    row.put("country", countryCode);
+    row.put("attacks", numAttacks);
+    row.put("percent", percent(numAttacks));
+  }
+
+  @Override
+  public void serverChannel(Object serverIpMask, String channel,
+    int numAttacks) {
+    Map<String, Object> row = row();
+    row.put("server", serverIpMask);
+    row.put("channel", channel);
+    row.put("attacks", numAttacks);
+    row.put("percent", percent(numAttacks));
+  }
+
+  @Override
+  public void client(Object clientIpMask, String countryCode,
+    int numAttacks) {
+    Map<String, Object> row = row();
+    row.put("client", clientIpMask);
+    row.put("country", countryCode);
+    row.put("attacks", numAttacks);
+    row.put("percent", percent(numAttacks));
+  }
+
+  @Override
+  public void client(Object clientIpMask, String countryCode, int numAttacks,
+    int maximumError) {
+    client(clientIpMask, countryCode, numAttacks);
+    lastRow().put("maximumError", maximumError);
+  }
+
+  @Override
+  public void blankLine() {
+  }
+
+  /**
+   * Add an empty report line.
+   * @return The line
+   */
+  private Map<String, Object> row() {
+    Map<String, Object> row = new LinkedHashMap<>();
+    rows.add(row);
+    return row;
+  }
+
+  /**
+   * Get the most recently added report line.
+   * @return The line
+   */
+  private Map<String, Object> lastRow() {
+    return rows.get(rows.size() - 1);
+  }
+
+  /**
+   * Get the report as JSON.
+   * @return The JSON document
+   */
+  public String toJson() {
+    Map<String, Object> document = new LinkedHashMap<>(fields);
+    document.put("rows", rows);
+    return toJson(document);
+  }
+
+  /**
+   * Write a value as JSON. Maps become objects, lists become arrays, numbers
+   * are written as they are and every other value is written as a string.
+   * @param value
+   *          The value, which may be null
+   * @return The JSON
+   */
+  public static String toJson(Object value) {
+    StringBuilder json = new StringBuilder();
+    appendValue(json, value);
+    return json.toString();
+  }
+
+  /**
+   * Append a value as JSON.
+   * @param json
+   *          The JSON being built
+   * @param value
+   *          The value, which may be null
+   */
+  private static void appendValue(StringBuilder json, Object value) {
+    if (value == null) {
+      json.append("null");
+    } else if (value instanceof Number) {
+      json.append(value);
+    } else if (value instanceof Map) {
+      json.append('{');
+      String separator = "";
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        json.append(separator);
+        appendString(json, entry.getKey().toString());
+        json.append(':');
+        appendValue(json, entry.getValue());
+        separator = ",";
+      }
+      json.append('}');
+    } else if (value instanceof List) {
+      json.append('[');
+      String separator = "";
+      for (Object element : (List<?>) value) {
+        json.append(separator);
+        appendValue(json, element);
+        separator = ",";
+      }
+      json.append(']');
+    } else {
+      appendString(json, value.toString());
+    }
+  }
+
+  /**
+   * Append a quoted JSON string, escaping quotes, backslashes and control
+   * characters.
+   * @param json
+   *          The JSON being built
+   * @param text
+   *          The string
+   */
+  private static void appendString(StringBuilder json, String text) {
+    json.append('"');
+    for (int index = 0; index < text.length(); ++index) {
+      char character = text.charAt(index);
+      if (character == '"' || character == '\\') {
+        json.append('\\').append(character);
+      } else if (character < ' ') {
+        json.append(String.format("\\u%04x", (int) character));
+      } else {
+        json.append(character);
+      }
+    }
+    json.append('"');
+  }
+}
@@ -0,0 +1,411 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Follows the attacks as they are inserted and keeps the most active
+ * countries, servers and channels, and clients over the last 5 minutes, hour
+ * and 24 hours. The honeypot collection only grows by appending documents, so
+ * as in IncrementalStatistics the largest _id read is kept as a watermark and
+ * each poll reads the documents whose _id is greater. Every new attack is
+ * counted in a SlidingWindowCounter per window and dimension, and after each
+ * poll which changed the counts the top lists are rebuilt and published to
+ * the listeners. Each counter keeps its top keys up to date from the keys
+ * counted since the last poll, visiting every key in its window only after a
+ * bucket is discarded, so a poll does not walk the 24 hour window.
+ * <p>
+ * The attack's time is taken from its ObjectId, or is the time it was read if
+ * the _id is not an ObjectId. Polling every 250 milliseconds, the default,
+ * keeps an attack's delay from insert to the published counts well within a
+ * second, each poll being a range read of the _id index.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see SlidingWindowCounter
+ * @see LiveTopLists
+ */
+public class LiveAttackMonitor {
+  /**
+   * Receives the top lists each time they are published.
+   */
+  public interface Listener {
+    /**
+     * Receive the top lists.
+     * @param topLists
+     *          The top lists for each window, shortest window first
+     */
+    void published(List<LiveTopLists> topLists);
+  }
+
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(LiveAttackMonitor.class);
+
+  /**
+   * The default time between polls in milliseconds.
+   */
+  public static final long DEFAULT_POLL_INTERVAL_MILLIS = 250;
+
+  /**
+   * The window names.
+   */
+  private static final String[] WINDOW_NAMES = {"5m", "1h", "24h" };
+
+  /**
+   * The number of buckets in each window.
+   */
+  private static final int[] WINDOW_BUCKETS = {60, 60, 96 };
+
+  /**
+   * The length of the buckets in each window, in milliseconds.
+   */
+  private static final long[] WINDOW_BUCKET_MILLIS = {
+      TimeUnit.SECONDS.toMillis(5), TimeUnit.MINUTES.toMillis(1),
+      TimeUnit.MINUTES.toMillis(15) };
+
+  /**
+   * The mask for the lower 32 bits of the client key.
+   */
+  private static final long COUNTRY_ID_MASK = 0xFFFFFFFFL;
+
+  /**
+   * The collection containing the attack documents.
+   */
+  private MongoCollection<Document> attacks;
+
+  /**
+   * The number of entries in each top list.
+   */
+  private int topCount;
+
+  /**
+   * The attack counts by country id, for each window.
+   */
+  private SlidingWindowCounter[] countries;
+
+  /**
+   * The attack counts by server IP mask value and channel id, for each
+   * window.
+   */
+  private SlidingWindowCounter[] serverChannels;
+
+  /**
+   * The attack counts by client IP mask value and country id, for each
+   * window.
+   */
+  private SlidingWindowCounter[] clients;
+
+  /**
+   * The ids of the country codes seen.
+   */
+  private StringDictionary countryCodes = new StringDictionary();
+
+  /**
+   * The ids of the channels seen.
+   */
+  private ChannelDictionary channels = new ChannelDictionary();
+
+  /**
+   * The largest _id read, null until the first poll.
+   */
+  private Object lastId;
+
+  /**
+   * The number of attacks read.
+   */
+  private long attacksRead;
+
+  /**
+   * The most recently published top lists.
+   */
+  private volatile List<LiveTopLists> topLists =
+    Collections.<LiveTopLists>emptyList();
+
+  /**
+   * The listeners receiving the top lists.
+   */
+  private List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Polls the collection on a schedule, null if not started.
+   */
+  private ScheduledExecutorService poller;
+
+  /**
+   * Create the instance. The attacks are read from the primary so that the
+   * document holding the newest _id is always visible.
+   * @param attacks
+   *          The collection containing the attack documents
+   * @param topCount
+   *          The number of entries in each top list
+   */
+  public LiveAttackMonitor(MongoCollection<Document> attacks, int topCount) {
+    this.attacks = attacks.withReadPreference(ReadPreference.primary());
+    this.topCount = topCount;
+    countries = newWindows();
+    serverChannels = newWindows();
+    clients = newWindows();
+  }
+
+  /**
+   * Create a counter for each window.
+   * @return The counters
+   */
+  private static SlidingWindowCounter[] newWindows() {
+    SlidingWindowCounter[] windows =
+      new SlidingWindowCounter[WINDOW_NAMES.length];
+    for (int window = 0; window < windows.length; ++window) {
+      windows[window] = new SlidingWindowCounter(WINDOW_BUCKETS[window],
+        WINDOW_BUCKET_MILLIS[window]);
+    }
+    return windows;
+  }
+
+  /**
+   * Add a listener which receives the top lists each time they are
+   * published.
+   * @param listener
+   *          The listener
+   */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Get the most recently published top lists.
+   * @return The top lists for each window, shortest window first, empty
+   *         until the first attack is read
+   */
+  public List<LiveTopLists> getTopLists() {
+    return topLists;
+  }
+
+  /**
+   * Get the number of attacks read since the monitor started.
+   * @return The number of attacks
+   */
+  public synchronized long getAttacksRead() {
+    return attacksRead;
+  }
+
+  /**
+   * Read the attacks inserted since the previous poll and count them. The
+   * first poll only records the newest _id, so attacks inserted earlier are
+   * not counted. The top lists are published if any count changed, either
+   * from new attacks or from old attacks leaving a window.
+   * @return The number of new attacks read
+   */
+  public synchronized int poll() {
+    long now = System.currentTimeMillis();
+    if (lastId == null) {
+      Document newest = attacks.find().projection(new Document("_id", 1))
+        .sort(new Document("_id", -1)).first();
+      lastId = newest == null ? new MinKey() : newest.get("_id");
+      LOG.info("Monitoring " + attacks.getNamespace() + " for attacks after "
+        + lastId);
+      return 0;
+    }
+
+    int newAttacks = 0;
+    for (Document attack : ReportTuning.getInstance().tune(
+      ReportTuning.MONITOR,
+      attacks.find(new Document("_id", new Document("$gt", lastId)))
+        .projection(new Document(AttackRecordCodec.CLIENT_COUNTRY_CODE, 1)
+          .append(AttackRecordCodec.CHANNEL, 1)
+          .append(AttackRecordCodec.PAYLOAD + "."
+            + AttackRecordCodec.SERVER_IP_MASK, 1)
+          .append(AttackRecordCodec.PAYLOAD + "."
+            + AttackRecordCodec.CLIENT_IP_MASK, 1))
+        .sort(new Document("_id", 1)))) {
+      lastId = attack.get("_id");
+      count(attack, lastId instanceof ObjectId
+        ? ((ObjectId) lastId).getDate().getTime() : now);
+      ++newAttacks;
+    }
+    attacksRead += newAttacks;
+
+    boolean discarded = false;
+    for (int window = 0; window < WINDOW_NAMES.length; ++window) {
+      discarded |= countries[window].advance(now);
+      discarded |= serverChannels[window].advance(now);
+      discarded |= clients[window].advance(now);
+    }
+    if (newAttacks > 0 || discarded) {
+      publish();
+    }
+    return newAttacks;
+  }
+
+  /**
+   * Count an attack in every window.
+   * @param attack
+   *          The attack document
+   * @param timeMillis
+   *          The time of the attack
+   */
+  private void count(Document attack, long timeMillis) {
+    Document payload = (Document) attack.get(AttackRecordCodec.PAYLOAD);
+    int serverIpMask = maskValue(payload, AttackRecordCodec.SERVER_IP_MASK);
+    int clientIpMask = maskValue(payload, AttackRecordCodec.CLIENT_IP_MASK);
+    int countryId = countryCodes.intern(
+      attack.getString(AttackRecordCodec.CLIENT_COUNTRY_CODE));
+    long serverChannelKey = ServerChannelKey.pack(serverIpMask,
+      channels.intern(attack.getString(AttackRecordCodec.CHANNEL)));
+    long clientKey =
+      ((long) clientIpMask << 32) | (countryId & COUNTRY_ID_MASK);
+
+    for (int window = 0; window < WINDOW_NAMES.length; ++window) {
+      countries[window].increment(countryId, timeMillis);
+      serverChannels[window].increment(serverChannelKey, timeMillis);
+      clients[window].increment(clientKey, timeMillis);
+    }
+  }
+
+  /**
+   * Get an IP mask value from the payload.
+   * @param payload
+   *          The payload, which may be null
+   * @param field
+   *          The mask field
+   * @return The value, 0 if it is not present
+   */
+  private static int maskValue(Document payload, String field) {
+    Object value = payload == null ? null : payload.get(field);
+    return value instanceof Number ? ((Number) value).intValue() : 0;
+  }
+
+  /**
+   * Rebuild the top lists for each window and pass them to the listeners.
+   */
+  private void publish() {
+    List<LiveTopLists> published = new ArrayList<>();
+    for (int window = 0; window < WINDOW_NAMES.length; ++window) {
+      published.add(new LiveTopLists(WINDOW_NAMES[window],
+        countries[window].getWindowMillis(),
+        countries[window].getTotalCount(), topCountries(countries[window]),
+        topServerChannels(serverChannels[window]),
+        topClients(clients[window])));
+    }
+    topLists = Collections.unmodifiableList(published);
+    for (Listener listener : listeners) {
+      listener.published(topLists);
+    }
+  }
+
+  /**
+   * Find the countries with the most attacks in a window.
+   * @param window
+   *          The counts by country id
+   * @return The countries, largest first
+   */
+  private List<CountryCount> topCountries(SlidingWindowCounter window) {
+    List<CountryCount> top = new ArrayList<>();
+    for (long key : window.getTopKeys(topCount)) {
+      top.add(new CountryCount(countryCodes.getValue((int) key),
+        window.getCount(key)));
+    }
+    return top;
+  }
+
+  /**
+   * Find the servers and channels with the most attacks in a window.
+   * @param window
+   *          The counts by server IP mask value and channel id
+   * @return The servers and channels, largest first
+   */
+  private List<ServerChannelCount> topServerChannels(
+    SlidingWindowCounter window) {
+    List<ServerChannelCount> top = new ArrayList<>();
+    for (long key : window.getTopKeys(topCount)) {
+      top.add(new ServerChannelCount(key, channels, window.getCount(key)));
+    }
+    return top;
+  }
+
+  /**
+   * Find the clients with the most attacks in a window.
+   * @param window
+   *          The counts by client IP mask value and country id
+   * @return The clients, largest first
+   */
+  private List<ClientCount> topClients(SlidingWindowCounter window) {
+    List<ClientCount> top = new ArrayList<>();
+    for (long key : window.getTopKeys(topCount)) {
+      top.add(new ClientCount((int) (key >>> 32),
+        countryCodes.getValue((int) key), window.getCount(key)));
+    }
+    return top;
+  }
+
+  /**
+   * Poll the collection repeatedly on a separate thread. A failed poll is
+   * logged and retried at the next interval, resuming from the watermark.
+   * @param pollIntervalMillis
+   *          The time between the end of one poll and the start of the next,
+   *          in milliseconds
+   */
+  public synchronized void start(long pollIntervalMillis) {
+    if (poller != null) {
+      throw new IllegalStateException("The monitor is already started");
+    }
+    poller = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          return new Thread(runnable, "live-monitor");
+        }
+      });
+    poller.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          poll();
+        } catch (MongoException mongoException) {
+          LOG.warn("Unable to poll " + attacks.getNamespace(),
+            mongoException);
+        }
+      }
+    }, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop polling, if started.
+   */
+  public synchronized void stop() {
+    if (poller != null) {
+      poller.shutdownNow();
+      poller = null;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.List;
+
+/**
+ * The most active countries, servers and channels, and clients over one
+ * sliding window of the live attack monitor, as published after an update.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see LiveAttackMonitor
+ */
+public class LiveTopLists {
+  /**
+   * The window name, e.g. 5m.
+   */
+  private String window;
+
+  /**
+   * The length of the window in milliseconds.
+   */
+  private long windowMillis;
+
+  /**
+   * The number of attacks in the window.
+   */
+  private long totalAttacks;
+
+  /**
+   * The countries with the most attacks, largest first.
+   */
+  private List<CountryCount> countries;
+
+  /**
+   * The servers and channels with the most attacks, largest first.
+   */
+  private List<ServerChannelCount> serverChannels;
+
+  /**
+   * The clients with the most attacks, largest first.
+   */
+  private List<ClientCount> clients;
+
+  /**
+   * Create the instance.
+   * @param window
+   *          The window name
+   * @param windowMillis
+   *          The length of the window in milliseconds
+   * @param totalAttacks
+   *          The number of attacks in the window
+   * @param countries
+   *          The countries with the most attacks
+   * @param serverChannels
+   *          The servers and channels with the most attacks
+   * @param clients
+   *          The clients with the most attacks
+   */
+  public LiveTopLists(String window, long windowMillis, long totalAttacks,
+    List<CountryCount> countries, List<ServerChannelCount> serverChannels,
+    List<ClientCount> clients) {
+    setWindow(window);
+    setWindowMillis(windowMillis);
+    setTotalAttacks(totalAttacks);
+    setCountries(countries);
+    setServerChannels(serverChannels);
+    setClients(clients);
+  }
+
+  /**
+   * Get the window name.
+   * @return The window name
+   */
+  public String getWindow() {
+    return window;
+  }
+
+  /**
+   * Set the window name.
+   * @param window
+   *          The window name
+   */
+  public void setWindow(String window) {
+    this.window = window;
+  }
+
+  /**
+   * Get the length of the window.
+   * @return The length in milliseconds
+   */
+  public long getWindowMillis() {
+    return windowMillis;
+  }
+
+  /**
+   * Set the length of the window.
+   * @param windowMillis
+   *          The length in milliseconds
+   */
+  public void setWindowMillis(long windowMillis) {
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * Get the number of attacks in the window.
+   * @return The number of attacks
+   */
+  public long getTotalAttacks() {
+    return totalAttacks;
+  }
+
+  /**
+   * Set the number of attacks in the window.
+   * @param totalAttacks
+   *          The number of attacks
+   */
+  public void setTotalAttacks(long totalAttacks) {
+    this.totalAttacks = totalAttacks;
+  }
+
+  /**
+   * Get the countries with the most attacks.
+   * @return The countries, largest first
+   */
+  public List<CountryCount> getCountries() {
+    return countries;
+  }
+
+  /**
+   * Set the countries with the most attacks.
+   * @param countries
+   *          The countries, largest first
+   */
+  public void setCountries(List<CountryCount> countries) {
+    this.countries = countries;
+  }
+
+  /**
+   * Get the servers and channels with the most attacks.
+   * @return The servers and channels, largest first
+   */
+  public List<ServerChannelCount> getServerChannels() {
+    return serverChannels;
+  }
+
+  /**
+   * Set the servers and channels with the most attacks.
+   * @param serverChannels
+   *          The servers and channels, largest first
+   */
+  public void setServerChannels(List<ServerChannelCount> serverChannels) {
+    this.serverChannels = serverChannels;
+  }
+
+  /**
+   * Get the clients with the most attacks.
+   * @return The clients, largest first
+   */
+  public List<ClientCount> getClients() {
+    return clients;
+  }
+
+  /**
+   * Set the clients with the most attacks.
+   * @param clients
+   *          The clients, largest first
+   */
+  public void setClients(List<ClientCount> clients) {
+    this.clients = clients;
+  }
+}
@@ -0,0 +1,259 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive long keys to primitive int values using open
+ * addressing with linear probing. Keys and values are held in parallel arrays
+ * so updating an existing entry does not allocate any objects. This is
+ * intended for counting occurrences of composite keys packed into a long.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class LongIntHashMap {
+  /**
+   * Receives each entry when the map is traversed.
+   */
+  public interface EntryVisitor {
+    /**
+     * Process one entry.
+     * @param key
+     *          The key
+     * @param value
+     *          The value associated with the key
+     */
+    void visit(long key, int value);
+  }
+
+  /**
+   * The default initial capacity.
+   */
+  private static final int DEFAULT_CAPACITY = 64;
+
+  /**
+   * The multiplier used to spread the key bits (the 64 bit golden ratio).
+   */
+  private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  /**
+   * The keys, indexed by slot.
+   */
+  private long[] keys;
+
+  /**
+   * The values, indexed by slot.
+   */
+  private int[] values;
+
+  /**
+   * Whether each slot holds an entry.
+   */
+  private boolean[] used;
+
+  /**
+   * The number of entries in the map.
+   */
+  private int size;
+
+  /**
+   * The number of entries at which the table is grown.
+   */
+  private int resizeThreshold;
+
+  /**
+   * Create an instance with the default capacity.
+   */
+  public LongIntHashMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create an instance able to hold the expected number of entries without
+   * being resized.
+   * @param expectedSize
+   *          The expected number of entries
+   */
+  public LongIntHashMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1)
+      << 1;
+    allocate(capacity);
+  }
+
+  /**
+   * Allocate the arrays for the table.
+   * @param capacity
+   *          The number of slots, must be a power of two
+   */
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    resizeThreshold = capacity / 4 * 3;
+  }
+
+  /**
+   * Find the first slot probed for a key.
+   * @param key
+   *          The key
+   * @return The slot
+   */
+  private int home(long key) {
+    return (int) ((key * HASH_MULTIPLIER) >>> 32) & (keys.length - 1);
+  }
+
+  /**
+   * Find the slot for a key. This is either the slot holding the key or the
+   * empty slot where the key would be placed.
+   * @param key
+   *          The key
+   * @return The slot
+   */
+  private int slot(long key) {
+    int mask = keys.length - 1;
+    int slot = home(key);
+    while (used[slot] && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Add one to the value associated with a key. A missing key is treated as
+   * having a value of zero.
+   * @param key
+   *          The key
+   */
+  public void increment(long key) {
+    add(key, 1);
+  }
+
+  /**
+   * Add an amount to the value associated with a key. A missing key is
+   * treated as having a value of zero.
+   * @param key
+   *          The key
+   * @param amount
+   *          The amount to add
+   */
+  public void add(long key, int amount) {
+    int slot = slot(key);
+    if (used[slot]) {
+      values[slot] += amount;
+    } else {
+      used[slot] = true;
+      keys[slot] = key;
+      values[slot] = amount;
+      if (++size > resizeThreshold) {
+        grow();
+      }
+    }
+  }
+
+  /**
+   * Get the value associated with a key.
+   * @param key
+   *          The key
+   * @return The value, zero if the key is not in the map
+   */
+  public int get(long key) {
+    int slot = slot(key);
+    return used[slot] ? values[slot] : 0;
+  }
+
+  /**
+   * Remove a key from the map. The entries following the removed entry in its
+   * probe sequence are moved back so that no deleted markers are needed.
+   * @param key
+   *          The key
+   * @return The value which was associated with the key, zero if the key was
+   *         not in the map
+   */
+  public int remove(long key) {
+    int gap = slot(key);
+    if (!used[gap]) {
+      return 0;
+    }
+    int value = values[gap];
+
+    int mask = keys.length - 1;
+    int next = (gap + 1) & mask;
+    while (used[next]) {
+      /**
+       * The entry can fill the gap if the gap lies between the entry's first
+       * probed slot and its current slot.
+       */
+      if (((next - home(keys[next])) & mask) >= ((next - gap) & mask)) {
+        keys[gap] = keys[next];
+        values[gap] = values[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    used[gap] = false;
+    --size;
+    return value;
+  }
+
+  /**
+   * Get the number of entries in the map.
+   * @return The number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove every entry, keeping the table at its current size so that it can
+   * be filled again without allocating.
+   */
+  public void clear() {
+    Arrays.fill(used, false);
+    size = 0;
+  }
+
+  /**
+   * Pass every entry in the map to a visitor. The order of the entries is not
+   * defined.
+   * @param visitor
+   *          The visitor receiving the entries
+   */
+  public void forEachEntry(EntryVisitor visitor) {
+    for (int slot = 0; slot < keys.length; ++slot) {
+      if (used[slot]) {
+        visitor.visit(keys[slot], values[slot]);
+      }
+    }
+  }
+
+  /**
+   * Double the size of the table and reinsert the entries.
+   */
+  private void grow() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(keys.length * 2);
+    for (int oldSlot = 0; oldSlot < oldKeys.length; ++oldSlot) {
+      if (oldUsed[oldSlot]) {
+        int slot = slot(oldKeys[oldSlot]);
+        used[slot] = true;
+        keys[slot] = oldKeys[oldSlot];
+        values[slot] = oldValues[oldSlot];
+      }
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+/**
+ * Prints the Java coded honeypot reports from a mongodump .bson file of the
+ * attack collection, without a running server. The dump is read once by a
+ * BsonDumpSource and the coded reports are run by BasicStatistics, so they
+ * are printed in the same order, and with the same format, as when reading
+ * the server. The reports which need the server, the aggregation pipelines
+ * and the distinct counts, are omitted.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see BsonDumpSource
+ * @see BasicStatistics
+ */
+public class OfflineReportRunner {
+  /**
+   * The source reading the dump file.
+   */
+  private AttackSource attackSource;
+
+  /**
+   * Create the runner.
+   * @param dumpFile
+   *          The mongodump .bson file of the attack collection
+   * @param threads
+   *          The number of threads decoding the dump
+   */
+  public OfflineReportRunner(Path dumpFile, int threads) {
+    this(new BsonDumpSource(dumpFile, threads));
+  }
+
+  /**
+   * Create the runner using an existing source.
+   * @param attackSource
+   *          The source of the attack documents
+   */
+  public OfflineReportRunner(AttackSource attackSource) {
+    this.attackSource = attackSource;
+  }
+
+  /**
+   * Read the dump and print the reports. The reports are run by a
+   * BasicStatistics reading the attacks from the dump, which reads the dump
+   * once for all of them.
+   * @param out
+   *          The stream receiving the reports
+   */
+  public void printReports(PrintStream out) {
+    BasicStatistics attackStats = new BasicStatistics(attackSource);
+    try {
+      ReportPrinter printer =
+        new ReportPrinter(out, attackStats.getTotalAttacks());
+      attackStats.setReportPrinter(printer);
+
+      attackStats.overallStats();
+      printer.blankLine();
+      attackStats.countryBreakdownCoded();
+      printer.blankLine();
+      attackStats.honeypotBreakdownCoded();
+    } finally {
+      attackStats.close();
+    }
+  }
+}
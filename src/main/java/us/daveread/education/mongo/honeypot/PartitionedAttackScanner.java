@@ -0,0 +1,313 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Reads every attack document in a collection using several cursors in
+ * parallel. The collection is split into ranges of _id values based on the
+ * timestamps embedded in the minimum and maximum ObjectId values. Each range
+ * is read by its own cursor into its own set of accumulators and the results
+ * are combined using a fork/join reduction. Since every document falls into
+ * exactly one range the merged results match those of a single scan.
+ * <p>
+ * If the collection does not use ObjectId values for _id, or every document
+ * was created in the same second, the collection is read with a single cursor.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see AttackScanner
+ */
+public class PartitionedAttackScanner implements AttackSource {
+  /**
+   * The logger
+   */
+  private static final Logger LOG =
+    Logger.getLogger(PartitionedAttackScanner.class);
+
+  /**
+   * The number of partitions created for each thread. Using more partitions
+   * than threads keeps the threads busy when the documents are not spread
+   * evenly over time.
+   */
+  private static final int PARTITIONS_PER_THREAD = 4;
+
+  /**
+   * The collection containing the attack documents.
+   */
+  private MongoCollection<Document> collection;
+
+  /**
+   * The caller's pool running the partition scans, null if each scan creates
+   * and shuts down its own pool.
+   */
+  private ForkJoinPool pool;
+
+  /**
+   * The number of threads in the pool created by each scan.
+   */
+  private int threads;
+
+  /**
+   * The number of partitions to split the collection into.
+   */
+  private int partitionCount;
+
+  /**
+   * Create the instance. Each scan runs in a new pool which is shut down
+   * when the scan ends.
+   * @param collection
+   *          The collection containing the attack documents
+   * @param threads
+   *          The number of threads reading the collection
+   */
+  public PartitionedAttackScanner(MongoCollection<Document> collection,
+    int threads) {
+    this.collection = collection;
+    this.threads = threads;
+    this.partitionCount = threads * PARTITIONS_PER_THREAD;
+  }
+
+  /**
+   * Create the instance using the caller's pool. The pool is not shut down.
+   * @param collection
+   *          The collection containing the attack documents
+   * @param pool
+   *          The pool running the partition scans
+   * @param partitionCount
+   *          The number of partitions to split the collection into
+   */
+  public PartitionedAttackScanner(MongoCollection<Document> collection,
+    ForkJoinPool pool, int partitionCount) {
+    this.collection = collection;
+    this.pool = pool;
+    this.threads = pool.getParallelism();
+    this.partitionCount = partitionCount;
+  }
+
+  @Override
+  public long scan(List<AttackAccumulator> accumulators) {
+    List<Document> filters = partitionFilters(findIdBoundary(1),
+      findIdBoundary(-1), partitionCount);
+    LOG.info("Scanning collection " + collection.getNamespace() + " in "
+      + filters.size() + " partitions using " + threads + " threads");
+
+    ForkJoinPool scanPool = pool == null ? new ForkJoinPool(threads) : pool;
+    PartitionResult result;
+    try {
+      result = scanPool.invoke(new PartitionScanTask(accumulators, filters, 0,
+        filters.size()));
+    } finally {
+      if (scanPool != pool) {
+        scanPool.shutdown();
+      }
+    }
+
+    for (int index = 0; index < accumulators.size(); ++index) {
+      accumulators.get(index).merge(result.accumulators.get(index));
+    }
+
+    return result.documentCount;
+  }
+
+  /**
+   * Find the smallest or largest _id in the collection.
+   * @param direction
+   *          1 for the smallest value, -1 for the largest
+   * @return The _id value, null if the collection is empty
+   */
+  private Object findIdBoundary(int direction) {
+    Document boundary = collection.find()
+      .projection(new Document("_id", 1))
+      .sort(new Document("_id", direction)).first();
+    return boundary == null ? null : boundary.get("_id");
+  }
+
+  /**
+   * Create the filters selecting each partition. The range between the
+   * timestamps of the smallest and largest ObjectId is divided evenly. The
+   * first partition has no lower bound and the last has no upper bound so
+   * that documents added after the boundaries were found are still read.
+   * @param minimumId
+   *          The smallest _id in the collection
+   * @param maximumId
+   *          The largest _id in the collection
+   * @param partitionCount
+   *          The desired number of partitions
+   * @return The filters, one per partition. A single empty filter is returned
+   *         if the _id values are not ObjectIds or cannot be split.
+   */
+  public static List<Document> partitionFilters(Object minimumId,
+    Object maximumId, int partitionCount) {
+    List<Document> filters = new ArrayList<>();
+
+    if (!(minimumId instanceof ObjectId) || !(maximumId instanceof ObjectId)
+      || partitionCount < 2) {
+      filters.add(new Document());
+      return filters;
+    }
+
+    long minimumTimestamp = ((ObjectId) minimumId).getTimestamp();
+    long maximumTimestamp = ((ObjectId) maximumId).getTimestamp();
+
+    List<ObjectId> boundaries = new ArrayList<>();
+    long previousTimestamp = minimumTimestamp;
+    for (int partition = 1; partition < partitionCount; ++partition) {
+      long timestamp = minimumTimestamp
+        + (maximumTimestamp - minimumTimestamp) * partition / partitionCount;
+      if (timestamp > previousTimestamp) {
+        boundaries.add(new ObjectId((int) timestamp, 0, (short) 0, 0));
+        previousTimestamp = timestamp;
+      }
+    }
+
+    ObjectId lowerBound = null;
+    for (ObjectId upperBound : boundaries) {
+      filters.add(rangeFilter(lowerBound, upperBound));
+      lowerBound = upperBound;
+    }
+    filters.add(rangeFilter(lowerBound, null));
+
+    return filters;
+  }
+
+  /**
+   * Create a filter selecting a range of _id values.
+   * @param lowerBound
+   *          The inclusive lower bound, null for no lower bound
+   * @param upperBound
+   *          The exclusive upper bound, null for no upper bound
+   * @return The filter
+   */
+  private static Document rangeFilter(ObjectId lowerBound,
+    ObjectId upperBound) {
+    Document range = new Document();
+    if (lowerBound != null) {
+      range.append("$gte", lowerBound);
+    }
+    if (upperBound != null) {
+      range.append("$lt", upperBound);
+    }
+    return range.isEmpty() ? range : new Document("_id", range);
+  }
+
+  /**
+   * The accumulators and document count produced by scanning one or more
+   * partitions.
+   */
+  private static class PartitionResult {
+    /**
+     * The accumulators holding the results.
+     */
+    private List<AttackAccumulator> accumulators;
+
+    /**
+     * The number of documents read.
+     */
+    private long documentCount;
+  }
+
+  /**
+   * Scans a range of partitions. A single partition is read directly. A range
+   * of several partitions is split in half, the halves are scanned in
+   * parallel and their results merged.
+   */
+  private class PartitionScanTask extends RecursiveTask<PartitionResult> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The accumulators used as templates for each partition's accumulators.
+     */
+    private List<AttackAccumulator> prototypes;
+
+    /**
+     * The filters selecting each partition.
+     */
+    private List<Document> filters;
+
+    /**
+     * The first partition in the range (inclusive).
+     */
+    private int from;
+
+    /**
+     * The last partition in the range (exclusive).
+     */
+    private int to;
+
+    /**
+     * Create the task.
+     * @param prototypes
+     *          The accumulators used as templates
+     * @param filters
+     *          The filters selecting each partition
+     * @param from
+     *          The first partition in the range (inclusive)
+     * @param to
+     *          The last partition in the range (exclusive)
+     */
+    PartitionScanTask(List<AttackAccumulator> prototypes,
+      List<Document> filters, int from, int to) {
+      this.prototypes = prototypes;
+      this.filters = filters;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected PartitionResult compute() {
+      if (to - from == 1) {
+        PartitionResult result = new PartitionResult();
+        result.accumulators = new ArrayList<>();
+        for (AttackAccumulator prototype : prototypes) {
+          result.accumulators.add(prototype.newInstance());
+        }
+        result.documentCount = new AttackScanner(collection, filters.get(from))
+          .scan(result.accumulators);
+        return result;
+      }
+
+      int middle = (from + to) >>> 1;
+      PartitionScanTask lower =
+        new PartitionScanTask(prototypes, filters, from, middle);
+      PartitionScanTask upper =
+        new PartitionScanTask(prototypes, filters, middle, to);
+      lower.fork();
+      PartitionResult result = upper.compute();
+      PartitionResult lowerResult = lower.join();
+
+      for (int index = 0; index < result.accumulators.size(); ++index) {
+        result.accumulators.get(index)
+          .merge(lowerResult.accumulators.get(index));
+      }
+      result.documentCount += lowerResult.documentCount;
+
+      return result;
+    }
+  }
+}
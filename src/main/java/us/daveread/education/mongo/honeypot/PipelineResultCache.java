@@ -0,0 +1,360 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Keeps the results of aggregation pipelines so that a report repeated
+ * against unchanged data is answered from memory. Each result is keyed by a
+ * SHA-256 hash of the collection's namespace and the pipeline's JSON, so
+ * identical pipelines built separately share a result.
+ * <p>
+ * A result is discarded when it is older than the time to live, when the
+ * least recently used results must make room for a new one, or when the
+ * collection has changed since the result was computed. The collection is
+ * identified by its document count and largest _id, which change whenever
+ * attacks are added or removed. Checking them takes two queries, so they are
+ * only checked once per validation interval and results are trusted in
+ * between.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ReportTuning#newResultCache()
+ */
+public class PipelineResultCache {
+  /**
+   * A cached pipeline result.
+   */
+  private static class CachedResult {
+    /**
+     * The documents returned by the pipeline.
+     */
+    private List<Document> results;
+
+    /**
+     * The version of the collection the results were computed from.
+     */
+    private Document version;
+
+    /**
+     * The time at which the results were computed.
+     */
+    private long createdMillis;
+
+    /**
+     * Create the entry.
+     * @param results
+     *          The documents returned by the pipeline
+     * @param version
+     *          The version of the collection
+     * @param createdMillis
+     *          The time at which the results were computed
+     */
+    CachedResult(List<Document> results, Document version, long createdMillis) {
+      this.results = results;
+      this.version = version;
+      this.createdMillis = createdMillis;
+    }
+  }
+
+  /**
+   * The version of a collection as last checked.
+   */
+  private static class CheckedVersion {
+    /**
+     * The document count and largest _id.
+     */
+    private Document version;
+
+    /**
+     * The time at which the version was checked.
+     */
+    private long checkedMillis;
+
+    /**
+     * Create the instance.
+     * @param version
+     *          The document count and largest _id
+     * @param checkedMillis
+     *          The time at which the version was checked
+     */
+    CheckedVersion(Document version, long checkedMillis) {
+      this.version = version;
+      this.checkedMillis = checkedMillis;
+    }
+  }
+
+  /**
+   * The logger
+   */
+  private static final Logger LOG =
+    Logger.getLogger(PipelineResultCache.class);
+
+  /**
+   * The digits used to format the key hash.
+   */
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * The cached results by key, least recently used first.
+   */
+  private LinkedHashMap<String, CachedResult> entries;
+
+  /**
+   * The last checked version of each collection, by namespace.
+   */
+  private Map<String, CheckedVersion> versions = new HashMap<>();
+
+  /**
+   * The time for which a result is kept, in milliseconds.
+   */
+  private long timeToLiveMillis;
+
+  /**
+   * The time for which a checked collection version is trusted, in
+   * milliseconds.
+   */
+  private long validationIntervalMillis;
+
+  /**
+   * The number of requests answered from the cache.
+   */
+  private long hitCount;
+
+  /**
+   * The number of requests which ran the pipeline.
+   */
+  private long missCount;
+
+  /**
+   * Create an empty cache.
+   * @param maximumEntries
+   *          The number of results kept
+   * @param timeToLiveMillis
+   *          The time for which a result is kept, in milliseconds
+   * @param validationIntervalMillis
+   *          The time for which a checked collection version is trusted, in
+   *          milliseconds, 0 to check the collection on every request
+   */
+  public PipelineResultCache(final int maximumEntries, long timeToLiveMillis,
+    long validationIntervalMillis) {
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.validationIntervalMillis = validationIntervalMillis;
+    entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+      /**
+       * Serialization version
+       */
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+        Map.Entry<String, CachedResult> eldest) {
+        return size() > maximumEntries;
+      }
+    };
+  }
+
+  /**
+   * Run an aggregation pipeline, or return its cached result if the
+   * collection has not changed. The pipeline is run with the report's tuning
+   * settings and its complete result is kept.
+   * @param collection
+   *          The collection the pipeline runs against
+   * @param report
+   *          The report name, used for the tuning settings
+   * @param pipeline
+   *          The pipeline
+   * @return The documents returned by the pipeline, which must not be
+   *         modified
+   * @see ReportTuning#tune(String, com.mongodb.client.AggregateIterable)
+   */
+  public List<Document> aggregate(MongoCollection<Document> collection,
+    String report, List<Document> pipeline) {
+    String namespace = collection.getNamespace().getFullName();
+    String key = cacheKey(namespace, pipeline);
+    Document version = collectionVersion(collection);
+
+    List<Document> results = get(key, version);
+    if (results != null) {
+      return results;
+    }
+
+    results = Collections.unmodifiableList(ReportTuning.getInstance()
+      .tune(report, collection.aggregate(pipeline))
+      .into(new ArrayList<Document>()));
+    put(key, version, results);
+    LOG.debug("Cached " + results.size() + " results of the " + report
+      + " pipeline on " + namespace);
+    return results;
+  }
+
+  /**
+   * Get the version of a collection, checking it if the last check is older
+   * than the validation interval.
+   * @param collection
+   *          The collection
+   * @return The document count and largest _id
+   */
+  private Document collectionVersion(MongoCollection<Document> collection) {
+    String namespace = collection.getNamespace().getFullName();
+    synchronized (this) {
+      CheckedVersion checked = versions.get(namespace);
+      if (checked != null && currentTimeMillis()
+        - checked.checkedMillis < validationIntervalMillis) {
+        return checked.version;
+      }
+    }
+
+    Document newest = collection.find().projection(new Document("_id", 1))
+      .sort(new Document("_id", -1)).first();
+    Document version = new Document("count", collection.count())
+      .append("maxId", newest == null ? null : newest.get("_id"));
+
+    synchronized (this) {
+      versions.put(namespace, new CheckedVersion(version,
+        currentTimeMillis()));
+    }
+    return version;
+  }
+
+  /**
+   * Get a cached result. The result is discarded if it has expired or was
+   * computed from a different version of the collection.
+   * @param key
+   *          The cache key
+   * @param version
+   *          The current version of the collection
+   * @return The cached result, null if there is none
+   * @see #cacheKey(String, List)
+   */
+  public synchronized List<Document> get(String key, Document version) {
+    CachedResult entry = entries.get(key);
+    if (entry != null && (currentTimeMillis()
+      - entry.createdMillis >= timeToLiveMillis
+      || !entry.version.equals(version))) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      ++missCount;
+      return null;
+    }
+    ++hitCount;
+    return entry.results;
+  }
+
+  /**
+   * Cache a result, discarding the least recently used result if the cache
+   * is full.
+   * @param key
+   *          The cache key
+   * @param version
+   *          The version of the collection the result was computed from
+   * @param results
+   *          The result
+   * @see #cacheKey(String, List)
+   */
+  public synchronized void put(String key, Document version,
+    List<Document> results) {
+    entries.put(key, new CachedResult(results, version, currentTimeMillis()));
+  }
+
+  /**
+   * Discard every cached result and collection version.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    versions.clear();
+  }
+
+  /**
+   * Create the key for a pipeline: the SHA-256 hash of the namespace and the
+   * JSON of each stage. Field order is part of the JSON, which matches the
+   * server where the order of sort keys and stages is significant.
+   * @param namespace
+   *          The full name of the collection
+   * @param pipeline
+   *          The pipeline
+   * @return The key, as hexadecimal
+   */
+  public static String cacheKey(String namespace, List<Document> pipeline) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+      throw new IllegalStateException("SHA-256 is not available",
+        noSuchAlgorithmException);
+    }
+    digest.update(namespace.getBytes(StandardCharsets.UTF_8));
+    for (Document stage : pipeline) {
+      digest.update((byte) '\n');
+      digest.update(stage.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] hash = digest.digest();
+    char[] key = new char[hash.length * 2];
+    for (int index = 0; index < hash.length; ++index) {
+      key[index * 2] = HEX_DIGITS[(hash[index] >> 4) & 0xF];
+      key[index * 2 + 1] = HEX_DIGITS[hash[index] & 0xF];
+    }
+    return new String(key);
+  }
+
+  /**
+   * Get the current time. Tests override this to control expiry.
+   * @return The current time in milliseconds
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Get the number of cached results.
+   * @return The number of results
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Get the number of requests answered from the cache.
+   * @return The number of hits
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Get the number of requests which were not answered from the cache.
+   * @return The number of misses
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+}
@@ -0,0 +1,129 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.Tag;
+import com.mongodb.TagSet;
+
+/**
+ * Parses the command line options describing a replica set: the seed list of
+ * members and the read preference used by the reports. Reading the reports
+ * from secondaries keeps the full collection scans away from the primary,
+ * which is busy receiving new honeypot data.
+ * <p>
+ * A seed list is a comma separated list of host:port pairs, for example
+ * localhost:27017,localhost:27018,localhost:27019. The port defaults to
+ * 27017.
+ * <p>
+ * A read preference is a mode (primary, primaryPreferred, secondary,
+ * secondaryPreferred or nearest) with optional tag sets. The tag sets are
+ * separated by semicolons and are tried in order. Each tag set is a comma
+ * separated list of name=value pairs, and an empty tag set matches any
+ * member, for example use=reporting,dc=east;use=reporting;
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public final class ReplicaSetOptions {
+  /**
+   * The port used when a seed does not give one.
+   */
+  public static final int DEFAULT_PORT = 27017;
+
+  /**
+   * Static methods only.
+   */
+  private ReplicaSetOptions() {
+  }
+
+  /**
+   * Parse a seed list.
+   * @param seedList
+   *          The comma separated host:port pairs
+   * @return The members
+   */
+  public static List<ServerAddress> parseSeedList(String seedList) {
+    List<ServerAddress> seeds = new ArrayList<>();
+    for (String seed : seedList.split(",")) {
+      String trimmed = seed.trim();
+      if (trimmed.isEmpty()) {
+        continue;
+      }
+      int colon = trimmed.lastIndexOf(':');
+      if (colon < 0) {
+        seeds.add(new ServerAddress(trimmed, DEFAULT_PORT));
+      } else {
+        seeds.add(new ServerAddress(trimmed.substring(0, colon),
+          Integer.parseInt(trimmed.substring(colon + 1))));
+      }
+    }
+    if (seeds.isEmpty()) {
+      throw new IllegalArgumentException("The seed list is empty: "
+        + seedList);
+    }
+    return seeds;
+  }
+
+  /**
+   * Parse a read preference.
+   * @param mode
+   *          The mode, e.g. secondaryPreferred
+   * @param tagSets
+   *          The tag sets, null or empty for none
+   * @return The read preference
+   * @throws IllegalArgumentException
+   *           If the mode is unknown, or tag sets are given with the primary
+   *           mode
+   */
+  public static ReadPreference parseReadPreference(String mode,
+    String tagSets) {
+    if (tagSets == null || tagSets.trim().isEmpty()) {
+      return ReadPreference.valueOf(mode);
+    }
+    return ReadPreference.valueOf(mode, parseTagSets(tagSets));
+  }
+
+  /**
+   * Parse a list of tag sets.
+   * @param tagSets
+   *          The tag sets separated by semicolons
+   * @return The tag sets, in order
+   */
+  public static List<TagSet> parseTagSets(String tagSets) {
+    List<TagSet> parsed = new ArrayList<>();
+    for (String tagSet : tagSets.split(";", -1)) {
+      List<Tag> tags = new ArrayList<>();
+      for (String tag : tagSet.split(",")) {
+        String trimmed = tag.trim();
+        if (trimmed.isEmpty()) {
+          continue;
+        }
+        int equals = trimmed.indexOf('=');
+        if (equals < 0) {
+          throw new IllegalArgumentException(
+            "Tags must be name=value pairs: " + trimmed);
+        }
+        tags.add(new Tag(trimmed.substring(0, equals).trim(),
+          trimmed.substring(equals + 1).trim()));
+      }
+      parsed.add(new TagSet(tags));
+    }
+    return parsed;
+  }
+}
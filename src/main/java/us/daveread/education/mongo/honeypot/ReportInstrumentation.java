@@ -0,0 +1,352 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Measures each report as it runs. The instance is added to the client
+ * options as a command listener, so it sees every command the driver sends
+ * and every reply it receives. The synchronous driver sends commands on the
+ * calling thread, so the commands are attributed to the report started on
+ * the same thread. Commands sent from other threads, such as those of a
+ * partitioned scan, are not attributed.
+ * <p>
+ * For each report the wall time, the time until the first document arrives,
+ * the documents and bytes received, the commands and getMore round trips and
+ * the bytes allocated by the report's thread are measured. If an explain
+ * client has been set the report's main query is explained afterwards to
+ * record the documents and keys the server examined and its execution time.
+ * Explaining runs the query again, so it is off by default.
+ * <p>
+ * Each measurement is logged as a line of name=value pairs to the
+ * us.daveread.education.mongo.honeypot.metrics logger and added to a JMX
+ * MBean for the report, named
+ * us.daveread.education.mongo.honeypot:type=ReportMetrics,name=REPORT.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ReportMeasurement
+ * @see ReportMetrics
+ */
+public class ReportInstrumentation implements CommandListener {
+  /**
+   * The logger
+   */
+  private static final Logger LOG =
+    Logger.getLogger(ReportInstrumentation.class);
+
+  /**
+   * The logger receiving the measurements.
+   */
+  private static final Logger METRICS_LOG =
+    Logger.getLogger("us.daveread.education.mongo.honeypot.metrics");
+
+  /**
+   * The domain of the MBean names.
+   */
+  private static final String MBEAN_DOMAIN =
+    "us.daveread.education.mongo.honeypot";
+
+  /**
+   * The report running on each thread.
+   */
+  private final ThreadLocal<ReportMeasurement> current = new ThreadLocal<>();
+
+  /**
+   * The accumulated measurements by report name.
+   */
+  private final ConcurrentMap<String, ReportMetrics> metrics =
+    new ConcurrentHashMap<>();
+
+  /**
+   * The thread bean used to measure allocation, null if the JVM does not
+   * measure allocation.
+   */
+  private final com.sun.management.ThreadMXBean threadBean;
+
+  /**
+   * The client used to explain each report's main query, null to not
+   * explain.
+   */
+  private MongoClient explainClient;
+
+  /**
+   * Create the instance.
+   */
+  public ReportInstrumentation() {
+    java.lang.management.ThreadMXBean bean =
+      ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean
+      && ((com.sun.management.ThreadMXBean) bean)
+        .isThreadAllocatedMemorySupported()) {
+      threadBean = (com.sun.management.ThreadMXBean) bean;
+      threadBean.setThreadAllocatedMemoryEnabled(true);
+    } else {
+      threadBean = null;
+    }
+  }
+
+  /**
+   * Set the client used to explain each report's main query.
+   * @param explainClient
+   *          The client, null to not explain
+   */
+  public void setExplainClient(MongoClient explainClient) {
+    this.explainClient = explainClient;
+  }
+
+  /**
+   * Start measuring a report on the current thread.
+   * @param report
+   *          The report name
+   * @return The measurement, to be passed to finish()
+   */
+  public ReportMeasurement start(String report) {
+    long threadId = Thread.currentThread().getId();
+    ReportMeasurement measurement =
+      new ReportMeasurement(report, threadId, allocatedBytes(threadId));
+    current.set(measurement);
+    return measurement;
+  }
+
+  /**
+   * Finish measuring a report, explaining its main query if enabled, and
+   * publish the measurement.
+   * @param measurement
+   *          The measurement returned by start()
+   */
+  public void finish(ReportMeasurement measurement) {
+    measurement.finished(allocatedBytes(measurement.getThreadId()));
+    current.remove();
+
+    if (explainClient != null && measurement.getQuery() != null) {
+      explain(measurement);
+    }
+
+    METRICS_LOG.info(measurement);
+    metrics(measurement.getReport()).record(measurement);
+  }
+
+  /**
+   * Get the bytes allocated by a thread so far.
+   * @param threadId
+   *          The thread id
+   * @return The number of bytes, -1 if the JVM does not measure allocation
+   */
+  private long allocatedBytes(long threadId) {
+    return threadBean == null ? -1
+      : threadBean.getThreadAllocatedBytes(threadId);
+  }
+
+  /**
+   * Explain the report's main query with execution statistics, using the
+   * client's read preference so that the same kind of member explains the
+   * query as ran it. A failure is logged and leaves the server side values
+   * unset.
+   * @param measurement
+   *          The measurement
+   */
+  private void explain(ReportMeasurement measurement) {
+    try {
+      Document explanation = explainClient
+        .getDatabase(measurement.getQueryDatabase())
+        .runCommand(new BsonDocument("explain", measurement.getQuery())
+          .append("verbosity", new BsonString("executionStats")),
+          explainClient.getMongoClientOptions().getReadPreference());
+      Document stats = executionStats(explanation);
+      if (stats != null) {
+        measurement.explained(number(stats, "totalDocsExamined"),
+          number(stats, "totalKeysExamined"),
+          number(stats, "executionTimeMillis"));
+      }
+    } catch (MongoException mongoException) {
+      LOG.warn("Unable to explain the " + measurement.getReport()
+        + " query", mongoException);
+    }
+  }
+
+  /**
+   * Find the execution statistics in an explain result. Queries report them
+   * at the top level, aggregation pipelines in the $cursor stage.
+   * @param explanation
+   *          The explain result
+   * @return The execution statistics, null if there are none
+   */
+  public static Document executionStats(Document explanation) {
+    Document stats = (Document) explanation.get("executionStats");
+    if (stats == null && explanation.get("stages") instanceof List) {
+      Document firstStage =
+        (Document) ((List<?>) explanation.get("stages")).get(0);
+      Document cursorStage = (Document) firstStage.get("$cursor");
+      stats = cursorStage == null ? null
+        : (Document) cursorStage.get("executionStats");
+    }
+    return stats;
+  }
+
+  /**
+   * Get a numeric field.
+   * @param document
+   *          The document
+   * @param field
+   *          The field name
+   * @return The value, -1 if missing
+   */
+  private static long number(Document document, String field) {
+    Object value = document.get(field);
+    return value instanceof Number ? ((Number) value).longValue() : -1;
+  }
+
+  /**
+   * Get the accumulated measurements of a report, registering its MBean the
+   * first time. An MBean left by an earlier instance is replaced.
+   * @param report
+   *          The report name
+   * @return The accumulated measurements
+   */
+  public ReportMetrics metrics(String report) {
+    ReportMetrics reportMetrics = metrics.get(report);
+    if (reportMetrics != null) {
+      return reportMetrics;
+    }
+    reportMetrics = new ReportMetrics();
+    ReportMetrics existing = metrics.putIfAbsent(report, reportMetrics);
+    if (existing != null) {
+      return existing;
+    }
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(MBEAN_DOMAIN
+        + ":type=ReportMetrics,name=" + ObjectName.quote(report));
+      try {
+        server.registerMBean(reportMetrics, name);
+      } catch (InstanceAlreadyExistsException alreadyExists) {
+        server.unregisterMBean(name);
+        server.registerMBean(reportMetrics, name);
+      }
+    } catch (JMException jmException) {
+      LOG.warn("Unable to register the metrics MBean for " + report,
+        jmException);
+    }
+    return reportMetrics;
+  }
+
+  @Override
+  public void commandStarted(CommandStartedEvent event) {
+    ReportMeasurement measurement = current.get();
+    if (measurement != null && isQuery(event.getCommandName())) {
+      measurement.queryStarted(event.getDatabaseName(),
+        event.getCommandName(), event.getCommand());
+    }
+  }
+
+  @Override
+  public void commandSucceeded(CommandSucceededEvent event) {
+    ReportMeasurement measurement = current.get();
+    if (measurement != null) {
+      measurement.replyReceived(event.getCommandName(),
+        documentCount(event.getResponse()), size(event.getResponse()));
+    }
+  }
+
+  @Override
+  public void commandFailed(CommandFailedEvent event) {
+    ReportMeasurement measurement = current.get();
+    if (measurement != null) {
+      measurement.replyReceived(event.getCommandName(), 0, 0);
+    }
+  }
+
+  /**
+   * Check whether a command is a query which can be explained.
+   * @param commandName
+   *          The command name
+   * @return True for find, aggregate, count and distinct
+   */
+  private static boolean isQuery(String commandName) {
+    return "find".equals(commandName) || "aggregate".equals(commandName)
+      || "count".equals(commandName) || "distinct".equals(commandName);
+  }
+
+  /**
+   * Count the documents in a reply: the batch of a cursor reply, the values
+   * of a distinct reply or the result of an aggregation without a cursor.
+   * @param response
+   *          The reply
+   * @return The number of documents
+   */
+  public static int documentCount(BsonDocument response) {
+    BsonValue cursor = response.get("cursor");
+    if (cursor != null && cursor.isDocument()) {
+      BsonDocument cursorDocument = cursor.asDocument();
+      BsonValue batch = cursorDocument.containsKey("firstBatch")
+        ? cursorDocument.get("firstBatch") : cursorDocument.get("nextBatch");
+      return batch != null && batch.isArray() ? batch.asArray().size() : 0;
+    }
+    for (String field : new String[] {"values", "result"}) {
+      BsonValue values = response.get(field);
+      if (values != null && values.isArray()) {
+        return ((BsonArray) values).size();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get the encoded size of a reply. Replies still in their raw form are
+   * measured directly, others are encoded to measure them.
+   * @param response
+   *          The reply
+   * @return The size in bytes
+   */
+  public static long size(BsonDocument response) {
+    if (response instanceof RawBsonDocument) {
+      return ((RawBsonDocument) response).getByteBuffer().remaining();
+    }
+    BasicOutputBuffer buffer = new BasicOutputBuffer();
+    new BsonDocumentCodec().encode(new BsonBinaryWriter(buffer), response,
+      EncoderContext.builder().build());
+    return buffer.getSize();
+  }
+}
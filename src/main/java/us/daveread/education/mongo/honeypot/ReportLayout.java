@@ -0,0 +1,233 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.Document;
+
+/**
+ * Lays out the honeypot reports: the header of each report and the rows it
+ * prints from the counts. The layout is shared by the synchronous reports in
+ * BasicStatistics and the concurrent reports in AsyncReportRunner so that
+ * both print the same reports from the same counts, whichever way the counts
+ * were found.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see BasicStatistics
+ * @see ReportPrinter
+ */
+public final class ReportLayout {
+  /**
+   * The maximum number of rows to display in the top country and client
+   * reports.
+   */
+  public static final int NUMBER_OF_ITEMS_TO_DISPLAY = 10;
+
+  /**
+   * The source named in the header of a report counted by the Java code.
+   */
+  public static final String CODED_SOURCE = "Java coded aggregation";
+
+  /**
+   * The source named in the header of a report counted by an aggregation
+   * pipeline.
+   */
+  public static final String PIPELINE_SOURCE = "aggregation pipeline";
+
+  /**
+   * Not instantiated.
+   */
+  private ReportLayout() {
+  }
+
+  /**
+   * Print the exact number of distinct servers and clients.
+   * @param printer
+   *          The printer
+   * @param distinctServers
+   *          The number of distinct server IP mask values
+   * @param distinctClients
+   *          The number of distinct client IP mask values
+   * @see BasicStatistics#distinctIpStats()
+   */
+  public static void distinctIps(ReportPrinter printer, long distinctServers,
+    long distinctClients) {
+    printer.header("Distinct IP Statistics");
+    printer.distinct("Servers", distinctServers);
+    printer.distinct("Clients", distinctClients);
+  }
+
+  /**
+   * Print the top countries counted by a country accumulator.
+   * @param printer
+   *          The printer
+   * @param totalAttackingCountries
+   *          The number of attacking countries, which may be an estimate
+   * @param countries
+   *          The accumulator holding the counts
+   * @see BasicStatistics#countryBreakdownCoded()
+   */
+  public static void countryBreakdownCoded(ReportPrinter printer,
+    int totalAttackingCountries, CountryAccumulator countries) {
+    /**
+     * Select the top countries (note that CountryCount implements Comparable)
+     * using a heap bounded to the number of countries being displayed,
+     * largest number first.
+     */
+    TopK<CountryCount> topCountries = new TopK<>(NUMBER_OF_ITEMS_TO_DISPLAY);
+    topCountries.offerAll(countries.getCountryCounts());
+    List<CountryCount> countryAttackCount = topCountries.getTopItems();
+
+    /**
+     * Report the top country codes with their associated attack counts. The
+     * number of attacking countries may be an estimate, so the report is
+     * also bounded by the countries counted.
+     */
+    int limit = Math.min(Math.min(totalAttackingCountries,
+      NUMBER_OF_ITEMS_TO_DISPLAY), countryAttackCount.size());
+    printer.header(
+      "Top " + limit + " Attack Countries (using " + CODED_SOURCE + ")");
+    for (int index = 0; index < limit; ++index) {
+      printer.country(countryAttackCount.get(index).getCountryCode(),
+        countryAttackCount.get(index).getAttackCount());
+    }
+  }
+
+  /**
+   * Print the top countries from the groups of an aggregation, largest
+   * count first.
+   * @param printer
+   *          The printer
+   * @param totalAttackingCountries
+   *          The number of attacking countries
+   * @param countries
+   *          The groups, with the country code in _id and the count in
+   *          attacks
+   * @param source
+   *          The source of the groups, named in the header
+   * @see BasicStatistics#countryBreakdownAggregation()
+   */
+  public static void countryBreakdown(ReportPrinter printer,
+    int totalAttackingCountries, List<Document> countries, String source) {
+    int limit = Math.min(Math.min(totalAttackingCountries,
+      NUMBER_OF_ITEMS_TO_DISPLAY), countries.size());
+    printer.header(
+      "Top " + limit + " Attack Countries (using " + source + ")");
+    for (Document attack : countries.subList(0, limit)) {
+      printer.country(attack.get("_id"), attack.getInteger("attacks"));
+    }
+  }
+
+  /**
+   * Print the attack counts for each server and channel counted by a server
+   * and channel accumulator, in server and channel order.
+   * @param printer
+   *          The printer
+   * @param serverChannels
+   *          The accumulator holding the counts
+   * @see BasicStatistics#honeypotBreakdownCoded()
+   */
+  public static void honeypotBreakdownCoded(ReportPrinter printer,
+    ServerChannelAccumulator serverChannels) {
+    /**
+     * Sort the counts (note that ServerChannelCount implements Comparable).
+     */
+    List<ServerChannelCount> serverChannelAttackCount =
+      serverChannels.getServerChannelCounts();
+    Collections.sort(serverChannelAttackCount);
+
+    printer.header(
+      "Attack Counts for Servers and Channels (using " + CODED_SOURCE + ")");
+    for (ServerChannelCount serverChannel : serverChannelAttackCount) {
+      printer.serverChannel(serverChannel.getServerIpMask(),
+        serverChannel.getChannel(), serverChannel.getAttackCount());
+    }
+  }
+
+  /**
+   * Print the attack counts for each server and channel from the groups of
+   * an aggregation, in the order of the groups.
+   * @param printer
+   *          The printer
+   * @param serverChannels
+   *          The groups, with server_ip_mask, channel and attacks fields
+   * @param source
+   *          The source of the groups, named in the header
+   * @see BasicStatistics#honeypotBreakdownAggregation()
+   */
+  public static void honeypotBreakdown(ReportPrinter printer,
+    List<Document> serverChannels, String source) {
+    printer.header(
+      "Attack Counts for Servers and Channels (using " + source + ")");
+    for (Document attack : serverChannels) {
+      printer.serverChannel(attack.getInteger("server_ip_mask"),
+        attack.getString("channel"), attack.getInteger("attacks"));
+    }
+  }
+
+  /**
+   * Print the most active clients from the groups of an aggregation, which
+   * are read only as far as the limit.
+   * @param printer
+   *          The printer
+   * @param limit
+   *          The number of clients to print
+   * @param clients
+   *          The groups, with client_ip_mask, client_country_code and
+   *          attacks fields, most attacks first
+   * @param source
+   *          The source of the groups, named in the header
+   * @see BasicStatistics#mostActiveIps()
+   */
+  public static void mostActiveIps(ReportPrinter printer, int limit,
+    Iterable<Document> clients, String source) {
+    printer.header(
+      "Top " + limit + " Attacking Client IPs (using " + source + ")");
+    int count = 0;
+    for (Document attack : clients) {
+      if (count >= limit) {
+        break;
+      }
+      printer.client(attack.getInteger("client_ip_mask"),
+        attack.getString("client_country_code"),
+        attack.getInteger("attacks"));
+      ++count;
+    }
+  }
+
+  /**
+   * Print the most active clients from client counts.
+   * @param printer
+   *          The printer
+   * @param limit
+   *          The number of clients in the header
+   * @param clients
+   *          The clients, most attacks first
+   * @param source
+   *          The source of the counts, named in the header
+   * @see BasicStatistics#mostActiveIps()
+   */
+  public static void topClients(ReportPrinter printer, int limit,
+    List<ClientCount> clients, String source) {
+    printer.header(
+      "Top " + limit + " Attacking Client IPs (using " + source + ")");
+    for (ClientCount client : clients) {
+      printer.client(client.getClientIpMask(), client.getCountryCode(),
+        client.getAttackCount());
+    }
+  }
+}
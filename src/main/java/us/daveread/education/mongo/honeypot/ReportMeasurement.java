@@ -0,0 +1,417 @@
+package us.daveread.education.mongo.honeypot;
+
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+
+/**
+ * The measurements taken while one report runs. The client side values are
+ * gathered from the driver's command events for the commands the report
+ * sends, and the server side values from explaining the report's main
+ * query.
+ * <p>
+ * The main query is the find or aggregate which returned the most documents,
+ * counting the getMore replies which follow it. Single document lookups,
+ * such as the _id boundaries found by a partitioned scan, are never chosen,
+ * and a count or distinct is chosen only if the report sent no find or
+ * aggregate.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ReportInstrumentation
+ */
+public class ReportMeasurement {
+  /**
+   * The rank of a query which is never explained.
+   */
+  private static final int NOT_EXPLAINED = 0;
+
+  /**
+   * The rank of a count or distinct command.
+   */
+  private static final int COMMAND_QUERY = 1;
+
+  /**
+   * The rank of a find or aggregate command.
+   */
+  private static final int SCAN_QUERY = 2;
+
+  /**
+   * The report name.
+   */
+  private String report;
+
+  /**
+   * The id of the thread running the report.
+   */
+  private long threadId;
+
+  /**
+   * The time at which the report started, from System.nanoTime().
+   */
+  private long startNanos;
+
+  /**
+   * The time from the start of the report until it finished.
+   */
+  private long wallNanos;
+
+  /**
+   * The time from the start of the report until the first reply containing
+   * documents, -1 if no documents were received.
+   */
+  private long firstDocumentNanos = -1;
+
+  /**
+   * The number of documents received.
+   */
+  private long documentsReceived;
+
+  /**
+   * The size of the replies received.
+   */
+  private long bytesReceived;
+
+  /**
+   * The number of commands sent.
+   */
+  private int commandCount;
+
+  /**
+   * The number of getMore commands sent, each one a cursor round trip.
+   */
+  private int getMoreCount;
+
+  /**
+   * The bytes allocated by the thread when the report started, -1 if the
+   * JVM does not measure allocation.
+   */
+  private long startAllocatedBytes = -1;
+
+  /**
+   * The bytes allocated by the thread while the report ran, -1 if the JVM
+   * does not measure allocation.
+   */
+  private long allocatedBytes = -1;
+
+  /**
+   * The database the main query ran against.
+   */
+  private String queryDatabase;
+
+  /**
+   * The main query the report sent, which is explained when the report
+   * finishes.
+   */
+  private BsonDocument query;
+
+  /**
+   * The rank of the main query.
+   */
+  private int queryRank = NOT_EXPLAINED;
+
+  /**
+   * The documents returned by the main query.
+   */
+  private long queryDocuments;
+
+  /**
+   * The database the latest query ran against.
+   */
+  private String latestDatabase;
+
+  /**
+   * The latest query sent, which receives the following replies until it is
+   * compared with the main query. Null if the latest query is never
+   * explained.
+   */
+  private BsonDocument latestQuery;
+
+  /**
+   * The rank of the latest query.
+   */
+  private int latestRank;
+
+  /**
+   * The documents returned by the latest query so far.
+   */
+  private long latestDocuments;
+
+  /**
+   * The documents the server examined for the main query, -1 if not
+   * explained.
+   */
+  private long docsExamined = -1;
+
+  /**
+   * The index keys the server examined for the main query, -1 if not
+   * explained.
+   */
+  private long keysExamined = -1;
+
+  /**
+   * The server execution time of the main query, -1 if not explained.
+   */
+  private long serverMillis = -1;
+
+  /**
+   * Create the measurement for a report starting now.
+   * @param report
+   *          The report name
+   * @param threadId
+   *          The id of the thread running the report
+   * @param startAllocatedBytes
+   *          The bytes allocated by the thread so far, -1 if not measured
+   */
+  ReportMeasurement(String report, long threadId, long startAllocatedBytes) {
+    this.report = report;
+    this.threadId = threadId;
+    this.startAllocatedBytes = startAllocatedBytes;
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Record a reply received for one of the report's commands.
+   * @param commandName
+   *          The command name
+   * @param documents
+   *          The number of documents in the reply
+   * @param bytes
+   *          The size of the reply
+   */
+  void replyReceived(String commandName, int documents, long bytes) {
+    ++commandCount;
+    if ("getMore".equals(commandName)) {
+      ++getMoreCount;
+    }
+    if (documents > 0 && firstDocumentNanos < 0) {
+      firstDocumentNanos = System.nanoTime() - startNanos;
+    }
+    documentsReceived += documents;
+    bytesReceived += bytes;
+    if (latestQuery != null) {
+      latestDocuments += documents;
+    }
+  }
+
+  /**
+   * Record the end of the report.
+   * @param endAllocatedBytes
+   *          The bytes allocated by the thread so far, -1 if not measured
+   */
+  void finished(long endAllocatedBytes) {
+    wallNanos = System.nanoTime() - startNanos;
+    chooseMainQuery();
+    if (startAllocatedBytes >= 0 && endAllocatedBytes >= 0) {
+      allocatedBytes = endAllocatedBytes - startAllocatedBytes;
+    }
+  }
+
+  /**
+   * Record the server's execution statistics for the main query.
+   * @param docsExamined
+   *          The documents examined
+   * @param keysExamined
+   *          The index keys examined
+   * @param serverMillis
+   *          The server execution time
+   */
+  void explained(long docsExamined, long keysExamined, long serverMillis) {
+    this.docsExamined = docsExamined;
+    this.keysExamined = keysExamined;
+    this.serverMillis = serverMillis;
+  }
+
+  /**
+   * Record a query sent by the report. The previous query, whose replies
+   * have all been received, is compared with the main query.
+   * @param database
+   *          The database the query ran against
+   * @param commandName
+   *          The command name
+   * @param command
+   *          The query command
+   */
+  void queryStarted(String database, String commandName,
+    BsonDocument command) {
+    chooseMainQuery();
+    int rank = rank(commandName, command);
+    if (rank != NOT_EXPLAINED) {
+      latestDatabase = database;
+      latestQuery = command.clone();
+      latestRank = rank;
+      latestDocuments = 0;
+    }
+  }
+
+  /**
+   * Make the latest query the main query if it ranks higher, or ranks the
+   * same and returned more documents.
+   */
+  private void chooseMainQuery() {
+    if (latestQuery != null && (latestRank > queryRank
+      || latestRank == queryRank && latestDocuments > queryDocuments)) {
+      queryDatabase = latestDatabase;
+      query = latestQuery;
+      queryRank = latestRank;
+      queryDocuments = latestDocuments;
+    }
+    latestQuery = null;
+  }
+
+  /**
+   * Rank a query as a candidate for the main query.
+   * @param commandName
+   *          The command name
+   * @param command
+   *          The query command
+   * @return SCAN_QUERY for a find or aggregate, COMMAND_QUERY for a count or
+   *         distinct and NOT_EXPLAINED for a single batch lookup
+   */
+  private static int rank(String commandName, BsonDocument command) {
+    if (command.getBoolean("singleBatch", BsonBoolean.FALSE).getValue()) {
+      return NOT_EXPLAINED;
+    }
+    return "find".equals(commandName) || "aggregate".equals(commandName)
+      ? SCAN_QUERY : COMMAND_QUERY;
+  }
+
+  /**
+   * Format the measurement as a single line of name=value pairs.
+   * @return The line
+   */
+  @Override
+  public String toString() {
+    return "report=" + report + " wallMs=" + getWallMillis()
+      + " firstDocumentMs=" + getFirstDocumentMillis() + " documents="
+      + documentsReceived + " bytes=" + bytesReceived + " commands="
+      + commandCount + " getMores=" + getMoreCount + " allocatedBytes="
+      + allocatedBytes + " docsExamined=" + docsExamined + " keysExamined="
+      + keysExamined + " serverMs=" + serverMillis;
+  }
+
+  /**
+   * Get the report name.
+   * @return The report name
+   */
+  public String getReport() {
+    return report;
+  }
+
+  /**
+   * Get the id of the thread running the report.
+   * @return The thread id
+   */
+  public long getThreadId() {
+    return threadId;
+  }
+
+  /**
+   * Get the time from the start of the report until it finished.
+   * @return The time in milliseconds
+   */
+  public double getWallMillis() {
+    return wallNanos / 1e6;
+  }
+
+  /**
+   * Get the time from the start of the report until the first reply
+   * containing documents.
+   * @return The time in milliseconds, -1 if no documents were received
+   */
+  public double getFirstDocumentMillis() {
+    return firstDocumentNanos < 0 ? -1 : firstDocumentNanos / 1e6;
+  }
+
+  /**
+   * Get the number of documents received.
+   * @return The number of documents
+   */
+  public long getDocumentsReceived() {
+    return documentsReceived;
+  }
+
+  /**
+   * Get the size of the replies received.
+   * @return The number of bytes
+   */
+  public long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  /**
+   * Get the number of commands sent.
+   * @return The number of commands
+   */
+  public int getCommandCount() {
+    return commandCount;
+  }
+
+  /**
+   * Get the number of getMore commands sent.
+   * @return The number of cursor round trips after the first reply
+   */
+  public int getGetMoreCount() {
+    return getMoreCount;
+  }
+
+  /**
+   * Get the bytes allocated by the thread while the report ran.
+   * @return The number of bytes, -1 if the JVM does not measure allocation
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Get the database the main query ran against.
+   * @return The database name, null if no query was sent
+   */
+  public String getQueryDatabase() {
+    return queryDatabase;
+  }
+
+  /**
+   * Get the main query sent by the report.
+   * @return The query command, null if no query could be explained
+   */
+  public BsonDocument getQuery() {
+    return query;
+  }
+
+  /**
+   * Get the documents the server examined for the main query.
+   * @return The number of documents, -1 if not explained
+   */
+  public long getDocsExamined() {
+    return docsExamined;
+  }
+
+  /**
+   * Get the index keys the server examined for the main query.
+   * @return The number of keys, -1 if not explained
+   */
+  public long getKeysExamined() {
+    return keysExamined;
+  }
+
+  /**
+   * Get the server execution time of the main query.
+   * @return The time in milliseconds, -1 if not explained
+   */
+  public long getServerMillis() {
+    return serverMillis;
+  }
+}
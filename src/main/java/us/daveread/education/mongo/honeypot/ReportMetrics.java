@@ -0,0 +1,105 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * The accumulated measurements of one report, registered as a JMX MBean so
+ * they can be watched with jconsole or any other JMX client.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ReportInstrumentation
+ */
+public class ReportMetrics implements ReportMetricsMBean {
+  /**
+   * The number of times the report has run.
+   */
+  private long runCount;
+
+  /**
+   * The total time spent running the report, in milliseconds.
+   */
+  private double totalWallMillis;
+
+  /**
+   * The measurement of the last run, null before the first run.
+   */
+  private ReportMeasurement last;
+
+  /**
+   * Add the measurement of a run.
+   * @param measurement
+   *          The measurement
+   */
+  public synchronized void record(ReportMeasurement measurement) {
+    ++runCount;
+    totalWallMillis += measurement.getWallMillis();
+    last = measurement;
+  }
+
+  @Override
+  public synchronized long getRunCount() {
+    return runCount;
+  }
+
+  @Override
+  public synchronized double getTotalWallMillis() {
+    return totalWallMillis;
+  }
+
+  @Override
+  public synchronized double getLastWallMillis() {
+    return last == null ? 0 : last.getWallMillis();
+  }
+
+  @Override
+  public synchronized double getLastFirstDocumentMillis() {
+    return last == null ? -1 : last.getFirstDocumentMillis();
+  }
+
+  @Override
+  public synchronized long getLastDocumentsReceived() {
+    return last == null ? 0 : last.getDocumentsReceived();
+  }
+
+  @Override
+  public synchronized long getLastBytesReceived() {
+    return last == null ? 0 : last.getBytesReceived();
+  }
+
+  @Override
+  public synchronized int getLastGetMoreCount() {
+    return last == null ? 0 : last.getGetMoreCount();
+  }
+
+  @Override
+  public synchronized long getLastAllocatedBytes() {
+    return last == null ? -1 : last.getAllocatedBytes();
+  }
+
+  @Override
+  public synchronized long getLastDocsExamined() {
+    return last == null ? -1 : last.getDocsExamined();
+  }
+
+  @Override
+  public synchronized long getLastKeysExamined() {
+    return last == null ? -1 : last.getKeysExamined();
+  }
+
+  @Override
+  public synchronized long getLastServerMillis() {
+    return last == null ? -1 : last.getServerMillis();
+  }
+}
@@ -0,0 +1,91 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * The JMX view of the measurements of one report.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ReportMetrics
+ */
+public interface ReportMetricsMBean {
+  /**
+   * Get the number of times the report has run.
+   * @return The number of runs
+   */
+  long getRunCount();
+
+  /**
+   * Get the total time spent running the report.
+   * @return The time in milliseconds
+   */
+  double getTotalWallMillis();
+
+  /**
+   * Get the time the last run took.
+   * @return The time in milliseconds
+   */
+  double getLastWallMillis();
+
+  /**
+   * Get the time until the first document was received in the last run.
+   * @return The time in milliseconds, -1 if no documents were received
+   */
+  double getLastFirstDocumentMillis();
+
+  /**
+   * Get the number of documents received in the last run.
+   * @return The number of documents
+   */
+  long getLastDocumentsReceived();
+
+  /**
+   * Get the size of the replies received in the last run.
+   * @return The number of bytes
+   */
+  long getLastBytesReceived();
+
+  /**
+   * Get the number of getMore commands sent in the last run.
+   * @return The number of cursor round trips after the first reply
+   */
+  int getLastGetMoreCount();
+
+  /**
+   * Get the bytes allocated by the report's thread in the last run.
+   * @return The number of bytes, -1 if the JVM does not measure allocation
+   */
+  long getLastAllocatedBytes();
+
+  /**
+   * Get the documents the server examined for the main query of the last
+   * run.
+   * @return The number of documents, -1 if not explained
+   */
+  long getLastDocsExamined();
+
+  /**
+   * Get the index keys the server examined for the main query of the last
+   * run.
+   * @return The number of keys, -1 if not explained
+   */
+  long getLastKeysExamined();
+
+  /**
+   * Get the server execution time of the main query of the last run.
+   * @return The time in milliseconds, -1 if not explained
+   */
+  long getLastServerMillis();
+}
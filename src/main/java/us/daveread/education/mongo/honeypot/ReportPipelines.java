@@ -0,0 +1,283 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+
+/**
+ * Builds the aggregation pipelines used by the honeypot reports. The
+ * pipelines are shared by the synchronous reports in BasicStatistics and the
+ * concurrent reports in AsyncReportRunner so that both send the same stages
+ * to the server.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see BasicStatistics
+ */
+public final class ReportPipelines {
+  /**
+   * Not instantiated.
+   */
+  private ReportPipelines() {
+  }
+
+  /**
+   * Create the pipeline counting the attacks by country, largest count first.
+   * @return The pipeline
+   * @see BasicStatistics#countryBreakdownAggregation()
+   */
+  public static List<Document> countryBreakdown() {
+    List<Document> aggregationPipeline = new ArrayList<>();
+    Document operation;
+
+    /**
+     * Group the data on country code. Count the number of documents in each
+     * group.
+     */
+    operation = new Document("$group",
+      new Document("_id", "$client_country_code").append("attacks",
+        new Document("$sum", 1)));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Sort the data on count of attacks, descending.
+     */
+    operation = new Document("$sort", new Document("attacks", -1));
+    aggregationPipeline.add(operation);
+
+    return aggregationPipeline;
+  }
+
+  /**
+   * Create the pipeline counting the distinct values of a field, ignoring
+   * missing and null values. The result is a single document whose count
+   * field holds the number of values, or no document for an empty
+   * collection.
+   * @param field
+   *          The field, nested fields use dot notation
+   * @return The pipeline
+   * @see DistinctCounter
+   */
+  public static List<Document> distinctCount(String field) {
+    List<Document> aggregationPipeline = new ArrayList<>();
+
+    /**
+     * Skip documents without a value, group on the value and then count the
+     * groups.
+     */
+    aggregationPipeline.add(new Document("$match",
+      new Document(field, new Document("$ne", null))));
+    aggregationPipeline
+      .add(new Document("$group", new Document("_id", "$" + field)));
+    aggregationPipeline.add(new Document("$group",
+      new Document("_id", null).append("count", new Document("$sum", 1))));
+
+    return aggregationPipeline;
+  }
+
+  /**
+   * Create the pipeline counting the attacks by server and channel, in server
+   * and channel order.
+   * @return The pipeline
+   * @see BasicStatistics#honeypotBreakdownAggregation()
+   */
+  public static List<Document> honeypotBreakdown() {
+    List<Document> aggregationPipeline = new ArrayList<>();
+    Document operation;
+
+    /**
+     * Group by server IP mask value and channel. Count the number of
+     * documents in each group.
+     */
+    operation = new Document("$group",
+      new Document("_id",
+        new Document("server_ip_mask", "$payload.server_ip_mask")
+          .append("channel", "$channel"))
+            .append("attacks", new Document("$sum", 1)));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Project the attributes to extract them from the _id.
+     */
+    operation = new Document("$project",
+      new Document("server_ip_mask", "$_id.server_ip_mask")
+        .append("channel", "$_id.channel").append("attacks", 1));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Sort the data based on server IP mask value and channel.
+     */
+    operation = new Document("$sort",
+      new Document("_id.server_ip_mask", 1).append("_id.channel", 1));
+    aggregationPipeline.add(operation);
+
+    return aggregationPipeline;
+  }
+
+  /**
+   * Create the pipeline finding the clients with the most attacks, largest
+   * count first.
+   * @param limit
+   *          The number of clients wanted
+   * @return The pipeline
+   * @see BasicStatistics#mostActiveIps()
+   */
+  public static List<Document> mostActiveIps(int limit) {
+    List<Document> aggregationPipeline = new ArrayList<>();
+    Document operation;
+
+    /**
+     * Group by client IP mask value and country code (expect a given IP to
+     * always map the the same country). Count the number of documents in
+     * each group.
+     */
+    operation = new Document("$group",
+      new Document("_id",
+        new Document("client_ip_mask", "$payload.client_ip_mask")
+          .append("client_country_code", "$client_country_code")).append(
+            "attacks",
+            new Document("$sum", 1)));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Sort the data based on number of attacks, descending.
+     */
+    operation = new Document("$sort", new Document("attacks", -1));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Limit the data to the number of clients being displayed.
+     */
+    operation = new Document("$limit", Math.max(limit, 1));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Project the attributes to extract them from the _id.
+     */
+    operation = new Document("$project",
+      new Document("client_ip_mask", "$_id.client_ip_mask")
+        .append("client_country_code", "$_id.client_country_code")
+        .append("attacks", "$attacks"));
+    aggregationPipeline.add(operation);
+
+    return aggregationPipeline;
+  }
+
+  /**
+   * Create the pipeline writing the rollup collection, which holds the number
+   * of attacks for each country, channel and server. The $out stage replaces
+   * the rollup collection once the new rollup is complete, so readers see
+   * either the previous rollup or the new one.
+   * @param rollupCollectionName
+   *          The name of the rollup collection, in the attack collection's
+   *          database
+   * @return The pipeline
+   * @see AttackRollup
+   */
+  public static List<Document> rollup(String rollupCollectionName) {
+    List<Document> aggregationPipeline = new ArrayList<>();
+    Document operation;
+
+    /**
+     * Group by country code, channel and server IP mask value. Count the
+     * number of documents in each group.
+     */
+    operation = new Document("$group",
+      new Document("_id",
+        new Document("client_country_code", "$client_country_code")
+          .append("channel", "$channel")
+          .append("server_ip_mask", "$payload.server_ip_mask"))
+            .append("attacks", new Document("$sum", 1)));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Replace the rollup collection with the groups.
+     */
+    operation = new Document("$out", rollupCollectionName);
+    aggregationPipeline.add(operation);
+
+    return aggregationPipeline;
+  }
+
+  /**
+   * Create the pipeline counting the attacks by country from the rollup
+   * collection, largest count first. The result matches the countryBreakdown
+   * pipeline run against the attack collection.
+   * @return The pipeline
+   * @see #countryBreakdown()
+   */
+  public static List<Document> countryBreakdownFromRollup() {
+    List<Document> aggregationPipeline = new ArrayList<>();
+    Document operation;
+
+    /**
+     * Group the rollup on country code. Add up the attacks in each group.
+     */
+    operation = new Document("$group",
+      new Document("_id", "$_id.client_country_code").append("attacks",
+        new Document("$sum", "$attacks")));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Sort the data on count of attacks, descending.
+     */
+    operation = new Document("$sort", new Document("attacks", -1));
+    aggregationPipeline.add(operation);
+
+    return aggregationPipeline;
+  }
+
+  /**
+   * Create the pipeline counting the attacks by server and channel from the
+   * rollup collection, in server and channel order. The result matches the
+   * honeypotBreakdown pipeline run against the attack collection.
+   * @return The pipeline
+   * @see #honeypotBreakdown()
+   */
+  public static List<Document> honeypotBreakdownFromRollup() {
+    List<Document> aggregationPipeline = new ArrayList<>();
+    Document operation;
+
+    /**
+     * Group the rollup by server IP mask value and channel. Add up the
+     * attacks in each group.
+     */
+    operation = new Document("$group",
+      new Document("_id",
+        new Document("server_ip_mask", "$_id.server_ip_mask")
+          .append("channel", "$_id.channel"))
+            .append("attacks", new Document("$sum", "$attacks")));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Project the attributes to extract them from the _id.
+     */
+    operation = new Document("$project",
+      new Document("server_ip_mask", "$_id.server_ip_mask")
+        .append("channel", "$_id.channel").append("attacks", 1));
+    aggregationPipeline.add(operation);
+
+    /**
+     * Sort the data based on server IP mask value and channel.
+     */
+    operation = new Document("$sort",
+      new Document("_id.server_ip_mask", 1).append("_id.channel", 1));
+    aggregationPipeline.add(operation);
+
+    return aggregationPipeline;
+  }
+}
@@ -0,0 +1,227 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Formats the lines of the honeypot reports. The coded, aggregation pipeline
+ * and concurrent versions of each report print through the same methods so
+ * that their output can be compared line by line. Subclasses may format the
+ * reports differently by overriding every method.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class ReportPrinter {
+  /**
+   * The stream receiving the report.
+   */
+  private PrintStream out;
+
+  /**
+   * The total number of attacks, used to calculate percentages.
+   */
+  private long totalAttacks;
+
+  /**
+   * Create the printer.
+   * @param out
+   *          The stream receiving the report
+   * @param totalAttacks
+   *          The total number of attacks, used to calculate percentages
+   */
+  public ReportPrinter(PrintStream out, long totalAttacks) {
+    this.out = out;
+    this.totalAttacks = totalAttacks;
+  }
+
+  /**
+   * Get the total number of attacks used to calculate percentages.
+   * @return The total number of attacks
+   */
+  public long getTotalAttacks() {
+    return totalAttacks;
+  }
+
+  /**
+   * Set the total number of attacks used to calculate percentages, for a
+   * report whose counts come from other than the attack collection.
+   * @param totalAttacks
+   *          The total number of attacks
+   */
+  public void setTotalAttacks(long totalAttacks) {
+    this.totalAttacks = totalAttacks;
+  }
+
+  /**
+   * Print a message underlined with equal signs.
+   * @param message
+   *          The text to print
+   */
+  public void header(String message) {
+    out.println(message);
+    for (int index = 0; index < message.length(); ++index) {
+      out.print("=");
+    }
+    out.println();
+  }
+
+  /**
+   * Print the overall statistics.
+   * @param totalAttackingCountries
+   *          The number of attacking countries
+   */
+  public void overall(int totalAttackingCountries) {
+    header("Overall Statistics");
+    out.println("Total Attacks: " + totalAttacks);
+    out.println("Total Attacking Countries: " + totalAttackingCountries);
+  }
+
+  /**
+   * Print the overall statistics with an estimated number of attacking
+   * countries.
+   * @param totalAttackingCountries
+   *          The estimated number of attacking countries
+   * @param standardError
+   *          The relative standard error of the estimate
+   */
+  public void overall(long totalAttackingCountries, double standardError) {
+    header("Overall Statistics");
+    out.println("Total Attacks: " + totalAttacks);
+    out.println("Total Attacking Countries: " + totalAttackingCountries
+      + errorBound(standardError));
+  }
+
+  /**
+   * Print a number of distinct values.
+   * @param label
+   *          The description of the values
+   * @param distinctCount
+   *          The number of distinct values
+   */
+  public void distinct(String label, long distinctCount) {
+    out.println("  " + label + ": " + distinctCount);
+  }
+
+  /**
+   * Print an estimated number of distinct values along with its error.
+   * @param label
+   *          The description of the values
+   * @param distinctCount
+   *          The estimated number of distinct values
+   * @param standardError
+   *          The relative standard error of the estimate
+   */
+  public void distinct(String label, long distinctCount,
+    double standardError) {
+    out.println("  " + label + ": " + distinctCount
+      + errorBound(standardError));
+  }
+
+  /**
+   * Describe the error of an estimate.
+   * @param standardError
+   *          The relative standard error of the estimate
+   * @return The description, e.g. " (estimate, +/- 0.81%)"
+   */
+  private String errorBound(double standardError) {
+    return String.format(Locale.ROOT, " (estimate, +/- %.2f%%)",
+      standardError * 100);
+  }
+
+  /**
+   * Print the attack count for a country.
+   * @param countryCode
+   *          The country code
+   * @param numAttacks
+   *          The number of attacks
+   */
+  public void country(Object countryCode, int numAttacks) {
+    out.println("  " + countryCode + ": " + numAttacks + " ("
+      + percent(numAttacks) + "%)");
+  }
+
+  /**
+   * Print the attack count for a server and channel.
+   * @param serverIpMask
+   *          The server IP mask value
+   * @param channel
+   *          The channel
+   * @param numAttacks
+   *          The number of attacks
+   */
+  public void serverChannel(Object serverIpMask, String channel,
+    int numAttacks) {
+    out.println("  Server:" + serverIpMask + " Channel:" + channel
+      + " Attack Count:" + numAttacks + " (" + percent(numAttacks) + "%)");
+  }
+
+  /**
+   * Print the attack count for a client.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @param numAttacks
+   *          The number of attacks
+   */
+  public void client(Object clientIpMask, String countryCode,
+    int numAttacks) {
+    out.println("  Client:" + clientIpMask + " Country:" + countryCode
+      + " Attack Count:" + numAttacks + " (" + percent(numAttacks) + "%)");
+  }
+
+  /**
+   * Print an estimated attack count for a client. The count is shown as the
+   * range in which the true count lies.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @param numAttacks
+   *          The estimated number of attacks, at least the true count
+   * @param maximumError
+   *          The largest amount by which the estimate may exceed the true
+   *          count
+   */
+  public void client(Object clientIpMask, String countryCode, int numAttacks,
+    int maximumError) {
+    if (maximumError == 0) {
+      client(clientIpMask, countryCode, numAttacks);
+      return;
+    }
+    out.println("  Client:" + clientIpMask + " Country:" + countryCode
+      + " Attack Count:" + (numAttacks - maximumError) + "-" + numAttacks
+      + " (" + percent(numAttacks) + "%)");
+  }
+
+  /**
+   * Print an empty line.
+   */
+  public void blankLine() {
+    out.println();
+  }
+
+  /**
+   * Calculate the percentage of all attacks, truncated to a whole number.
+   * @param numAttacks
+   *          The number of attacks
+   * @return The percentage
+   */
+  protected int percent(int numAttacks) {
+    return (int) ((numAttacks * 100) / (double) totalAttacks);
+  }
+}
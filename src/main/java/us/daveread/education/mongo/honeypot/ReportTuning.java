@@ -0,0 +1,357 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.mongodb.MongoClientOptions;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.connection.ConnectionPoolSettings;
+
+/**
+ * Cursor, aggregation and connection pool settings for the reports, read from
+ * the reportTuning.properties file on the classpath (next to
+ * log4j.properties) so that they can be changed for each deployment without
+ * recompiling.
+ * <p>
+ * Each report setting is looked up as report.NAME.SETTING and then as
+ * report.default.SETTING. The settings are:
+ * <ul>
+ * <li>batchSize - the number of documents in each reply, 0 for the driver
+ * default</li>
+ * <li>allowDiskUse - whether aggregation stages may write temporary files
+ * when they exceed the server's memory limit</li>
+ * <li>maxTimeMs - the time the server may spend on the query, 0 for no
+ * limit</li>
+ * </ul>
+ * The connection pool settings are pool.connectionsPerHost,
+ * pool.minConnectionsPerHost, pool.maxWaitTimeMs and
+ * pool.threadsAllowedToBlockForConnectionMultiplier. Pool settings that are
+ * not given keep the driver defaults.
+ * <p>
+ * The pipeline result cache settings are cache.maxEntries, cache.ttlMs and
+ * cache.validationIntervalMs.
+ * <p>
+ * The client side group-by settings are groupBy.memoryBytes,
+ * groupBy.partitions and groupBy.spillDirectory, which defaults to the
+ * java.io.tmpdir directory.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class ReportTuning {
+  /**
+   * The name of the settings file on the classpath.
+   */
+  public static final String RESOURCE = "reportTuning.properties";
+
+  /**
+   * The report name for the scan of the attack documents used by the coded
+   * reports.
+   */
+  public static final String SCAN = "scan";
+
+  /**
+   * The report name for the country aggregation pipeline.
+   */
+  public static final String COUNTRY_BREAKDOWN = "countryBreakdown";
+
+  /**
+   * The report name for the server and channel aggregation pipeline.
+   */
+  public static final String HONEYPOT_BREAKDOWN = "honeypotBreakdown";
+
+  /**
+   * The report name for the most active clients aggregation pipeline.
+   */
+  public static final String MOST_ACTIVE_IPS = "mostActiveIps";
+
+  /**
+   * The report name for the distinct country count.
+   */
+  public static final String DISTINCT_COUNT = "distinctCount";
+
+  /**
+   * The report name for the pipeline writing the rollup collection.
+   */
+  public static final String ROLLUP = "rollup";
+
+  /**
+   * The report name for the live monitor's reads of the new attacks.
+   */
+  public static final String MONITOR = "monitor";
+
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(ReportTuning.class);
+
+  /**
+   * The settings read from the classpath, loaded on first use.
+   */
+  private static ReportTuning instance;
+
+  /**
+   * The settings.
+   */
+  private Properties properties;
+
+  /**
+   * Create an instance using the given settings.
+   * @param properties
+   *          The settings
+   */
+  public ReportTuning(Properties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Get the settings read from the classpath. If the settings file cannot be
+   * found the driver defaults are used.
+   * @return The settings
+   */
+  public static synchronized ReportTuning getInstance() {
+    if (instance == null) {
+      Properties properties = new Properties();
+      try (InputStream input =
+        ReportTuning.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+        if (input == null) {
+          LOG.warn("No " + RESOURCE + " found, using the driver defaults");
+        } else {
+          properties.load(input);
+        }
+      } catch (IOException ioException) {
+        LOG.warn("Unable to read " + RESOURCE + ", using the driver defaults",
+          ioException);
+      }
+      instance = new ReportTuning(properties);
+    }
+    return instance;
+  }
+
+  /**
+   * Get the batch size for a report.
+   * @param report
+   *          The report name
+   * @return The batch size, 0 for the driver default
+   */
+  public int getBatchSize(String report) {
+    return Integer.parseInt(setting(report, "batchSize", "0"));
+  }
+
+  /**
+   * Check whether a report's aggregation stages may write temporary files.
+   * @param report
+   *          The report name
+   * @return True if the stages may use the disk
+   */
+  public boolean isAllowDiskUse(String report) {
+    return Boolean.parseBoolean(setting(report, "allowDiskUse", "false"));
+  }
+
+  /**
+   * Get the time the server may spend on a report's query.
+   * @param report
+   *          The report name
+   * @return The time in milliseconds, 0 for no limit
+   */
+  public long getMaxTimeMillis(String report) {
+    return Long.parseLong(setting(report, "maxTimeMs", "0"));
+  }
+
+  /**
+   * Find a report setting.
+   * @param report
+   *          The report name
+   * @param setting
+   *          The setting name
+   * @param defaultValue
+   *          The value used if neither the report nor the default setting is
+   *          given
+   * @return The setting value
+   */
+  private String setting(String report, String setting, String defaultValue) {
+    String value = properties.getProperty("report." + report + "." + setting);
+    if (value == null) {
+      value = properties.getProperty("report.default." + setting,
+        defaultValue);
+    }
+    return value.trim();
+  }
+
+  /**
+   * Apply a report's settings to a query.
+   * @param report
+   *          The report name
+   * @param iterable
+   *          The query
+   * @param <T>
+   *          The result type
+   * @return The query
+   */
+  public <T> FindIterable<T> tune(String report, FindIterable<T> iterable) {
+    if (getBatchSize(report) > 0) {
+      iterable.batchSize(getBatchSize(report));
+    }
+    if (getMaxTimeMillis(report) > 0) {
+      iterable.maxTime(getMaxTimeMillis(report), TimeUnit.MILLISECONDS);
+    }
+    return iterable;
+  }
+
+  /**
+   * Apply a report's settings to an aggregation.
+   * @param report
+   *          The report name
+   * @param iterable
+   *          The aggregation
+   * @param <T>
+   *          The result type
+   * @return The aggregation
+   */
+  public <T> AggregateIterable<T> tune(String report,
+    AggregateIterable<T> iterable) {
+    if (getBatchSize(report) > 0) {
+      iterable.batchSize(getBatchSize(report));
+    }
+    if (getMaxTimeMillis(report) > 0) {
+      iterable.maxTime(getMaxTimeMillis(report), TimeUnit.MILLISECONDS);
+    }
+    iterable.allowDiskUse(isAllowDiskUse(report));
+    return iterable;
+  }
+
+  /**
+   * Apply a report's settings to a distinct command.
+   * @param report
+   *          The report name
+   * @param iterable
+   *          The distinct command
+   * @param <T>
+   *          The result type
+   * @return The distinct command
+   */
+  public <T> DistinctIterable<T> tune(String report,
+    DistinctIterable<T> iterable) {
+    if (getBatchSize(report) > 0) {
+      iterable.batchSize(getBatchSize(report));
+    }
+    if (getMaxTimeMillis(report) > 0) {
+      iterable.maxTime(getMaxTimeMillis(report), TimeUnit.MILLISECONDS);
+    }
+    return iterable;
+  }
+
+  /**
+   * Apply the connection pool settings to the synchronous client options.
+   * @param builder
+   *          The client options
+   * @return The client options
+   */
+  public MongoClientOptions.Builder tunePool(
+    MongoClientOptions.Builder builder) {
+    if (hasPoolSetting("connectionsPerHost")) {
+      builder.connectionsPerHost(poolSetting("connectionsPerHost"));
+    }
+    if (hasPoolSetting("minConnectionsPerHost")) {
+      builder.minConnectionsPerHost(poolSetting("minConnectionsPerHost"));
+    }
+    if (hasPoolSetting("maxWaitTimeMs")) {
+      builder.maxWaitTime(poolSetting("maxWaitTimeMs"));
+    }
+    if (hasPoolSetting("threadsAllowedToBlockForConnectionMultiplier")) {
+      builder.threadsAllowedToBlockForConnectionMultiplier(
+        poolSetting("threadsAllowedToBlockForConnectionMultiplier"));
+    }
+    return builder;
+  }
+
+  /**
+   * Apply the connection pool settings to the asynchronous client's pool.
+   * @param builder
+   *          The pool settings
+   * @return The pool settings
+   */
+  public ConnectionPoolSettings.Builder tunePool(
+    ConnectionPoolSettings.Builder builder) {
+    if (hasPoolSetting("connectionsPerHost")) {
+      builder.maxSize(poolSetting("connectionsPerHost"));
+    }
+    if (hasPoolSetting("minConnectionsPerHost")) {
+      builder.minSize(poolSetting("minConnectionsPerHost"));
+    }
+    if (hasPoolSetting("maxWaitTimeMs")) {
+      builder.maxWaitTime(poolSetting("maxWaitTimeMs"),
+        TimeUnit.MILLISECONDS);
+    }
+    return builder;
+  }
+
+  /**
+   * Create a pipeline result cache using the cache settings.
+   * @return The cache
+   * @see PipelineResultCache
+   */
+  public PipelineResultCache newResultCache() {
+    return new PipelineResultCache(
+      Integer.parseInt(properties.getProperty("cache.maxEntries", "100")
+        .trim()),
+      Long.parseLong(properties.getProperty("cache.ttlMs", "300000").trim()),
+      Long.parseLong(properties.getProperty("cache.validationIntervalMs",
+        "1000").trim()));
+  }
+
+  /**
+   * Create a client side group-by using the group-by settings.
+   * @return The group-by
+   * @see ExternalGroupBy
+   */
+  public ExternalGroupBy newExternalGroupBy() {
+    return new ExternalGroupBy(
+      Long.parseLong(properties.getProperty("groupBy.memoryBytes", "67108864")
+        .trim()),
+      Integer.parseInt(properties.getProperty("groupBy.partitions", "16")
+        .trim()),
+      Paths.get(properties.getProperty("groupBy.spillDirectory",
+        System.getProperty("java.io.tmpdir")).trim()));
+  }
+
+  /**
+   * Check whether a connection pool setting is given.
+   * @param setting
+   *          The setting name
+   * @return True if the setting is given
+   */
+  private boolean hasPoolSetting(String setting) {
+    return properties.getProperty("pool." + setting) != null;
+  }
+
+  /**
+   * Get a connection pool setting.
+   * @param setting
+   *          The setting name
+   * @return The setting value
+   */
+  private int poolSetting(String setting) {
+    return Integer.parseInt(properties.getProperty("pool." + setting).trim());
+  }
+}
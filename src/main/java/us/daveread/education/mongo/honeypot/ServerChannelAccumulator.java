@@ -0,0 +1,119 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts attacks by honeypot server and channel (sensor). Each attack document
+ * is read and the server IP mask value and channel are packed into a long key
+ * which is counted in a LongIntHashMap, so no objects are allocated for each
+ * attack.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ServerChannelKey
+ * @see LongIntHashMap
+ */
+public class ServerChannelAccumulator implements AttackAccumulator {
+  /**
+   * The fields read from each attack document.
+   */
+  private static final List<String> PROJECTED_FIELDS =
+    Arrays.asList("payload.server_ip_mask", "channel");
+
+  /**
+   * The attack counts keyed by server IP mask value and channel.
+   */
+  private LongIntHashMap attacksByServerAndChannel = new LongIntHashMap();
+
+  /**
+   * The ids of the channels seen.
+   */
+  private ChannelDictionary channels = new ChannelDictionary();
+
+  @Override
+  public List<String> getProjectedFields() {
+    return PROJECTED_FIELDS;
+  }
+
+  @Override
+  public void accumulate(AttackRecord attack) {
+    attacksByServerAndChannel.increment(
+      ServerChannelKey.pack(attack.getServerIpMask(),
+        channels.intern(attack.getChannel())));
+  }
+
+  /**
+   * Add an attack count for a server and channel.
+   * @param serverIpMask
+   *          The server IP mask value
+   * @param channel
+   *          The channel
+   * @param attackCount
+   *          The number of attacks to add
+   */
+  public void add(int serverIpMask, String channel, int attackCount) {
+    attacksByServerAndChannel.add(
+      ServerChannelKey.pack(serverIpMask, channels.intern(channel)),
+      attackCount);
+  }
+
+  @Override
+  public AttackAccumulator newInstance() {
+    return new ServerChannelAccumulator();
+  }
+
+  /**
+   * Add the counts from another accumulator. The other accumulator assigned
+   * its own channel ids so each key is translated into this accumulator's
+   * channel ids.
+   * @param other
+   *          The accumulator whose counts are added
+   */
+  @Override
+  public void merge(AttackAccumulator other) {
+    final ChannelDictionary otherChannels =
+      ((ServerChannelAccumulator) other).channels;
+    ((ServerChannelAccumulator) other).attacksByServerAndChannel
+      .forEachEntry(new LongIntHashMap.EntryVisitor() {
+        @Override
+        public void visit(long key, int attackCount) {
+          add(ServerChannelKey.serverIpMask(key),
+            otherChannels.getChannel(ServerChannelKey.channelId(key)),
+            attackCount);
+        }
+      });
+  }
+
+  /**
+   * Get the attack count for each server and channel. The list is not sorted.
+   * @return The servers, channels and their attack counts
+   */
+  public List<ServerChannelCount> getServerChannelCounts() {
+    final List<ServerChannelCount> serverChannelAttackCount =
+      new ArrayList<>(attacksByServerAndChannel.size());
+    attacksByServerAndChannel
+      .forEachEntry(new LongIntHashMap.EntryVisitor() {
+        @Override
+        public void visit(long key, int attackCount) {
+          serverChannelAttackCount
+            .add(new ServerChannelCount(key, channels, attackCount));
+        }
+      });
+    return serverChannelAttackCount;
+  }
+}
@@ -36,6 +36,42 @@ public class ServerChannelCount implements Comparable<ServerChannelCount> {
    */
   private int attackCount;
 
+  /**
+   * Create the instance.
+   * @param serverIpMask
+   *          The server IP mask value
+   * @param channel
+   *          The channel (sensor) type
+   * @param attackCount
+   *          The number of attacks
+   * @see #setServerIpMask(int)
+   * @see #setChannel(String)
+   * @see #setAttackCount(int)
+   */
+  public ServerChannelCount(int serverIpMask, String channel,
+    int attackCount) {
+    setServerIpMask(serverIpMask);
+    setChannel(channel);
+    setAttackCount(attackCount);
+  }
+
+  /**
+   * Create the instance from a packed server and channel key.
+   * @param serverChannelKey
+   *          The server IP mask value and channel id packed into a long
+   * @param channels
+   *          The dictionary which assigned the channel id
+   * @param attackCount
+   *          The number of attacks
+   * @see ServerChannelKey
+   */
+  public ServerChannelCount(long serverChannelKey, ChannelDictionary channels,
+    int attackCount) {
+    this(ServerChannelKey.serverIpMask(serverChannelKey),
+      channels.getChannel(ServerChannelKey.channelId(serverChannelKey)),
+      attackCount);
+  }
+
   /**
    * Create the instance.
    * @param serverAndChannel
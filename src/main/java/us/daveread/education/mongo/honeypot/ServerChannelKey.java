@@ -0,0 +1,69 @@
+package us.daveread.education.mongo.honeypot;
+
+/**
+ * Packs a server IP mask value and a channel id into a single long so that a
+ * server and channel pair can be used as a primitive key. The server IP mask
+ * value occupies the upper 32 bits and the channel id, as assigned by a
+ * ChannelDictionary, occupies the lower 32 bits.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see ChannelDictionary
+ */
+public final class ServerChannelKey {
+  /**
+   * The mask for the lower 32 bits of the key.
+   */
+  private static final long CHANNEL_ID_MASK = 0xFFFFFFFFL;
+
+  /**
+   * Not instantiated, all methods are static.
+   */
+  private ServerChannelKey() {
+  }
+
+  /**
+   * Create a key from a server IP mask value and channel id.
+   * @param serverIpMask
+   *          The server IP mask value
+   * @param channelId
+   *          The channel id
+   * @return The packed key
+   */
+  public static long pack(int serverIpMask, int channelId) {
+    return ((long) serverIpMask << 32) | (channelId & CHANNEL_ID_MASK);
+  }
+
+  /**
+   * Get the server IP mask value from a key.
+   * @param key
+   *          The packed key
+   * @return The server IP mask value
+   */
+  public static int serverIpMask(long key) {
+    return (int) (key >>> 32);
+  }
+
+  /**
+   * Get the channel id from a key.
+   * @param key
+   *          The packed key
+   * @return The channel id
+   */
+  public static int channelId(long key) {
+    return (int) key;
+  }
+}
@@ -0,0 +1,122 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical calls which overlap in time. The first caller for a
+ * key runs the call, and callers arriving with the same key while it is
+ * running wait for and share its result, or its exception. Once the call
+ * completes the key is forgotten, so a later caller runs the call again and
+ * sees fresh data.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @param <K>
+ *          The type of the keys identifying identical calls
+ * @param <V>
+ *          The type of the call results
+ * @see StatisticsServer
+ */
+public class SingleFlight<K, V> {
+  /**
+   * The calls in progress, by key.
+   */
+  private ConcurrentMap<K, CompletableFuture<V>> inFlight =
+    new ConcurrentHashMap<>();
+
+  /**
+   * The number of calls which were run.
+   */
+  private AtomicLong executedCount = new AtomicLong();
+
+  /**
+   * The number of calls which shared the result of a call in progress.
+   */
+  private AtomicLong sharedCount = new AtomicLong();
+
+  /**
+   * Run a call, or wait for the identical call already in progress.
+   * @param key
+   *          The key identifying identical calls
+   * @param call
+   *          The call, run only if no call with the key is in progress
+   * @return The result of the call
+   * @throws Exception
+   *           If the call, or the call in progress, fails
+   */
+  public V execute(K key, Callable<V> call) throws Exception {
+    CompletableFuture<V> result = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, result);
+    if (existing != null) {
+      sharedCount.incrementAndGet();
+      return await(existing);
+    }
+
+    executedCount.incrementAndGet();
+    try {
+      V value = call.call();
+      result.complete(value);
+      return value;
+    } catch (Throwable throwable) {
+      result.completeExceptionally(throwable);
+      throw throwable;
+    } finally {
+      inFlight.remove(key, result);
+    }
+  }
+
+  /**
+   * Wait for a call in progress.
+   * @param result
+   *          The result of the call
+   * @return The value returned by the call
+   * @throws Exception
+   *           If the call failed
+   */
+  private V await(CompletableFuture<V> result) throws Exception {
+    try {
+      return result.get();
+    } catch (ExecutionException executionException) {
+      Throwable cause = executionException.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw (Error) cause;
+    }
+  }
+
+  /**
+   * Get the number of calls which were run.
+   * @return The number of calls run
+   */
+  public long getExecutedCount() {
+    return executedCount.get();
+  }
+
+  /**
+   * Get the number of calls which shared the result of a call in progress
+   * rather than being run.
+   * @return The number of calls coalesced
+   */
+  public long getSharedCount() {
+    return sharedCount.get();
+  }
+}
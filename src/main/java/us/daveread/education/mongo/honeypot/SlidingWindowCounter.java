@@ -0,0 +1,316 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.List;
+
+/**
+ * Counts occurrences of long keys over a sliding time window. The window is
+ * divided into a ring of time buckets, each holding the counts of the events
+ * whose time falls in it, and a running total of every bucket is kept for
+ * each key. When time moves past the oldest bucket its counts are subtracted
+ * from the totals and the bucket is reused for the newest interval, so the
+ * totals cover the last bucketCount intervals without revisiting any event.
+ * <p>
+ * The window moves in whole buckets, so the totals may include events up to
+ * one bucket older than the window. The counter is not thread safe.
+ * <p>
+ * The keys with the largest totals are kept up to date without visiting
+ * every key. While counts are only added, a key can only join the top keys
+ * by being counted, so the new top keys are found among the previous top
+ * keys and the keys counted since. Every key is visited only after a bucket
+ * has been discarded, which can lower the totals of the top keys, i.e. once
+ * per bucket length rather than once per request.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see LiveAttackMonitor
+ */
+public class SlidingWindowCounter {
+  /**
+   * The length of each bucket in milliseconds.
+   */
+  private long bucketMillis;
+
+  /**
+   * The counts of each bucket, used as a ring.
+   */
+  private LongIntHashMap[] buckets;
+
+  /**
+   * The counts of every bucket in the window, by key.
+   */
+  private LongIntHashMap totals = new LongIntHashMap();
+
+  /**
+   * The number of events in the window.
+   */
+  private long totalCount;
+
+  /**
+   * The number of the newest bucket, counted in buckets since the epoch.
+   */
+  private long newestBucket = Long.MIN_VALUE;
+
+  /**
+   * The keys with the largest totals when they were last found, largest
+   * first.
+   */
+  private long[] topKeys = new long[0];
+
+  /**
+   * The number of top keys wanted when they were last found.
+   */
+  private int topCount;
+
+  /**
+   * The keys counted since the top keys were last found.
+   */
+  private LongIntHashMap countedKeys = new LongIntHashMap();
+
+  /**
+   * True if every key must be visited to find the top keys, because counts
+   * were discarded or too many keys were counted since they were last found.
+   */
+  private boolean rescanTopKeys = true;
+
+  /**
+   * Create the instance.
+   * @param bucketCount
+   *          The number of buckets in the window
+   * @param bucketMillis
+   *          The length of each bucket in milliseconds
+   */
+  public SlidingWindowCounter(int bucketCount, long bucketMillis) {
+    if (bucketCount < 1 || bucketMillis < 1) {
+      throw new IllegalArgumentException("The bucket count and length must "
+        + "be positive: " + bucketCount + ", " + bucketMillis);
+    }
+    this.bucketMillis = bucketMillis;
+    buckets = new LongIntHashMap[bucketCount];
+    for (int bucket = 0; bucket < bucketCount; ++bucket) {
+      buckets[bucket] = new LongIntHashMap();
+    }
+  }
+
+  /**
+   * Get the length of the window in milliseconds.
+   * @return The window length
+   */
+  public long getWindowMillis() {
+    return bucketMillis * buckets.length;
+  }
+
+  /**
+   * Count an event. The window is first moved forward to the event's time if
+   * the event is newer than the newest bucket. An event older than the
+   * window is ignored.
+   * @param key
+   *          The event's key
+   * @param timeMillis
+   *          The event's time in milliseconds since the epoch
+   * @return False if the event was older than the window
+   */
+  public boolean increment(long key, long timeMillis) {
+    long bucket = Math.floorDiv(timeMillis, bucketMillis);
+    advance(timeMillis);
+    if (bucket <= newestBucket - buckets.length) {
+      return false;
+    }
+    buckets[slot(bucket)].increment(key);
+    totals.increment(key);
+    ++totalCount;
+    if (!rescanTopKeys) {
+      countedKeys.increment(key);
+      if (countedKeys.size() > totals.size() / 2) {
+        rescanTopKeys = true;
+        countedKeys.clear();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Move the window forward so that its newest bucket holds the given time,
+   * discarding the counts of the buckets which fall out of the window.
+   * Earlier times leave the window where it is.
+   * @param timeMillis
+   *          The time in milliseconds since the epoch
+   * @return True if any counts were discarded
+   */
+  public boolean advance(long timeMillis) {
+    long bucket = Math.floorDiv(timeMillis, bucketMillis);
+    if (newestBucket == Long.MIN_VALUE) {
+      newestBucket = bucket;
+      return false;
+    }
+    boolean discarded = false;
+    long expiring = Math.max(newestBucket + 1, bucket - buckets.length + 1);
+    for (; bucket > newestBucket && expiring <= bucket; ++expiring) {
+      discarded |= expire(slot(expiring));
+    }
+    newestBucket = Math.max(newestBucket, bucket);
+    return discarded;
+  }
+
+  /**
+   * Subtract a bucket's counts from the totals and empty it.
+   * @param slot
+   *          The bucket's position in the ring
+   * @return True if the bucket held any counts
+   */
+  private boolean expire(int slot) {
+    LongIntHashMap bucket = buckets[slot];
+    if (bucket.size() == 0) {
+      return false;
+    }
+    bucket.forEachEntry(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int count) {
+        if (totals.get(key) == count) {
+          totals.remove(key);
+        } else {
+          totals.add(key, -count);
+        }
+        totalCount -= count;
+      }
+    });
+    buckets[slot] = new LongIntHashMap();
+    rescanTopKeys = true;
+    countedKeys.clear();
+    return true;
+  }
+
+  /**
+   * Find a bucket's position in the ring.
+   * @param bucket
+   *          The number of the bucket since the epoch
+   * @return The position
+   */
+  private int slot(long bucket) {
+    return (int) Math.floorMod(bucket, (long) buckets.length);
+  }
+
+  /**
+   * Get the number of events in the window.
+   * @return The number of events
+   */
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Get the number of distinct keys in the window.
+   * @return The number of keys
+   */
+  public int getDistinctCount() {
+    return totals.size();
+  }
+
+  /**
+   * Get the count for a key in the window.
+   * @param key
+   *          The key
+   * @return The count, zero if the key is not in the window
+   */
+  public int getCount(long key) {
+    return totals.get(key);
+  }
+
+  /**
+   * Pass the count of each key in the window to a visitor.
+   * @param visitor
+   *          The visitor receiving the keys and counts
+   */
+  public void forEachCount(LongIntHashMap.EntryVisitor visitor) {
+    totals.forEachEntry(visitor);
+  }
+
+  /**
+   * Get the keys with the largest counts in the window. Only the previous
+   * top keys and the keys counted since are compared, unless counts were
+   * discarded since the top keys were last found.
+   * @param count
+   *          The number of keys wanted
+   * @return The keys, largest count first, fewer if the window holds fewer
+   *         keys
+   */
+  public long[] getTopKeys(int count) {
+    final TopK<KeyCount> top = new TopK<>(count);
+    if (rescanTopKeys || count != topCount) {
+      totals.forEachEntry(new LongIntHashMap.EntryVisitor() {
+        @Override
+        public void visit(long key, int keyCount) {
+          top.offer(new KeyCount(key, keyCount));
+        }
+      });
+    } else {
+      for (long key : topKeys) {
+        if (countedKeys.get(key) == 0) {
+          top.offer(new KeyCount(key, totals.get(key)));
+        }
+      }
+      countedKeys.forEachEntry(new LongIntHashMap.EntryVisitor() {
+        @Override
+        public void visit(long key, int ignored) {
+          top.offer(new KeyCount(key, totals.get(key)));
+        }
+      });
+    }
+
+    List<KeyCount> topItems = top.getTopItems();
+    topKeys = new long[topItems.size()];
+    for (int index = 0; index < topKeys.length; ++index) {
+      topKeys[index] = topItems.get(index).key;
+    }
+    topCount = count;
+    rescanTopKeys = false;
+    countedKeys.clear();
+    return topKeys.clone();
+  }
+
+  /**
+   * A key and its count in the window, ordered by count and then by key so
+   * that the top keys do not depend on the order in which they are offered.
+   */
+  private static final class KeyCount implements Comparable<KeyCount> {
+    /**
+     * The key.
+     */
+    private final long key;
+
+    /**
+     * The count in the window.
+     */
+    private final int count;
+
+    /**
+     * Create the instance.
+     * @param key
+     *          The key
+     * @param count
+     *          The count in the window
+     */
+    KeyCount(long key, int count) {
+      this.key = key;
+      this.count = count;
+    }
+
+    @Override
+    public int compareTo(KeyCount other) {
+      int byCount = Integer.compare(count, other.count);
+      return byCount != 0 ? byCount : Long.compare(other.key, key);
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.List;
+
+/**
+ * Finds the most frequent keys in a stream using a fixed number of counters
+ * (the Space-Saving algorithm). Each counter holds a key, its count and the
+ * largest amount by which the count may exceed the key's true count. A key
+ * without a counter takes over the counter with the smallest count when
+ * every counter is in use, inheriting that count as its error. Any key whose
+ * true count is larger than the total count divided by the number of counters
+ * is guaranteed to hold a counter.
+ * <p>
+ * The counters are kept in a binary heap ordered by count, and a hash map
+ * from key to counter, so each key is processed in O(log n) time without
+ * allocating objects.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see CountMinSketch
+ */
+public class SpaceSaving {
+  /**
+   * Receives each counter when the counters are traversed.
+   */
+  public interface CounterVisitor {
+    /**
+     * Process one counter.
+     * @param key
+     *          The key
+     * @param count
+     *          The key's count, never less than its true count
+     * @param error
+     *          The largest amount by which the count may exceed the true
+     *          count
+     */
+    void visit(long key, long count, long error);
+  }
+
+  /**
+   * A counter copied out of a summary while summaries are merged.
+   */
+  private static class Counter implements Comparable<Counter> {
+    /**
+     * The key.
+     */
+    private long key;
+
+    /**
+     * The key's count.
+     */
+    private long count;
+
+    /**
+     * The largest overestimate of the count.
+     */
+    private long error;
+
+    /**
+     * Create the counter.
+     * @param key
+     *          The key
+     * @param count
+     *          The key's count
+     * @param error
+     *          The largest overestimate of the count
+     */
+    Counter(long key, long count, long error) {
+      this.key = key;
+      this.count = count;
+      this.error = error;
+    }
+
+    @Override
+    public int compareTo(Counter o) {
+      return Long.compare(count, o.count);
+    }
+  }
+
+  /**
+   * The number of counters.
+   */
+  private int capacity;
+
+  /**
+   * The number of counters in use.
+   */
+  private int size;
+
+  /**
+   * The key held by each counter.
+   */
+  private long[] keys;
+
+  /**
+   * The count held by each counter.
+   */
+  private long[] counts;
+
+  /**
+   * The error of each counter's count.
+   */
+  private long[] errors;
+
+  /**
+   * The counters in heap order, smallest count first.
+   */
+  private int[] heap;
+
+  /**
+   * The position of each counter in the heap.
+   */
+  private int[] heapPositions;
+
+  /**
+   * The counter holding each key, plus one.
+   */
+  private LongIntHashMap counterByKey;
+
+  /**
+   * Create an empty summary.
+   * @param capacity
+   *          The number of counters
+   */
+  public SpaceSaving(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(
+        "The capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    keys = new long[capacity];
+    counts = new long[capacity];
+    errors = new long[capacity];
+    heap = new int[capacity];
+    heapPositions = new int[capacity];
+    counterByKey = new LongIntHashMap(capacity);
+  }
+
+  /**
+   * Add to the count for a key.
+   * @param key
+   *          The key
+   * @param count
+   *          The amount to add, must be positive
+   */
+  public void offer(long key, long count) {
+    int counter = counterByKey.get(key) - 1;
+    if (counter >= 0) {
+      counts[counter] += count;
+      siftDown(heapPositions[counter]);
+    } else if (size < capacity) {
+      counter = size++;
+      keys[counter] = key;
+      counts[counter] = count;
+      errors[counter] = 0;
+      heap[counter] = counter;
+      heapPositions[counter] = counter;
+      counterByKey.add(key, counter + 1);
+      siftUp(counter);
+    } else {
+      /**
+       * Replace the key with the smallest count. Its count is the most the
+       * new key could have occurred without being seen.
+       */
+      counter = heap[0];
+      counterByKey.remove(keys[counter]);
+      keys[counter] = key;
+      errors[counter] = counts[counter];
+      counts[counter] += count;
+      counterByKey.add(key, counter + 1);
+      siftDown(0);
+    }
+  }
+
+  /**
+   * Move a heap entry towards the root until its parent is not larger.
+   * @param position
+   *          The position of the entry in the heap
+   */
+  private void siftUp(int position) {
+    int counter = heap[position];
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (counts[heap[parent]] <= counts[counter]) {
+        break;
+      }
+      place(heap[parent], position);
+      position = parent;
+    }
+    place(counter, position);
+  }
+
+  /**
+   * Move a heap entry away from the root until neither child is smaller.
+   * @param position
+   *          The position of the entry in the heap
+   */
+  private void siftDown(int position) {
+    int counter = heap[position];
+    while (true) {
+      int child = position * 2 + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+        ++child;
+      }
+      if (counts[heap[child]] >= counts[counter]) {
+        break;
+      }
+      place(heap[child], position);
+      position = child;
+    }
+    place(counter, position);
+  }
+
+  /**
+   * Put a counter at a position in the heap.
+   * @param counter
+   *          The counter
+   * @param position
+   *          The position
+   */
+  private void place(int counter, int position) {
+    heap[position] = counter;
+    heapPositions[counter] = position;
+  }
+
+  /**
+   * Get the count for a key.
+   * @param key
+   *          The key
+   * @return The key's count, or the smallest count if every counter is in
+   *         use and the key does not hold one, which is the most the key
+   *         could have occurred
+   */
+  public long getCount(long key) {
+    int counter = counterByKey.get(key) - 1;
+    return counter >= 0 ? counts[counter] : getMinimumCount();
+  }
+
+  /**
+   * Get the error of the count for a key.
+   * @param key
+   *          The key
+   * @return The largest amount by which the key's count may exceed its true
+   *         count
+   * @see #getCount(long)
+   */
+  public long getError(long key) {
+    int counter = counterByKey.get(key) - 1;
+    return counter >= 0 ? errors[counter] : getMinimumCount();
+  }
+
+  /**
+   * Get the smallest count held, which bounds the count of any key that does
+   * not hold a counter.
+   * @return The smallest count, zero if any counter is unused
+   */
+  public long getMinimumCount() {
+    return size < capacity ? 0 : counts[heap[0]];
+  }
+
+  /**
+   * Pass every counter in use to a visitor. The order of the counters is not
+   * defined.
+   * @param visitor
+   *          The visitor receiving the counters
+   */
+  public void forEachCounter(CounterVisitor visitor) {
+    for (int counter = 0; counter < size; ++counter) {
+      visitor.visit(keys[counter], counts[counter], errors[counter]);
+    }
+  }
+
+  /**
+   * Add the counts from another summary. A key held by only one summary may
+   * have occurred up to the other summary's smallest count in the other
+   * stream, so that amount is added to its count and error. The largest
+   * counts are then kept.
+   * @param other
+   *          The summary whose counts are added
+   */
+  public void merge(SpaceSaving other) {
+    long minimumCount = getMinimumCount();
+    long otherMinimumCount = other.getMinimumCount();
+    TopK<Counter> merged = new TopK<>(capacity);
+    for (int counter = 0; counter < size; ++counter) {
+      int otherCounter = other.counterByKey.get(keys[counter]) - 1;
+      if (otherCounter >= 0) {
+        merged.offer(new Counter(keys[counter],
+          counts[counter] + other.counts[otherCounter],
+          errors[counter] + other.errors[otherCounter]));
+      } else {
+        merged.offer(new Counter(keys[counter],
+          counts[counter] + otherMinimumCount,
+          errors[counter] + otherMinimumCount));
+      }
+    }
+    for (int otherCounter = 0; otherCounter < other.size; ++otherCounter) {
+      if (counterByKey.get(other.keys[otherCounter]) == 0) {
+        merged.offer(new Counter(other.keys[otherCounter],
+          other.counts[otherCounter] + minimumCount,
+          other.errors[otherCounter] + minimumCount));
+      }
+    }
+
+    List<Counter> counters = merged.getTopItems();
+    counterByKey = new LongIntHashMap(capacity);
+    size = 0;
+    for (int index = counters.size() - 1; index >= 0; --index) {
+      /**
+       * Adding the counters smallest first leaves the arrays in heap order.
+       */
+      Counter counter = counters.get(index);
+      keys[size] = counter.key;
+      counts[size] = counter.count;
+      errors[size] = counter.error;
+      place(size, size);
+      counterByKey.add(counter.key, size + 1);
+      ++size;
+    }
+  }
+
+  /**
+   * Get the number of counters.
+   * @return The capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the number of counters in use.
+   * @return The number of keys held
+   */
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,466 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the honeypot reports as JSON over HTTP from a long running process,
+ * so that the connection to the server, the attack count and the counts
+ * gathered for the coded reports are kept between requests. The reports are
+ * requested with GET /reports/NAME, where NAME is the BasicStatistics method
+ * producing the report, and GET /reports lists the names. POST /refresh
+ * counts the attacks again, discards the coded reports' counts and
+ * refreshes the rollup, if one is used, which is also done automatically
+ * once the refresh interval has passed. With a live monitor, GET /live
+ * returns its latest top lists for each sliding window.
+ * <p>
+ * Identical requests which arrive while a report is running share its result
+ * rather than each running the report. The reports themselves run one at a
+ * time since BasicStatistics is not thread safe.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @see SingleFlight
+ * @see JsonReportPrinter
+ */
+public class StatisticsServer {
+  /**
+   * The logger
+   */
+  private static final Logger LOG = Logger.getLogger(StatisticsServer.class);
+
+  /**
+   * The names of the reports which can be requested.
+   */
+  public static final List<String> REPORTS = Arrays.asList("overallStats",
+    "distinctIpStats", "countryBreakdownCoded", "countryBreakdownAggregation",
+    "honeypotBreakdownCoded", "honeypotBreakdownAggregation",
+    "mostActiveIps");
+
+  /**
+   * The default time after which the data is refreshed, in milliseconds.
+   */
+  public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 60000;
+
+  /**
+   * The path prefix of the report requests.
+   */
+  private static final String REPORTS_PATH = "/reports";
+
+  /**
+   * The path of the refresh request.
+   */
+  private static final String REFRESH_PATH = "/refresh";
+
+  /**
+   * The path of the live top lists request.
+   */
+  private static final String LIVE_PATH = "/live";
+
+  /**
+   * The number of threads handling requests.
+   */
+  private static final int REQUEST_THREADS = 16;
+
+  /**
+   * The statistics producing the reports.
+   */
+  private BasicStatistics statistics;
+
+  /**
+   * The time after which the data is refreshed before the next report, in
+   * milliseconds, 0 to refresh only when requested.
+   */
+  private long refreshIntervalMillis;
+
+  /**
+   * The time of the last refresh.
+   */
+  private long lastRefreshMillis;
+
+  /**
+   * Coalesces identical requests, keyed by report name.
+   */
+  private SingleFlight<String, String> requests = new SingleFlight<>();
+
+  /**
+   * The HTTP server, null until started.
+   */
+  private HttpServer server;
+
+  /**
+   * The threads handling requests, null until started.
+   */
+  private ExecutorService requestThreads;
+
+  /**
+   * The live monitor whose top lists are served, null if none.
+   */
+  private volatile LiveAttackMonitor liveMonitor;
+
+  /**
+   * Create the instance.
+   * @param statistics
+   *          The statistics producing the reports
+   * @param refreshIntervalMillis
+   *          The time after which the data is refreshed before the next
+   *          report, in milliseconds, 0 to refresh only when requested
+   */
+  public StatisticsServer(BasicStatistics statistics,
+    long refreshIntervalMillis) {
+    this.statistics = statistics;
+    this.refreshIntervalMillis = refreshIntervalMillis;
+    lastRefreshMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Serve the top lists of a live monitor at /live.
+   * @param liveMonitor
+   *          The live monitor, null if none
+   */
+  public void setLiveMonitor(LiveAttackMonitor liveMonitor) {
+    this.liveMonitor = liveMonitor;
+  }
+
+  /**
+   * Start serving requests.
+   * @param port
+   *          The port to listen on, 0 for any free port
+   * @throws IOException
+   *           If the port cannot be opened
+   */
+  public synchronized void start(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.createContext(REPORTS_PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleReport(exchange);
+      }
+    });
+    server.createContext(REFRESH_PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleRefresh(exchange);
+      }
+    });
+    server.createContext(LIVE_PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleLive(exchange);
+      }
+    });
+    requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+    server.setExecutor(requestThreads);
+    server.start();
+    LOG.info("Serving reports on port " + getPort());
+  }
+
+  /**
+   * Get the port the server is listening on.
+   * @return The port
+   */
+  public synchronized int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stop serving requests.
+   */
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      requestThreads.shutdownNow();
+      server = null;
+    }
+  }
+
+  /**
+   * Get the coalescing of the requests, for its counts.
+   * @return The request coalescing
+   */
+  public SingleFlight<String, String> getRequests() {
+    return requests;
+  }
+
+  /**
+   * Handle a report request.
+   * @param exchange
+   *          The request and response
+   * @throws IOException
+   *           If the response cannot be sent
+   */
+  private void handleReport(HttpExchange exchange) throws IOException {
+    if (!"GET".equals(exchange.getRequestMethod())) {
+      respond(exchange, 405, error("Use GET"));
+      return;
+    }
+
+    String path = exchange.getRequestURI().getPath();
+    final String report = path.length() > REPORTS_PATH.length() + 1
+      ? path.substring(REPORTS_PATH.length() + 1) : "";
+    if (report.isEmpty()) {
+      respond(exchange, 200, JsonReportPrinter.toJson(
+        Collections.singletonMap("reports", REPORTS)));
+      return;
+    }
+    if (!REPORTS.contains(report)) {
+      respond(exchange, 404, error("Unknown report " + report));
+      return;
+    }
+
+    try {
+      respond(exchange, 200, requests.execute(report, new Callable<String>() {
+        @Override
+        public String call() {
+          return runReport(report);
+        }
+      }));
+    } catch (Exception exception) {
+      LOG.error("Report " + report + " failed", exception);
+      respond(exchange, 500, error("Report " + report + " failed: "
+        + exception.getMessage()));
+    }
+  }
+
+  /**
+   * Handle a refresh request.
+   * @param exchange
+   *          The request and response
+   * @throws IOException
+   *           If the response cannot be sent
+   */
+  private void handleRefresh(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      respond(exchange, 405, error("Use POST"));
+      return;
+    }
+
+    try {
+      respond(exchange, 200, requests.execute(REFRESH_PATH,
+        new Callable<String>() {
+          @Override
+          public String call() {
+            return refresh();
+          }
+        }));
+    } catch (Exception exception) {
+      LOG.error("Refresh failed", exception);
+      respond(exchange, 500, error("Refresh failed: "
+        + exception.getMessage()));
+    }
+  }
+
+  /**
+   * Handle a live top lists request. The monitor publishes its lists after
+   * each update, so the request is answered without waiting for it.
+   * @param exchange
+   *          The request and response
+   * @throws IOException
+   *           If the response cannot be sent
+   */
+  private void handleLive(HttpExchange exchange) throws IOException {
+    if (!"GET".equals(exchange.getRequestMethod())) {
+      respond(exchange, 405, error("Use GET"));
+      return;
+    }
+    LiveAttackMonitor monitor = liveMonitor;
+    if (monitor == null) {
+      respond(exchange, 404, error("No live monitor is running"));
+      return;
+    }
+    respond(exchange, 200, liveJson(monitor.getTopLists()));
+  }
+
+  /**
+   * Write the live top lists as JSON.
+   * @param topLists
+   *          The top lists for each window
+   * @return The top lists as JSON
+   */
+  private static String liveJson(List<LiveTopLists> topLists) {
+    List<Map<String, Object>> windows = new ArrayList<>();
+    for (LiveTopLists topList : topLists) {
+      Map<String, Object> window = new LinkedHashMap<>();
+      window.put("window", topList.getWindow());
+      window.put("windowMillis", topList.getWindowMillis());
+      window.put("totalAttacks", topList.getTotalAttacks());
+      List<Map<String, Object>> rows = new ArrayList<>();
+      for (CountryCount country : topList.getCountries()) {
+        rows.add(row("country", country.getCountryCode(),
+          country.getAttackCount()));
+      }
+      window.put("countries", rows);
+      rows = new ArrayList<>();
+      for (ServerChannelCount serverChannel : topList.getServerChannels()) {
+        Map<String, Object> row = row("server",
+          serverChannel.getServerIpMask(), serverChannel.getAttackCount());
+        row.put("channel", serverChannel.getChannel());
+        rows.add(row);
+      }
+      window.put("serverChannels", rows);
+      rows = new ArrayList<>();
+      for (ClientCount client : topList.getClients()) {
+        Map<String, Object> row = row("client", client.getClientIpMask(),
+          client.getAttackCount());
+        row.put("country", client.getCountryCode());
+        rows.add(row);
+      }
+      window.put("clients", rows);
+      windows.add(window);
+    }
+    return JsonReportPrinter.toJson(Collections.singletonMap("windows",
+      windows));
+  }
+
+  /**
+   * Create a live top list row.
+   * @param label
+   *          The name of the value identifying the row
+   * @param value
+   *          The value identifying the row
+   * @param attackCount
+   *          The number of attacks
+   * @return The row
+   */
+  private static Map<String, Object> row(String label, Object value,
+    int attackCount) {
+    Map<String, Object> row = new LinkedHashMap<>();
+    row.put(label, value);
+    row.put("attacks", attackCount);
+    return row;
+  }
+
+  /**
+   * Run a report, refreshing the data first if the refresh interval has
+   * passed.
+   * @param report
+   *          The report name
+   * @return The report as JSON
+   */
+  private String runReport(String report) {
+    synchronized (statistics) {
+      if (refreshIntervalMillis > 0 && System.currentTimeMillis()
+        - lastRefreshMillis >= refreshIntervalMillis) {
+        refresh();
+      }
+
+      JsonReportPrinter printer =
+        new JsonReportPrinter(report, statistics.getTotalAttacks());
+      statistics.setReportPrinter(printer);
+      try {
+        switch (report) {
+          case "overallStats":
+            statistics.overallStats();
+            break;
+          case "distinctIpStats":
+            statistics.distinctIpStats();
+            break;
+          case "countryBreakdownCoded":
+            statistics.countryBreakdownCoded();
+            break;
+          case "countryBreakdownAggregation":
+            statistics.countryBreakdownAggregation();
+            break;
+          case "honeypotBreakdownCoded":
+            statistics.honeypotBreakdownCoded();
+            break;
+          case "honeypotBreakdownAggregation":
+            statistics.honeypotBreakdownAggregation();
+            break;
+          default:
+            statistics.mostActiveIps();
+            break;
+        }
+      } finally {
+        statistics.setReportPrinter(null);
+      }
+      return printer.toJson();
+    }
+  }
+
+  /**
+   * Count the attacks again, discard the coded reports' counts and refresh
+   * the rollup.
+   * @return The new overall statistics as JSON
+   */
+  private String refresh() {
+    synchronized (statistics) {
+      statistics.refresh();
+      lastRefreshMillis = System.currentTimeMillis();
+      LOG.info("Refreshed the statistics, " + statistics.getTotalAttacks()
+        + " attacks");
+      JsonReportPrinter printer =
+        new JsonReportPrinter("refresh", statistics.getTotalAttacks());
+      statistics.setReportPrinter(printer);
+      try {
+        statistics.overallStats();
+      } finally {
+        statistics.setReportPrinter(null);
+      }
+      return printer.toJson();
+    }
+  }
+
+  /**
+   * Create an error response.
+   * @param message
+   *          The error message
+   * @return The response as JSON
+   */
+  private static String error(String message) {
+    return JsonReportPrinter.toJson(
+      Collections.singletonMap("error", message));
+  }
+
+  /**
+   * Send a JSON response.
+   * @param exchange
+   *          The request and response
+   * @param status
+   *          The HTTP status code
+   * @param json
+   *          The response body
+   * @throws IOException
+   *           If the response cannot be sent
+   */
+  private static void respond(HttpExchange exchange, int status, String json)
+    throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type",
+      "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a small integer id to each distinct string value. Ids are allocated
+ * sequentially from zero in the order the values are first seen, so a value
+ * can be stored as an int and turned back into the string when a report is
+ * produced.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class StringDictionary {
+  /**
+   * The values, indexed by id.
+   */
+  private List<String> values = new ArrayList<>();
+
+  /**
+   * The id of each value.
+   */
+  private Map<String, Integer> valueIds = new HashMap<>();
+
+  /**
+   * Get the id for a value, assigning the next id if the value has not been
+   * seen before.
+   * @param value
+   *          The value
+   * @return The id
+   */
+  public int intern(String value) {
+    Integer valueId = valueIds.get(value);
+    if (valueId == null) {
+      valueId = values.size();
+      values.add(value);
+      valueIds.put(value, valueId);
+    }
+    return valueId;
+  }
+
+  /**
+   * Get the value for an id.
+   * @param valueId
+   *          The id
+   * @return The value
+   */
+  public String getValue(int valueId) {
+    return values.get(valueId);
+  }
+
+  /**
+   * Get the number of values in the dictionary.
+   * @return The number of values
+   */
+  public int size() {
+    return values.size();
+  }
+}
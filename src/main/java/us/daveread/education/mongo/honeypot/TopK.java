@@ -0,0 +1,143 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the largest items from a stream of items using a heap bounded to
+ * the number of items wanted. Only that many items are ever held or compared,
+ * rather than sorting every item and discarding most of them.
+ * <p>
+ * Items which compare as equal are ordered with the most recently offered item
+ * first. This matches sorting every item in ascending order and then reversing
+ * the result.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ * @param <T>
+ *          The type of item being ranked
+ */
+public class TopK<T extends Comparable<? super T>> {
+  /**
+   * An item along with the order in which it was offered.
+   * @param <T>
+   *          The type of item being ranked
+   */
+  private static class Entry<T extends Comparable<? super T>>
+    implements Comparable<Entry<T>> {
+    /**
+     * The item.
+     */
+    private T item;
+
+    /**
+     * The position of the item in the stream of offered items.
+     */
+    private long sequence;
+
+    /**
+     * Create the entry.
+     * @param item
+     *          The item
+     * @param sequence
+     *          The position of the item in the stream
+     */
+    Entry(T item, long sequence) {
+      this.item = item;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Entry<T> o) {
+      int diff = item.compareTo(o.item);
+      if (diff == 0) {
+        diff = Long.compare(sequence, o.sequence);
+      }
+      return diff;
+    }
+  }
+
+  /**
+   * The maximum number of items kept.
+   */
+  private int k;
+
+  /**
+   * The kept items, with the smallest at the head.
+   */
+  private PriorityQueue<Entry<T>> heap;
+
+  /**
+   * The number of items offered so far.
+   */
+  private long offered;
+
+  /**
+   * Create the instance.
+   * @param k
+   *          The maximum number of items kept
+   */
+  public TopK(int k) {
+    this.k = k;
+    heap = new PriorityQueue<>(Math.max(k, 1));
+  }
+
+  /**
+   * Offer an item. The item is kept if fewer than k items are held or it is
+   * larger than the smallest item held.
+   * @param item
+   *          The item
+   */
+  public void offer(T item) {
+    if (k <= 0) {
+      return;
+    }
+    Entry<T> entry = new Entry<>(item, offered++);
+    if (heap.size() < k) {
+      heap.add(entry);
+    } else if (entry.compareTo(heap.peek()) > 0) {
+      heap.poll();
+      heap.add(entry);
+    }
+  }
+
+  /**
+   * Offer every item in a collection.
+   * @param items
+   *          The items
+   */
+  public void offerAll(Iterable<? extends T> items) {
+    for (T item : items) {
+      offer(item);
+    }
+  }
+
+  /**
+   * Get the kept items, largest first.
+   * @return The largest items, at most k of them
+   */
+  public List<T> getTopItems() {
+    List<Entry<T>> entries = new ArrayList<>(heap);
+    Collections.sort(entries, Collections.<Entry<T>>reverseOrder());
+    List<T> items = new ArrayList<>(entries.size());
+    for (Entry<T> entry : entries) {
+      items.add(entry.item);
+    }
+    return items;
+  }
+}
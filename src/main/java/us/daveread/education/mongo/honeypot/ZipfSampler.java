@@ -0,0 +1,106 @@
+package us.daveread.education.mongo.honeypot;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ranks from a Zipf distribution. Rank r (counting from 0) is drawn
+ * with a probability proportional to 1 / (r + 1)^exponent, so a few ranks
+ * are very common and most are rare. An exponent of 0 gives a uniform
+ * distribution. The cumulative probabilities are computed once and each
+ * sample is a binary search, so sampling is safe from several threads as
+ * long as each uses its own Random.
+ * <p>
+ * Copyright (C) 2016 David S. Read
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see http://www.gnu.org/licenses/
+ * @author readda
+ */
+public class ZipfSampler {
+  /**
+   * The cumulative probability of each rank.
+   */
+  private double[] cumulative;
+
+  /**
+   * Create the sampler.
+   * @param cardinality
+   *          The number of ranks
+   * @param exponent
+   *          The skew of the distribution, 0 for uniform
+   */
+  public ZipfSampler(int cardinality, double exponent) {
+    if (cardinality < 1) {
+      throw new IllegalArgumentException(
+        "The cardinality must be at least 1: " + cardinality);
+    }
+    if (exponent < 0) {
+      throw new IllegalArgumentException(
+        "The exponent must not be negative: " + exponent);
+    }
+
+    cumulative = new double[cardinality];
+    double total = 0;
+    for (int rank = 0; rank < cardinality; ++rank) {
+      total += 1.0 / Math.pow(rank + 1, exponent);
+      cumulative[rank] = total;
+    }
+    for (int rank = 0; rank < cardinality; ++rank) {
+      cumulative[rank] /= total;
+    }
+  }
+
+  /**
+   * Get the number of ranks.
+   * @return The number of ranks
+   */
+  public int getCardinality() {
+    return cumulative.length;
+  }
+
+  /**
+   * Get the probability of drawing a rank.
+   * @param rank
+   *          The rank
+   * @return The probability
+   */
+  public double probability(int rank) {
+    return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+  }
+
+  /**
+   * Draw a rank.
+   * @param random
+   *          The source of random numbers
+   * @return The rank, from 0 to the cardinality - 1
+   */
+  public int sample(Random random) {
+    return rank(random.nextDouble());
+  }
+
+  /**
+   * Find the rank drawn by a number taken uniformly from [0, 1), e.g. from a
+   * hash rather than a Random.
+   * @param uniform
+   *          The number, at least 0 and less than 1
+   * @return The rank, from 0 to the cardinality - 1
+   */
+  public int rank(double uniform) {
+    int index = Arrays.binarySearch(cumulative, uniform);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return Math.min(index, cumulative.length - 1);
+  }
+}
@@ -0,0 +1,96 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackGenerator;
+
+/**
+ * Unit tests for the AttackGenerator class.
+ * @author readda
+ */
+public class TestAttackGenerator {
+  /**
+   * Tests the shape of the generated documents and the number of distinct
+   * values of each field.
+   */
+  @Test
+  public void testAttacks() {
+    AttackGenerator generator =
+      new AttackGenerator(5, 1.0, 3, 0.5, 4, 0, 50, 1.1);
+    Set<String> countries = new HashSet<>();
+    Set<String> channels = new HashSet<>();
+    Set<Integer> servers = new HashSet<>();
+    Set<Integer> clients = new HashSet<>();
+
+    Random random = new Random(1);
+    for (int attack = 0; attack < 10000; ++attack) {
+      Document document = generator.nextAttack(random);
+      Document payload = (Document) document.get("payload");
+      assertEquals(2, document.getString("client_country_code").length());
+      countries.add(document.getString("client_country_code"));
+      channels.add(document.getString("channel"));
+      servers.add(payload.getInteger("server_ip_mask"));
+      clients.add(payload.getInteger("client_ip_mask"));
+    }
+
+    assertEquals(5, countries.size());
+    assertEquals(3, channels.size());
+    assertEquals(4, servers.size());
+    assertTrue(clients.size() > 40 && clients.size() <= 50);
+  }
+
+  /**
+   * Tests that every attack by a client has the same country code.
+   */
+  @Test
+  public void testClientCountry() {
+    AttackGenerator generator =
+      new AttackGenerator(20, 1.0, 3, 0.5, 4, 0, 200, 1.1);
+    Map<Integer, String> clientCountries = new HashMap<>();
+
+    Random random = new Random(3);
+    for (int attack = 0; attack < 10000; ++attack) {
+      Document document = generator.nextAttack(random);
+      Integer client =
+        ((Document) document.get("payload")).getInteger("client_ip_mask");
+      String country = document.getString("client_country_code");
+      String previous = clientCountries.put(client, country);
+      assertTrue(previous == null || previous.equals(country));
+    }
+    assertEquals(generator.getCountryCode(7), generator.getCountryCode(7));
+  }
+
+  /**
+   * Tests that the same seed creates the same documents.
+   */
+  @Test
+  public void testRepeatable() {
+    AttackGenerator generator =
+      new AttackGenerator(100, 1.0, 10, 0.8, 30, 0.5, 1000, 1.1);
+    Random first = new Random(7);
+    Random second = new Random(7);
+    for (int attack = 0; attack < 100; ++attack) {
+      assertEquals(generator.nextAttack(first),
+        generator.nextAttack(second));
+    }
+  }
+
+  /**
+   * Tests that more country codes than exist are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyCountries() {
+    new AttackGenerator(AttackGenerator.MAXIMUM_COUNTRY_COUNT + 1, 1.0, 10,
+      0.8, 30, 0.5, 1000, 1.1);
+  }
+}
@@ -0,0 +1,134 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.AttackRecordCodec;
+
+/**
+ * Unit tests for the AttackRecordCodec class.
+ * @author readda
+ */
+public class TestAttackRecordCodec {
+  /**
+   * The test instance
+   */
+  private AttackRecordCodec codec;
+
+  /**
+   * Setup the test instance.
+   */
+  @Before
+  public void setup() {
+    codec = new AttackRecordCodec();
+  }
+
+  /**
+   * Decode a document.
+   * @param json
+   *          The document as JSON
+   * @return The decoded record
+   */
+  private AttackRecord decode(String json) {
+    return codec.decode(new BsonDocumentReader(BsonDocument.parse(json)),
+      DecoderContext.builder().build());
+  }
+
+  /**
+   * Tests decoding a document with extra fields which should be skipped.
+   */
+  @Test
+  public void testDecode() {
+    AttackRecord record = decode("{ _id: 1, client_country_code: 'US',"
+      + " extra: { a: [1, 2] }, channel: 'ssh',"
+      + " payload: { other: 'x', server_ip_mask: 12, client_ip_mask: 34,"
+      + " nested: { server_ip_mask: 99 } } }");
+
+    assertEquals("US", record.getClientCountryCode());
+    assertEquals("ssh", record.getChannel());
+    assertEquals(12, record.getServerIpMask());
+    assertEquals(34, record.getClientIpMask());
+    assertTrue("Server IP mask missing", record.isServerIpMaskPresent());
+  }
+
+  /**
+   * Tests decoding a document with missing fields.
+   */
+  @Test
+  public void testDecodeMissingFields() {
+    AttackRecord record = decode("{ channel: 'ssh' }");
+
+    assertNull(record.getClientCountryCode());
+    assertEquals("ssh", record.getChannel());
+    assertFalse("Server IP mask present", record.isServerIpMaskPresent());
+    assertFalse("Client IP mask present", record.isClientIpMaskPresent());
+    assertNull(record.getValue("payload.server_ip_mask"));
+  }
+
+  /**
+   * Tests decoding 64 bit and double IP mask values.
+   */
+  @Test
+  public void testDecodeOtherNumericTypes() {
+    AttackRecord record = decode("{ payload: { server_ip_mask:"
+      + " { $numberLong: '7' }, client_ip_mask: 8.0 } }");
+
+    assertEquals(7, record.getServerIpMask());
+    assertEquals(8, record.getClientIpMask());
+  }
+
+  /**
+   * Tests that decoding into an existing record reuses and clears it.
+   */
+  @Test
+  public void testDecodeReuse() {
+    AttackRecord record = new AttackRecord("US", "ssh", 1, 2);
+    codec.decode(
+      new BsonDocumentReader(BsonDocument.parse("{ channel: 'web' }")),
+      record);
+
+    assertNull(record.getClientCountryCode());
+    assertEquals("web", record.getChannel());
+    assertFalse("Client IP mask present", record.isClientIpMaskPresent());
+  }
+
+  /**
+   * Tests that an encoded record decodes to the same values.
+   */
+  @Test
+  public void testEncodeRoundTrip() {
+    BsonDocument document = new BsonDocument();
+    codec.encode(new BsonDocumentWriter(document),
+      new AttackRecord("CN", "ftp", 5, 6), EncoderContext.builder().build());
+
+    assertEquals(5,
+      document.getDocument("payload").getInt32("server_ip_mask").getValue());
+
+    AttackRecord record = codec.decode(new BsonDocumentReader(document),
+      DecoderContext.builder().build());
+    assertEquals("CN", record.getValue("client_country_code"));
+    assertEquals("ftp", record.getValue("channel"));
+    assertEquals(5, record.getValue("payload.server_ip_mask"));
+    assertEquals(6, record.getValue("payload.client_ip_mask"));
+  }
+
+  /**
+   * Tests the encoder class.
+   */
+  @Test
+  public void testEncoderClass() {
+    assertSame(AttackRecord.class, codec.getEncoderClass());
+  }
+}
@@ -0,0 +1,54 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.AttackScanner;
+import us.daveread.education.mongo.honeypot.CountryAccumulator;
+import us.daveread.education.mongo.honeypot.ServerChannelAccumulator;
+
+/**
+ * Unit tests for the AttackScanner class.
+ * @author readda
+ */
+public class TestAttackScanner {
+  /**
+   * Test that the projection combines the fields of every accumulator and
+   * excludes the _id.
+   */
+  @Test
+  public void testUnionProjection() {
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(new CountryAccumulator());
+    accumulators.add(new ServerChannelAccumulator());
+
+    Document projection = AttackScanner.unionProjection(accumulators);
+
+    assertEquals(4, projection.size());
+    assertEquals(0, projection.get("_id"));
+    assertEquals(1, projection.get("client_country_code"));
+    assertEquals(1, projection.get("payload.server_ip_mask"));
+    assertEquals(1, projection.get("channel"));
+  }
+
+  /**
+   * Test that a field required by several accumulators is only projected
+   * once.
+   */
+  @Test
+  public void testUnionProjectionSharedField() {
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(new CountryAccumulator());
+    accumulators.add(new CountryAccumulator());
+
+    Document projection = AttackScanner.unionProjection(accumulators);
+
+    assertEquals(2, projection.size());
+  }
+}
@@ -0,0 +1,190 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.AttackSnapshot;
+import us.daveread.education.mongo.honeypot.AttackSnapshotWriter;
+import us.daveread.education.mongo.honeypot.CountryAccumulator;
+import us.daveread.education.mongo.honeypot.ServerChannelAccumulator;
+
+/**
+ * Unit tests for the AttackSnapshot and AttackSnapshotWriter classes.
+ * @author readda
+ */
+public class TestAttackSnapshot {
+  /**
+   * The folder holding the snapshot files
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The test snapshot file
+   */
+  private Path file;
+
+  /**
+   * Setup the test snapshot with four attacks, one of which has no country
+   * code and no IP mask values.
+   * @throws IOException
+   *           If the snapshot cannot be written
+   */
+  @Before
+  public void setup() throws IOException {
+    file = folder.getRoot().toPath().resolve("attacks.snapshot");
+    AttackSnapshotWriter writer = new AttackSnapshotWriter(file, 5);
+    writer.visit(new AttackRecord("AA", "ssh", 10, 100));
+    writer.visit(new AttackRecord("BB", "http", 20, -1));
+    writer.visit(new AttackRecord("AA", "ssh", 10, 300));
+    AttackRecord partial = new AttackRecord();
+    partial.setChannel("http");
+    writer.visit(partial);
+    writer.close();
+  }
+
+  /**
+   * Tests the header values.
+   * @throws IOException
+   *           If the snapshot cannot be read
+   */
+  @Test
+  public void testHeader() throws IOException {
+    AttackSnapshot snapshot = new AttackSnapshot(file);
+    assertEquals(5, snapshot.getCollectionCount());
+    assertEquals(4, snapshot.getRowCount());
+  }
+
+  /**
+   * Tests that the temporary column files are removed.
+   * @throws IOException
+   *           If the folder cannot be listed
+   */
+  @Test
+  public void testTemporaryFilesRemoved() throws IOException {
+    assertEquals(Arrays.asList("attacks.snapshot"),
+      Arrays.asList(folder.getRoot().list()));
+    assertTrue(Files.size(file) > 4 * (2 + 2 + 1 + 4 + 4));
+  }
+
+  /**
+   * Tests that every field is read back as written.
+   * @throws IOException
+   *           If the snapshot cannot be read
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    final List<AttackRecord> attacks = new ArrayList<>();
+    AttackAccumulator copier = new AttackAccumulator() {
+      @Override
+      public List<String> getProjectedFields() {
+        return new ArrayList<>();
+      }
+
+      @Override
+      public void accumulate(AttackRecord attack) {
+        AttackRecord copy = new AttackRecord();
+        copy.setClientCountryCode(attack.getClientCountryCode());
+        copy.setChannel(attack.getChannel());
+        if (attack.isServerIpMaskPresent()) {
+          copy.setServerIpMask(attack.getServerIpMask());
+        }
+        if (attack.isClientIpMaskPresent()) {
+          copy.setClientIpMask(attack.getClientIpMask());
+        }
+        attacks.add(copy);
+      }
+
+      @Override
+      public AttackAccumulator newInstance() {
+        return this;
+      }
+
+      @Override
+      public void merge(AttackAccumulator other) {
+      }
+    };
+
+    assertEquals(4, new AttackSnapshot(file).scan(Arrays.asList(copier)));
+    assertEquals(4, attacks.size());
+
+    assertEquals("AA", attacks.get(0).getClientCountryCode());
+    assertEquals("ssh", attacks.get(0).getChannel());
+    assertEquals(10, attacks.get(0).getServerIpMask());
+    assertEquals(100, attacks.get(0).getClientIpMask());
+
+    assertEquals("BB", attacks.get(1).getClientCountryCode());
+    assertEquals(-1, attacks.get(1).getClientIpMask());
+
+    assertNull(attacks.get(3).getClientCountryCode());
+    assertEquals("http", attacks.get(3).getChannel());
+    assertFalse(attacks.get(3).isServerIpMaskPresent());
+    assertFalse(attacks.get(3).isClientIpMaskPresent());
+  }
+
+  /**
+   * Tests running the coded report accumulators from the snapshot.
+   * @throws IOException
+   *           If the snapshot cannot be read
+   */
+  @Test
+  public void testAccumulators() throws IOException {
+    CountryAccumulator countries = new CountryAccumulator();
+    ServerChannelAccumulator serverChannels = new ServerChannelAccumulator();
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(countries);
+    accumulators.add(serverChannels);
+
+    new AttackSnapshot(file).scan(accumulators);
+
+    assertEquals(3, countries.getDistinctCountryCount());
+    assertEquals(3, serverChannels.getServerChannelCounts().size());
+  }
+
+  /**
+   * Tests that abandoning a snapshot deletes its temporary files and leaves
+   * the existing snapshot unchanged.
+   * @throws IOException
+   *           If the snapshot cannot be read or written
+   */
+  @Test
+  public void testAbort() throws IOException {
+    AttackSnapshotWriter writer = new AttackSnapshotWriter(file, 9);
+    writer.visit(new AttackRecord("CC", "ssh", 30, 400));
+    assertTrue(folder.getRoot().list().length > 1);
+
+    writer.abort();
+
+    assertEquals(Arrays.asList("attacks.snapshot"),
+      Arrays.asList(folder.getRoot().list()));
+    assertEquals(5, new AttackSnapshot(file).getCollectionCount());
+  }
+
+  /**
+   * Tests that a file which is not a snapshot is rejected.
+   * @throws IOException
+   *           If the file cannot be written
+   */
+  @Test(expected = IOException.class)
+  public void testNotSnapshot() throws IOException {
+    Path other = folder.newFile("other").toPath();
+    Files.write(other, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    new AttackSnapshot(other);
+  }
+}
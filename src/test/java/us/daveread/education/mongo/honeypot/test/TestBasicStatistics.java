@@ -1,10 +1,22 @@
 package us.daveread.education.mongo.honeypot.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
 
 import org.junit.Test;
 
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.AttackSource;
 import us.daveread.education.mongo.honeypot.BasicStatistics;
+import us.daveread.education.mongo.honeypot.HyperLogLogAccumulator;
+import us.daveread.education.mongo.honeypot.ReportPrinter;
 
 /**
  * Unit tests for the BasicStatistics class. At this point it simply run the
@@ -20,4 +32,87 @@ public class TestBasicStatistics {
     BasicStatistics.main(new String[0]);
     assertTrue("Incorrect main method result", true);
   }
+
+  /**
+   * Tests that creating the instance sends no request to the server, the
+   * connection problem being reported when the attacks are first counted.
+   * No server is expected on port 1.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testLazyTotals() {
+    BasicStatistics attackStats =
+      new BasicStatistics("localhost", 1, "infuzitDemo", "honeypotData");
+    attackStats.getTotalAttacks();
+  }
+
+  /**
+   * Tests that the counts of a failed scan are discarded, so that the next
+   * coded report scans again rather than reporting partial counts. No server
+   * is expected on port 1.
+   * @throws UnsupportedEncodingException
+   *           If UTF-8 is not supported
+   */
+  @Test
+  public void testFailedScan() throws UnsupportedEncodingException {
+    final boolean[] fail = {true };
+    BasicStatistics attackStats =
+      new BasicStatistics("localhost", 1, "infuzitDemo", "honeypotData");
+    attackStats.setAttackSource(new AttackSource() {
+      @Override
+      public long scan(List<AttackAccumulator> accumulators) {
+        AttackRecord attack = new AttackRecord("AA", "ssh", 10, 100);
+        for (int count = 0; count < 2; ++count) {
+          for (AttackAccumulator accumulator : accumulators) {
+            accumulator.accumulate(attack);
+          }
+          if (fail[0]) {
+            throw new IllegalStateException("Scan interrupted");
+          }
+        }
+        return 2;
+      }
+    });
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    attackStats.setReportPrinter(
+      new ReportPrinter(new PrintStream(bytes, true, "UTF-8"), 2));
+
+    try {
+      attackStats.countryBreakdownCoded();
+      fail("The failed scan was not reported");
+    } catch (IllegalStateException illegalStateException) {
+      assertEquals("Scan interrupted", illegalStateException.getMessage());
+    }
+    fail[0] = false;
+    attackStats.countryBreakdownCoded();
+
+    assertEquals(1, attackStats.getTotalAttackingCountries());
+    assertTrue(bytes.toString("UTF-8").contains("  AA: 2 (100%)"));
+  }
+
+  /**
+   * Tests that running totals reject a sketch precision other than the
+   * default, which the stored sketches use. No server is expected on port 1.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testIncrementalApproximatePrecision() {
+    BasicStatistics attackStats =
+      new BasicStatistics("localhost", 1, "infuzitDemo", "honeypotData");
+    attackStats.useIncrementalStatistics();
+    attackStats.setApproximatePrecision(
+      HyperLogLogAccumulator.DEFAULT_PRECISION);
+    attackStats.setApproximatePrecision(12);
+  }
+
+  /**
+   * Tests that running totals cannot be used once the distinct counts are
+   * estimated with a precision other than the default. No server is expected
+   * on port 1.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testApproximatePrecisionIncremental() {
+    BasicStatistics attackStats =
+      new BasicStatistics("localhost", 1, "infuzitDemo", "honeypotData");
+    attackStats.setApproximatePrecision(12);
+    attackStats.useIncrementalStatistics();
+  }
 }
@@ -0,0 +1,196 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.BsonDumpSource;
+import us.daveread.education.mongo.honeypot.CountryAccumulator;
+import us.daveread.education.mongo.honeypot.CountryCount;
+import us.daveread.education.mongo.honeypot.ServerChannelAccumulator;
+
+/**
+ * Unit tests for the BsonDumpSource class.
+ * @author readda
+ */
+public class TestBsonDumpSource {
+  /**
+   * The number of attacks in the test dump
+   */
+  private static final int ATTACK_COUNT = 500;
+
+  /**
+   * The folder holding the dump files
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The test dump file
+   */
+  private Path file;
+
+  /**
+   * Setup the test dump with attacks of varying sizes, written as mongodump
+   * writes them.
+   * @throws IOException
+   *           If the dump cannot be written
+   */
+  @Before
+  public void setup() throws IOException {
+    List<Document> attacks = new ArrayList<>();
+    for (int index = 0; index < ATTACK_COUNT; ++index) {
+      attacks.add(attack(index, index % 7));
+    }
+    file = writeDump("honeypotData.bson", attacks);
+  }
+
+  /**
+   * Create an attack document with the fields the reports do not use.
+   * @param index
+   *          The attack number, used for the country and masks
+   * @param padding
+   *          The number of characters of unused data, varying the size
+   * @return The attack document
+   */
+  private static Document attack(int index, int padding) {
+    char[] data = new char[padding * 50];
+    Arrays.fill(data, 'x');
+    return new Document("_id", new ObjectId())
+      .append("ident", "sensor-" + index)
+      .append("client_country_code", "C" + index % 5)
+      .append("channel", index % 2 == 0 ? "ssh" : "http")
+      .append("payload", new Document("data", new String(data))
+        .append("server_ip_mask", index % 3)
+        .append("client_ip_mask", (long) index));
+  }
+
+  /**
+   * Write documents to a dump file.
+   * @param name
+   *          The file name
+   * @param attacks
+   *          The documents
+   * @return The dump file
+   * @throws IOException
+   *           If the dump cannot be written
+   */
+  private Path writeDump(String name, List<Document> attacks)
+    throws IOException {
+    BasicOutputBuffer buffer = new BasicOutputBuffer();
+    for (Document attack : attacks) {
+      new DocumentCodec().encode(new BsonBinaryWriter(buffer), attack,
+        EncoderContext.builder().build());
+    }
+    Path dump = folder.getRoot().toPath().resolve(name);
+    Files.write(dump, buffer.toByteArray());
+    return dump;
+  }
+
+  /**
+   * Scan a dump and get the country counts.
+   * @param source
+   *          The dump source
+   * @return The attack count for each country, with the total under null
+   */
+  private static Map<String, Integer> countries(BsonDumpSource source) {
+    CountryAccumulator countries = new CountryAccumulator();
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(countries);
+    accumulators.add(new ServerChannelAccumulator());
+    long documentCount = source.scan(accumulators);
+
+    Map<String, Integer> counts = new HashMap<>();
+    for (CountryCount country : countries.getCountryCounts()) {
+      counts.put(country.getCountryCode(), country.getAttackCount());
+    }
+    counts.put(null, (int) documentCount);
+    return counts;
+  }
+
+  /**
+   * Tests reading the dump on the calling thread.
+   */
+  @Test
+  public void testSingleThread() {
+    Map<String, Integer> counts = countries(new BsonDumpSource(file));
+    assertEquals(ATTACK_COUNT, (int) counts.get(null));
+    assertEquals(6, counts.size());
+    assertEquals(ATTACK_COUNT / 5, (int) counts.get("C0"));
+  }
+
+  /**
+   * Tests that splitting the dump into many small chunks decoded in parallel
+   * gives the same counts.
+   */
+  @Test
+  public void testParallelChunks() {
+    assertEquals(countries(new BsonDumpSource(file)),
+      countries(new BsonDumpSource(file, 4, 1000)));
+  }
+
+  /**
+   * Tests that a document larger than the chunk size is read.
+   * @throws IOException
+   *           If the dump cannot be written
+   */
+  @Test
+  public void testLargeDocument() throws IOException {
+    Path dump = writeDump("large.bson",
+      Arrays.asList(attack(0, 0), attack(1, 100), attack(2, 0)));
+    Map<String, Integer> counts = countries(new BsonDumpSource(dump, 2, 64));
+    assertEquals(3, (int) counts.get(null));
+    assertEquals(1, (int) counts.get("C1"));
+  }
+
+  /**
+   * Tests an empty dump.
+   * @throws IOException
+   *           If the dump cannot be written
+   */
+  @Test
+  public void testEmptyDump() throws IOException {
+    Path dump = writeDump("empty.bson", Collections.<Document> emptyList());
+    assertEquals(0, (int) countries(new BsonDumpSource(dump, 2)).get(null));
+  }
+
+  /**
+   * Tests that a truncated dump is reported.
+   * @throws IOException
+   *           If the dump cannot be written
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testTruncatedDump() throws IOException {
+    byte[] contents = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(contents, contents.length - 10));
+    countries(new BsonDumpSource(file, 2, 1000));
+  }
+
+  /**
+   * Tests that invalid settings are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidThreads() {
+    new BsonDumpSource(file, 0);
+  }
+}
@@ -0,0 +1,50 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ChannelDictionary;
+
+/**
+ * Unit tests for the ChannelDictionary class.
+ * @author readda
+ */
+public class TestChannelDictionary {
+  /**
+   * The test instance
+   */
+  private ChannelDictionary channels;
+
+  /**
+   * Setup the test instance.
+   */
+  @Before
+  public void setup() {
+    channels = new ChannelDictionary();
+  }
+
+  /**
+   * Tests that ids are assigned sequentially and reused for known channels.
+   */
+  @Test
+  public void testIntern() {
+    assertEquals(0, channels.intern("AA"));
+    assertEquals(1, channels.intern("BB"));
+    assertEquals(0, channels.intern("AA"));
+    assertEquals(2, channels.size());
+  }
+
+  /**
+   * Tests looking up a channel by id.
+   */
+  @Test
+  public void testGetChannel() {
+    channels.intern("AA");
+    channels.intern("BB");
+
+    assertEquals("AA", channels.getChannel(0));
+    assertEquals("BB", channels.getChannel(1));
+  }
+}
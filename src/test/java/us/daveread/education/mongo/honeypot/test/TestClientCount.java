@@ -0,0 +1,82 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ClientCount;
+
+/**
+ * Unit tests for the ClientCount class.
+ * @author readda
+ */
+public class TestClientCount {
+  /**
+   * The test instance
+   */
+  private ClientCount cc;
+
+  /**
+   * Setup the test instance.
+   */
+  @Before
+  public void setup() {
+    cc = new ClientCount(42, "AA", 123);
+  }
+
+  /**
+   * Tests the client IP mask getter.
+   */
+  @Test
+  public void testClientIpMask() {
+    assertEquals(42, cc.getClientIpMask());
+  }
+
+  /**
+   * Tests the country code getter.
+   */
+  @Test
+  public void testCountryCode() {
+    assertEquals("AA", cc.getCountryCode());
+  }
+
+  /**
+   * Tests the attack count getter.
+   */
+  @Test
+  public void testAttackCount() {
+    assertEquals(123, cc.getAttackCount());
+  }
+
+  /**
+   * Test the comparison operation with different values
+   */
+  @Test
+  public void testCompareToDifferent() {
+    ClientCount cc2 = new ClientCount(1, "ZZ", 100);
+
+    assertTrue("Incorrect comparison result", cc.compareTo(cc2) > 0);
+  }
+
+  /**
+   * Test the comparison operation with equivalent values
+   */
+  @Test
+  public void testCompareToSame() {
+    ClientCount cc2 = new ClientCount(1, "ZZ", 123);
+
+    assertEquals(0, cc.compareTo(cc2));
+  }
+
+  /**
+   * Force the Comparable bridge method to be executed so that code coverage is
+   * complete. See: https://sourceforge.net/p/cobertura/bugs/92/
+   */
+  @Test
+  public void testForceBridgeMethodCall() {
+    Comparable<ClientCount> cc2 = cc;
+    assertEquals(0, cc2.compareTo(cc));
+  }
+}
@@ -0,0 +1,28 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ClientCountEstimate;
+
+/**
+ * Unit tests for the ClientCountEstimate class.
+ * @author readda
+ */
+public class TestClientCountEstimate {
+  /**
+   * Tests the getters and the maximum error setter.
+   */
+  @Test
+  public void testMaximumError() {
+    ClientCountEstimate estimate = new ClientCountEstimate(42, "AA", 123, 4);
+
+    assertEquals(42, estimate.getClientIpMask());
+    assertEquals("AA", estimate.getCountryCode());
+    assertEquals(123, estimate.getAttackCount());
+    assertEquals(4, estimate.getMaximumError());
+    estimate.setMaximumError(0);
+    assertEquals(0, estimate.getMaximumError());
+  }
+}
@@ -0,0 +1,91 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.ClientCount;
+import us.daveread.education.mongo.honeypot.ClientIpAccumulator;
+
+/**
+ * Unit tests for the ClientIpAccumulator class.
+ * @author readda
+ */
+public class TestClientIpAccumulator {
+  /**
+   * The test instance
+   */
+  private ClientIpAccumulator accumulator;
+
+  /**
+   * Create an attack.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @return The attack
+   */
+  private AttackRecord attack(int clientIpMask, String countryCode) {
+    return new AttackRecord(countryCode, "ssh", 1, clientIpMask);
+  }
+
+  /**
+   * Setup the test instance with attacks from three clients.
+   */
+  @Before
+  public void setup() {
+    accumulator = new ClientIpAccumulator();
+    accumulator.accumulate(attack(5, "AA"));
+    accumulator.accumulate(attack(7, "BB"));
+    accumulator.accumulate(attack(5, "AA"));
+    accumulator.accumulate(attack(-3, "AA"));
+    accumulator.accumulate(attack(5, "AA"));
+    accumulator.accumulate(attack(7, "BB"));
+  }
+
+  /**
+   * Tests the distinct client count.
+   */
+  @Test
+  public void testDistinctClientCount() {
+    assertEquals(3, accumulator.getDistinctClientCount());
+    assertEquals(3, accumulator.getClientCounts().size());
+  }
+
+  /**
+   * Tests the top clients.
+   */
+  @Test
+  public void testTopClients() {
+    List<ClientCount> top = accumulator.getTopClients(2);
+
+    assertEquals(2, top.size());
+    assertEquals(5, top.get(0).getClientIpMask());
+    assertEquals("AA", top.get(0).getCountryCode());
+    assertEquals(3, top.get(0).getAttackCount());
+    assertEquals(7, top.get(1).getClientIpMask());
+    assertEquals("BB", top.get(1).getCountryCode());
+    assertEquals(2, top.get(1).getAttackCount());
+  }
+
+  /**
+   * Tests adding counts directly and merging another accumulator.
+   */
+  @Test
+  public void testAddAndMerge() {
+    ClientIpAccumulator other =
+      (ClientIpAccumulator) accumulator.newInstance();
+    other.add(-3, "AA", 10);
+    other.add(9, "CC", 1);
+    accumulator.merge(other);
+
+    List<ClientCount> top = accumulator.getTopClients(1);
+    assertEquals(-3, top.get(0).getClientIpMask());
+    assertEquals(11, top.get(0).getAttackCount());
+    assertEquals(4, accumulator.getDistinctClientCount());
+  }
+}
@@ -0,0 +1,91 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.CountMinSketch;
+
+/**
+ * Unit tests for the CountMinSketch class.
+ * @author readda
+ */
+public class TestCountMinSketch {
+  /**
+   * Tests that a sparse sketch counts exactly.
+   */
+  @Test
+  public void testExactWhenSparse() {
+    CountMinSketch sketch = new CountMinSketch(1024, 4);
+    sketch.add(1L, 5);
+    sketch.add(2L, 3);
+    sketch.add(1L, 1);
+
+    assertEquals(6, sketch.estimate(1L));
+    assertEquals(3, sketch.estimate(2L));
+    assertEquals(0, sketch.estimate(3L));
+    assertEquals(9, sketch.getTotalCount());
+  }
+
+  /**
+   * Tests that estimates are never too small and are within the error bound.
+   */
+  @Test
+  public void testErrorBound() {
+    CountMinSketch sketch = new CountMinSketch(256, 5);
+    for (long key = 0; key < 10000; ++key) {
+      sketch.add(key, key % 10 + 1);
+    }
+
+    long errorBound = sketch.getErrorBound();
+    int outsideBound = 0;
+    for (long key = 0; key < 10000; ++key) {
+      long estimate = sketch.estimate(key);
+      assertTrue(estimate >= key % 10 + 1);
+      if (estimate > key % 10 + 1 + errorBound) {
+        ++outsideBound;
+      }
+    }
+    assertTrue(outsideBound <= 10000 * (1 - sketch.getConfidence()));
+  }
+
+  /**
+   * Tests that merged sketches give the estimates of the combined stream.
+   */
+  @Test
+  public void testMerge() {
+    CountMinSketch whole = new CountMinSketch(64, 3);
+    CountMinSketch first = new CountMinSketch(64, 3);
+    CountMinSketch second = new CountMinSketch(64, 3);
+    for (long key = 0; key < 1000; ++key) {
+      whole.add(key, 1);
+      (key % 2 == 0 ? first : second).add(key, 1);
+    }
+    first.merge(second);
+
+    assertEquals(whole.getTotalCount(), first.getTotalCount());
+    for (long key = 0; key < 1000; ++key) {
+      assertEquals(whole.estimate(key), first.estimate(key));
+    }
+  }
+
+  /**
+   * Tests that sketches with different sizes cannot be merged.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeSizeMismatch() {
+    new CountMinSketch(64, 3).merge(new CountMinSketch(64, 4));
+  }
+
+  /**
+   * Tests sizing a sketch from its error bound.
+   */
+  @Test
+  public void testForError() {
+    CountMinSketch sketch = CountMinSketch.forError(0.001, 0.01);
+
+    assertEquals(2719, sketch.getWidth());
+    assertEquals(5, sketch.getDepth());
+  }
+}
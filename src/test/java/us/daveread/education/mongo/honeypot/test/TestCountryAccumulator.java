@@ -0,0 +1,91 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.CountryAccumulator;
+import us.daveread.education.mongo.honeypot.CountryCount;
+
+/**
+ * Unit tests for the CountryAccumulator class.
+ * @author readda
+ */
+public class TestCountryAccumulator {
+  /**
+   * The test instance
+   */
+  private CountryAccumulator accumulator;
+
+  /**
+   * Setup the test instance with three attacks from two countries.
+   */
+  @Before
+  public void setup() {
+    accumulator = new CountryAccumulator();
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 0));
+    accumulator.accumulate(new AttackRecord("BB", "ch", 0, 0));
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 0));
+  }
+
+  /**
+   * Tests the projected fields.
+   */
+  @Test
+  public void testProjectedFields() {
+    assertEquals(1, accumulator.getProjectedFields().size());
+    assertEquals("client_country_code",
+      accumulator.getProjectedFields().get(0));
+  }
+
+  /**
+   * Tests the distinct country count.
+   */
+  @Test
+  public void testDistinctCountryCount() {
+    assertEquals(2, accumulator.getDistinctCountryCount());
+  }
+
+  /**
+   * Tests the attack counts by country.
+   */
+  @Test
+  public void testCountryCounts() {
+    List<CountryCount> counts = accumulator.getCountryCounts();
+
+    assertEquals(2, counts.size());
+    for (CountryCount count : counts) {
+      if ("AA".equals(count.getCountryCode())) {
+        assertEquals(2, count.getAttackCount());
+      } else {
+        assertEquals("BB", count.getCountryCode());
+        assertEquals(1, count.getAttackCount());
+      }
+    }
+  }
+
+  /**
+   * Tests merging the counts from another accumulator.
+   */
+  @Test
+  public void testMerge() {
+    AttackAccumulator other = accumulator.newInstance();
+    other.accumulate(new AttackRecord("BB", "ch", 0, 0));
+    other.accumulate(new AttackRecord("CC", "ch", 0, 0));
+    accumulator.merge(other);
+
+    assertEquals(3, accumulator.getDistinctCountryCount());
+    for (CountryCount count : accumulator.getCountryCounts()) {
+      if ("CC".equals(count.getCountryCode())) {
+        assertEquals(1, count.getAttackCount());
+      } else {
+        assertEquals(2, count.getAttackCount());
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.CountryCodeCounter;
+import us.daveread.education.mongo.honeypot.CountryCount;
+
+/**
+ * Unit tests for the CountryCodeCounter class.
+ * @author readda
+ */
+public class TestCountryCodeCounter {
+  /**
+   * The test instance
+   */
+  private CountryCodeCounter counter;
+
+  /**
+   * Setup the test instance with two letter and irregular codes.
+   */
+  @Before
+  public void setup() {
+    counter = new CountryCodeCounter();
+    counter.increment("US");
+    counter.increment("AA");
+    counter.increment("US");
+    counter.add("ZZ", 5);
+    counter.increment("--");
+    counter.increment(null);
+    counter.increment("us");
+  }
+
+  /**
+   * Tests the counts for each code.
+   */
+  @Test
+  public void testGet() {
+    assertEquals(2, counter.get("US"));
+    assertEquals(1, counter.get("AA"));
+    assertEquals(5, counter.get("ZZ"));
+    assertEquals(1, counter.get("--"));
+    assertEquals(1, counter.get(null));
+    assertEquals(1, counter.get("us"));
+    assertEquals(0, counter.get("CN"));
+  }
+
+  /**
+   * Tests the distinct code count.
+   */
+  @Test
+  public void testDistinctCount() {
+    assertEquals(6, counter.getDistinctCount());
+  }
+
+  /**
+   * Tests the conversion to CountryCount instances. Two letter codes are
+   * listed alphabetically before the other codes.
+   */
+  @Test
+  public void testToCountryCounts() {
+    List<CountryCount> counts = counter.toCountryCounts();
+
+    assertEquals(6, counts.size());
+    assertEquals("AA", counts.get(0).getCountryCode());
+    assertEquals(1, counts.get(0).getAttackCount());
+    assertEquals("US", counts.get(1).getCountryCode());
+    assertEquals(2, counts.get(1).getAttackCount());
+    assertEquals("ZZ", counts.get(2).getCountryCode());
+    assertEquals(5, counts.get(2).getAttackCount());
+  }
+
+  /**
+   * Tests merging the counts from another counter.
+   */
+  @Test
+  public void testMerge() {
+    CountryCodeCounter other = new CountryCodeCounter();
+    other.increment("US");
+    other.increment("CN");
+    other.increment("--");
+    other.increment("X1");
+    counter.merge(other);
+
+    assertEquals(3, counter.get("US"));
+    assertEquals(1, counter.get("CN"));
+    assertEquals(2, counter.get("--"));
+    assertEquals(1, counter.get("X1"));
+    assertEquals(8, counter.getDistinctCount());
+  }
+
+  /**
+   * Tests that adding zero does not make a country code distinct.
+   */
+  @Test
+  public void testAddZero() {
+    int distinctCount = counter.getDistinctCount();
+    counter.add("FR", 0);
+    counter.add("X2", 0);
+
+    assertEquals(0, counter.get("FR"));
+    assertEquals(0, counter.get("X2"));
+    assertEquals(distinctCount, counter.getDistinctCount());
+  }
+}
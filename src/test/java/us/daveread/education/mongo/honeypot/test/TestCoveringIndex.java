@@ -0,0 +1,87 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.AttackScanner;
+import us.daveread.education.mongo.honeypot.CountryAccumulator;
+import us.daveread.education.mongo.honeypot.CoveringIndex;
+import us.daveread.education.mongo.honeypot.ServerChannelAccumulator;
+
+/**
+ * Unit tests for the CoveringIndex class.
+ * @author readda
+ */
+public class TestCoveringIndex {
+  /**
+   * Tests the keys for the coded country and server/channel reports.
+   */
+  @Test
+  public void testIndexKeys() {
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(new CountryAccumulator());
+    accumulators.add(new ServerChannelAccumulator());
+
+    Document keys = CoveringIndex.indexKeys(accumulators);
+
+    assertEquals(new ArrayList<>(keys.keySet()),
+      new ArrayList<>(AttackScanner.unionProjection(accumulators).keySet())
+        .subList(1, keys.size() + 1));
+    assertEquals(1, keys.get("client_country_code"));
+    assertEquals(1, keys.get("payload.server_ip_mask"));
+    assertEquals(1, keys.get("channel"));
+  }
+
+  /**
+   * Tests the keys for a single accumulator.
+   */
+  @Test
+  public void testSingleAccumulator() {
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(new CountryAccumulator());
+
+    assertEquals(new Document("client_country_code", 1),
+      CoveringIndex.indexKeys(accumulators));
+  }
+
+  /**
+   * Tests that a field projected by two accumulators appears once.
+   */
+  @Test
+  public void testSharedField() {
+    List<AttackAccumulator> accumulators = new ArrayList<>();
+    accumulators.add(new CountryAccumulator());
+    accumulators.add(new CountryAccumulator());
+
+    assertEquals(1, CoveringIndex.indexKeys(accumulators).size());
+  }
+
+  /**
+   * Tests finding a FETCH stage in a covered and an uncovered plan.
+   */
+  @Test
+  public void testHasStage() {
+    Document indexScan = new Document("stage", "IXSCAN");
+    Document covered =
+      new Document("stage", "PROJECTION").append("inputStage", indexScan);
+    Document uncovered = new Document("stage", "PROJECTION").append(
+      "inputStage", new Document("stage", "FETCH")
+        .append("inputStage", indexScan));
+    Document merged = new Document("stage", "SORT_MERGE").append(
+      "inputStages", Arrays.asList(indexScan, uncovered));
+
+    assertFalse(CoveringIndex.hasStage(covered, "FETCH"));
+    assertTrue(CoveringIndex.hasStage(uncovered, "FETCH"));
+    assertTrue(CoveringIndex.hasStage(merged, "FETCH"));
+    assertFalse(CoveringIndex.hasStage(null, "FETCH"));
+  }
+}
@@ -0,0 +1,76 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.DistinctValueAccumulator;
+
+/**
+ * Unit tests for the DistinctValueAccumulator class.
+ * @author readda
+ */
+public class TestDistinctValueAccumulator {
+  /**
+   * Tests counting the distinct values of a top level field.
+   */
+  @Test
+  public void testTopLevelField() {
+    DistinctValueAccumulator accumulator =
+      new DistinctValueAccumulator("client_country_code");
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 0));
+    accumulator.accumulate(new AttackRecord("BB", "ch", 0, 0));
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 0));
+
+    assertEquals(2, accumulator.getDistinctCount());
+  }
+
+  /**
+   * Tests counting the distinct values of a nested field.
+   */
+  @Test
+  public void testNestedField() {
+    DistinctValueAccumulator accumulator =
+      new DistinctValueAccumulator("payload.client_ip_mask");
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 1));
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 2));
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 2));
+
+    assertEquals("payload.client_ip_mask",
+      accumulator.getProjectedFields().get(0));
+    assertEquals(2, accumulator.getDistinctCount());
+  }
+
+  /**
+   * Tests that missing and null values are not counted.
+   */
+  @Test
+  public void testMissingValues() {
+    DistinctValueAccumulator accumulator =
+      new DistinctValueAccumulator("payload.client_ip_mask");
+    accumulator.accumulate(new AttackRecord());
+    AttackRecord attack = new AttackRecord("AA", "ch", 0, 1);
+    attack.clear();
+    accumulator.accumulate(attack);
+
+    assertEquals(0, accumulator.getDistinctCount());
+  }
+
+  /**
+   * Tests merging the values from another accumulator.
+   */
+  @Test
+  public void testMerge() {
+    DistinctValueAccumulator accumulator =
+      new DistinctValueAccumulator("client_country_code");
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 0));
+    DistinctValueAccumulator other =
+      (DistinctValueAccumulator) accumulator.newInstance();
+    other.accumulate(new AttackRecord("AA", "ch", 0, 0));
+    other.accumulate(new AttackRecord("BB", "ch", 0, 0));
+    accumulator.merge(other);
+
+    assertEquals(2, accumulator.getDistinctCount());
+  }
+}
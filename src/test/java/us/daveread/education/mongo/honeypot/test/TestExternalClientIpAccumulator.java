@@ -0,0 +1,108 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.ClientCount;
+import us.daveread.education.mongo.honeypot.ExternalClientIpAccumulator;
+import us.daveread.education.mongo.honeypot.ExternalGroupBy;
+
+/**
+ * Unit tests for the ExternalClientIpAccumulator class.
+ * @author readda
+ */
+public class TestExternalClientIpAccumulator {
+  /**
+   * The folder receiving the spill files
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The test instance
+   */
+  private ExternalClientIpAccumulator accumulator;
+
+  /**
+   * Create an attack.
+   * @param clientIpMask
+   *          The client IP mask value
+   * @param countryCode
+   *          The client's country code
+   * @return The attack
+   */
+  private AttackRecord attack(int clientIpMask, String countryCode) {
+    return new AttackRecord(countryCode, "ssh", 1, clientIpMask);
+  }
+
+  /**
+   * Setup the test instance with the smallest memory budget and attacks from
+   * forty clients, client N attacking N times.
+   */
+  @Before
+  public void setup() {
+    accumulator = new ExternalClientIpAccumulator(
+      new ExternalGroupBy(0, 2, folder.getRoot().toPath()));
+    for (int round = 1; round <= 40; ++round) {
+      for (int client = round; client <= 40; ++client) {
+        accumulator.accumulate(attack(-client, client % 2 == 0 ? "AA" : "BB"));
+      }
+    }
+  }
+
+  /**
+   * Tests the distinct client count.
+   */
+  @Test
+  public void testDistinctClientCount() {
+    assertTrue(accumulator.getSpillCount() > 0);
+    assertEquals(40, accumulator.getDistinctClientCount());
+  }
+
+  /**
+   * Tests the top clients.
+   */
+  @Test
+  public void testTopClients() {
+    List<ClientCount> top = accumulator.getTopClients(2);
+
+    assertEquals(2, top.size());
+    assertEquals(-40, top.get(0).getClientIpMask());
+    assertEquals("AA", top.get(0).getCountryCode());
+    assertEquals(40, top.get(0).getAttackCount());
+    assertEquals(-39, top.get(1).getClientIpMask());
+    assertEquals("BB", top.get(1).getCountryCode());
+    assertEquals(39, top.get(1).getAttackCount());
+  }
+
+  /**
+   * Tests merging another accumulator, which assigned its own country ids
+   * and is closed by the merge.
+   */
+  @Test
+  public void testMerge() {
+    ExternalClientIpAccumulator other =
+      (ExternalClientIpAccumulator) accumulator.newInstance();
+    other.accumulate(attack(-1, "CC"));
+    for (int attack = 0; attack < 100; ++attack) {
+      other.accumulate(attack(-1, "BB"));
+    }
+
+    accumulator.merge(other);
+
+    List<ClientCount> top = accumulator.getTopClients(1);
+    assertEquals(-1, top.get(0).getClientIpMask());
+    assertEquals("BB", top.get(0).getCountryCode());
+    assertEquals(101, top.get(0).getAttackCount());
+    assertEquals(41, accumulator.getDistinctClientCount());
+    assertEquals(0, other.getSpillCount());
+  }
+}
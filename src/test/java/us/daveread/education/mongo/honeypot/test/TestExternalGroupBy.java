@@ -0,0 +1,172 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import us.daveread.education.mongo.honeypot.ExternalGroupBy;
+
+/**
+ * Unit tests for the ExternalGroupBy class.
+ * @author readda
+ */
+public class TestExternalGroupBy {
+  /**
+   * The folder receiving the spill files
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Read every group from a group-by.
+   * @param groupBy
+   *          The group-by
+   * @return The counts by key
+   */
+  private Map<Long, Long> groups(ExternalGroupBy groupBy) {
+    final Map<Long, Long> groups = new HashMap<>();
+    groupBy.forEachGroup(new ExternalGroupBy.GroupVisitor() {
+      @Override
+      public void visit(long key, long count) {
+        assertEquals(null, groups.put(key, count));
+      }
+    });
+    return groups;
+  }
+
+  /**
+   * Tests counting keys which fit in memory.
+   */
+  @Test
+  public void testWithoutSpilling() {
+    ExternalGroupBy groupBy =
+      new ExternalGroupBy(1 << 20, 4, folder.getRoot().toPath());
+    groupBy.increment(5);
+    groupBy.increment(-5);
+    groupBy.add(5, 3);
+
+    Map<Long, Long> groups = groups(groupBy);
+    assertEquals(0, groupBy.getSpillCount());
+    assertEquals(2, groups.size());
+    assertEquals(Long.valueOf(4), groups.get(5L));
+    assertEquals(Long.valueOf(1), groups.get(-5L));
+  }
+
+  /**
+   * Tests that counts spilled several times are merged into the same totals
+   * as a map holding every key.
+   */
+  @Test
+  public void testSpilling() {
+    ExternalGroupBy groupBy =
+      new ExternalGroupBy(0, 3, folder.getRoot().toPath());
+    Map<Long, Long> expected = new HashMap<>();
+    Random random = new Random(42);
+    for (int attack = 0; attack < 5000; ++attack) {
+      long key = random.nextInt(400) - 200L << 32 | random.nextInt(3);
+      groupBy.increment(key);
+      Long count = expected.get(key);
+      expected.put(key, count == null ? 1 : count + 1);
+    }
+
+    assertEquals(8, groupBy.getMaximumEntries());
+    assertTrue(groupBy.getSpillCount() > 10);
+    assertEquals(expected, groups(groupBy));
+    assertEquals(expected, groups(groupBy));
+  }
+
+  /**
+   * Tests that more spill files than are merged at once are first merged
+   * into fewer files, leaving the totals unchanged and the spill files
+   * readable again.
+   */
+  @Test
+  public void testMultiPassMerge() {
+    File directory = folder.getRoot();
+    ExternalGroupBy groupBy = new ExternalGroupBy(0, 2, directory.toPath());
+    Map<Long, Long> expected = new HashMap<>();
+    Random random = new Random(7);
+    for (int attack = 0; attack < 2000; ++attack) {
+      long key = random.nextInt(1000);
+      groupBy.increment(key);
+      Long count = expected.get(key);
+      expected.put(key, count == null ? 1 : count + 1);
+    }
+    int spillCount = groupBy.getSpillCount();
+    assertTrue(spillCount > 100);
+    assertEquals(spillCount, directory.list().length);
+
+    assertEquals(expected, groups(groupBy));
+    assertTrue(directory.list().length < 16);
+    assertEquals(spillCount, groupBy.getSpillCount());
+    assertEquals(expected, groups(groupBy));
+
+    groupBy.close();
+    assertEquals(0, directory.list().length);
+  }
+
+  /**
+   * Add distinct keys to a group-by.
+   * @param groupBy
+   *          The group-by
+   * @param keyCount
+   *          The number of keys
+   */
+  private void addKeys(ExternalGroupBy groupBy, int keyCount) {
+    for (long key = 0; key < keyCount; ++key) {
+      groupBy.increment(key);
+    }
+  }
+
+  /**
+   * Tests that the group-bys created by newInstance() share the memory
+   * budget, which is returned when a group-by is closed.
+   */
+  @Test
+  public void testSharedBudget() {
+    ExternalGroupBy first =
+      new ExternalGroupBy(17 * 4096, 2, folder.getRoot().toPath());
+    addKeys(first, 2000);
+    assertEquals(2048, first.getMaximumEntries());
+    assertEquals(0, first.getSpillCount());
+
+    ExternalGroupBy second = first.newInstance();
+    addKeys(second, 2000);
+    assertEquals(3, second.getSpillCount());
+    assertEquals(2000, groups(second).size());
+
+    first.close();
+    second.close();
+    ExternalGroupBy third = first.newInstance();
+    addKeys(third, 2000);
+    assertEquals(0, third.getSpillCount());
+    assertEquals(2000, groups(third).size());
+  }
+
+  /**
+   * Tests that closing the group-by deletes the spill files.
+   */
+  @Test
+  public void testClose() {
+    File directory = folder.getRoot();
+    ExternalGroupBy groupBy = new ExternalGroupBy(0, 2, directory.toPath());
+    for (long key = 0; key < 100; ++key) {
+      groupBy.increment(key);
+    }
+    assertTrue(directory.list().length > 0);
+
+    groupBy.close();
+
+    assertEquals(0, directory.list().length);
+    assertEquals(0, groupBy.getSpillCount());
+    assertEquals(0, groups(groupBy).size());
+  }
+}
@@ -0,0 +1,164 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackGenerator;
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.ClientCount;
+import us.daveread.education.mongo.honeypot.ClientCountEstimate;
+import us.daveread.education.mongo.honeypot.ClientIpAccumulator;
+import us.daveread.education.mongo.honeypot.HeavyHitterAccumulator;
+
+/**
+ * Unit tests for the HeavyHitterAccumulator class. The estimates are compared
+ * with the exact counts from ClientIpAccumulator, which match the groups
+ * produced by the most active IPs aggregation pipeline.
+ * @author readda
+ */
+public class TestHeavyHitterAccumulator {
+  /**
+   * The number of attacks generated
+   */
+  private static final int ATTACKS = 200000;
+
+  /**
+   * The number of clients reported
+   */
+  private static final int LIMIT = 10;
+
+  /**
+   * The generated attacks
+   */
+  private AttackRecord[] attacks;
+
+  /**
+   * Generate a skewed set of attacks from many clients.
+   */
+  @Before
+  public void setup() {
+    AttackGenerator generator =
+      new AttackGenerator(20, 1.0, 4, 1.0, 50, 1.0, 50000, 1.1);
+    Random random = new Random(1);
+    attacks = new AttackRecord[ATTACKS];
+    for (int attack = 0; attack < ATTACKS; ++attack) {
+      Document document = generator.nextAttack(random);
+      Document payload = (Document) document.get("payload");
+      attacks[attack] = new AttackRecord(
+        document.getString("client_country_code"),
+        document.getString("channel"), payload.getInteger("server_ip_mask"),
+        payload.getInteger("client_ip_mask"));
+    }
+  }
+
+  /**
+   * Tests that the estimated top clients match the exact top clients and that
+   * each true count lies within the reported range.
+   */
+  @Test
+  public void testAgainstExactCounts() {
+    ClientIpAccumulator exact = new ClientIpAccumulator();
+    HeavyHitterAccumulator estimated = new HeavyHitterAccumulator(200, 2048, 4);
+    for (AttackRecord attack : attacks) {
+      exact.accumulate(attack);
+      estimated.accumulate(attack);
+    }
+
+    assertTrue(exact.getDistinctClientCount() > 1000);
+    assertEquals(ATTACKS, estimated.getTotalAttacks());
+    assertEquals(ATTACKS / 200, estimated.getErrorBound());
+    assertTopClients(exact.getTopClients(LIMIT),
+      estimated.getTopClients(LIMIT), exact);
+  }
+
+  /**
+   * Tests that accumulators for separate partitions of the attacks can be
+   * merged.
+   */
+  @Test
+  public void testMerge() {
+    ClientIpAccumulator exact = new ClientIpAccumulator();
+    HeavyHitterAccumulator estimated = new HeavyHitterAccumulator(200, 2048, 4);
+    HeavyHitterAccumulator other =
+      (HeavyHitterAccumulator) estimated.newInstance();
+    for (int attack = 0; attack < ATTACKS; ++attack) {
+      exact.accumulate(attacks[attack]);
+      (attack < ATTACKS / 2 ? estimated : other).accumulate(attacks[attack]);
+    }
+    estimated.merge(other);
+
+    assertEquals(ATTACKS, estimated.getTotalAttacks());
+    assertTopClients(exact.getTopClients(LIMIT),
+      estimated.getTopClients(LIMIT), exact);
+  }
+
+  /**
+   * Tests that missing country codes are reported as null.
+   */
+  @Test
+  public void testNullCountry() {
+    HeavyHitterAccumulator estimated = new HeavyHitterAccumulator();
+    estimated.accumulate(new AttackRecord(null, "ch", 0, 7));
+    estimated.accumulate(new AttackRecord("AA", "ch", 0, 7));
+    estimated.accumulate(new AttackRecord(null, "ch", 0, 7));
+
+    List<ClientCountEstimate> clients = estimated.getTopClients(LIMIT);
+    assertEquals(2, clients.size());
+    assertEquals(null, clients.get(0).getCountryCode());
+    assertEquals(2, clients.get(0).getAttackCount());
+    assertEquals(0, clients.get(0).getMaximumError());
+    assertEquals("AA", clients.get(1).getCountryCode());
+  }
+
+  /**
+   * Check the estimated top clients against the exact ones.
+   * @param expected
+   *          The exact top clients
+   * @param actual
+   *          The estimated top clients
+   * @param exact
+   *          The exact counts for every client
+   */
+  private void assertTopClients(List<ClientCount> expected,
+    List<ClientCountEstimate> actual, ClientIpAccumulator exact) {
+    assertEquals(expected.size(), actual.size());
+    for (int rank = 0; rank < expected.size(); ++rank) {
+      ClientCountEstimate estimate = actual.get(rank);
+      int trueCount = trueCount(exact, estimate);
+      assertTrue(estimate.getAttackCount() >= trueCount);
+      assertTrue(
+        estimate.getAttackCount() - estimate.getMaximumError() <= trueCount);
+      assertEquals(expected.get(rank).getAttackCount(), trueCount,
+        estimate.getMaximumError());
+    }
+    assertEquals(expected.get(0).getClientIpMask(),
+      actual.get(0).getClientIpMask());
+    assertEquals(expected.get(0).getCountryCode(),
+      actual.get(0).getCountryCode());
+  }
+
+  /**
+   * Find the exact count for a client.
+   * @param exact
+   *          The exact counts
+   * @param client
+   *          The client
+   * @return The exact count
+   */
+  private int trueCount(ClientIpAccumulator exact, ClientCount client) {
+    for (ClientCount candidate : exact.getClientCounts()) {
+      if (candidate.getClientIpMask() == client.getClientIpMask()
+        && candidate.getCountryCode().equals(client.getCountryCode())) {
+        return candidate.getAttackCount();
+      }
+    }
+    return 0;
+  }
+}
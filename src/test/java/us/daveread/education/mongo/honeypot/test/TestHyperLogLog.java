@@ -0,0 +1,139 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.HyperLogLog;
+
+/**
+ * Unit tests for the HyperLogLog class.
+ * @author readda
+ */
+public class TestHyperLogLog {
+  /**
+   * The number of distinct values added by the accuracy tests
+   */
+  private static final int DISTINCT_VALUES = 100000;
+
+  /**
+   * Tests that an empty sketch estimates no values.
+   */
+  @Test
+  public void testEmpty() {
+    assertEquals(0, new HyperLogLog(14).estimate());
+  }
+
+  /**
+   * Tests that small cardinalities are counted almost exactly and that
+   * repeated values are only counted once.
+   */
+  @Test
+  public void testSmallCardinality() {
+    HyperLogLog sketch = new HyperLogLog(14);
+    for (int repeat = 0; repeat < 3; ++repeat) {
+      for (int value = 0; value < 100; ++value) {
+        sketch.add(value);
+      }
+    }
+    assertEquals(100, sketch.estimate(), 2);
+  }
+
+  /**
+   * Tests that large cardinalities are estimated within three standard
+   * errors, for numbers and strings.
+   */
+  @Test
+  public void testLargeCardinality() {
+    HyperLogLog numbers = new HyperLogLog(12);
+    HyperLogLog strings = new HyperLogLog(12);
+    for (int value = 0; value < DISTINCT_VALUES; ++value) {
+      numbers.add(value * 0x9E3779B1);
+      strings.add("client-" + value);
+    }
+    double bound = 3 * numbers.getStandardError() * DISTINCT_VALUES;
+    assertEquals(DISTINCT_VALUES, numbers.estimate(), bound);
+    assertEquals(DISTINCT_VALUES, strings.estimate(), bound);
+  }
+
+  /**
+   * Tests the standard error for a precision.
+   */
+  @Test
+  public void testStandardError() {
+    assertEquals(1.04 / 128, new HyperLogLog(14).getStandardError(), 1e-12);
+  }
+
+  /**
+   * Tests that Integer and Long values with the same value are the same.
+   */
+  @Test
+  public void testNumberTypes() {
+    HyperLogLog sketch = new HyperLogLog(10);
+    sketch.add((Object) Integer.valueOf(42));
+    sketch.add((Object) Long.valueOf(42));
+    assertEquals(1, sketch.estimate());
+  }
+
+  /**
+   * Tests that merging sketches of two halves gives the sketch of the whole.
+   */
+  @Test
+  public void testMerge() {
+    HyperLogLog whole = new HyperLogLog(12);
+    HyperLogLog first = new HyperLogLog(12);
+    HyperLogLog second = new HyperLogLog(12);
+    for (int value = 0; value < DISTINCT_VALUES; ++value) {
+      whole.add(value);
+      if (value % 2 == 0) {
+        first.add(value);
+      } else {
+        second.add(value);
+      }
+    }
+    first.merge(second);
+    assertEquals(whole, first);
+    assertEquals(whole.estimate(), first.estimate());
+  }
+
+  /**
+   * Tests that sketches with different precisions cannot be merged.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergePrecisionMismatch() {
+    new HyperLogLog(12).merge(new HyperLogLog(14));
+  }
+
+  /**
+   * Tests that precisions outside the supported range are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrecisionTooLarge() {
+    new HyperLogLog(HyperLogLog.MAXIMUM_PRECISION + 1);
+  }
+
+  /**
+   * Tests that precisions outside the supported range are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrecisionTooSmall() {
+    new HyperLogLog(HyperLogLog.MINIMUM_PRECISION - 1);
+  }
+
+  /**
+   * Tests restoring a sketch from its registers.
+   */
+  @Test
+  public void testRestore() {
+    HyperLogLog sketch = new HyperLogLog(8);
+    for (int value = 0; value < 1000; ++value) {
+      sketch.add(value);
+    }
+    HyperLogLog restored = new HyperLogLog(8, sketch.getRegisters());
+    assertArrayEquals(sketch.getRegisters(), restored.getRegisters());
+    assertEquals(sketch.estimate(), restored.estimate());
+    assertTrue(restored.estimate() > 0);
+  }
+}
@@ -0,0 +1,61 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.HyperLogLogAccumulator;
+
+/**
+ * Unit tests for the HyperLogLogAccumulator class.
+ * @author readda
+ */
+public class TestHyperLogLogAccumulator {
+  /**
+   * Tests estimating the distinct values of a nested field.
+   */
+  @Test
+  public void testNestedField() {
+    HyperLogLogAccumulator accumulator =
+      new HyperLogLogAccumulator("payload.client_ip_mask");
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 1));
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 2));
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 2));
+
+    assertEquals("payload.client_ip_mask",
+      accumulator.getProjectedFields().get(0));
+    assertEquals(2, accumulator.getDistinctCount());
+  }
+
+  /**
+   * Tests that missing values are not counted.
+   */
+  @Test
+  public void testMissingValues() {
+    HyperLogLogAccumulator accumulator =
+      new HyperLogLogAccumulator("payload.client_ip_mask");
+    accumulator.accumulate(new AttackRecord());
+
+    assertEquals(0, accumulator.getDistinctCount());
+  }
+
+  /**
+   * Tests merging the sketch from another accumulator.
+   */
+  @Test
+  public void testMerge() {
+    HyperLogLogAccumulator accumulator =
+      new HyperLogLogAccumulator("client_country_code", 10);
+    accumulator.accumulate(new AttackRecord("AA", "ch", 0, 0));
+    HyperLogLogAccumulator other =
+      (HyperLogLogAccumulator) accumulator.newInstance();
+    other.accumulate(new AttackRecord("AA", "ch", 0, 0));
+    other.accumulate(new AttackRecord("BB", "ch", 0, 0));
+    accumulator.merge(other);
+
+    assertEquals(10, other.getSketch().getPrecision());
+    assertEquals(2, accumulator.getDistinctCount());
+    assertEquals(1.04 / 32, accumulator.getStandardError(), 1e-12);
+  }
+}
@@ -0,0 +1,60 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.JsonReportPrinter;
+
+/**
+ * Unit tests for the JsonReportPrinter class.
+ * @author readda
+ */
+public class TestJsonReportPrinter {
+  /**
+   * Tests a country report.
+   */
+  @Test
+  public void testCountries() {
+    JsonReportPrinter printer = new JsonReportPrinter("countries", 200);
+    printer.header("Top 2 Attack Countries");
+    printer.country("CN", 101);
+    printer.country(null, 3);
+    printer.blankLine();
+
+    assertEquals("{\"report\":\"countries\","
+      + "\"title\":\"Top 2 Attack Countries\",\"rows\":["
+      + "{\"country\":\"CN\",\"attacks\":101,\"percent\":50},"
+      + "{\"country\":null,\"attacks\":3,\"percent\":1}]}",
+      printer.toJson());
+  }
+
+  /**
+   * Tests the overall statistics and estimated client counts.
+   */
+  @Test
+  public void testOverallAndClients() {
+    JsonReportPrinter printer = new JsonReportPrinter("clients", 100);
+    printer.overall(12);
+    printer.client(7, "US", 20, 2);
+
+    assertEquals("{\"report\":\"clients\",\"totalAttacks\":100,"
+      + "\"totalAttackingCountries\":12,\"rows\":["
+      + "{\"client\":7,\"country\":\"US\",\"attacks\":20,\"percent\":20,"
+      + "\"maximumError\":2}]}",
+      printer.toJson());
+  }
+
+  /**
+   * Tests escaping strings.
+   */
+  @Test
+  public void testEscaping() {
+    assertEquals("{\"names\":[\"a\\\"b\",\"c\\\\d\",\"e\\u000af\"]}",
+      JsonReportPrinter.toJson(Collections.singletonMap("names",
+        Arrays.asList("a\"b", "c\\d", "e\nf"))));
+  }
+}
@@ -0,0 +1,57 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ClientCount;
+import us.daveread.education.mongo.honeypot.CountryCount;
+import us.daveread.education.mongo.honeypot.LiveTopLists;
+import us.daveread.education.mongo.honeypot.ServerChannelCount;
+
+/**
+ * Unit tests for the LiveTopLists class.
+ * @author readda
+ */
+public class TestLiveTopLists {
+  /**
+   * The test instance
+   */
+  private LiveTopLists topLists;
+
+  /**
+   * Setup the test instance.
+   */
+  @Before
+  public void setup() {
+    topLists = new LiveTopLists("5m", 300000, 12,
+      Arrays.asList(new CountryCount("AA", 9), new CountryCount("BB", 3)),
+      Collections.singletonList(new ServerChannelCount(10, "ssh", 12)),
+      Collections.singletonList(new ClientCount(42, "AA", 9)));
+  }
+
+  /**
+   * Tests the window getters.
+   */
+  @Test
+  public void testWindow() {
+    assertEquals("5m", topLists.getWindow());
+    assertEquals(300000, topLists.getWindowMillis());
+    assertEquals(12, topLists.getTotalAttacks());
+  }
+
+  /**
+   * Tests the top list getters.
+   */
+  @Test
+  public void testTopLists() {
+    assertEquals(2, topLists.getCountries().size());
+    assertEquals("AA", topLists.getCountries().get(0).getCountryCode());
+    assertEquals("ssh", topLists.getServerChannels().get(0).getChannel());
+    assertEquals(42, topLists.getClients().get(0).getClientIpMask());
+  }
+}
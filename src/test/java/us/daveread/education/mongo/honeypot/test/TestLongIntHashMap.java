@@ -0,0 +1,134 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.LongIntHashMap;
+
+/**
+ * Unit tests for the LongIntHashMap class.
+ * @author readda
+ */
+public class TestLongIntHashMap {
+  /**
+   * The test instance
+   */
+  private LongIntHashMap map;
+
+  /**
+   * Setup the test instance.
+   */
+  @Before
+  public void setup() {
+    map = new LongIntHashMap();
+  }
+
+  /**
+   * Tests that a missing key has a value of zero.
+   */
+  @Test
+  public void testMissingKey() {
+    assertEquals(0, map.get(123L));
+    assertEquals(0, map.size());
+  }
+
+  /**
+   * Tests incrementing and adding to keys.
+   */
+  @Test
+  public void testIncrementAndAdd() {
+    map.increment(1L);
+    map.increment(1L);
+    map.add(-5L, 10);
+    map.increment(0L);
+
+    assertEquals(2, map.get(1L));
+    assertEquals(10, map.get(-5L));
+    assertEquals(1, map.get(0L));
+    assertEquals(3, map.size());
+  }
+
+  /**
+   * Tests that entries survive the table being resized.
+   */
+  @Test
+  public void testGrow() {
+    for (long key = 0; key < 10000; ++key) {
+      map.add(key << 32, (int) key);
+    }
+
+    assertEquals(10000, map.size());
+    for (long key = 0; key < 10000; ++key) {
+      assertEquals((int) key, map.get(key << 32));
+    }
+  }
+
+  /**
+   * Tests removing keys, checking that the remaining keys are still found
+   * after entries are moved back along their probe sequences.
+   */
+  @Test
+  public void testRemove() {
+    LongIntHashMap small = new LongIntHashMap(8);
+    Map<Long, Integer> expected = new HashMap<>();
+    for (long key = 0; key < 2000; ++key) {
+      small.add(key * 7, (int) key + 1);
+      expected.put(key * 7, (int) key + 1);
+      if (key % 3 == 0) {
+        assertEquals((int) key / 3 + 1, small.remove(key / 3 * 7));
+        expected.remove(key / 3 * 7);
+      }
+    }
+
+    assertEquals(0, small.remove(-1L));
+    assertEquals(expected.size(), small.size());
+    for (long key = 0; key < 2000; ++key) {
+      Integer value = expected.get(key * 7);
+      assertEquals(value == null ? 0 : value.intValue(), small.get(key * 7));
+    }
+  }
+
+  /**
+   * Tests removing every entry.
+   */
+  @Test
+  public void testClear() {
+    map.increment(7L);
+    map.add(8L, 2);
+
+    map.clear();
+
+    assertEquals(0, map.size());
+    assertEquals(0, map.get(7L));
+    map.increment(8L);
+    assertEquals(1, map.get(8L));
+  }
+
+  /**
+   * Tests visiting every entry.
+   */
+  @Test
+  public void testForEachEntry() {
+    map.increment(7L);
+    map.add(8L, 2);
+    map.add(Long.MIN_VALUE, 3);
+
+    final Map<Long, Integer> visited = new HashMap<>();
+    map.forEachEntry(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int value) {
+        visited.put(key, value);
+      }
+    });
+
+    assertEquals(3, visited.size());
+    assertEquals(Integer.valueOf(1), visited.get(7L));
+    assertEquals(Integer.valueOf(2), visited.get(8L));
+    assertEquals(Integer.valueOf(3), visited.get(Long.MIN_VALUE));
+  }
+}
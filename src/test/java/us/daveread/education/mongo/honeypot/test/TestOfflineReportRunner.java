@@ -0,0 +1,85 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.AttackSource;
+import us.daveread.education.mongo.honeypot.OfflineReportRunner;
+
+/**
+ * Unit tests for the OfflineReportRunner class.
+ * @author readda
+ */
+public class TestOfflineReportRunner {
+  /**
+   * Tests the reports printed for three attacks.
+   * @throws UnsupportedEncodingException
+   *           If UTF-8 is not supported
+   */
+  @Test
+  public void testPrintReports() throws UnsupportedEncodingException {
+    AttackSource source = new AttackSource() {
+      @Override
+      public long scan(List<AttackAccumulator> accumulators) {
+        AttackRecord[] attacks = {
+            new AttackRecord("AA", "ssh", 10, 100),
+            new AttackRecord("BB", "http", 20, 200),
+            new AttackRecord("AA", "ssh", 10, 300)
+        };
+        for (AttackRecord attack : attacks) {
+          for (AttackAccumulator accumulator : accumulators) {
+            accumulator.accumulate(attack);
+          }
+        }
+        return attacks.length;
+      }
+    };
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(bytes, true, "UTF-8");
+
+    new OfflineReportRunner(source).printReports(out);
+
+    String[] lines = bytes.toString("UTF-8").split("\\r?\\n");
+    assertEquals("Total Attacks: 3", lines[2]);
+    assertEquals("Total Attacking Countries: 2", lines[3]);
+    assertEquals("Top 2 Attack Countries (using Java coded aggregation)",
+      lines[5]);
+    assertEquals("  AA: 2 (66%)", lines[7]);
+    assertEquals("  Server:10 Channel:ssh Attack Count:2 (66%)",
+      lines[12]);
+    assertEquals(14, lines.length);
+  }
+
+  /**
+   * Tests that an empty dump is reported without a server being needed.
+   * @throws UnsupportedEncodingException
+   *           If UTF-8 is not supported
+   */
+  @Test
+  public void testEmptyDump() throws UnsupportedEncodingException {
+    AttackSource source = new AttackSource() {
+      @Override
+      public long scan(List<AttackAccumulator> accumulators) {
+        return 0;
+      }
+    };
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(bytes, true, "UTF-8");
+
+    new OfflineReportRunner(source).printReports(out);
+
+    String[] lines = bytes.toString("UTF-8").split("\\r?\\n");
+    assertEquals("Total Attacks: 0", lines[2]);
+    assertEquals("Total Attacking Countries: 0", lines[3]);
+    assertEquals("Top 0 Attack Countries (using Java coded aggregation)",
+      lines[5]);
+  }
+}
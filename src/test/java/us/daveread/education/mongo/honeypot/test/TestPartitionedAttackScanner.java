@@ -0,0 +1,93 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.PartitionedAttackScanner;
+
+/**
+ * Unit tests for the PartitionedAttackScanner class.
+ * @author readda
+ */
+public class TestPartitionedAttackScanner {
+  /**
+   * Create an ObjectId for a timestamp.
+   * @param timestamp
+   *          The timestamp in seconds
+   * @return The ObjectId
+   */
+  private ObjectId objectId(int timestamp) {
+    return new ObjectId(timestamp, 1, (short) 1, 1);
+  }
+
+  /**
+   * Tests that the partitions are contiguous, with the first and last
+   * partitions open ended.
+   */
+  @Test
+  public void testPartitionFilters() {
+    List<Document> filters = PartitionedAttackScanner
+      .partitionFilters(objectId(1000), objectId(2000), 4);
+
+    assertEquals(4, filters.size());
+
+    Document first = (Document) filters.get(0).get("_id");
+    assertFalse("First partition has a lower bound",
+      first.containsKey("$gte"));
+    assertEquals(1250, ((ObjectId) first.get("$lt")).getTimestamp());
+
+    for (int index = 1; index < filters.size(); ++index) {
+      Document previous = (Document) filters.get(index - 1).get("_id");
+      Document current = (Document) filters.get(index).get("_id");
+      assertEquals(previous.get("$lt"), current.get("$gte"));
+    }
+
+    Document last = (Document) filters.get(3).get("_id");
+    assertFalse("Last partition has an upper bound",
+      last.containsKey("$lt"));
+  }
+
+  /**
+   * Tests that identical timestamps produce a single unfiltered partition.
+   */
+  @Test
+  public void testSingleSecond() {
+    List<Document> filters = PartitionedAttackScanner
+      .partitionFilters(objectId(1000), objectId(1000), 4);
+
+    assertEquals(1, filters.size());
+    assertTrue("Filter should be empty", filters.get(0).isEmpty());
+  }
+
+  /**
+   * Tests that a narrow timestamp range produces fewer partitions rather than
+   * empty ones.
+   */
+  @Test
+  public void testNarrowRange() {
+    List<Document> filters = PartitionedAttackScanner
+      .partitionFilters(objectId(1000), objectId(1002), 8);
+
+    assertEquals(2, filters.size());
+  }
+
+  /**
+   * Tests that _id values which are not ObjectIds produce a single unfiltered
+   * partition.
+   */
+  @Test
+  public void testNonObjectIds() {
+    List<Document> filters =
+      PartitionedAttackScanner.partitionFilters(1, 1000, 4);
+
+    assertEquals(1, filters.size());
+    assertTrue("Filter should be empty", filters.get(0).isEmpty());
+  }
+}
@@ -0,0 +1,141 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.PipelineResultCache;
+import us.daveread.education.mongo.honeypot.ReportPipelines;
+
+/**
+ * Unit tests for the PipelineResultCache class.
+ * @author readda
+ */
+public class TestPipelineResultCache {
+  /**
+   * The time to live used by the test instance
+   */
+  private static final long TIME_TO_LIVE = 1000;
+
+  /**
+   * The collection version used by the tests
+   */
+  private static final Document VERSION =
+    new Document("count", 10L).append("maxId", 10);
+
+  /**
+   * The time reported to the test instance
+   */
+  private long now;
+
+  /**
+   * The test instance
+   */
+  private PipelineResultCache cache;
+
+  /**
+   * Setup the test instance with a controlled clock.
+   */
+  @Before
+  public void setup() {
+    cache = new PipelineResultCache(2, TIME_TO_LIVE, 0) {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+  }
+
+  /**
+   * Tests that identical pipelines built separately share a key, and that
+   * the namespace and pipeline both change the key.
+   */
+  @Test
+  public void testCacheKey() {
+    String key =
+      PipelineResultCache.cacheKey("db.c", ReportPipelines.countryBreakdown());
+
+    assertEquals(64, key.length());
+    assertEquals(key,
+      PipelineResultCache.cacheKey("db.c", ReportPipelines.countryBreakdown()));
+    assertNotEquals(key,
+      PipelineResultCache.cacheKey("db.d", ReportPipelines.countryBreakdown()));
+    assertNotEquals(key, PipelineResultCache.cacheKey("db.c",
+      ReportPipelines.honeypotBreakdown()));
+    assertNotEquals(
+      PipelineResultCache.cacheKey("db.c", ReportPipelines.mostActiveIps(10)),
+      PipelineResultCache.cacheKey("db.c", ReportPipelines.mostActiveIps(5)));
+  }
+
+  /**
+   * Tests a cached result being returned and counted as a hit.
+   */
+  @Test
+  public void testHit() {
+    List<Document> results = Arrays.asList(new Document("_id", "US"));
+    assertNull(cache.get("a", VERSION));
+    cache.put("a", VERSION, results);
+
+    assertSame(results, cache.get("a", VERSION));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  /**
+   * Tests that a result expires after the time to live.
+   */
+  @Test
+  public void testExpiry() {
+    cache.put("a", VERSION, Arrays.<Document>asList());
+    now = TIME_TO_LIVE - 1;
+    assertEquals(0, cache.get("a", VERSION).size());
+    now = TIME_TO_LIVE;
+    assertNull(cache.get("a", VERSION));
+    assertEquals(0, cache.size());
+  }
+
+  /**
+   * Tests that a result is discarded when the collection changes.
+   */
+  @Test
+  public void testCollectionChanged() {
+    cache.put("a", VERSION, Arrays.<Document>asList());
+
+    assertNull(cache.get("a", new Document("count", 11L).append("maxId", 11)));
+    assertNull(cache.get("a", VERSION));
+  }
+
+  /**
+   * Tests that the least recently used result is discarded when full.
+   */
+  @Test
+  public void testLeastRecentlyUsed() {
+    cache.put("a", VERSION, Arrays.<Document>asList());
+    cache.put("b", VERSION, Arrays.<Document>asList());
+    cache.get("a", VERSION);
+    cache.put("c", VERSION, Arrays.<Document>asList());
+
+    assertEquals(2, cache.size());
+    assertNull(cache.get("b", VERSION));
+    assertEquals(0, cache.get("a", VERSION).size());
+    assertEquals(0, cache.get("c", VERSION).size());
+  }
+
+  /**
+   * Tests discarding every result.
+   */
+  @Test
+  public void testClear() {
+    cache.put("a", VERSION, Arrays.<Document>asList());
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,88 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.Tag;
+import com.mongodb.TagSet;
+import com.mongodb.TaggableReadPreference;
+
+import us.daveread.education.mongo.honeypot.ReplicaSetOptions;
+
+/**
+ * Unit tests for the ReplicaSetOptions class.
+ * @author readda
+ */
+public class TestReplicaSetOptions {
+  /**
+   * Tests parsing a seed list, with and without ports.
+   */
+  @Test
+  public void testSeedList() {
+    List<ServerAddress> seeds = ReplicaSetOptions
+      .parseSeedList("localhost:27018, db2.example.com ,localhost:27019,");
+
+    assertEquals(Arrays.asList(new ServerAddress("localhost", 27018),
+      new ServerAddress("db2.example.com", 27017),
+      new ServerAddress("localhost", 27019)), seeds);
+  }
+
+  /**
+   * Tests that an empty seed list is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptySeedList() {
+    ReplicaSetOptions.parseSeedList(" , ");
+  }
+
+  /**
+   * Tests parsing a read preference without tags.
+   */
+  @Test
+  public void testReadPreference() {
+    assertEquals(ReadPreference.secondaryPreferred(),
+      ReplicaSetOptions.parseReadPreference("secondaryPreferred", null));
+    assertEquals(ReadPreference.primary(),
+      ReplicaSetOptions.parseReadPreference("primary", " "));
+  }
+
+  /**
+   * Tests parsing a read preference with tag sets, including a trailing
+   * empty tag set matching any member.
+   */
+  @Test
+  public void testTagSets() {
+    TaggableReadPreference readPreference =
+      (TaggableReadPreference) ReplicaSetOptions.parseReadPreference(
+        "nearest", "use=reporting, dc=east;use=reporting;");
+
+    assertEquals("nearest", readPreference.getName());
+    assertEquals(Arrays.asList(
+      new TagSet(Arrays.asList(new Tag("use", "reporting"),
+        new Tag("dc", "east"))),
+      new TagSet(new Tag("use", "reporting")), new TagSet()),
+      readPreference.getTagSetList());
+  }
+
+  /**
+   * Tests that tags must be name=value pairs.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedTag() {
+    ReplicaSetOptions.parseTagSets("reporting");
+  }
+
+  /**
+   * Tests that the primary mode cannot have tags.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrimaryWithTags() {
+    ReplicaSetOptions.parseReadPreference("primary", "use=reporting");
+  }
+}
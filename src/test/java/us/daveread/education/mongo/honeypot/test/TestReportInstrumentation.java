@@ -0,0 +1,205 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.ObjectName;
+
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import us.daveread.education.mongo.honeypot.ReportInstrumentation;
+import us.daveread.education.mongo.honeypot.ReportMeasurement;
+
+/**
+ * Unit tests for the ReportInstrumentation class. The driver's command events
+ * are simulated.
+ * @author readda
+ */
+public class TestReportInstrumentation {
+  /**
+   * The connection the simulated commands are sent on
+   */
+  private static final ConnectionDescription CONNECTION =
+    new ConnectionDescription(
+      new ServerId(new ClusterId(), new ServerAddress()));
+
+  /**
+   * The test instance
+   */
+  private ReportInstrumentation instrumentation;
+
+  /**
+   * Setup the test instance.
+   */
+  @Before
+  public void setup() {
+    instrumentation = new ReportInstrumentation();
+  }
+
+  /**
+   * Create a cursor reply.
+   * @param batchName
+   *          firstBatch or nextBatch
+   * @param documents
+   *          The number of documents in the batch
+   * @return The reply
+   */
+  private BsonDocument cursorReply(String batchName, int documents) {
+    BsonArray batch = new BsonArray();
+    for (int document = 0; document < documents; ++document) {
+      batch.add(new BsonDocument("client_country_code", new BsonString("US")));
+    }
+    return new BsonDocument("cursor", new BsonDocument("id", new BsonInt64(0))
+      .append(batchName, batch)).append("ok", new BsonInt32(1));
+  }
+
+  /**
+   * Tests counting the documents in the different kinds of reply.
+   */
+  @Test
+  public void testDocumentCount() {
+    assertEquals(3,
+      ReportInstrumentation.documentCount(cursorReply("firstBatch", 3)));
+    assertEquals(2,
+      ReportInstrumentation.documentCount(cursorReply("nextBatch", 2)));
+    assertEquals(2, ReportInstrumentation.documentCount(new BsonDocument(
+      "values", new BsonArray(Arrays.asList(new BsonInt32(1),
+        new BsonInt32(2))))));
+    assertEquals(0, ReportInstrumentation
+      .documentCount(new BsonDocument("n", new BsonInt32(5))));
+  }
+
+  /**
+   * Tests measuring the encoded size of a reply.
+   */
+  @Test
+  public void testSize() {
+    assertEquals(5, ReportInstrumentation.size(new BsonDocument()));
+    assertEquals(16, ReportInstrumentation
+      .size(new BsonDocument("n", new BsonInt64(5))));
+  }
+
+  /**
+   * Tests finding the execution statistics of a query and of a pipeline.
+   */
+  @Test
+  public void testExecutionStats() {
+    Document stats = new Document("totalDocsExamined", 10);
+    assertEquals(stats, ReportInstrumentation
+      .executionStats(new Document("executionStats", stats)));
+    assertEquals(stats, ReportInstrumentation.executionStats(
+      new Document("stages", Arrays.asList(new Document("$cursor",
+        new Document("executionStats", stats))))));
+    assertNull(ReportInstrumentation.executionStats(new Document()));
+  }
+
+  /**
+   * Tests that the commands sent while a report runs are attributed to it
+   * and that its MBean is registered.
+   * @throws Exception
+   *           If the MBean cannot be read
+   */
+  @Test
+  public void testMeasurement() throws Exception {
+    instrumentation.commandSucceeded(new CommandSucceededEvent(1, CONNECTION,
+      "find", cursorReply("firstBatch", 9), 0));
+
+    ReportMeasurement measurement = instrumentation.start("testReport");
+    BsonDocument find = new BsonDocument("find", new BsonString("attacks"));
+    instrumentation.commandStarted(
+      new CommandStartedEvent(2, CONNECTION, "db", "find", find));
+    instrumentation.commandSucceeded(new CommandSucceededEvent(2, CONNECTION,
+      "find", cursorReply("firstBatch", 3), 0));
+    instrumentation.commandSucceeded(new CommandSucceededEvent(3, CONNECTION,
+      "getMore", cursorReply("nextBatch", 2), 0));
+    instrumentation.finish(measurement);
+
+    assertEquals(5, measurement.getDocumentsReceived());
+    assertEquals(2, measurement.getCommandCount());
+    assertEquals(1, measurement.getGetMoreCount());
+    assertTrue(measurement.getBytesReceived() > 0);
+    assertTrue(measurement.getFirstDocumentMillis() >= 0);
+    assertTrue(measurement.getWallMillis() >= measurement
+      .getFirstDocumentMillis());
+    assertEquals("db", measurement.getQueryDatabase());
+    assertEquals(find, measurement.getQuery());
+    assertEquals(-1, measurement.getDocsExamined());
+    assertTrue(measurement.toString().startsWith("report=testReport "));
+
+    assertEquals(1, instrumentation.metrics("testReport").getRunCount());
+    assertEquals(5L, ManagementFactory.getPlatformMBeanServer().getAttribute(
+      new ObjectName("us.daveread.education.mongo.honeypot:"
+        + "type=ReportMetrics,name=\"testReport\""),
+      "LastDocumentsReceived"));
+  }
+
+  /**
+   * Tests that the find or aggregate returning the most documents is chosen
+   * as the main query, rather than a count or a single batch lookup sent
+   * first.
+   */
+  @Test
+  public void testMainQuery() {
+    ReportMeasurement measurement = instrumentation.start("mainQuery");
+    BsonDocument count = new BsonDocument("count", new BsonString("attacks"));
+    instrumentation.commandStarted(
+      new CommandStartedEvent(1, CONNECTION, "db", "count", count));
+    BsonDocument lookup = new BsonDocument("find", new BsonString("attacks"))
+      .append("singleBatch", BsonBoolean.TRUE);
+    instrumentation.commandStarted(
+      new CommandStartedEvent(2, CONNECTION, "db", "find", lookup));
+    instrumentation.commandSucceeded(new CommandSucceededEvent(2, CONNECTION,
+      "find", cursorReply("firstBatch", 1), 0));
+
+    BsonDocument find = new BsonDocument("find", new BsonString("attacks"));
+    instrumentation.commandStarted(
+      new CommandStartedEvent(3, CONNECTION, "db", "find", find));
+    instrumentation.commandSucceeded(new CommandSucceededEvent(3, CONNECTION,
+      "find", cursorReply("firstBatch", 3), 0));
+    instrumentation.commandSucceeded(new CommandSucceededEvent(4, CONNECTION,
+      "getMore", cursorReply("nextBatch", 2), 0));
+
+    BsonDocument aggregate =
+      new BsonDocument("aggregate", new BsonString("attacks"));
+    instrumentation.commandStarted(
+      new CommandStartedEvent(5, CONNECTION, "db", "aggregate", aggregate));
+    instrumentation.commandSucceeded(new CommandSucceededEvent(5, CONNECTION,
+      "aggregate", cursorReply("firstBatch", 4), 0));
+    instrumentation.finish(measurement);
+
+    assertEquals(find, measurement.getQuery());
+  }
+
+  /**
+   * Tests that a count is chosen when the report sends no other query.
+   */
+  @Test
+  public void testCountOnly() {
+    ReportMeasurement measurement = instrumentation.start("countOnly");
+    BsonDocument count = new BsonDocument("count", new BsonString("attacks"));
+    instrumentation.commandStarted(
+      new CommandStartedEvent(1, CONNECTION, "db", "count", count));
+    instrumentation.finish(measurement);
+
+    assertEquals(count, measurement.getQuery());
+  }
+}
@@ -0,0 +1,111 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.CountryAccumulator;
+import us.daveread.education.mongo.honeypot.ReportLayout;
+import us.daveread.education.mongo.honeypot.ReportPrinter;
+
+/**
+ * Unit tests for the ReportLayout class.
+ * @author readda
+ */
+public class TestReportLayout {
+  /**
+   * The printed output
+   */
+  private ByteArrayOutputStream output;
+
+  /**
+   * The printer, with 200 attacks in total
+   */
+  private ReportPrinter printer;
+
+  /**
+   * Setup the printer.
+   */
+  @Before
+  public void setup() {
+    output = new ByteArrayOutputStream();
+    printer = new ReportPrinter(new PrintStream(output, true), 200);
+  }
+
+  /**
+   * Get the printed output using Unix line endings.
+   * @return The output
+   */
+  private String printed() {
+    return output.toString().replace(System.lineSeparator(), "\n");
+  }
+
+  /**
+   * Tests the distinct IP report.
+   */
+  @Test
+  public void testDistinctIps() {
+    ReportLayout.distinctIps(printer, 7, 35);
+    assertEquals("Distinct IP Statistics\n======================\n"
+      + "  Servers: 7\n  Clients: 35\n", printed());
+  }
+
+  /**
+   * Tests that the coded country report is bounded by the countries counted
+   * when the number of attacking countries is larger.
+   */
+  @Test
+  public void testCountryBreakdownCodedBoundedByCounts() {
+    CountryAccumulator countries = new CountryAccumulator();
+    countries.add("US", 100);
+    countries.add("CN", 50);
+    ReportLayout.countryBreakdownCoded(printer, 12, countries);
+    assertEquals("Top 2 Attack Countries (using Java coded aggregation)\n"
+      + "=====================================================\n"
+      + "  US: 100 (50%)\n  CN: 50 (25%)\n", printed());
+  }
+
+  /**
+   * Tests that the aggregated country report is bounded by the number of
+   * attacking countries and by the groups returned.
+   */
+  @Test
+  public void testCountryBreakdown() {
+    ReportLayout.countryBreakdown(printer, 1,
+      Arrays.asList(new Document("_id", "US").append("attacks", 100),
+        new Document("_id", "CN").append("attacks", 50)),
+      ReportLayout.PIPELINE_SOURCE);
+    ReportLayout.countryBreakdown(printer, 12,
+      Arrays.asList(new Document("_id", "US").append("attacks", 100)),
+      ReportLayout.PIPELINE_SOURCE);
+    assertEquals("Top 1 Attack Countries (using aggregation pipeline)\n"
+      + "===================================================\n"
+      + "  US: 100 (50%)\n"
+      + "Top 1 Attack Countries (using aggregation pipeline)\n"
+      + "===================================================\n"
+      + "  US: 100 (50%)\n", printed());
+  }
+
+  /**
+   * Tests that the most active client report stops at the limit.
+   */
+  @Test
+  public void testMostActiveIps() {
+    ReportLayout.mostActiveIps(printer, 1,
+      Arrays.asList(
+        new Document("client_ip_mask", 1234)
+          .append("client_country_code", "CN").append("attacks", 20),
+        new Document("client_ip_mask", 5678)
+          .append("client_country_code", "US").append("attacks", 10)),
+      ReportLayout.PIPELINE_SOURCE);
+    assertEquals("Top 1 Attacking Client IPs (using aggregation pipeline)\n"
+      + "=======================================================\n"
+      + "  Client:1234 Country:CN Attack Count:20 (10%)\n", printed());
+  }
+}
@@ -0,0 +1,106 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ReportPipelines;
+
+/**
+ * Unit tests for the ReportPipelines class.
+ * @author readda
+ */
+public class TestReportPipelines {
+  /**
+   * Tests the stages of the country pipeline.
+   */
+  @Test
+  public void testCountryBreakdown() {
+    List<Document> pipeline = ReportPipelines.countryBreakdown();
+    assertEquals(2, pipeline.size());
+    assertEquals("$client_country_code",
+      ((Document) pipeline.get(0).get("$group")).get("_id"));
+    assertEquals(new Document("attacks", -1), pipeline.get(1).get("$sort"));
+  }
+
+  /**
+   * Tests the stages of the server and channel pipeline.
+   */
+  @Test
+  public void testHoneypotBreakdown() {
+    List<Document> pipeline = ReportPipelines.honeypotBreakdown();
+    assertEquals(3, pipeline.size());
+    assertEquals(
+      new Document("server_ip_mask", "$payload.server_ip_mask")
+        .append("channel", "$channel"),
+      ((Document) pipeline.get(0).get("$group")).get("_id"));
+  }
+
+  /**
+   * Tests that the client pipeline limits the result after sorting.
+   */
+  @Test
+  public void testMostActiveIps() {
+    List<Document> pipeline = ReportPipelines.mostActiveIps(5);
+    assertEquals(4, pipeline.size());
+    assertEquals(new Document("attacks", -1), pipeline.get(1).get("$sort"));
+    assertEquals(5, pipeline.get(2).get("$limit"));
+  }
+
+  /**
+   * Tests that the client pipeline keeps at least one client.
+   */
+  @Test
+  public void testMostActiveIpsMinimumLimit() {
+    assertEquals(1, ReportPipelines.mostActiveIps(0).get(2).get("$limit"));
+  }
+
+  /**
+   * Tests that the rollup pipeline groups on every reported field and writes
+   * the rollup collection.
+   */
+  @Test
+  public void testRollup() {
+    List<Document> pipeline = ReportPipelines.rollup("honeypotRollup");
+    assertEquals(2, pipeline.size());
+    assertEquals(
+      new Document("client_country_code", "$client_country_code")
+        .append("channel", "$channel")
+        .append("server_ip_mask", "$payload.server_ip_mask"),
+      ((Document) pipeline.get(0).get("$group")).get("_id"));
+    assertEquals("honeypotRollup", pipeline.get(1).get("$out"));
+  }
+
+  /**
+   * Tests that the country pipeline over the rollup adds up the rollup
+   * counts and sorts like the pipeline over the attacks.
+   */
+  @Test
+  public void testCountryBreakdownFromRollup() {
+    List<Document> pipeline = ReportPipelines.countryBreakdownFromRollup();
+    Document group = (Document) pipeline.get(0).get("$group");
+    assertEquals("$_id.client_country_code", group.get("_id"));
+    assertEquals(new Document("$sum", "$attacks"), group.get("attacks"));
+    assertEquals(ReportPipelines.countryBreakdown().get(1), pipeline.get(1));
+  }
+
+  /**
+   * Tests that the server and channel pipeline over the rollup adds up the
+   * rollup counts and projects and sorts like the pipeline over the attacks.
+   */
+  @Test
+  public void testHoneypotBreakdownFromRollup() {
+    List<Document> pipeline = ReportPipelines.honeypotBreakdownFromRollup();
+    List<Document> attackPipeline = ReportPipelines.honeypotBreakdown();
+    Document group = (Document) pipeline.get(0).get("$group");
+    assertEquals(
+      new Document("server_ip_mask", "$_id.server_ip_mask")
+        .append("channel", "$_id.channel"),
+      group.get("_id"));
+    assertEquals(new Document("$sum", "$attacks"), group.get("attacks"));
+    assertEquals(attackPipeline.subList(1, 3), pipeline.subList(1, 3));
+  }
+}
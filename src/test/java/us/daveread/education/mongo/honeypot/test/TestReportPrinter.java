@@ -0,0 +1,135 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ReportPrinter;
+
+/**
+ * Unit tests for the ReportPrinter class.
+ * @author readda
+ */
+public class TestReportPrinter {
+  /**
+   * The printed output
+   */
+  private ByteArrayOutputStream output;
+
+  /**
+   * The test instance, with 200 attacks in total
+   */
+  private ReportPrinter printer;
+
+  /**
+   * Setup the test instance.
+   */
+  @Before
+  public void setup() {
+    output = new ByteArrayOutputStream();
+    printer = new ReportPrinter(new PrintStream(output, true), 200);
+  }
+
+  /**
+   * Get the printed output using Unix line endings.
+   * @return The output
+   */
+  private String printed() {
+    return output.toString().replace(System.lineSeparator(), "\n");
+  }
+
+  /**
+   * Tests the underlined header.
+   */
+  @Test
+  public void testHeader() {
+    printer.header("Title");
+    assertEquals("Title\n=====\n", printed());
+  }
+
+  /**
+   * Tests the overall statistics.
+   */
+  @Test
+  public void testOverall() {
+    printer.overall(12);
+    assertEquals("Overall Statistics\n==================\n"
+      + "Total Attacks: 200\nTotal Attacking Countries: 12\n", printed());
+  }
+
+  /**
+   * Tests the overall statistics with an estimated country count.
+   */
+  @Test
+  public void testOverallEstimate() {
+    printer.overall(12, 0.008125);
+    assertEquals("Overall Statistics\n==================\n"
+      + "Total Attacks: 200\nTotal Attacking Countries: 12"
+      + " (estimate, +/- 0.81%)\n", printed());
+  }
+
+  /**
+   * Tests exact and estimated distinct count lines.
+   */
+  @Test
+  public void testDistinct() {
+    printer.distinct("Clients", 35);
+    printer.distinct("Servers", 7, 0.26);
+    assertEquals("  Clients: 35\n  Servers: 7 (estimate, +/- 26.00%)\n",
+      printed());
+  }
+
+  /**
+   * Tests a country line, the percentage is truncated.
+   */
+  @Test
+  public void testCountry() {
+    printer.country("US", 51);
+    assertEquals("  US: 51 (25%)\n", printed());
+  }
+
+  /**
+   * Tests that percentages use a total set after the printer was created.
+   */
+  @Test
+  public void testSetTotalAttacks() {
+    printer.setTotalAttacks(102);
+    printer.country("US", 51);
+    assertEquals(102, printer.getTotalAttacks());
+    assertEquals("  US: 51 (50%)\n", printed());
+  }
+
+  /**
+   * Tests a server and channel line.
+   */
+  @Test
+  public void testServerChannel() {
+    printer.serverChannel(7, "kippo.sessions", 100);
+    assertEquals("  Server:7 Channel:kippo.sessions Attack Count:100 (50%)\n",
+      printed());
+  }
+
+  /**
+   * Tests a client line.
+   */
+  @Test
+  public void testClient() {
+    printer.client(1234, "CN", 2);
+    assertEquals("  Client:1234 Country:CN Attack Count:2 (1%)\n", printed());
+  }
+
+  /**
+   * Tests estimated client lines, shown as a range unless exact.
+   */
+  @Test
+  public void testClientEstimate() {
+    printer.client(1234, "CN", 20, 3);
+    printer.client(1234, "CN", 20, 0);
+    assertEquals("  Client:1234 Country:CN Attack Count:17-20 (10%)\n"
+      + "  Client:1234 Country:CN Attack Count:20 (10%)\n", printed());
+  }
+}
@@ -0,0 +1,143 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.MongoClientOptions;
+import com.mongodb.connection.ConnectionPoolSettings;
+
+import us.daveread.education.mongo.honeypot.ExternalGroupBy;
+import us.daveread.education.mongo.honeypot.PipelineResultCache;
+import us.daveread.education.mongo.honeypot.ReportTuning;
+
+/**
+ * Unit tests for the ReportTuning class.
+ * @author readda
+ */
+public class TestReportTuning {
+  /**
+   * The test instance
+   */
+  private ReportTuning tuning;
+
+  /**
+   * Setup the test instance with default settings, an override for the scan
+   * and pool settings.
+   */
+  @Before
+  public void setup() {
+    Properties properties = new Properties();
+    properties.setProperty("report.default.batchSize", "500");
+    properties.setProperty("report.default.allowDiskUse", "true");
+    properties.setProperty("report.scan.batchSize", " 20000 ");
+    properties.setProperty("report.scan.maxTimeMs", "60000");
+    properties.setProperty("report.mostActiveIps.allowDiskUse", "false");
+    properties.setProperty("pool.connectionsPerHost", "25");
+    properties.setProperty("pool.maxWaitTimeMs", "1500");
+    tuning = new ReportTuning(properties);
+  }
+
+  /**
+   * Tests the report specific settings.
+   */
+  @Test
+  public void testReportSettings() {
+    assertEquals(20000, tuning.getBatchSize(ReportTuning.SCAN));
+    assertEquals(60000, tuning.getMaxTimeMillis(ReportTuning.SCAN));
+    assertFalse(tuning.isAllowDiskUse(ReportTuning.MOST_ACTIVE_IPS));
+  }
+
+  /**
+   * Tests that reports without their own settings use the defaults.
+   */
+  @Test
+  public void testDefaultSettings() {
+    assertEquals(500, tuning.getBatchSize(ReportTuning.COUNTRY_BREAKDOWN));
+    assertTrue(tuning.isAllowDiskUse(ReportTuning.COUNTRY_BREAKDOWN));
+    assertEquals(0, tuning.getMaxTimeMillis(ReportTuning.COUNTRY_BREAKDOWN));
+  }
+
+  /**
+   * Tests the values used when no settings are given.
+   */
+  @Test
+  public void testNoSettings() {
+    ReportTuning empty = new ReportTuning(new Properties());
+    assertEquals(0, empty.getBatchSize(ReportTuning.SCAN));
+    assertFalse(empty.isAllowDiskUse(ReportTuning.SCAN));
+    assertEquals(0, empty.getMaxTimeMillis(ReportTuning.SCAN));
+  }
+
+  /**
+   * Tests creating the result cache from the cache settings.
+   */
+  @Test
+  public void testResultCache() {
+    Properties properties = new Properties();
+    properties.setProperty("cache.maxEntries", "1");
+    PipelineResultCache cache =
+      new ReportTuning(properties).newResultCache();
+    cache.put("a", new Document(), new ArrayList<Document>());
+    cache.put("b", new Document(), new ArrayList<Document>());
+
+    assertEquals(1, cache.size());
+    assertNotNull(cache.get("b", new Document()));
+  }
+
+  /**
+   * Tests the group-by created from the group-by settings.
+   */
+  @Test
+  public void testExternalGroupBy() {
+    Properties properties = new Properties();
+    properties.setProperty("groupBy.memoryBytes", "1088");
+    ExternalGroupBy groupBy = new ReportTuning(properties).newExternalGroupBy();
+
+    assertEquals(32, groupBy.getMaximumEntries());
+    assertEquals(0, groupBy.getSpillCount());
+  }
+
+  /**
+   * Tests applying the pool settings to the synchronous client options.
+   */
+  @Test
+  public void testClientOptions() {
+    MongoClientOptions options =
+      tuning.tunePool(new MongoClientOptions.Builder()).build();
+    assertEquals(25, options.getConnectionsPerHost());
+    assertEquals(1500, options.getMaxWaitTime());
+    assertEquals(new MongoClientOptions.Builder().build()
+      .getMinConnectionsPerHost(), options.getMinConnectionsPerHost());
+  }
+
+  /**
+   * Tests applying the pool settings to the asynchronous pool settings.
+   */
+  @Test
+  public void testPoolSettings() {
+    ConnectionPoolSettings settings =
+      tuning.tunePool(ConnectionPoolSettings.builder()).build();
+    assertEquals(25, settings.getMaxSize());
+    assertEquals(1500, settings.getMaxWaitTime(TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Tests that the settings file is found on the classpath.
+   */
+  @Test
+  public void testInstance() {
+    assertNotNull(ReportTuning.getInstance());
+    assertEquals(10000,
+      ReportTuning.getInstance().getBatchSize(ReportTuning.SCAN));
+  }
+}
@@ -0,0 +1,114 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.AttackAccumulator;
+import us.daveread.education.mongo.honeypot.AttackRecord;
+import us.daveread.education.mongo.honeypot.ServerChannelAccumulator;
+import us.daveread.education.mongo.honeypot.ServerChannelCount;
+
+/**
+ * Unit tests for the ServerChannelAccumulator class.
+ * @author readda
+ */
+public class TestServerChannelAccumulator {
+  /**
+   * The test instance
+   */
+  private ServerChannelAccumulator accumulator;
+
+  /**
+   * Create an attack.
+   * @param serverIpMask
+   *          The server IP mask value
+   * @param channel
+   *          The channel
+   * @return The attack
+   */
+  private AttackRecord attack(int serverIpMask, String channel) {
+    return new AttackRecord("AA", channel, serverIpMask, 0);
+  }
+
+  /**
+   * Setup the test instance with four attacks on three servers and channels.
+   */
+  @Before
+  public void setup() {
+    accumulator = new ServerChannelAccumulator();
+    accumulator.accumulate(attack(2, "BB"));
+    accumulator.accumulate(attack(1, "BB"));
+    accumulator.accumulate(attack(2, "BB"));
+    accumulator.accumulate(attack(2, "AA"));
+  }
+
+  /**
+   * Tests the projected fields.
+   */
+  @Test
+  public void testProjectedFields() {
+    List<String> fields = accumulator.getProjectedFields();
+
+    assertEquals(2, fields.size());
+    assertTrue("Missing server field",
+      fields.contains("payload.server_ip_mask"));
+    assertTrue("Missing channel field", fields.contains("channel"));
+  }
+
+  /**
+   * Tests the attack counts by server and channel.
+   */
+  @Test
+  public void testServerChannelCounts() {
+    List<ServerChannelCount> counts = accumulator.getServerChannelCounts();
+    Collections.sort(counts);
+
+    assertEquals(3, counts.size());
+    assertEquals(1, counts.get(0).getServerIpMask());
+    assertEquals("BB", counts.get(0).getChannel());
+    assertEquals(1, counts.get(0).getAttackCount());
+    assertEquals(2, counts.get(1).getServerIpMask());
+    assertEquals("AA", counts.get(1).getChannel());
+    assertEquals(1, counts.get(1).getAttackCount());
+    assertEquals(2, counts.get(2).getServerIpMask());
+    assertEquals("BB", counts.get(2).getChannel());
+    assertEquals(2, counts.get(2).getAttackCount());
+  }
+
+  /**
+   * Tests that merging partial accumulators, whose channel ids were assigned
+   * in a different order, produces the same counts as a single accumulator.
+   */
+  @Test
+  public void testMerge() {
+    AttackAccumulator first = accumulator.newInstance();
+    first.accumulate(attack(2, "AA"));
+    first.accumulate(attack(2, "BB"));
+    AttackAccumulator second = accumulator.newInstance();
+    second.accumulate(attack(2, "BB"));
+    second.accumulate(attack(1, "BB"));
+
+    ServerChannelAccumulator merged =
+      (ServerChannelAccumulator) accumulator.newInstance();
+    merged.merge(first);
+    merged.merge(second);
+
+    List<ServerChannelCount> expected = accumulator.getServerChannelCounts();
+    List<ServerChannelCount> actual = merged.getServerChannelCounts();
+    Collections.sort(expected);
+    Collections.sort(actual);
+
+    assertEquals(expected.size(), actual.size());
+    for (int index = 0; index < expected.size(); ++index) {
+      assertEquals(0, expected.get(index).compareTo(actual.get(index)));
+      assertEquals(expected.get(index).getAttackCount(),
+        actual.get(index).getAttackCount());
+    }
+  }
+}
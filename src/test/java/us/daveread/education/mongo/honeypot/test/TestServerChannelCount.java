@@ -6,7 +6,9 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 
+import us.daveread.education.mongo.honeypot.ChannelDictionary;
 import us.daveread.education.mongo.honeypot.ServerChannelCount;
+import us.daveread.education.mongo.honeypot.ServerChannelKey;
 
 /**
  * Unit tests for the ServerChannelCount class.
@@ -50,6 +52,32 @@ public class TestServerChannelCount {
     assertEquals(321, scc.getAttackCount());
   }
 
+  /**
+   * Tests creating the instance from the individual values.
+   */
+  @Test
+  public void testValueConstructor() {
+    ServerChannelCount scc2 = new ServerChannelCount(2, "BB", 321);
+
+    assertEquals(0, scc.compareTo(scc2));
+    assertEquals(321, scc2.getAttackCount());
+  }
+
+  /**
+   * Tests creating the instance from a packed server and channel key.
+   */
+  @Test
+  public void testKeyConstructor() {
+    ChannelDictionary channels = new ChannelDictionary();
+    channels.intern("AA");
+    long key = ServerChannelKey.pack(2, channels.intern("BB"));
+    ServerChannelCount scc2 = new ServerChannelCount(key, channels, 321);
+
+    assertEquals(2, scc2.getServerIpMask());
+    assertEquals("BB", scc2.getChannel());
+    assertEquals(321, scc2.getAttackCount());
+  }
+
   /**
    * Test the comparison operation with different servers.
    */
@@ -0,0 +1,45 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ServerChannelKey;
+
+/**
+ * Unit tests for the ServerChannelKey class.
+ * @author readda
+ */
+public class TestServerChannelKey {
+  /**
+   * Tests packing and unpacking a key.
+   */
+  @Test
+  public void testPackAndUnpack() {
+    long key = ServerChannelKey.pack(12345, 7);
+
+    assertEquals(12345, ServerChannelKey.serverIpMask(key));
+    assertEquals(7, ServerChannelKey.channelId(key));
+  }
+
+  /**
+   * Tests that negative server IP mask values survive packing.
+   */
+  @Test
+  public void testNegativeServerIpMask() {
+    long key = ServerChannelKey.pack(-2, 3);
+
+    assertEquals(-2, ServerChannelKey.serverIpMask(key));
+    assertEquals(3, ServerChannelKey.channelId(key));
+  }
+
+  /**
+   * Tests that different pairs produce different keys.
+   */
+  @Test
+  public void testDistinctKeys() {
+    assertTrue("Keys should differ",
+      ServerChannelKey.pack(1, 2) != ServerChannelKey.pack(2, 1));
+  }
+}
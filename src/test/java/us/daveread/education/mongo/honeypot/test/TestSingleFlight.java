@@ -0,0 +1,124 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.SingleFlight;
+
+/**
+ * Unit tests for the SingleFlight class.
+ * @author readda
+ */
+public class TestSingleFlight {
+  /**
+   * The number of concurrent callers
+   */
+  private static final int CALLERS = 8;
+
+  /**
+   * Tests that concurrent identical calls share one execution.
+   * @throws Exception
+   *           If a call fails
+   */
+  @Test
+  public void testCoalesced() throws Exception {
+    final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<Integer> call = new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        release.await();
+        return executions.incrementAndGet();
+      }
+    };
+
+    ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int caller = 0; caller < CALLERS; ++caller) {
+        results.add(callers.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            return singleFlight.execute("report", call);
+          }
+        }));
+      }
+      while (singleFlight.getSharedCount() < CALLERS - 1) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      for (Future<Integer> result : results) {
+        assertEquals(1, (int) result.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      callers.shutdownNow();
+    }
+    assertEquals(1, executions.get());
+    assertEquals(1, singleFlight.getExecutedCount());
+  }
+
+  /**
+   * Tests that a call made after the previous one completed runs again.
+   * @throws Exception
+   *           If a call fails
+   */
+  @Test
+  public void testSequentialCallsRun() throws Exception {
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    final AtomicInteger executions = new AtomicInteger();
+    Callable<Integer> call = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return executions.incrementAndGet();
+      }
+    };
+
+    assertEquals(1, (int) singleFlight.execute("report", call));
+    assertEquals(2, (int) singleFlight.execute("report", call));
+    assertEquals(3, (int) singleFlight.execute("other", call));
+    assertEquals(0, singleFlight.getSharedCount());
+  }
+
+  /**
+   * Tests that a failure is passed to the caller and forgotten.
+   * @throws Exception
+   *           If the second call fails
+   */
+  @Test
+  public void testFailure() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    try {
+      singleFlight.execute("report", new Callable<String>() {
+        @Override
+        public String call() {
+          throw new IllegalStateException("No server");
+        }
+      });
+      fail("The failure was not passed to the caller");
+    } catch (IllegalStateException exception) {
+      assertTrue(exception.getMessage().contains("No server"));
+    }
+
+    assertEquals("ok", singleFlight.execute("report", new Callable<String>() {
+      @Override
+      public String call() {
+        return "ok";
+      }
+    }));
+  }
+}
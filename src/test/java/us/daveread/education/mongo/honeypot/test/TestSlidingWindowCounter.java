@@ -0,0 +1,167 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.LongIntHashMap;
+import us.daveread.education.mongo.honeypot.SlidingWindowCounter;
+
+/**
+ * Unit tests for the SlidingWindowCounter class.
+ * @author readda
+ */
+public class TestSlidingWindowCounter {
+  /**
+   * The test instance
+   */
+  private SlidingWindowCounter counter;
+
+  /**
+   * Setup the test instance with a window of three 10ms buckets holding
+   * events at 1000, 1005, 1015 and 1025 milliseconds.
+   */
+  @Before
+  public void setup() {
+    counter = new SlidingWindowCounter(3, 10);
+    counter.increment(7, 1000);
+    counter.increment(7, 1005);
+    counter.increment(8, 1015);
+    counter.increment(7, 1025);
+  }
+
+  /**
+   * Tests the counts within the window.
+   */
+  @Test
+  public void testCounts() {
+    assertEquals(30, counter.getWindowMillis());
+    assertEquals(4, counter.getTotalCount());
+    assertEquals(2, counter.getDistinctCount());
+    assertEquals(3, counter.getCount(7));
+    assertEquals(1, counter.getCount(8));
+    assertEquals(0, counter.getCount(9));
+  }
+
+  /**
+   * Tests that the oldest bucket leaves the window as time moves forward.
+   */
+  @Test
+  public void testAdvance() {
+    assertFalse(counter.advance(1029));
+    assertTrue(counter.advance(1030));
+
+    assertEquals(2, counter.getTotalCount());
+    assertEquals(1, counter.getCount(7));
+    assertEquals(1, counter.getCount(8));
+
+    assertTrue(counter.advance(5000));
+    assertEquals(0, counter.getTotalCount());
+    assertEquals(0, counter.getDistinctCount());
+    assertFalse(counter.advance(1000));
+  }
+
+  /**
+   * Tests that events older than the window are ignored and late events
+   * within the window are counted.
+   */
+  @Test
+  public void testLateEvents() {
+    assertFalse(counter.increment(7, 999));
+    assertTrue(counter.increment(9, 1001));
+
+    assertEquals(5, counter.getTotalCount());
+    assertEquals(1, counter.getCount(9));
+  }
+
+  /**
+   * Tests visiting the counts.
+   */
+  @Test
+  public void testForEachCount() {
+    final long[] sums = new long[2];
+    counter.forEachCount(new LongIntHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, int count) {
+        sums[0] += key * count;
+        sums[1] += count;
+      }
+    });
+
+    assertEquals(7 * 3 + 8, sums[0]);
+    assertEquals(4, sums[1]);
+  }
+
+  /**
+   * Tests that the window must hold a bucket.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoBuckets() {
+    new SlidingWindowCounter(0, 10);
+  }
+
+  /**
+   * Tests that the top keys follow the counts as keys are counted and as
+   * buckets are discarded.
+   */
+  @Test
+  public void testTopKeys() {
+    assertArrayEquals(new long[] {7 }, counter.getTopKeys(1));
+    counter.increment(8, 1026);
+    counter.increment(8, 1027);
+    counter.increment(8, 1028);
+    assertArrayEquals(new long[] {8 }, counter.getTopKeys(1));
+    assertArrayEquals(new long[] {8, 7 }, counter.getTopKeys(5));
+
+    counter.advance(1040);
+    assertArrayEquals(new long[] {8, 7 }, counter.getTopKeys(5));
+    assertEquals(3, counter.getCount(8));
+    assertEquals(1, counter.getCount(7));
+  }
+
+  /**
+   * Tests that the top keys kept up to date between requests match the top
+   * keys found from every count, largest count and then smallest key first.
+   */
+  @Test
+  public void testTopKeysMatchCounts() {
+    SlidingWindowCounter window = new SlidingWindowCounter(4, 100);
+    Random random = new Random(11);
+    long time = 0;
+    for (int request = 0; request < 500; ++request) {
+      for (int event = random.nextInt(20); event > 0; --event) {
+        time += random.nextInt(10);
+        window.increment(random.nextInt(40), time);
+      }
+
+      List<long[]> counts = new ArrayList<>();
+      for (long key = 0; key < 40; ++key) {
+        if (window.getCount(key) > 0) {
+          counts.add(new long[] {key, window.getCount(key) });
+        }
+      }
+      Collections.sort(counts, new Comparator<long[]>() {
+        @Override
+        public int compare(long[] first, long[] second) {
+          return first[1] != second[1] ? Long.compare(second[1], first[1])
+            : Long.compare(first[0], second[0]);
+        }
+      });
+      long[] expected = new long[Math.min(5, counts.size())];
+      for (int index = 0; index < expected.length; ++index) {
+        expected[index] = counts.get(index)[0];
+      }
+      assertArrayEquals(expected, window.getTopKeys(5));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.SpaceSaving;
+import us.daveread.education.mongo.honeypot.ZipfSampler;
+
+/**
+ * Unit tests for the SpaceSaving class.
+ * @author readda
+ */
+public class TestSpaceSaving {
+  /**
+   * The number of keys drawn by the stream tests
+   */
+  private static final int SAMPLES = 100000;
+
+  /**
+   * Tests that keys are counted exactly while there are free counters.
+   */
+  @Test
+  public void testExactWhenNotFull() {
+    SpaceSaving summary = new SpaceSaving(4);
+    summary.offer(1L, 2);
+    summary.offer(2L, 1);
+    summary.offer(1L, 1);
+
+    assertEquals(3, summary.getCount(1L));
+    assertEquals(0, summary.getError(1L));
+    assertEquals(1, summary.getCount(2L));
+    assertEquals(0, summary.getMinimumCount());
+    assertEquals(2, summary.size());
+  }
+
+  /**
+   * Tests that a new key replaces the smallest counter and inherits its
+   * count as the error.
+   */
+  @Test
+  public void testReplaceSmallest() {
+    SpaceSaving summary = new SpaceSaving(2);
+    summary.offer(1L, 5);
+    summary.offer(2L, 2);
+    summary.offer(3L, 1);
+
+    assertEquals(5, summary.getCount(1L));
+    assertEquals(3, summary.getCount(3L));
+    assertEquals(2, summary.getError(3L));
+    assertEquals(3, summary.getMinimumCount());
+    assertEquals(3, summary.getCount(2L));
+  }
+
+  /**
+   * Tests the Space-Saving guarantees on a skewed stream: every count is an
+   * upper bound within its error, and every key occurring more often than
+   * the total divided by the capacity holds a counter.
+   */
+  @Test
+  public void testGuarantees() {
+    ZipfSampler sampler = new ZipfSampler(10000, 1.1);
+    SpaceSaving summary = new SpaceSaving(100);
+    long[] trueCounts = new long[sampler.getCardinality()];
+    Random random = new Random(1);
+    for (int sample = 0; sample < SAMPLES; ++sample) {
+      int key = sampler.sample(random);
+      ++trueCounts[key];
+      summary.offer(key, 1);
+    }
+
+    final Set<Long> held = new HashSet<>();
+    summary.forEachCounter(new SpaceSaving.CounterVisitor() {
+      @Override
+      public void visit(long key, long count, long error) {
+        held.add(key);
+      }
+    });
+
+    for (int key = 0; key < trueCounts.length; ++key) {
+      long count = summary.getCount(key);
+      assertTrue(count >= trueCounts[key]);
+      assertTrue(count - summary.getError(key) <= trueCounts[key]);
+      if (trueCounts[key] > SAMPLES / summary.getCapacity()) {
+        assertTrue(held.contains((long) key));
+      }
+    }
+  }
+
+  /**
+   * Tests that merging summaries of two halves of a stream keeps the
+   * guarantees for the whole stream.
+   */
+  @Test
+  public void testMerge() {
+    ZipfSampler sampler = new ZipfSampler(10000, 1.1);
+    SpaceSaving first = new SpaceSaving(100);
+    SpaceSaving second = new SpaceSaving(100);
+    long[] trueCounts = new long[sampler.getCardinality()];
+    Random random = new Random(2);
+    for (int sample = 0; sample < SAMPLES; ++sample) {
+      int key = sampler.sample(random);
+      ++trueCounts[key];
+      (sample % 2 == 0 ? first : second).offer(key, 1);
+    }
+    first.merge(second);
+
+    assertEquals(100, first.size());
+    for (int key = 0; key < trueCounts.length; ++key) {
+      long count = first.getCount(key);
+      assertTrue(count >= trueCounts[key]);
+      assertTrue(count - first.getError(key) <= trueCounts[key]);
+    }
+    assertTrue(first.getCount(0L) - first.getError(0L) > trueCounts[1]);
+  }
+}
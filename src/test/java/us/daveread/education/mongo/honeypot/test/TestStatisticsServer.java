@@ -0,0 +1,152 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.MongoClient;
+
+import us.daveread.education.mongo.honeypot.LiveAttackMonitor;
+import us.daveread.education.mongo.honeypot.StatisticsServer;
+
+/**
+ * Unit tests for the StatisticsServer class. Only the requests which do not
+ * run a report are tested, since the reports need a MongoDB server.
+ * @author readda
+ */
+public class TestStatisticsServer {
+  /**
+   * The test instance
+   */
+  private StatisticsServer server;
+
+  /**
+   * Start the test instance on a free port.
+   * @throws IOException
+   *           If the server cannot be started
+   */
+  @Before
+  public void setup() throws IOException {
+    server = new StatisticsServer(null, 0);
+    server.start(0);
+  }
+
+  /**
+   * Stop the test instance.
+   */
+  @After
+  public void teardown() {
+    server.stop();
+  }
+
+  /**
+   * Send a request.
+   * @param method
+   *          The HTTP method
+   * @param path
+   *          The request path
+   * @return The connection, after the response was received
+   * @throws IOException
+   *           If the request cannot be sent
+   */
+  private HttpURLConnection request(String method, String path)
+    throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(
+      "http://localhost:" + server.getPort() + path).openConnection();
+    connection.setRequestMethod(method);
+    connection.getResponseCode();
+    return connection;
+  }
+
+  /**
+   * Read the response body.
+   * @param connection
+   *          The connection
+   * @return The body
+   * @throws IOException
+   *           If the body cannot be read
+   */
+  private static String body(HttpURLConnection connection)
+    throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = connection.getResponseCode() < 400
+      ? connection.getInputStream() : connection.getErrorStream()) {
+      byte[] buffer = new byte[1024];
+      int length;
+      while ((length = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, length);
+      }
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Tests listing the reports.
+   * @throws IOException
+   *           If the request fails
+   */
+  @Test
+  public void testListReports() throws IOException {
+    HttpURLConnection connection = request("GET", "/reports");
+    assertEquals(200, connection.getResponseCode());
+    assertTrue(connection.getContentType().startsWith("application/json"));
+    String json = body(connection);
+    assertTrue(json.startsWith("{\"reports\":[\"overallStats\","));
+  }
+
+  /**
+   * Tests requesting an unknown report.
+   * @throws IOException
+   *           If the request fails
+   */
+  @Test
+  public void testUnknownReport() throws IOException {
+    HttpURLConnection connection = request("GET", "/reports/dropDatabase");
+    assertEquals(404, connection.getResponseCode());
+    assertEquals("{\"error\":\"Unknown report dropDatabase\"}",
+      body(connection));
+  }
+
+  /**
+   * Tests that the refresh must be posted.
+   * @throws IOException
+   *           If the request fails
+   */
+  @Test
+  public void testRefreshMethod() throws IOException {
+    assertEquals(405, request("GET", "/refresh").getResponseCode());
+  }
+
+  /**
+   * Tests the live top lists, which are not found without a monitor and are
+   * empty until the monitor reads an attack.
+   * @throws IOException
+   *           If the request fails
+   */
+  @Test
+  public void testLive() throws IOException {
+    assertEquals(404, request("GET", "/live").getResponseCode());
+
+    MongoClient client = new MongoClient("localhost", 1);
+    try {
+      server.setLiveMonitor(new LiveAttackMonitor(client
+        .getDatabase("infuzitDemo").getCollection("honeypotData"), 10));
+      HttpURLConnection connection = request("GET", "/live");
+      assertEquals(200, connection.getResponseCode());
+      assertEquals("{\"windows\":[]}", body(connection));
+      assertEquals(405, request("POST", "/live").getResponseCode());
+    } finally {
+      client.close();
+    }
+  }
+}
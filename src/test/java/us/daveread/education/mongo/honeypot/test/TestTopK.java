@@ -0,0 +1,88 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.CountryCount;
+import us.daveread.education.mongo.honeypot.TopK;
+
+/**
+ * Unit tests for the TopK class.
+ * @author readda
+ */
+public class TestTopK {
+  /**
+   * Tests that the largest items are kept, largest first.
+   */
+  @Test
+  public void testTopItems() {
+    TopK<Integer> topK = new TopK<>(3);
+    for (int value : new int[] {
+        5, 1, 9, 3, 7, 2
+    }) {
+      topK.offer(value);
+    }
+
+    List<Integer> top = topK.getTopItems();
+    assertEquals(3, top.size());
+    assertEquals(Integer.valueOf(9), top.get(0));
+    assertEquals(Integer.valueOf(7), top.get(1));
+    assertEquals(Integer.valueOf(5), top.get(2));
+  }
+
+  /**
+   * Tests that fewer items than k are all returned.
+   */
+  @Test
+  public void testFewerItemsThanK() {
+    TopK<Integer> topK = new TopK<>(10);
+    topK.offer(1);
+    topK.offer(2);
+
+    assertEquals(2, topK.getTopItems().size());
+  }
+
+  /**
+   * Tests that the result, including the order of ties, matches sorting every
+   * item and reversing the sort.
+   */
+  @Test
+  public void testMatchesSortAndReverse() {
+    Random random = new Random(42);
+    List<CountryCount> counts = new ArrayList<>();
+    for (int index = 0; index < 500; ++index) {
+      counts.add(new CountryCount("C" + index, random.nextInt(50)));
+    }
+
+    TopK<CountryCount> topK = new TopK<>(10);
+    topK.offerAll(counts);
+    List<CountryCount> top = topK.getTopItems();
+
+    List<CountryCount> sorted = new ArrayList<>(counts);
+    Collections.sort(sorted);
+    Collections.reverse(sorted);
+
+    assertEquals(10, top.size());
+    for (int index = 0; index < top.size(); ++index) {
+      assertSame(sorted.get(index), top.get(index));
+    }
+  }
+
+  /**
+   * Tests that a k of zero keeps nothing.
+   */
+  @Test
+  public void testZero() {
+    TopK<Integer> topK = new TopK<>(0);
+    topK.offer(1);
+
+    assertEquals(0, topK.getTopItems().size());
+  }
+}
@@ -0,0 +1,91 @@
+package us.daveread.education.mongo.honeypot.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import us.daveread.education.mongo.honeypot.ZipfSampler;
+
+/**
+ * Unit tests for the ZipfSampler class.
+ * @author readda
+ */
+public class TestZipfSampler {
+  /**
+   * The number of samples drawn by the distribution tests
+   */
+  private static final int SAMPLES = 100000;
+
+  /**
+   * Tests that an exponent of 0 gives equal probabilities.
+   */
+  @Test
+  public void testUniformProbabilities() {
+    ZipfSampler sampler = new ZipfSampler(4, 0);
+    for (int rank = 0; rank < 4; ++rank) {
+      assertEquals(0.25, sampler.probability(rank), 1e-9);
+    }
+  }
+
+  /**
+   * Tests the probabilities with an exponent of 1.
+   */
+  @Test
+  public void testSkewedProbabilities() {
+    ZipfSampler sampler = new ZipfSampler(3, 1);
+    double total = 1 + 1 / 2.0 + 1 / 3.0;
+    assertEquals(1 / total, sampler.probability(0), 1e-9);
+    assertEquals(1 / 2.0 / total, sampler.probability(1), 1e-9);
+    assertEquals(1 / 3.0 / total, sampler.probability(2), 1e-9);
+  }
+
+  /**
+   * Tests that the samples follow the probabilities and stay in range.
+   */
+  @Test
+  public void testSamples() {
+    ZipfSampler sampler = new ZipfSampler(100, 1.2);
+    int[] counts = new int[sampler.getCardinality()];
+    Random random = new Random(1);
+    for (int sample = 0; sample < SAMPLES; ++sample) {
+      ++counts[sampler.sample(random)];
+    }
+
+    assertEquals(sampler.probability(0), counts[0] / (double) SAMPLES, 0.01);
+    assertEquals(sampler.probability(1), counts[1] / (double) SAMPLES, 0.01);
+    assertTrue(counts[0] > counts[9]);
+    assertTrue(counts[9] > counts[99]);
+  }
+
+  /**
+   * Tests the ranks drawn by given uniform numbers.
+   */
+  @Test
+  public void testRank() {
+    ZipfSampler sampler = new ZipfSampler(3, 1);
+    assertEquals(0, sampler.rank(0));
+    assertEquals(0, sampler.rank(sampler.probability(0) / 2));
+    assertEquals(1, sampler.rank(sampler.probability(0) + 0.01));
+    assertEquals(2, sampler.rank(0.999));
+  }
+
+  /**
+   * Tests a single rank.
+   */
+  @Test
+  public void testSingleRank() {
+    ZipfSampler sampler = new ZipfSampler(1, 2);
+    assertEquals(0, sampler.sample(new Random(1)));
+  }
+
+  /**
+   * Tests that an empty distribution is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoRanks() {
+    new ZipfSampler(0, 1);
+  }
+}